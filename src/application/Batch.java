@@ -0,0 +1,340 @@
+package application;
+
+import data.DateTime;
+import data.Entry;
+import data.Project;
+import data.io.JsonProjectReader;
+import data.io.JsonProjectWriter;
+import data.io.ProjectReader;
+import data.io.ProjectWriter;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Headless entry point for PlanAmity, for working on many project files at once (e.g. in a nightly job). It only uses
+ * the data package, so JavaFX is never loaded (and doesn't need to be installed).
+ *
+ * <pre>
+ * usage: Batch [options] file-or-directory...
+ *     --validate          check the invariants of every project (see Project#validate)
+ *     --shift DAYS        reschedule every project, and all of its entries, by a number of days (may be negative)
+ *     --export DIR        write every project to a directory, in the format given by --format
+ *     --format pamy|json  the format to export to (pamy by default)
+ *     --stats             print statistics for every project
+ *     --threads N         the number of workers (the number of processors by default)
+ * </pre>
+ *
+ * Directories are searched, recursively, for .pamy and .json files. An export keeps each file's path relative to the
+ * directory it was found in (a file given by itself goes at the top of the export directory); files that would be
+ * exported to the same place (e.g. p.pamy and p.json) fail instead of overwriting each other.
+ *
+ * The files are processed in parallel by a fixed number of workers, so no more than that many projects are in memory at
+ * once. The result of each file is printed as soon as it is done, with the time each step took, and a summary follows
+ * at the end. The exit status is 0 if every file was processed (and was valid), 1 if not, and 2 if the arguments were
+ * wrong.
+ *
+ * @author Al-John
+ */
+public final class Batch {
+
+    private static final String PROJECT_EXTENSION = ".pamy", JSON_EXTENSION = ".json";
+
+    private boolean validate, stats, json;
+    private long shiftMinutes;
+    private Path exportTo;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private final List<Path> inputs = new ArrayList<>();
+    private final Map<Path, Path> exports = new HashMap<>();        //where each file is exported to
+    private final Map<Path, String> clashes = new HashMap<>();      //the files that can't be, and why
+
+    private Batch() {}
+
+    public static void main(String[] args) {
+        System.exit(run(args, System.out));
+    }
+
+    /**
+     * Runs a batch.
+     * @param args the command-line arguments (see above)
+     * @param out where to print the results
+     * @return the exit status
+     */
+    public static int run(String[] args, PrintStream out) {
+        Batch batch = new Batch();
+        try {
+            batch.parse(args);
+        } catch(IllegalArgumentException e) {
+            out.println(e.getMessage());
+            out.println("usage: Batch [--validate] [--shift DAYS] [--export DIR] [--format pamy|json] [--stats] "
+                    + "[--threads N] file-or-directory...");
+            return 2;
+        }
+
+        try {
+            return batch.process(out);
+        } catch(IOException e) {
+            out.println(e.getMessage());
+            return 1;
+        }
+    }
+
+    private void parse(String[] args) {
+        for(int i = 0; i < args.length; i++) {
+            switch(args[i]) {
+                case "--validate":  validate = true; break;
+                case "--stats":     stats = true; break;
+                case "--shift":     shiftMinutes = number(args, ++i) * 24 * 60L; break;
+                case "--export":    exportTo = Paths.get(value(args, ++i)); break;
+                case "--threads":
+                    threads = number(args, ++i);
+                    if(threads < 1)
+                        throw new IllegalArgumentException("--threads must be at least 1.");
+                    break;
+                case "--format":
+                    String format = value(args, ++i);
+                    if(!format.equals("pamy") && !format.equals("json"))
+                        throw new IllegalArgumentException("Unknown format: " + format);
+                    json = format.equals("json");
+                    break;
+                default:
+                    if(args[i].startsWith("--"))
+                        throw new IllegalArgumentException("Unknown option: " + args[i]);
+                    inputs.add(Paths.get(args[i]));
+            }
+        }
+
+        if(inputs.isEmpty())
+            throw new IllegalArgumentException("No files given.");
+    }
+
+    private static String value(String[] args, int i) {
+        if(i >= args.length)
+            throw new IllegalArgumentException(args[i - 1] + " needs a value.");
+        return args[i];
+    }
+
+    private static int number(String[] args, int i) {
+        try {
+            return Integer.parseInt(value(args, i));
+        } catch(NumberFormatException e) {
+            throw new IllegalArgumentException(args[i - 1] + " needs a number.");
+        }
+    }
+
+    /**
+     * Processes every file on a fixed pool of workers, printing each result as it comes in.
+     * @return the exit status
+     */
+    private int process(PrintStream out) throws IOException {
+        List<Path> files = files();
+        if(exportTo != null)
+            Files.createDirectories(exportTo);
+
+        int size = Math.min(threads, Math.max(files.size(), 1));
+        long start = System.nanoTime();
+        ExecutorService workers = Executors.newFixedThreadPool(size, r -> {
+            Thread t = new Thread(r, "batch-worker");
+            t.setDaemon(true);
+            return t;
+        });
+        int failed = 0, entries = 0;
+        try {
+            CompletionService<Result> done = new ExecutorCompletionService<>(workers);
+            for(Path file : files)
+                done.submit(() -> process(file));
+
+            for(int i = 0; i < files.size(); i++) {
+                Result result = done.take().get();
+                out.println(result);
+                if(result.failure != null)
+                    failed++;
+                entries += result.entries;
+            }
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted.", e);
+        } catch(ExecutionException e) {
+            throw new IOException(e.getCause());       //process(Path) catches everything a file can go wrong with
+        } finally {
+            workers.shutdownNow();
+        }
+
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        out.printf("%d files, %d failed, %d entries, %d ms (%d workers)%n", files.size(), failed, entries, millis,
+                size);
+        return failed == 0 ? 0 : 1;
+    }
+
+    /**
+     * Lists the files to process (the files given, and the project files in the directories given, each once), and
+     * works out where each one is exported to.
+     * @return the files to process
+     */
+    private List<Path> files() throws IOException {
+        Map<Path, Path> relative = new LinkedHashMap<>();     //each file, and its path relative to where it was found
+        for(Path input : inputs) {
+            if(!Files.isDirectory(input)) {
+                relative.putIfAbsent(input.toAbsolutePath().normalize(), input.getFileName());
+                continue;
+            }
+
+            try(Stream<Path> found = Files.walk(input)) {
+                for(Path f : found.filter(Files::isRegularFile).filter(f -> {
+                    String name = f.getFileName().toString();
+                    return name.endsWith(PROJECT_EXTENSION) || name.endsWith(JSON_EXTENSION);
+                }).sorted().collect(Collectors.toList()))
+                    relative.putIfAbsent(f.toAbsolutePath().normalize(), input.relativize(f));
+            }
+        }
+
+        if(exportTo != null) {
+            Map<Path, Path> claimed = new HashMap<>();
+            for(Map.Entry<Path, Path> file : relative.entrySet()) {
+                String name = file.getValue().toString();
+                int dot = name.lastIndexOf('.');
+                name = (dot > 0 ? name.substring(0, dot) : name) + (json ? JSON_EXTENSION : PROJECT_EXTENSION);
+                Path target = exportTo.resolve(name).toAbsolutePath().normalize();
+
+                Path other = claimed.putIfAbsent(target, file.getKey());
+                if(other == null) {
+                    exports.put(file.getKey(), target);
+                    continue;
+                }
+                String clash = other + " and " + file.getKey() + " would both be exported to " + target;
+                clashes.put(other, clash);
+                clashes.put(file.getKey(), clash);
+            }
+        }
+        return new ArrayList<>(relative.keySet());
+    }
+
+    /**
+     * Does everything that was asked for to one file. Runs on a worker.
+     */
+    private Result process(Path file) {
+        Result result = new Result(file);
+        long start = System.nanoTime();
+        try {
+            if(clashes.containsKey(file))
+                throw new IllegalStateException(clashes.get(file));
+
+            Project project = file.toString().endsWith(JSON_EXTENSION) ? JsonProjectReader.read(file)
+                    : ProjectReader.read(file);
+            result.entries = project.getTotalEntryCount();
+            start = result.step("read", start);
+
+            if(validate) {
+                String violation = project.validate();
+                start = result.step("validate", start);
+                if(violation != null)
+                    throw new IllegalStateException("invalid: " + violation);
+            }
+
+            if(shiftMinutes != 0) {
+                shift(project);
+                start = result.step("shift", start);
+            }
+
+            if(exportTo != null) {
+                Path target = exports.get(file);
+                Files.createDirectories(target.getParent());
+                if(json)
+                    JsonProjectWriter.write(project, target);
+                else
+                    ProjectWriter.write(project, target);
+                start = result.step("export", start);
+            }
+
+            if(stats)
+                result.stats = stats(project);
+        } catch(IOException | RuntimeException e) {
+            result.failure = e.getMessage() == null ? e.toString() : e.getMessage();
+        }
+        return result;
+    }
+
+    /**
+     * Moves a Project and all of its Entries by the shift, in one transaction.
+     */
+    private void shift(Project project) {
+        project.beginTransaction();
+        for(Entry e : project.preOrder())
+            e.setStartMinutes(e.getStartMinutes() + shiftMinutes, true);
+        project.commit();
+
+        project.setStart(DateTime.ofEpochMinutes(project.getStart().getEpochMinutes() + shiftMinutes));
+        project.setEnd(DateTime.ofEpochMinutes(project.getEnd().getEpochMinutes() + shiftMinutes));
+    }
+
+    private static String stats(Project project) {
+        int leaves = 0, done = 0, unassigned = 0, depth = 0;
+        for(Entry e : project.preOrder()) {
+            depth = Math.max(depth, e.numParents() + 1);
+            if(e.getAssignedTo() == null)
+                unassigned++;
+            if(e.getSubEntries().isEmpty()) {
+                leaves++;
+                if(e.getPercentComplete() == 100)
+                    done++;
+            }
+        }
+
+        return String.format("    %s, %s - %s: %d participants, %d entries (%d levels, %d unassigned), "
+                        + "%d of %d tasks done, %.1f%% complete", project.getName(), project.getStart(),
+                project.getEnd(), project.getParticipants().size(), project.getTotalEntryCount(), depth, unassigned,
+                done, leaves, project.getPercentComplete());
+    }
+
+    /**
+     * What happened to one file, and how long each step took.
+     */
+    private static final class Result {
+        private final Path file;
+        private final StringBuilder timings = new StringBuilder();
+        private long total;
+        private int entries;
+        private String stats, failure;
+
+        private Result(Path file) {
+            this.file = file;
+        }
+
+        /**
+         * Records the time a step took.
+         * @return the time the next step starts
+         */
+        private long step(String name, long start) {
+            long now = System.nanoTime(), nanos = now - start;
+            total += nanos;
+            timings.append(String.format("  %s %.1f ms", name, nanos / 1e6));
+            return now;
+        }
+
+        @Override
+        public String toString() {
+            String line = String.format("%-6s %s (%d entries)%s  total %.1f ms", failure == null ? "OK" : "FAILED",
+                    file, entries, timings, total / 1e6);
+            if(failure != null)
+                line += "\n    " + failure;
+            if(stats != null)
+                line += "\n" + stats;
+            return line;
+        }
+    }
+}
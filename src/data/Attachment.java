@@ -0,0 +1,72 @@
+package data;
+
+import java.util.Locale;
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+/**
+ * A file attached to an Entry. An Attachment is only a reference: the contents are kept once, in a content-addressed
+ * blob store (see {@link data.io.BlobStore}), under the SHA-256 hash of the bytes, so attaching the same file to many
+ * Entries (or many times) costs nothing but the reference.
+ *
+ * Attachments are immutable.
+ *
+ * @author Al-John
+ */
+public final class Attachment {
+
+    private static final Pattern SHA_256 = Pattern.compile("[0-9a-f]{64}");
+
+    private final String hash;
+    private final String name;
+    private final long size;
+
+    /**
+     * @param hash the SHA-256 hash of the contents, as 64 hex digits (it names the blob, so nothing else is accepted)
+     * @param name the name of the file, as shown to the user
+     * @param size the size of the contents, in bytes
+     */
+    public Attachment(String hash, String name, long size) {
+        if(hash != null)
+            hash = hash.toLowerCase(Locale.ROOT);
+        if(hash == null || !SHA_256.matcher(hash).matches())
+            throw new IllegalArgumentException("Not a SHA-256 hash: " + hash);
+
+        this.hash = hash;
+        this.name = name;
+        this.size = size;
+    }
+
+    /**
+     * @return the SHA-256 hash of the contents, as 64 lowercase hex digits
+     */
+    public String getHash() { return hash; }
+
+    /**
+     * @return the name of the file
+     */
+    public String getName() { return name; }
+
+    /**
+     * @return the size of the contents, in bytes
+     */
+    public long getSize() { return size; }
+
+    @Override
+    public boolean equals(Object o) {
+        if(!(o instanceof Attachment))
+            return false;
+        Attachment other = (Attachment) o;
+        return hash.equals(other.hash) && Objects.equals(name, other.name) && size == other.size;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return name + " (" + hash.substring(0, 12) + ", " + size + " bytes)";
+    }
+}
@@ -1,27 +1,32 @@
 package data;
 
+import java.time.Instant;
 import java.time.LocalDate;
+import java.time.ZoneId;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.GregorianCalendar;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 /**
- * Data structure representing a single moment in time, expressed in the standard Gregorian Calendar.
- * 
+ * Data structure representing a single moment in time, with a precision of one minute.
+ *
+ * A DateTime is immutable, and is backed by a single long: the number of minutes since the epoch (1/1/1970 UTC).
+ * Calendar dates (month, day, year) are interpreted in the system's default time zone. Since the value never changes,
+ * DateTimes can be freely shared between Entries; code that does a lot of date arithmetic (e.g. rescheduling) should
+ * use the <code>long</code> minute values directly (see {@link #getEpochMinutes()}), which allocates nothing.
+ *
  * @author Al-John
  *
  */
-public class DateTime extends GregorianCalendar {
+public final class DateTime implements Comparable<DateTime> {
 
-	private static final long serialVersionUID = 1L;
+    private final long minutes;
 
     /**
      * Creates a new DateTime at the current moment in time.
      */
     public DateTime() {
-        super();
+        this(Math.floorDiv(System.currentTimeMillis(), TimeUnit.MINUTES.toMillis(1)));
     }
 
     /**
@@ -29,7 +34,7 @@ public class DateTime extends GregorianCalendar {
      * @param date the LocalDate object
      */
     public DateTime(LocalDate date) {
-        super(date.getYear(), date.getMonthValue() -1, date.getDayOfMonth());
+        this(TimeUnit.SECONDS.toMinutes(date.atStartOfDay(ZoneId.systemDefault()).toEpochSecond()));
     }
 
     /**
@@ -39,7 +44,25 @@ public class DateTime extends GregorianCalendar {
      * @param day the day
      * @param year the year
      */
-    public DateTime(int month, int day, int year) { super(year, month -1, day); }
+    public DateTime(int month, int day, int year) { this(LocalDate.of(year, month, day)); }
+
+    private DateTime(long minutes) {
+        this.minutes = minutes;
+    }
+
+    /**
+     * Returns the DateTime that is a specified number of minutes after the epoch (1/1/1970 UTC).
+     * @param minutes the number of minutes since the epoch
+     * @return the DateTime
+     */
+    public static DateTime ofEpochMinutes(long minutes) {
+        return new DateTime(minutes);
+    }
+
+    /**
+     * @return the number of minutes between the epoch (1/1/1970 UTC) and this DateTime
+     */
+    public long getEpochMinutes() { return minutes; }
 
     /**
 	 * Returns the amount of time between two specified DateTimes, in minutes.
@@ -48,10 +71,19 @@ public class DateTime extends GregorianCalendar {
 	 * @return the amount of time between a and b, in minutes
 	 */
 	public static int minutesBetween(DateTime t1, DateTime t2) {
-		//time between start and end, in minutes
-		return (int)(Math.abs(TimeUnit.MILLISECONDS.toMinutes(t1.getTime().getTime() - t2.getTime().getTime())));
+		return minutesBetween(t1.minutes, t2.minutes);
 	}
 
+    /**
+     * Returns the amount of time between two moments expressed in epoch minutes.
+     * @param m1 moment a, in epoch minutes
+     * @param m2 moment b, in epoch minutes
+     * @return the amount of time between a and b, in minutes
+     */
+    public static int minutesBetween(long m1, long m2) {
+        return (int)Math.abs(m1 - m2);
+    }
+
     /**
      * Returns a DateTime object that is exactly between two specified DateTimes objects.
      * @param d1 the first DateTime
@@ -59,34 +91,25 @@ public class DateTime extends GregorianCalendar {
      * @return a DateTime exactly between the two specified DateTimes
      */
 	public static DateTime getDateBetween(DateTime d1, DateTime d2) {
-		int minsBetween = minutesBetween(d1, d2);
-        int halfway = minsBetween/2;
-
-        if(d1.compareTo(d2) > 0)
-            return d2.getLaterDateTime(halfway);
-        else
-            return d1.getLaterDateTime(halfway);
+        int halfway = minutesBetween(d1, d2)/2;
+        return new DateTime(Math.min(d1.minutes, d2.minutes) + halfway);
 	}
 
     /**
      * Receives a starting and ending date, and returns a List of DateTimes that are distributed evenly between those
      * two dates.
      *
-     * @return
+     * @param start the starting date
+     * @param end the ending date
+     * @param howMany the number of dates to distribute
+     * @return howMany dates, evenly distributed between start and end
      */
     public static List<DateTime> getDatesDistributedEvenlyBetween(DateTime start, DateTime end, int howMany) {
+        int interval = minutesBetween(start, end)/(howMany +1);
 
-        int timeBetween = minutesBetween(start, end);
-        int interval = timeBetween/(howMany +1);
-
-        List<DateTime> distributed = new ArrayList<>();
-
-        distributed.add((DateTime)start.clone());
-        for(int i = 1; i < howMany +1; i++){
-            distributed.add(distributed.get(i-1).getLaterDateTime(interval));
-        }
-
-        distributed.remove(0);
+        List<DateTime> distributed = new ArrayList<>(howMany);
+        for(int i = 1; i < howMany +1; i++)
+            distributed.add(new DateTime(start.minutes + (long)interval * i));
 
         return distributed;
     }
@@ -97,23 +120,51 @@ public class DateTime extends GregorianCalendar {
 	 * @return a DateTime mins minutes from this DateTime
 	 */
 	public DateTime getLaterDateTime(int mins){
-		DateTime dt = (DateTime)this.clone();
-		dt.add(DateTime.MINUTE, mins);
-		return dt;
+		return mins == 0 ? this : new DateTime(minutes + mins);
 	}
 
-    public String toString() {
-        return (this.get(DateTime.MONTH) + 1) + "/" + this.get(DateTime.DAY_OF_MONTH) + "/" + this.get(DateTime.YEAR);
-    }
-
     /**
      * Returns a DateTime that is a specified number of minutes earlier than this DateTime
      * @param mins the number of minutes
      * @return a DateTime mins minutes earlier than this DateTime
      */
     public DateTime getEarlierDateTime(int mins) {
-        DateTime dt = (DateTime)this.clone();
-        dt.add(DateTime.MINUTE, -mins);
-        return dt;
+        return mins == 0 ? this : new DateTime(minutes - mins);
+    }
+
+    /**
+     * @return the calendar date of this DateTime, in the system's default time zone
+     */
+    public LocalDate toLocalDate() {
+        return Instant.ofEpochSecond(TimeUnit.MINUTES.toSeconds(minutes)).atZone(ZoneId.systemDefault()).toLocalDate();
+    }
+
+    /**
+     * DateTimes are immutable, so a clone is the DateTime itself.
+     * @return this DateTime
+     */
+    @Override
+    public DateTime clone() {
+        return this;
+    }
+
+    @Override
+    public int compareTo(DateTime other) {
+        return Long.compare(minutes, other.minutes);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof DateTime && ((DateTime) o).minutes == minutes;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(minutes);
+    }
+
+    public String toString() {
+        LocalDate date = toLocalDate();
+        return date.getMonthValue() + "/" + date.getDayOfMonth() + "/" + date.getYear();
     }
-}
\ No newline at end of file
+}
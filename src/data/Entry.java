@@ -1,9 +1,14 @@
 package data;
 
-import javafx.scene.paint.Color;
-
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Objects;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * The Entry class is a data structure representing a single entry in a project. Every project
@@ -12,19 +17,36 @@ import java.util.List;
  *
  */
 public class Entry {
+	private int id;
 	private String name;
 	private String description;
 
-	private DateTime start;
-	private DateTime end;
+	private long start;
+	private long end;
 	private int percentComplete;
 
 	private Entry parent;
-	private List<Entry> subEntries;
+	private EntrySequence subEntries;
+	private int depth;
 
 	private Participant assignedTo;
 	private Participant lastModifiedBy;
-	private List<Object> attachments;
+	private List<Attachment> attachments;   //unmodifiable; replaced as a whole when it changes
+
+	Project project;
+	EntrySequence.Node node;
+	int preOrder;           //nested-set numbers, maintained by the Project (see Project#ensureNumbered)
+	int subtreeEnd;
+
+	//rollups of this Entry's subtree (itself and all of its descendants), see rollupChanged()
+	int rollupCount, rollupLeaves;
+	long rollupMinStart, rollupMaxEnd, rollupLeafDuration, rollupLeafWeighted, rollupLeafPercent;
+
+	//sub-entries left in storage (see deferSubEntries): where they are while they're unloaded, and where they came from
+	//once they're loaded (until something in the subtree changes, which makes it dirty and keeps it in memory)
+	private Deferred deferred, loadedFrom;
+	boolean dirty;
+	private int retained;
 
 	/**
 	 * Creates an empty Entry with a specified name. The other attributes are set to null, and
@@ -36,15 +58,17 @@ public class Entry {
 		description = "";
 
 		parent = null;
-		subEntries = new ArrayList<>();
+		subEntries = new EntrySequence(this);
 
-		this.start = start;
-		this.end = end;
+		this.start = start.getEpochMinutes();
+		this.end = end.getEpochMinutes();
 		percentComplete = 0;
 
 		assignedTo = null;
 		lastModifiedBy = null;
-		attachments = new ArrayList<>();
+		attachments = Collections.emptyList();
+
+		recomputeRollup();
 	}
 
 	/**
@@ -54,23 +78,52 @@ public class Entry {
 	 */
 	public Entry(String name, DateTime start, DateTime end, Entry parent){
 		this(name, start, end);
-		this.parent = parent;
-        if(parent != null) parent.subEntries.add(this);
+        if(parent != null) parent.addSubEntry(this);
 	}
 
     public Entry(String name){
-        this(name, new DateTime(), new DateTime());
+        this(name, new DateTime());
     }
 
+    private Entry(String name, DateTime moment){
+        this(name, moment, moment);
+    }
+
+	/**
+	 * Returns this Entry's ID. IDs are compact, unique within a Project, and never change once assigned, so they can be
+	 * used to refer to an Entry from files and logs. An Entry that has never been added to a Project has ID 0.
+	 * @return this Entry's ID, or 0 if it hasn't been assigned one
+	 */
+	public int getId() { return id; }
+
+	/**
+	 * Sets this Entry's ID, e.g. when loading a saved Project. If the ID is already taken when the Entry is added to a
+	 * Project, the Entry will be given a fresh one.
+	 * @param id the ID
+	 * @throws IllegalStateException if the Entry already belongs to a Project
+	 */
+	public void setId(int id) {
+		if(project != null)
+			throw new IllegalStateException("Cannot change the ID of an Entry that belongs to a Project.");
+		assignId(id);
+	}
+
+	void assignId(int id) { this.id = id; }
+
+	/**
+	 * @return the Project this Entry belongs to, or null if it hasn't been added to one
+	 */
+	public Project getProject() { return project; }
+
 	/**
 	 * @return This entry's parent entry, or null if it is a top level entry.
 	 */
 	public Entry getParent(){ return parent; }
 
 	/**
-	 * @return This entry's child entries.
+	 * @return This entry's child entries (read from storage first, if they were deferred).
 	 */
-	public List<Entry> getSubEntries() { return subEntries; }
+	public List<Entry> getSubEntries() { return children(); }
 
 	/**
 	 * @return This entry's name.
@@ -82,16 +135,18 @@ public class Entry {
 	 * @param u the user to assign the entry to
 	 */
 	public void assignTo(Participant u) {
+		Participant old = assignedTo;
 		assignedTo = u; 
 		u.addAssignment(this);
+		changed(ModelChange.Property.ASSIGNED_TO, old, u);
 	}
 
 	/**
-	 * @return the color associated with this Participant.
+	 * @return the color associated with this Entry (that of the Participant it is assigned to), as a hex code
 	 */
-	public Color getColor() {
+	public String getColor() {
 		if(assignedTo == null)
-			return Color.INDIANRED;
+			return "#cd5c5c";       //indian red
 		else
 			return assignedTo.getColor();
 	}
@@ -113,7 +168,9 @@ public class Entry {
 	 * @param mins the duration of this entry, in minutes
 	 */
 	public void setDurationInMins(int mins){
-		end = start.getLaterDateTime(mins);
+		long oldEnd = end;
+		end = start + mins;
+		intervalChanged(start, oldEnd);
 	}
 
     /**
@@ -140,19 +197,112 @@ public class Entry {
 	 * @param keepDur true if the duration is to be preserved; false otherwise
 	 */
 	public void setStart(DateTime start, boolean keepDur){
+		setStartMinutes(start.getEpochMinutes(), keepDur);
+	}
+
+	/**
+	 * Sets the start of this entry, expressed in epoch minutes (see {@link DateTime#getEpochMinutes()}).
+	 * @param start the new start, in epoch minutes
+	 * @param keepDur true if the duration is to be preserved; false otherwise
+	 */
+	public void setStartMinutes(long start, boolean keepDur){
+		long oldStart = this.start, oldEnd = end;
 		int duration = getDuration();
 		this.start = start;
-		if(keepDur)	end = start.getLaterDateTime(duration);
+		if(keepDur) end = start + duration;
+		intervalChanged(oldStart, oldEnd);
 	}
 
 	/**
-	 * Sets the end DateTime of this entry, then modifies its duration accordingly.
+	 * Sets the end DateTime of this entry.
+	 * 	If keepDur is true, then modifies the start DateTime accordingly.
+	 * 	If keepDur is false, then does not modify the start DateTime.
 	 * @param end the new end DateTime
+	 * @param keepDur true if the duration is to be preserved; false otherwise
 	 */
 	public void setEnd(DateTime end, boolean keepDur){
-        int duration = getDuration();
+		setEndMinutes(end.getEpochMinutes(), keepDur);
+	}
+
+	/**
+	 * Sets the end of this entry, expressed in epoch minutes (see {@link DateTime#getEpochMinutes()}).
+	 * @param end the new end, in epoch minutes
+	 * @param keepDur true if the duration is to be preserved; false otherwise
+	 */
+	public void setEndMinutes(long end, boolean keepDur){
+		long oldStart = start, oldEnd = this.end;
+		int duration = getDuration();
 		this.end = end;
-        if(keepDur) start = end.getEarlierDateTime(duration);
+		if(keepDur) start = end - duration;
+		intervalChanged(oldStart, oldEnd);
+	}
+
+	/**
+	 * Lets the owning Project (if any) and the sequence holding this Entry know that its start or end has changed.
+	 * @param oldStart the start before the change, in epoch minutes
+	 * @param oldEnd the end before the change, in epoch minutes
+	 */
+	private void intervalChanged(long oldStart, long oldEnd) {
+		rollupChanged();
+		if(project == null)
+			return;
+
+		project.intervalChanged(this);
+		project.beginBatch();
+		changed(ModelChange.Property.START, oldStart, start);
+		changed(ModelChange.Property.END, oldEnd, end);
+		project.endBatch();
+	}
+
+	/**
+	 * Tells the owning Project (if any) that one of this Entry's properties has been set.
+	 */
+	private void changed(ModelChange.Property property, Object oldValue, Object newValue) {
+		if(project != null && !Objects.equals(oldValue, newValue))
+			project.fire(ModelChange.property(this, property, oldValue, newValue));
+	}
+
+	/**
+	 * Rebuilds the rollups of this Entry and of every ancestor, after something in this Entry's subtree has changed.
+	 * Each step reads the already-combined rollup of the sub-entries from their sequence, so this costs O(depth * log
+	 * siblings) rather than a walk over the subtree.
+	 */
+	void rollupChanged() {
+		for(Entry e = this; e != null; e = e.parent) {
+			e.recomputeRollup();
+			if(e.node != null) EntrySequence.refresh(e.node);
+		}
+	}
+
+	private void recomputeRollup() {
+		if(deferred != null) {
+			SubtreeSource.Summary sum = deferred.summary;
+			rollupCount = 1 + sum.count;
+			rollupMinStart = Math.min(Math.min(start, end), sum.minStart);
+			rollupMaxEnd = Math.max(Math.max(start, end), sum.maxEnd);
+			rollupLeaves = sum.leaves;
+			rollupLeafDuration = sum.leafDuration;
+			rollupLeafWeighted = sum.leafWeighted;
+			rollupLeafPercent = sum.leafPercent;
+			return;
+		}
+
+		rollupCount = 1 + subEntries.rollupCount();
+		rollupMinStart = Math.min(Math.min(start, end), subEntries.rollupMinStart());
+		rollupMaxEnd = Math.max(Math.max(start, end), subEntries.rollupMaxEnd());
+
+		if(subEntries.isEmpty()) {
+			rollupLeaves = 1;
+			rollupLeafDuration = getDuration();
+			rollupLeafWeighted = (long)getDuration() * percentComplete;
+			rollupLeafPercent = percentComplete;
+		}
+		else {
+			rollupLeaves = subEntries.rollupLeaves();
+			rollupLeafDuration = subEntries.rollupLeafDuration();
+			rollupLeafWeighted = subEntries.rollupLeafWeighted();
+			rollupLeafPercent = subEntries.rollupLeafPercent();
+		}
 	}
 
 	/**
@@ -167,7 +317,9 @@ public class Entry {
 	 * @param description the description to set
 	 */
 	public void setDescription(String description) {
+		String old = this.description;
 		this.description = description;
+		changed(ModelChange.Property.DESCRIPTION, old, description);
 	}
 
 	/**
@@ -181,28 +333,42 @@ public class Entry {
 	 * @param lastModifiedBy the Participant that last modified this Entry
 	 */
 	public void setLastModifiedBy(Participant lastModifiedBy) {
+		Participant old = this.lastModifiedBy;
 		this.lastModifiedBy = lastModifiedBy;
+		changed(ModelChange.Property.LAST_MODIFIED_BY, old, lastModifiedBy);
 	}
 
 	/**
 	 * @return the start DateTime of the project
 	 */
 	public DateTime getStart() {
-		return start;
+		return DateTime.ofEpochMinutes(start);
 	}
 
 	/**
 	 * @return the end DateTime of the project
 	 */
 	public DateTime getEnd() {
-		return end;
+		return DateTime.ofEpochMinutes(end);
 	}
 
+	/**
+	 * @return the start of this entry, in epoch minutes
+	 */
+	public long getStartMinutes() { return start; }
+
+	/**
+	 * @return the end of this entry, in epoch minutes
+	 */
+	public long getEndMinutes() { return end; }
+
 	/**
 	 * @param name the new name of the project
 	 */
 	public void setName(String name) {
+		String old = this.name;
 		this.name = name;
+		changed(ModelChange.Property.NAME, old, name);
 	}
 
 	/**
@@ -210,13 +376,31 @@ public class Entry {
 	 */
 	public void setParent(Entry parent) {
 		this.parent = parent;
+
+		int newDepth = parent == null ? 0 : parent.depth + 1;
+		if(newDepth != depth) {
+			Deque<Entry> stack = new ArrayDeque<>();
+			depth = newDepth;
+			stack.push(this);
+			while(!stack.isEmpty()) {
+				Entry e = stack.pop();
+				for(Entry sub : e.subEntries) {
+					sub.depth = e.depth + 1;
+					stack.push(sub);
+				}
+			}
+		}
+
+		if(project != null) project.structureChanged();
 	}
 
 	/**
 	 * @param assignedTo the Participant this Entry is assigned to
 	 */
 	public void setAssignedTo(Participant assignedTo) {
+		Participant old = this.assignedTo;
 		this.assignedTo = assignedTo;
+		changed(ModelChange.Property.ASSIGNED_TO, old, assignedTo);
 	}
 
 	/**
@@ -230,54 +414,405 @@ public class Entry {
 	 * @param percentComplete the new value of percentComplete
 	 */
 	public void setPercentComplete(int percentComplete) {
+		int old = this.percentComplete;
 		this.percentComplete = percentComplete;
+		rollupChanged();
+		changed(ModelChange.Property.PERCENT_COMPLETE, old, percentComplete);
 	}
 
 	/**
-	 * @return the attachments
+	 * Returns the number of Entries below this one in the hierarchy (sub-entries, their sub-entries, and so on). O(1).
+	 * @return the number of descendants of this Entry
+	 */
+	public int getDescendantCount() { return rollupCount - 1; }
+
+	/**
+	 * Returns the earliest date covered by this Entry or any of its descendants. O(1).
+	 * @return the start of this Entry's subtree
+	 */
+	public DateTime getSpanStart() { return DateTime.ofEpochMinutes(rollupMinStart); }
+
+	/**
+	 * Returns the latest date covered by this Entry or any of its descendants. O(1).
+	 * @return the end of this Entry's subtree
+	 */
+	public DateTime getSpanEnd() { return DateTime.ofEpochMinutes(rollupMaxEnd); }
+
+	/**
+	 * Returns the total duration of the work in this Entry's subtree, in minutes: its own duration if it has no
+	 * sub-entries, or else the sum of the durations of all of its leaf descendants. O(1).
+	 * @return the total duration of this Entry's subtree, in minutes
+	 */
+	public long getTotalDuration() { return rollupLeafDuration; }
+
+	/**
+	 * Returns how complete this Entry's subtree is, as the percent complete of its leaf descendants weighted by their
+	 * durations. (If the leaves are all single points, they are weighted equally.) For an Entry with no sub-entries,
+	 * this is just its own percent complete. O(1).
+	 * @return the rolled-up percent complete of this Entry
 	 */
-	public List<Object> getAttachments() {
+	public double getRolledUpPercentComplete() {
+		if(rollupLeafDuration > 0)
+			return (double)rollupLeafWeighted / rollupLeafDuration;
+
+		return (double)rollupLeafPercent / rollupLeaves;
+	}
+
+	/**
+	 * Returns the files attached to this Entry. These are only references; the contents stay in the blob store (see
+	 * {@link data.io.BlobStore}) until they are opened.
+	 * @return the attachments, in the order they were attached (unmodifiable)
+	 */
+	public List<Attachment> getAttachments() {
 		return attachments;
 	}
 
 	/**
-	 * Returns true if the Entry has any attachments. TODO: MAKE THIS NOT RANDOM
+	 * Replaces the files attached to this Entry.
+	 * @param attachments the attachments
+	 */
+	public void setAttachments(List<Attachment> attachments) {
+		List<Attachment> old = this.attachments;
+		this.attachments = attachments.isEmpty() ? Collections.emptyList()
+				: Collections.unmodifiableList(new ArrayList<>(attachments));
+		changed(ModelChange.Property.ATTACHMENTS, old, this.attachments);
+	}
+
+	/**
+	 * Attaches a file to this Entry, after the ones already attached.
+	 * @param attachment the attachment
+	 */
+	public void addAttachment(Attachment attachment) {
+		List<Attachment> list = new ArrayList<>(attachments);
+		list.add(attachment);
+		setAttachments(list);
+	}
+
+	/**
+	 * Detaches a file from this Entry.
+	 * @param attachment the attachment
+	 * @return true if it was attached
+	 */
+	public boolean removeAttachment(Attachment attachment) {
+		List<Attachment> list = new ArrayList<>(attachments);
+		if(!list.remove(attachment))
+			return false;
+
+		setAttachments(list);
+		return true;
+	}
+
+	/**
+	 * Returns true if the Entry has any attachments. O(1).
 	 * @return true if the Entry has any attachments, false otherwise
 	 */
 	public boolean hasAttachments() {
-		return Math.random() > .5;
+		return !attachments.isEmpty();
 	}
 
     public String toString() {
-        String tabs = "";
-        for(int i = numParents(); i >= 0; i--) tabs += "\t";
+        StringBuilder s = new StringBuilder();
+        appendTo(s);
+        return s.toString();
+    }
 
-        String s = tabs + "[Name: " + name + "; start:" + start + "; end:" + end + "; " + subEntries.size() + " SubEntries: {";
-        for(Entry e : subEntries) {
-            s += "\n" + tabs + e;
+    /**
+     * Appends this Entry's description (see {@link #toString()}) to a StringBuilder, walking its sub-entries with an
+     * explicit stack instead of recursion.
+     * @param s the StringBuilder
+     */
+    void appendTo(StringBuilder s) {
+        appendTabs(s, this);
+        appendHeader(s, this);
+
+        Deque<Entry> path = new ArrayDeque<>();
+        Deque<Iterator<Entry>> pending = new ArrayDeque<>();
+        path.push(this);
+        pending.push(children().iterator());
+
+        while(!pending.isEmpty()) {
+            if(pending.peek().hasNext()) {
+                Entry e = pending.peek().next();
+                s.append('\n');
+                appendTabs(s, path.peek());
+                appendTabs(s, e);
+                appendHeader(s, e);
+
+                path.push(e);
+                pending.push(e.children().iterator());
+            }
+            else {
+                pending.pop();
+                path.pop();
+                s.append('}');
+            }
         }
+    }
+
+    private static void appendTabs(StringBuilder s, Entry e) {
+        for(int i = e.numParents(); i >= 0; i--) s.append('\t');
+    }
+
+    private static void appendHeader(StringBuilder s, Entry e) {
+        s.append("[Name: ").append(e.name).append("; start:").append(e.getStart()).append("; end:").append(e.getEnd())
+                .append("; ").append(e.children().size()).append(" SubEntries: {");
+    }
+
+    /**
+     * Returns this Entry and all of its descendants, each Entry before its sub-entries. The walk uses an explicit
+     * stack, so it is safe on arbitrarily deep hierarchies.
+     * @return this Entry's subtree, in pre-order
+     */
+    public Iterable<Entry> preOrder() {
+        return () -> EntryTraversal.preOrder(this);
+    }
+
+    /**
+     * Returns this Entry and all of its descendants, each Entry after its sub-entries (so this Entry comes last).
+     * @return this Entry's subtree, in post-order
+     */
+    public Iterable<Entry> postOrder() {
+        return () -> EntryTraversal.postOrder(this);
+    }
+
+    /**
+     * Returns a Stream over this Entry and all of its descendants, in pre-order. The underlying Spliterator splits
+     * along the hierarchy, so <code>subtreeStream(true)</code> spreads the work over all cores. A parallel stream reads
+     * the whole subtree from storage first (see {@link #deferSubEntries(SubtreeSource, int, SubtreeSource.Summary)}).
+     * @param parallel true for a parallel stream
+     * @return a stream over this Entry's subtree
+     */
+    public Stream<Entry> subtreeStream(boolean parallel) {
+        if(parallel)
+            loadSubtree();
+        return StreamSupport.stream(new EntryTraversal.EntrySpliterator(this, children(), 0, subEntries.size()),
+                parallel);
+    }
+
+    /**
+     * @return this Entry's sub-entries, as the sequence that holds them (read from storage first, if they were
+     * deferred)
+     */
+    EntrySequence children() {
+        if(deferred != null)
+            load();
+        return subEntries;
+    }
+
+    /**
+     * @return this Entry's sub-entries as they are in memory: empty if they were deferred and haven't been read yet
+     */
+    EntrySequence loadedChildren() {
+        return subEntries;
+    }
+
+    /**
+     * Leaves this Entry's sub-entries in storage until something asks for them (e.g. {@link #getSubEntries()}, or a
+     * walk over the hierarchy). Until then, the Entry behaves as if they were there wherever only their rollups are
+     * needed (counts, spans, progress), so a large Project can be opened a branch at a time.
+     * @param source where the sub-entries are
+     * @param key what the source knows this Entry's sub-entries by
+     * @param summary the number and rollups of the sub-entries
+     * @throws IllegalStateException if the Entry already has sub-entries in memory
+     */
+    public void deferSubEntries(SubtreeSource source, int key, SubtreeSource.Summary summary) {
+        if(!subEntries.isEmpty())
+            throw new IllegalStateException("The sub-entries of " + name + " are already in memory.");
+
+        deferred = new Deferred(source, key, summary);
+        loadedFrom = null;
+        rollupChanged();
+        if(project != null) {
+            project.reserveIds(summary.maxId);
+            project.structureChanged();
+        }
+    }
+
+    /**
+     * @return true unless this Entry's sub-entries were deferred and are still in storage
+     */
+    public boolean isLoaded() {
+        return deferred == null;
+    }
+
+    /**
+     * Marks this Entry's sub-entries as in use (e.g. on screen), so they can't be unloaded; every call must be
+     * matched by a call to {@link #releaseSubEntries()}.
+     */
+    public void retainSubEntries() {
+        retained++;
+    }
+
+    /**
+     * Undoes a call to {@link #retainSubEntries()}.
+     */
+    public void releaseSubEntries() {
+        if(retained > 0)
+            retained--;
+    }
+
+    /**
+     * Drops this Entry's sub-entries from memory, leaving them to be read from storage again the next time they're
+     * needed. Only sub-entries that were read from storage, and haven't changed since (anywhere in their subtree), can
+     * be unloaded, and only while nothing in the subtree is retained (see {@link #retainSubEntries()}).
+     * @return true if the sub-entries were unloaded
+     */
+    public boolean unloadSubEntries() {
+        if(loadedFrom == null || dirty || retained > 0)
+            return false;
+
+        //the loaded part of the subtree, none of which may be in use
+        List<Entry> loaded = new ArrayList<>();
+        Deque<Entry> stack = new ArrayDeque<>(subEntries);
+        while(!stack.isEmpty()) {
+            Entry e = stack.pop();
+            if(e.retained > 0)
+                return false;
+            loaded.add(e);
+            for(Entry sub : e.subEntries) stack.push(sub);
+        }
+
+        deferred = loadedFrom;
+        loadedFrom = null;
+        for(Entry e : loaded) {
+            if(e.assignedTo != null) e.assignedTo.removeAssignment(e);
+            e.parent = null;
+            e.project = null;
+        }
+        if(project != null)
+            project.forget(loaded);
+        subEntries.clear();
+        return true;
+    }
+
+    /**
+     * Reads this Entry's deferred sub-entries from storage and puts them in place, without reporting any change: as
+     * far as the rest of the program is concerned, they were always there.
+     */
+    private void load() {
+        Deferred d = deferred;
+        List<Entry> loaded = d.source.loadSubEntries(this, d.key);
+
+        deferred = null;
+        for(Entry sub : loaded)
+            sub.setParent(this);
+        subEntries.addAll(loaded);
+        loadedFrom = d;
+        dirty = false;
+
+        if(project != null)
+            for(Entry sub : loaded) project.attach(sub);
+    }
+
+    /**
+     * @return the highest ID among this Entry's deferred sub-entries, or 0 if none are deferred
+     */
+    int deferredMaxId() {
+        return deferred == null ? 0 : deferred.summary.maxId;
+    }
 
-        return s + "}";
+    /**
+     * Reads every deferred sub-entry in this Entry's subtree from storage.
+     */
+    void loadSubtree() {
+        Deque<Entry> stack = new ArrayDeque<>();
+        stack.push(this);
+        while(!stack.isEmpty())
+            for(Entry sub : stack.pop().children()) stack.push(sub);
     }
 
     /**
-     * Returns the number of parents this Entry has (i.e. its depth).
+     * Returns the number of parents this Entry has (i.e. its depth). The depth is cached, so this is O(1).
      * @return the number of parents this Entry has (i.e. its depth)
      */
     public int numParents() {
-        if(parent == null)
-            return 0;
+        return depth;
+    }
+
+    /**
+     * Returns true if this Entry is a (direct or indirect) parent of a specified Entry. For two Entries in the same
+     * Project this is O(1), using the Project's nested-set numbering; otherwise it walks up from the other Entry to this
+     * Entry's depth.
+     * @param other the other Entry
+     * @return true if this Entry is an ancestor of other; false otherwise
+     */
+    public boolean isAncestorOf(Entry other) {
+        if(other == this || other.depth <= depth)
+            return false;
+
+        if(project != null && other.project == project) {
+            project.ensureNumbered();
+            return preOrder < other.preOrder && other.preOrder <= subtreeEnd;
+        }
 
-        return 1 + parent.numParents();
+        Entry e = other;
+        while(e.depth > depth) e = e.parent;
+        return e == this;
     }
 
     /**
-     * Adds a subEntry to this Entry
+     * Returns this Entry's position in a pre-order walk of its Project (top-level Entries in order, each followed by all
+     * of its sub-entries). Together with {@link #getSubtreeEnd()}, this is the Entry's nested-set range: the Entry's
+     * subtree is exactly the Entries whose pre-order index falls in [getPreOrderIndex(), getSubtreeEnd()].
+     * @return the pre-order index of this Entry, or -1 if it doesn't belong to a Project
+     */
+    public int getPreOrderIndex() {
+        if(project == null)
+            return -1;
+
+        project.ensureNumbered();
+        return preOrder;
+    }
+
+    /**
+     * Returns the pre-order index of the last Entry in this Entry's subtree (see {@link #getPreOrderIndex()}).
+     * @return the pre-order index of this Entry's last descendant (or of itself, if it has none), or -1 if it doesn't
+     * belong to a Project
+     */
+    public int getSubtreeEnd() {
+        if(project == null)
+            return -1;
+
+        project.ensureNumbered();
+        return subtreeEnd;
+    }
+
+    /**
+     * Adds a subEntry to this Entry. If the subEntry already has a place in the hierarchy (i.e. it has another parent,
+     * or is a top-level Entry), it is moved from there.
      * @param sub the subEntry
+     * @throws IllegalArgumentException if the subEntry is this Entry or one of its ancestors
      */
     public void addSubEntry(Entry sub) {
+        if(sub == this || sub.isAncestorOf(this))
+            throw new IllegalArgumentException("An Entry can't be placed inside itself.");
+
+        children();
+        Project oldProject = sub.project;
+        Entry oldParent = sub.parent;
+        int oldIndex = -1;
+        if(sub.node != null && sub.node.owner != null) {
+            oldIndex = sub.node.owner.indexOf(sub);
+            sub.node.owner.remove(oldIndex);
+        }
+        if(oldProject != null && oldProject != project) {
+            oldProject.detach(sub);
+            oldProject.fire(ModelChange.removed(sub, oldParent, oldIndex));
+        }
+
         sub.setParent(this);
         subEntries.add(sub);
+        if(project == null)
+            return;
+
+        int index = subEntries.size() - 1;
+        if(oldProject == project) {
+            project.fire(ModelChange.moved(sub, oldParent, oldIndex, this, index));
+        }
+        else {
+            project.attach(sub);
+            project.fire(ModelChange.inserted(sub, this, index));
+        }
     }
 
     /**
@@ -287,4 +822,19 @@ public class Entry {
     public boolean isSinglePoint() {
         return getDuration() == 0;
     }
+
+    /**
+     * Where the deferred sub-entries of an Entry are.
+     */
+    private static final class Deferred {
+        final SubtreeSource source;
+        final int key;
+        final SubtreeSource.Summary summary;
+
+        Deferred(SubtreeSource source, int key, SubtreeSource.Summary summary) {
+            this.source = source;
+            this.key = key;
+            this.summary = summary;
+        }
+    }
 }
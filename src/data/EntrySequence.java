@@ -0,0 +1,527 @@
+package data;
+
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * An ordered List of Entries, used for a Project's top-level Entries and for each Entry's sub-entries.
+ *
+ * The Entries are kept in an implicit treap (a randomized balanced tree ordered by position, where every node knows
+ * the size of its subtree), so inserting, removing and looking up an Entry by index are all O(log n). Each Entry also
+ * remembers the tree node that holds it, so <code>indexOf</code> and <code>contains</code> are O(log n) as well, instead
+ * of a linear identity scan. Iteration is O(n).
+ *
+ * Every node also counts the Entries in its subtree that are NOT single points in time. That count is enough to find
+ * the maximal run of single-point Entries (a "group", see {@link Project#getGroupOfSinglePointEntries(Entry)}) around
+ * any position in O(log n): the run is bounded by the last non-point Entry before it and the first one after it.
+ *
+ * Finally, every node combines the subtree rollups (see {@link Entry#getDescendantCount()} and friends) of the Entries
+ * in its subtree, so the rollup of a whole sequence is available at the root, and an Entry can rebuild its own rollup
+ * from its sub-entries in O(1) after one of them changes.
+ *
+ * An Entry can only be held by one EntrySequence at a time (the Entry hierarchy is a tree).
+ *
+ * @author Al-John
+ */
+public class EntrySequence extends AbstractList<Entry> {
+
+    static final class Node {
+        Entry entry;
+        EntrySequence owner;
+        Node left, right, parent;
+        final int priority;
+        int size;
+        int solid;      //number of Entries in this subtree that are not single points
+
+        //combined rollups of the Entries in this subtree
+        int count, leaves;
+        long minStart, maxEnd, leafDuration, leafWeighted, leafPercent;
+
+        Node(Entry entry, int priority) {
+            this.entry = entry;
+            this.priority = priority;
+            size = 1;
+        }
+    }
+
+    private Node root;
+    private int seed = 0x6C078965;
+    private final Entry ownerEntry;
+    private final Project ownerProject;
+
+    public EntrySequence() {
+        this(null, null);
+    }
+
+    /**
+     * Creates the sub-entry sequence of an Entry.
+     */
+    EntrySequence(Entry owner) {
+        this(owner, null);
+    }
+
+    /**
+     * Creates the top-level sequence of a Project.
+     */
+    EntrySequence(Project owner) {
+        this(null, owner);
+    }
+
+    private EntrySequence(Entry ownerEntry, Project ownerProject) {
+        this.ownerEntry = ownerEntry;
+        this.ownerProject = ownerProject;
+    }
+
+    @Override
+    public int size() {
+        return size(root);
+    }
+
+    @Override
+    public Entry get(int index) {
+        return nodeAt(index).entry;
+    }
+
+    @Override
+    public Entry set(int index, Entry entry) {
+        Node node = nodeAt(index);
+        Entry old = node.entry;
+        if(old.node == node) old.node = null;
+
+        node.entry = entry;
+        entry.node = node;
+        refresh(node);
+        structureChanged();
+
+        return old;
+    }
+
+    @Override
+    public void add(int index, Entry entry) {
+        if(index < 0 || index > size())
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+
+        Node node = newNode(entry);
+        Node[] halves = split(root, index);
+        root = merge(merge(halves[0], node), halves[1]);
+        root.parent = null;
+        modCount++;
+        structureChanged();
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends Entry> entries) {
+        return addAll(size(), entries);
+    }
+
+    /**
+     * Inserts a batch of Entries at the specified index. The batch is built into a balanced subtree in linear time, and
+     * then spliced into the sequence in O(log n).
+     */
+    @Override
+    public boolean addAll(int index, Collection<? extends Entry> entries) {
+        if(index < 0 || index > size())
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        if(entries.isEmpty())
+            return false;
+
+        Node batch = build(entries);
+        Node[] halves = split(root, index);
+        root = merge(merge(halves[0], batch), halves[1]);
+        root.parent = null;
+        modCount++;
+        structureChanged();
+        return true;
+    }
+
+    @Override
+    public Entry remove(int index) {
+        Node node = nodeAt(index);
+        unlink(node);
+        return node.entry;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        Node node = nodeOf(o);
+        if(node == null)
+            return false;
+
+        unlink(node);
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        for(Entry e : this)
+            if(e.node != null && e.node.owner == this) {
+                e.node.owner = null;
+                e.node = null;
+            }
+
+        root = null;
+        modCount++;
+        structureChanged();
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        Node node = nodeOf(o);
+        return node == null ? -1 : rank(node);
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+        return indexOf(o);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return nodeOf(o) != null;
+    }
+
+    /**
+     * In-order iterator over the tree, using an explicit stack (O(1) amortized per step).
+     */
+    @Override
+    public Iterator<Entry> iterator() {
+        return iterator(0);
+    }
+
+    /**
+     * Returns an iterator over the Entries from a specified index onwards. Finding the starting point is O(log n), and
+     * each step after that is O(1) amortized.
+     * @param from the index of the first Entry to return
+     * @return the iterator
+     */
+    public Iterator<Entry> iterator(int from) {
+        if(from < 0 || from > size())
+            throw new IndexOutOfBoundsException("Index: " + from + ", Size: " + size());
+
+        return new Iterator<Entry>() {
+            private final Deque<Node> stack = new ArrayDeque<>();
+            private final int expectedModCount = modCount;
+            private Node last;
+
+            {
+                //push every node on the path to index "from" that comes at or after it
+                int index = from;
+                for(Node n = root; n != null; ) {
+                    int leftSize = size(n.left);
+                    if(index <= leftSize) {
+                        stack.push(n);
+                        n = n.left;
+                    }
+                    else {
+                        index -= leftSize + 1;
+                        n = n.right;
+                    }
+                }
+            }
+
+            private void pushLeft(Node n) {
+                for(; n != null; n = n.left) stack.push(n);
+            }
+
+            @Override
+            public boolean hasNext() {
+                return !stack.isEmpty();
+            }
+
+            @Override
+            public Entry next() {
+                if(modCount != expectedModCount)
+                    throw new ConcurrentModificationException();
+                if(stack.isEmpty())
+                    throw new NoSuchElementException();
+
+                last = stack.pop();
+                pushLeft(last.right);
+                return last.entry;
+            }
+        };
+    }
+
+    /**
+     * Returns the number of Entries before a specified index that are not single points in time.
+     * @param index the index
+     * @return the number of non-point Entries in [0, index)
+     */
+    public int countNonPointBefore(int index) {
+        int count = 0;
+        for(Node n = root; n != null; ) {
+            int leftSize = size(n.left);
+            if(index <= leftSize)
+                n = n.left;
+            else {
+                count += solid(n.left) + (isSolid(n) ? 1 : 0);
+                index -= leftSize + 1;
+                n = n.right;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the index of the k-th (counting from 0) Entry that is not a single point in time.
+     * @param k the rank of the non-point Entry
+     * @return its index, or size() if there are not that many non-point Entries
+     */
+    public int indexOfNonPoint(int k) {
+        int idx = 0;
+        for(Node n = root; n != null; ) {
+            int leftSolid = solid(n.left);
+            if(k < leftSolid)
+                n = n.left;
+            else {
+                if(isSolid(n) && k == leftSolid)
+                    return idx + size(n.left);
+
+                k -= leftSolid + (isSolid(n) ? 1 : 0);
+                idx += size(n.left) + 1;
+                n = n.right;
+            }
+        }
+        return size();
+    }
+
+    /**
+     * Returns the node holding a specified Entry in this sequence, or null if the Entry isn't in it.
+     */
+    private Node nodeOf(Object o) {
+        if(!(o instanceof Entry))
+            return null;
+
+        Node node = ((Entry) o).node;
+        return node != null && node.owner == this ? node : null;
+    }
+
+    private Node nodeAt(int index) {
+        if(index < 0 || index >= size())
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+
+        Node n = root;
+        while(true) {
+            int leftSize = size(n.left);
+            if(index < leftSize)
+                n = n.left;
+            else if(index == leftSize)
+                return n;
+            else {
+                index -= leftSize + 1;
+                n = n.right;
+            }
+        }
+    }
+
+    /**
+     * Returns the position of a node, by walking up to the root.
+     */
+    private static int rank(Node node) {
+        int idx = size(node.left);
+        for(Node n = node; n.parent != null; n = n.parent)
+            if(n.parent.right == n)
+                idx += size(n.parent.left) + 1;
+
+        return idx;
+    }
+
+    /**
+     * Removes a node from the tree, in O(log n).
+     */
+    private void unlink(Node node) {
+        Node replacement = merge(node.left, node.right);
+        Node p = node.parent;
+
+        if(p == null) root = replacement;
+        else if(p.left == node) p.left = replacement;
+        else p.right = replacement;
+
+        if(replacement != null) replacement.parent = p;
+        for(Node n = p; n != null; n = n.parent) pull(n);
+
+        node.left = node.right = node.parent = null;
+        node.owner = null;
+        if(node.entry.node == node) node.entry.node = null;
+        modCount++;
+        structureChanged();
+    }
+
+    /**
+     * Lets the Entry or Project holding this sequence know that its Entries have changed.
+     */
+    private void structureChanged() {
+        if(ownerEntry != null) ownerEntry.rollupChanged();
+
+        Project project = ownerEntry != null ? ownerEntry.project : ownerProject;
+        if(project != null) project.structureChanged();
+    }
+
+    /**
+     * Recomputes the augmented values of a node and all of its ancestors, after the node's Entry has changed.
+     */
+    static void refresh(Node node) {
+        for(Node n = node; n != null; n = n.parent) pull(n);
+    }
+
+    private Node newNode(Entry entry) {
+        Node node = new Node(entry, nextPriority());
+        node.owner = this;
+        entry.node = node;
+        pull(node);
+        return node;
+    }
+
+    /**
+     * Builds a treap out of a batch of Entries in linear time, by keeping the right spine of the tree on a stack.
+     */
+    private Node build(Collection<? extends Entry> entries) {
+        Deque<Node> spine = new ArrayDeque<>();
+        for(Entry e : entries) {
+            Node node = newNode(e);
+            Node last = null;
+            while(!spine.isEmpty() && spine.peek().priority < node.priority)
+                last = spine.pop();
+
+            setLeft(node, last);
+            if(!spine.isEmpty()) setRight(spine.peek(), node);
+            spine.push(node);
+        }
+
+        //sizes are only correct once the whole spine is known, so pull bottom-up
+        Node top = null;
+        while(!spine.isEmpty()) top = spine.pop();
+        pullAll(top);
+        top.parent = null;
+        return top;
+    }
+
+    private static void pullAll(Node top) {
+        Deque<Node> stack = new ArrayDeque<>();
+        Deque<Node> order = new ArrayDeque<>();
+        stack.push(top);
+        while(!stack.isEmpty()) {
+            Node n = stack.pop();
+            order.push(n);
+            if(n.left != null) stack.push(n.left);
+            if(n.right != null) stack.push(n.right);
+        }
+        while(!order.isEmpty()) pull(order.pop());
+    }
+
+    private int nextPriority() {
+        seed ^= seed << 13;
+        seed ^= seed >>> 17;
+        seed ^= seed << 5;
+        return seed;
+    }
+
+    private static int size(Node n) {
+        return n == null ? 0 : n.size;
+    }
+
+    private static int solid(Node n) {
+        return n == null ? 0 : n.solid;
+    }
+
+    private static boolean isSolid(Node n) {
+        return !n.entry.isSinglePoint();
+    }
+
+    private static void pull(Node n) {
+        n.size = 1 + size(n.left) + size(n.right);
+        n.solid = (isSolid(n) ? 1 : 0) + solid(n.left) + solid(n.right);
+
+        Entry e = n.entry;
+        n.count = e.rollupCount;
+        n.leaves = e.rollupLeaves;
+        n.minStart = e.rollupMinStart;
+        n.maxEnd = e.rollupMaxEnd;
+        n.leafDuration = e.rollupLeafDuration;
+        n.leafWeighted = e.rollupLeafWeighted;
+        n.leafPercent = e.rollupLeafPercent;
+        combine(n, n.left);
+        combine(n, n.right);
+    }
+
+    private static void combine(Node n, Node child) {
+        if(child == null)
+            return;
+
+        n.count += child.count;
+        n.leaves += child.leaves;
+        n.minStart = Math.min(n.minStart, child.minStart);
+        n.maxEnd = Math.max(n.maxEnd, child.maxEnd);
+        n.leafDuration += child.leafDuration;
+        n.leafWeighted += child.leafWeighted;
+        n.leafPercent += child.leafPercent;
+    }
+
+    /*
+     * Rollups of the whole sequence, read from the root.
+     */
+
+    int rollupCount()           { return root == null ? 0 : root.count; }
+    int rollupLeaves()          { return root == null ? 0 : root.leaves; }
+    long rollupMinStart()       { return root == null ? Long.MAX_VALUE : root.minStart; }
+    long rollupMaxEnd()         { return root == null ? Long.MIN_VALUE : root.maxEnd; }
+    long rollupLeafDuration()   { return root == null ? 0 : root.leafDuration; }
+    long rollupLeafWeighted()   { return root == null ? 0 : root.leafWeighted; }
+    long rollupLeafPercent()    { return root == null ? 0 : root.leafPercent; }
+
+    private static void setLeft(Node n, Node child) {
+        n.left = child;
+        if(child != null) child.parent = n;
+    }
+
+    private static void setRight(Node n, Node child) {
+        n.right = child;
+        if(child != null) child.parent = n;
+    }
+
+    /**
+     * Splits a subtree into its first <code>count</code> nodes and the rest.
+     */
+    private static Node[] split(Node n, int count) {
+        if(n == null)
+            return new Node[2];
+
+        Node[] halves;
+        if(size(n.left) < count) {
+            halves = split(n.right, count - size(n.left) - 1);
+            setRight(n, halves[0]);
+            halves[0] = n;
+        }
+        else {
+            halves = split(n.left, count);
+            setLeft(n, halves[1]);
+            halves[1] = n;
+        }
+
+        pull(n);
+        if(halves[0] != null) halves[0].parent = null;
+        if(halves[1] != null) halves[1].parent = null;
+        return halves;
+    }
+
+    private static Node merge(Node a, Node b) {
+        if(a == null) return b;
+        if(b == null) return a;
+
+        if(a.priority > b.priority) {
+            setRight(a, merge(a.right, b));
+            pull(a);
+            return a;
+        }
+        else {
+            setLeft(b, merge(a, b.left));
+            pull(b);
+            return b;
+        }
+    }
+}
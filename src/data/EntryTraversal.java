@@ -0,0 +1,286 @@
+package data;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Non-recursive walks over the Entry hierarchy. Every walk keeps its own explicit stack (one frame per level of depth),
+ * so deep hierarchies can't overflow the call stack, and nothing is copied along the way.
+ *
+ * @author Al-John
+ */
+final class EntryTraversal {
+
+    private EntryTraversal() {}
+
+    /**
+     * Returns an iterator that visits a run of sibling Entries and all of their descendants, each Entry before its
+     * sub-entries.
+     * @param roots the sibling Entries
+     * @param from the index of the first sibling
+     * @param count the number of siblings
+     */
+    static Iterator<Entry> preOrder(EntrySequence roots, int from, int count) {
+        return new Iterator<Entry>() {
+            private final Iterator<Entry> rootIt = roots.iterator(from);
+            private final Deque<Iterator<Entry>> stack = new ArrayDeque<>();
+            private int rootsLeft = count;
+
+            @Override
+            public boolean hasNext() {
+                while(!stack.isEmpty() && !stack.peek().hasNext())
+                    stack.pop();
+
+                return !stack.isEmpty() || rootsLeft > 0;
+            }
+
+            @Override
+            public Entry next() {
+                if(!hasNext())
+                    throw new NoSuchElementException();
+
+                Entry e;
+                if(!stack.isEmpty())
+                    e = stack.peek().next();
+                else {
+                    e = rootIt.next();
+                    rootsLeft--;
+                }
+
+                if(!e.children().isEmpty())
+                    stack.push(e.children().iterator());
+
+                return e;
+            }
+        };
+    }
+
+    /**
+     * Returns an iterator that visits a run of sibling Entries and all of their descendants, each Entry after its
+     * sub-entries.
+     * @param roots the sibling Entries
+     * @param from the index of the first sibling
+     * @param count the number of siblings
+     */
+    static Iterator<Entry> postOrder(EntrySequence roots, int from, int count) {
+        return new Iterator<Entry>() {
+            private final Deque<Iterator<Entry>> siblings = new ArrayDeque<>();
+            private final Deque<Entry> path = new ArrayDeque<>();
+            private int rootsLeft = count;
+            private Entry next;
+
+            {
+                if(count > 0) siblings.push(roots.iterator(from));
+                advance();
+            }
+
+            /*
+             * Descends to the next leaf, or climbs back up to the next Entry whose sub-entries are all done.
+             */
+            private void advance() {
+                next = null;
+                while(next == null && !siblings.isEmpty()) {
+                    Iterator<Entry> it = siblings.peek();
+                    boolean atRoots = siblings.size() == 1;
+
+                    if(it.hasNext() && (!atRoots || rootsLeft > 0)) {
+                        Entry e = it.next();
+                        if(atRoots) rootsLeft--;
+                        path.push(e);
+                        siblings.push(e.children().iterator());
+                    }
+                    else {
+                        siblings.pop();
+                        if(siblings.size() == path.size() && !path.isEmpty())
+                            next = path.pop();
+                    }
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Entry next() {
+                if(next == null)
+                    throw new NoSuchElementException();
+
+                Entry e = next;
+                advance();
+                return e;
+            }
+        };
+    }
+
+    /**
+     * Returns an iterator over a single Entry and all of its descendants, in pre-order.
+     */
+    static Iterator<Entry> preOrder(Entry root) {
+        return new Iterator<Entry>() {
+            private Entry first = root;
+            private final Iterator<Entry> rest = preOrder(root.children(), 0, root.children().size());
+
+            @Override
+            public boolean hasNext() {
+                return first != null || rest.hasNext();
+            }
+
+            @Override
+            public Entry next() {
+                if(first == null)
+                    return rest.next();
+
+                Entry e = first;
+                first = null;
+                return e;
+            }
+        };
+    }
+
+    /**
+     * Returns an iterator over a single Entry and all of its descendants, in post-order.
+     */
+    static Iterator<Entry> postOrder(Entry root) {
+        return new Iterator<Entry>() {
+            private Entry last = root;
+            private final Iterator<Entry> rest = postOrder(root.children(), 0, root.children().size());
+
+            @Override
+            public boolean hasNext() {
+                return rest.hasNext() || last != null;
+            }
+
+            @Override
+            public Entry next() {
+                if(rest.hasNext())
+                    return rest.next();
+                if(last == null)
+                    throw new NoSuchElementException();
+
+                Entry e = last;
+                last = null;
+                return e;
+            }
+        };
+    }
+
+    /**
+     * A Spliterator over Entries and their descendants, in pre-order.
+     *
+     * It covers (optionally) one lone Entry without its sub-entries, followed by a run of sibling Entries with all of
+     * their descendants. Splitting hands off the first half of the siblings (balanced by subtree size, which every
+     * Entry knows in O(1)); a single sibling is split into itself, alone, and a run made of its sub-entries. That keeps
+     * the split tree balanced even for a Project with one huge top-level Entry, and keeps the sizes exact.
+     *
+     * Like most collections, the hierarchy must not be modified while it is being traversed.
+     */
+    static final class EntrySpliterator implements Spliterator<Entry> {
+        private Entry single;
+        private EntrySequence roots;
+        private int from, count;
+        private long size;
+        private Iterator<Entry> walk;
+
+        EntrySpliterator(Entry single, EntrySequence roots, int from, int count) {
+            this.single = single;
+            this.roots = roots;
+            this.from = from;
+            this.count = count;
+
+            size = single != null ? 1 : 0;
+            Iterator<Entry> it = roots.iterator(from);
+            for(int i = 0; i < count; i++)
+                size += 1 + it.next().getDescendantCount();
+        }
+
+        private EntrySpliterator(Entry single, EntrySequence roots, int from, int count, long size) {
+            this.single = single;
+            this.roots = roots;
+            this.from = from;
+            this.count = count;
+            this.size = size;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Entry> action) {
+            if(single != null) {
+                Entry e = single;
+                single = null;
+                size--;
+                action.accept(e);
+                return true;
+            }
+
+            if(walk == null)
+                walk = preOrder(roots, from, count);
+            if(!walk.hasNext())
+                return false;
+
+            size--;
+            action.accept(walk.next());
+            return true;
+        }
+
+        @Override
+        public Spliterator<Entry> trySplit() {
+            if(walk != null)
+                return null;
+
+            //hand off the lone Entry, keep the siblings
+            if(single != null && count > 0) {
+                EntrySpliterator prefix = new EntrySpliterator(single, roots, 0, 0, 1);
+                single = null;
+                size--;
+                return prefix;
+            }
+
+            //split one sibling into itself and its sub-entries
+            if(single == null && count == 1) {
+                Entry only = roots.get(from);
+                if(only.children().isEmpty())
+                    return null;
+
+                EntrySpliterator prefix = new EntrySpliterator(only, roots, 0, 0, 1);
+                roots = only.children();
+                from = 0;
+                count = roots.size();
+                size--;
+                return prefix;
+            }
+
+            if(single != null || count < 2)
+                return null;
+
+            //split the siblings where the first half holds about half of the Entries
+            long half = size / 2, taken = 0;
+            int n = 0;
+            Iterator<Entry> it = roots.iterator(from);
+            while(n < count - 1 && (n == 0 || taken < half)) {
+                taken += 1 + it.next().getDescendantCount();
+                n++;
+            }
+
+            EntrySpliterator prefix = new EntrySpliterator(null, roots, from, n, taken);
+            from += n;
+            count -= n;
+            size -= taken;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return size;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED | NONNULL;
+        }
+    }
+}
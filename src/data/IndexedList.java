@@ -0,0 +1,156 @@
+package data;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * An array-backed List that also keeps a hash map from each element (by identity) to its position, so that
+ * <code>indexOf</code> and <code>contains</code> are O(1) instead of a linear scan.
+ *
+ * Appends and in-place replacements (<code>set</code>, e.g. when two elements are swapped) keep the position map up to
+ * date. Inserting or removing in the middle of the list only marks the positions after that point as stale; they are
+ * re-indexed the next time they are looked up. That re-indexing is never more work than the array shift the insertion
+ * or removal already paid for.
+ *
+ * Elements are compared by identity, and an element should only appear in the list once.
+ *
+ * @author Al-John
+ */
+public class IndexedList<E> extends AbstractList<E> implements RandomAccess {
+
+    private final List<E> elements;
+    private final Map<E, Integer> positions;
+    private int indexed;        //positions of elements [0, indexed) are known to be correct
+
+    public IndexedList() {
+        elements = new ArrayList<>();
+        positions = new IdentityHashMap<>();
+    }
+
+    public IndexedList(Collection<? extends E> c) {
+        this();
+        addAll(c);
+    }
+
+    @Override
+    public int size() {
+        return elements.size();
+    }
+
+    @Override
+    public E get(int index) {
+        return elements.get(index);
+    }
+
+    @Override
+    public E set(int index, E e) {
+        E old = elements.set(index, e);
+        Integer oldPos = positions.get(old);
+        if(oldPos != null && oldPos == index)
+            positions.remove(old);
+
+        if(index < indexed)
+            positions.put(e, index);
+
+        return old;
+    }
+
+    @Override
+    public void add(int index, E e) {
+        elements.add(index, e);
+        modCount++;
+
+        if(index == indexed) {
+            positions.put(e, index);
+            indexed++;
+        }
+        else if(index < indexed) {
+            indexed = index;
+        }
+    }
+
+    @Override
+    public boolean addAll(int index, Collection<? extends E> c) {
+        boolean added = elements.addAll(index, c);
+        modCount++;
+        if(index < indexed)
+            indexed = index;
+
+        return added;
+    }
+
+    @Override
+    public E remove(int index) {
+        E old = elements.remove(index);
+        modCount++;
+
+        positions.remove(old);
+        if(index < indexed)
+            indexed = index;
+
+        return old;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        int idx = indexOf(o);
+        if(idx < 0)
+            return false;
+
+        remove(idx);
+        return true;
+    }
+
+    @Override
+    protected void removeRange(int from, int to) {
+        for(int i = from; i < to; i++)
+            positions.remove(elements.get(i));
+
+        elements.subList(from, to).clear();
+        modCount++;
+        if(from < indexed)
+            indexed = from;
+    }
+
+    @Override
+    public void clear() {
+        elements.clear();
+        positions.clear();
+        indexed = 0;
+        modCount++;
+    }
+
+    @Override
+    @SuppressWarnings("SuspiciousMethodCalls")
+    public int indexOf(Object o) {
+        Integer pos = positions.get(o);
+        if(pos != null && pos < indexed && elements.get(pos) == o)
+            return pos;
+
+        //bring the stale part of the index up to date, stopping as soon as the element turns up
+        while(indexed < elements.size()) {
+            E e = elements.get(indexed);
+            positions.put(e, indexed);
+            if(e == o)
+                return indexed++;
+            indexed++;
+        }
+
+        return -1;
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+        return indexOf(o);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return indexOf(o) >= 0;
+    }
+}
@@ -0,0 +1,210 @@
+package data;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * An augmented interval tree over Entries, used by a Project to answer "which Entries are active between t1 and t2"
+ * without scanning the whole Entry hierarchy.
+ *
+ * The tree is a treap ordered by start time, where every node also keeps the latest end time in its subtree. A range
+ * query can then skip every subtree that ends before the range starts, and everything to the right of the first node
+ * that starts after the range ends, so it costs O(log n + k) for k results. Insertions, removals and interval changes
+ * are O(log n).
+ *
+ * @author Al-John
+ */
+class IntervalIndex {
+
+    private static final class Node {
+        final Entry entry;
+        final long seq;
+        final int priority;
+        long lo, hi, maxHi;
+        Node left, right;
+
+        Node(Entry entry, long seq, int priority) {
+            this.entry = entry;
+            this.seq = seq;
+            this.priority = priority;
+        }
+    }
+
+    private Node root;
+    private final Map<Entry, Node> nodes = new IdentityHashMap<>();
+    private long nextSeq;
+    private int seed = 0x2545F491;
+
+    /**
+     * Adds an Entry to the index, using its current start and end. Does nothing if the Entry is already indexed.
+     * @param entry the Entry
+     */
+    void add(Entry entry) {
+        if(nodes.containsKey(entry))
+            return;
+
+        Node node = new Node(entry, nextSeq++, nextPriority());
+        setInterval(node, entry);
+        nodes.put(entry, node);
+        root = insert(root, node);
+    }
+
+    /**
+     * Removes an Entry from the index. Does nothing if the Entry is not indexed.
+     * @param entry the Entry
+     */
+    void remove(Entry entry) {
+        Node node = nodes.remove(entry);
+        if(node != null)
+            root = delete(root, node);
+    }
+
+    /**
+     * Re-positions an Entry after its start or end has changed.
+     * @param entry the Entry
+     */
+    void update(Entry entry) {
+        Node node = nodes.get(entry);
+        if(node == null)
+            return;
+
+        root = delete(root, node);
+        node.left = node.right = null;
+        setInterval(node, entry);
+        root = insert(root, node);
+    }
+
+    /**
+     * @return the number of indexed Entries
+     */
+    int size() { return nodes.size(); }
+
+    /**
+     * Reports every indexed Entry that overlaps the closed range [from, to], in order of start time.
+     * @param from the start of the range, in epoch minutes
+     * @param to the end of the range, in epoch minutes
+     * @param out receives each overlapping Entry
+     */
+    void query(long from, long to, Consumer<Entry> out) {
+        query(root, from, to, out);
+    }
+
+    private void query(Node n, long from, long to, Consumer<Entry> out) {
+        if(n == null || n.maxHi < from)
+            return;
+
+        query(n.left, from, to, out);
+
+        //everything from here on starts after the range
+        if(n.lo > to)
+            return;
+
+        if(n.hi >= from)
+            out.accept(n.entry);
+
+        query(n.right, from, to, out);
+    }
+
+    private static void setInterval(Node node, Entry entry) {
+        node.lo = Math.min(entry.getStartMinutes(), entry.getEndMinutes());
+        node.hi = Math.max(entry.getStartMinutes(), entry.getEndMinutes());
+        node.maxHi = node.hi;
+    }
+
+    private int nextPriority() {
+        //xorshift; the treap only needs the priorities to look random
+        seed ^= seed << 13;
+        seed ^= seed >>> 17;
+        seed ^= seed << 5;
+        return seed;
+    }
+
+    private static int compare(Node a, Node b) {
+        int c = Long.compare(a.lo, b.lo);
+        return c != 0 ? c : Long.compare(a.seq, b.seq);
+    }
+
+    private static void pull(Node n) {
+        long max = n.hi;
+        if(n.left != null && n.left.maxHi > max) max = n.left.maxHi;
+        if(n.right != null && n.right.maxHi > max) max = n.right.maxHi;
+        n.maxHi = max;
+    }
+
+    private static Node insert(Node n, Node fresh) {
+        if(n == null)
+            return fresh;
+
+        if(fresh.priority > n.priority) {
+            Node[] halves = split(n, fresh);
+            fresh.left = halves[0];
+            fresh.right = halves[1];
+            pull(fresh);
+            return fresh;
+        }
+
+        if(compare(fresh, n) < 0)
+            n.left = insert(n.left, fresh);
+        else
+            n.right = insert(n.right, fresh);
+
+        pull(n);
+        return n;
+    }
+
+    /**
+     * Splits a subtree into the nodes ordered before a key node, and the nodes ordered after it.
+     */
+    private static Node[] split(Node n, Node key) {
+        if(n == null)
+            return new Node[2];
+
+        Node[] halves;
+        if(compare(n, key) < 0) {
+            halves = split(n.right, key);
+            n.right = halves[0];
+            halves[0] = n;
+        }
+        else {
+            halves = split(n.left, key);
+            n.left = halves[1];
+            halves[1] = n;
+        }
+
+        pull(n);
+        return halves;
+    }
+
+    private static Node delete(Node n, Node target) {
+        if(n == null)
+            return null;
+
+        if(n == target)
+            return merge(n.left, n.right);
+
+        if(compare(target, n) < 0)
+            n.left = delete(n.left, target);
+        else
+            n.right = delete(n.right, target);
+
+        pull(n);
+        return n;
+    }
+
+    private static Node merge(Node a, Node b) {
+        if(a == null) return b;
+        if(b == null) return a;
+
+        if(a.priority > b.priority) {
+            a.right = merge(a.right, b);
+            pull(a);
+            return a;
+        }
+        else {
+            b.left = merge(a, b.left);
+            pull(b);
+            return b;
+        }
+    }
+}
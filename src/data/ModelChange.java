@@ -0,0 +1,165 @@
+package data;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A single change to a Project's model: a property of an Entry or Participant was set, or an Entry or Participant was
+ * inserted into, removed from, or moved within the Project.
+ *
+ * Structural changes describe the position of the target: its parent Entry (null for a top-level Entry, and always
+ * null for a Participant) and its index among its siblings. A MOVED change also carries the position it was moved
+ * from. An inserted or removed Entry takes its whole subtree with it; there are no separate changes for its
+ * descendants.
+ *
+ * ModelChanges are immutable.
+ *
+ * @author Al-John
+ */
+public final class ModelChange {
+
+    public enum Kind { PROPERTY, INSERTED, REMOVED, MOVED }
+
+    public enum Property { NAME, DESCRIPTION, START, END, PERCENT_COMPLETE, ASSIGNED_TO, LAST_MODIFIED_BY, ROLE, COLOR,
+        ATTACHMENTS }
+
+    private final Kind kind;
+    private final Object target;
+    private final Property property;
+    private final Object oldValue, newValue;
+    private final Entry parent, oldParent;
+    private final int index, oldIndex;
+
+    private ModelChange(Kind kind, Object target, Property property, Object oldValue, Object newValue,
+                        Entry parent, int index, Entry oldParent, int oldIndex) {
+        this.kind = kind;
+        this.target = target;
+        this.property = property;
+        this.oldValue = oldValue;
+        this.newValue = newValue;
+        this.parent = parent;
+        this.index = index;
+        this.oldParent = oldParent;
+        this.oldIndex = oldIndex;
+    }
+
+    static ModelChange property(Object target, Property property, Object oldValue, Object newValue) {
+        return new ModelChange(Kind.PROPERTY, target, property, oldValue, newValue, null, -1, null, -1);
+    }
+
+    static ModelChange inserted(Object target, Entry parent, int index) {
+        return new ModelChange(Kind.INSERTED, target, null, null, null, parent, index, null, -1);
+    }
+
+    static ModelChange removed(Object target, Entry parent, int index) {
+        return new ModelChange(Kind.REMOVED, target, null, null, null, parent, index, null, -1);
+    }
+
+    static ModelChange moved(Entry target, Entry oldParent, int oldIndex, Entry parent, int index) {
+        return new ModelChange(Kind.MOVED, target, null, null, null, parent, index, oldParent, oldIndex);
+    }
+
+    /**
+     * @return the kind of change
+     */
+    public Kind getKind() { return kind; }
+
+    /**
+     * @return the Entry or Participant that changed
+     */
+    public Object getTarget() { return target; }
+
+    /**
+     * @return the property that was set, or null for a structural change
+     */
+    public Property getProperty() { return property; }
+
+    /**
+     * Returns the value of the property before the change. Dates are reported in epoch minutes (as a Long), and
+     * attachments as the whole (unmodifiable) list of {@link Attachment}s.
+     * @return the old value of the property, or null for a structural change
+     */
+    public Object getOldValue() { return oldValue; }
+
+    /**
+     * Returns the value of the property after the change. Dates are reported in epoch minutes (as a Long), and
+     * attachments as the whole (unmodifiable) list of {@link Attachment}s.
+     * @return the new value of the property, or null for a structural change
+     */
+    public Object getNewValue() { return newValue; }
+
+    /**
+     * @return the parent of the target after an insertion or move, or before a removal (null if top-level)
+     */
+    public Entry getParent() { return parent; }
+
+    /**
+     * @return the index of the target among its siblings after an insertion or move, or before a removal
+     */
+    public int getIndex() { return index; }
+
+    /**
+     * @return the parent the target was moved from (null if it was top-level), for a MOVED change
+     */
+    public Entry getOldParent() { return oldParent; }
+
+    /**
+     * @return the index the target was moved from, for a MOVED change
+     */
+    public int getOldIndex() { return oldIndex; }
+
+    /**
+     * @return true if this is an insertion, removal or move
+     */
+    public boolean isStructural() { return kind != Kind.PROPERTY; }
+
+    /**
+     * Coalesces a batch of changes: repeated changes to the same property of the same target are folded into the first
+     * one (keeping its old value and the last new value), and property changes that end up back where they started are
+     * dropped. Property changes are never folded across a structural change, so the result still replays correctly in
+     * order.
+     * @param changes the changes, in the order they happened
+     * @return the coalesced changes
+     */
+    static List<ModelChange> coalesce(List<ModelChange> changes) {
+        List<ModelChange> out = new ArrayList<>(changes.size());
+        Map<Object, Map<Property, Integer>> latest = new IdentityHashMap<>();
+
+        for(ModelChange c : changes) {
+            if(c.isStructural()) {
+                latest.clear();
+                out.add(c);
+                continue;
+            }
+
+            Map<Property, Integer> byProperty = latest.computeIfAbsent(c.target, t -> new IdentityHashMap<>());
+            Integer at = byProperty.get(c.property);
+            if(at == null) {
+                byProperty.put(c.property, out.size());
+                out.add(c);
+            }
+            else {
+                ModelChange first = out.get(at);
+                out.set(at, property(c.target, c.property, first.oldValue, c.newValue));
+            }
+        }
+
+        out.removeIf(c -> !c.isStructural() && Objects.equals(c.oldValue, c.newValue));
+        return out;
+    }
+
+    @Override
+    public String toString() {
+        switch(kind) {
+            case PROPERTY:
+                return kind + " " + property + " of " + target + ": " + oldValue + " -> " + newValue;
+            case MOVED:
+                return kind + " " + target + ": " + oldIndex + " -> " + index;
+            default:
+                return kind + " " + target + " at " + index;
+        }
+    }
+}
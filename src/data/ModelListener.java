@@ -0,0 +1,21 @@
+package data;
+
+import java.util.List;
+
+/**
+ * Receives the changes made to a Project. Changes are delivered in batches: a single mutation arrives as a batch of
+ * one, and everything done between {@link Project#beginBatch()} and {@link Project#endBatch()} arrives (coalesced) as
+ * one batch, so a listener can update once per batch instead of once per mutation.
+ *
+ * @author Al-John
+ */
+@FunctionalInterface
+public interface ModelListener {
+
+    /**
+     * Called after one or more changes have been made to a Project.
+     * @param project the Project
+     * @param changes the changes, in the order they were made
+     */
+    void modelChanged(Project project, List<ModelChange> changes);
+}
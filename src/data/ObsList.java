@@ -1,59 +1,111 @@
 package data;
 
-import javax.swing.*;
-import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
+ * A list that tells its listeners about every change made through it. Each change is reported once, as a range of
+ * indices (so adding many elements at once is a single event), and the source of every event is the ObsList itself.
+ *
  * @author Al-John
  */
-public class ObsList<E> extends AbstractListModel {
+public class ObsList<E> {
 
-    private static final long serialVersionUID = 1L;
+    public enum Kind { ADDED, REMOVED, CHANGED }
 
-    private List<E> delegate = new ArrayList<>();
+    /**
+     * Receives the changes made to an ObsList.
+     */
+    @FunctionalInterface
+    public interface Listener<E> {
 
-    @Override
-    public int getSize() {
-        return delegate.size();
+        /**
+         * Called after a range of elements has been added, removed or replaced.
+         * @param source the list that changed
+         * @param kind the kind of change
+         * @param from the index of the first element in the range
+         * @param to the index of the last element in the range (inclusive)
+         */
+        void listChanged(ObsList<E> source, Kind kind, int from, int to);
+    }
+
+    private final List<E> delegate = new IndexedList<>();
+    private final List<Listener<E>> listeners = new CopyOnWriteArrayList<>();
+
+    public void addListener(Listener<E> listener) {
+        listeners.add(listener);
     }
 
-    @Override
-    public Object getElementAt(int index) {
-        return delegate.get(index);
+    public void removeListener(Listener<E> listener) {
+        listeners.remove(listener);
     }
 
+    /**
+     * @return a read-only view of the list (changes must go through the ObsList, so that they are reported)
+     */
     public List<E> getList() {
-        return delegate;
+        return Collections.unmodifiableList(delegate);
     }
 
     @SafeVarargs
     public final void add(E... e){
         int index = delegate.size();
         Collections.addAll(delegate, e);
-        fireIntervalAdded(this, index, index + e.length);
+        if(e.length > 0)
+            fire(Kind.ADDED, index, index + e.length - 1);
     }
 
     public void add(int idx, E e) {
         delegate.add(idx, e);
-        fireIntervalAdded(this, idx, idx);
+        fire(Kind.ADDED, idx, idx);
+    }
+
+    public void addAll(int idx, Collection<? extends E> c) {
+        if(c.isEmpty())
+            return;
+
+        delegate.addAll(idx, c);
+        fire(Kind.ADDED, idx, idx + c.size() - 1);
     }
 
     public void remove(int idx) {
         delegate.remove(idx);
-        fireIntervalRemoved(delegate, idx, idx);
+        fire(Kind.REMOVED, idx, idx);
+    }
+
+    /**
+     * Removes a range of elements, as one change.
+     * @param from the index of the first element to remove
+     * @param to the index of the last element to remove (inclusive)
+     */
+    public void remove(int from, int to) {
+        if(to < from)
+            return;
+
+        delegate.subList(from, to + 1).clear();
+        fire(Kind.REMOVED, from, to);
+    }
+
+    /**
+     * Replaces every element, as (at most) one removal and one addition.
+     * @param c the new elements
+     */
+    public void setAll(Collection<? extends E> c) {
+        remove(0, delegate.size() - 1);
+        addAll(0, c);
     }
 
     public void remove(E e){
         int index = delegate.indexOf(e);
-        delegate.remove(e);
-        fireIntervalRemoved(delegate, index, index);
+        if(index >= 0)
+            remove(index);
     }
 
     public void set(int idx, E e) {
         delegate.set(idx, e);
-        fireContentsChanged(delegate, idx, idx);
+        fire(Kind.CHANGED, idx, idx);
     }
 
     public E get(int idx) {
@@ -67,4 +119,9 @@ public class ObsList<E> extends AbstractListModel {
     public int indexOf(E e) {
         return delegate.indexOf(e);
     }
-}
\ No newline at end of file
+
+    private void fire(Kind kind, int from, int to) {
+        for(Listener<E> l : listeners)
+            l.listChanged(this, kind, from, to);
+    }
+}
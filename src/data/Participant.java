@@ -3,10 +3,9 @@
  */
 package data;
 
-import javafx.scene.paint.Color;
-
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 /**
  * The Participant class represents a single participant of a project.
@@ -14,20 +13,45 @@ import java.util.List;
  *
  */
 public class Participant {
-	
+
+	private int id;
 	private String name;
     private String initials;
-	private Color color;
+	private String color;
 	private String role;
 	private List<Entry> assignments;
-	public Participant(String name, String initials, Color color, String role) {
+
+	Project project;
+
+	/**
+	 * @param name the name
+	 * @param initials the initials
+	 * @param color the color, as a hex code ("#rrggbb", or "#rrggbbaa" with opacity), or null for none
+	 * @param role the role
+	 * @throws IllegalArgumentException if the color is not a hex code
+	 */
+	public Participant(String name, String initials, String color, String role) {
 		this.name = name;
         this.initials = initials;
-		this.color = color;
+		this.color = checkColor(color);
 		this.role = role;
 		assignments = new ArrayList<>();
 	}
 	
+	/**
+	 * Returns this Participant's ID, which is unique within its Project and never changes. A Participant that has never
+	 * been added to a Project has ID 0.
+	 * @return this Participant's ID, or 0 if it hasn't been assigned one
+	 */
+	public int getId() { return id; }
+
+	/**
+	 * Sets this Participant's ID, e.g. when loading a saved Project. If the ID is already taken when the Participant is
+	 * added to a Project, it will be given a fresh one.
+	 * @param id the ID
+	 */
+	public void setId(int id) { this.id = id; }
+
 	/**
 	 * Adds an entry to the Participant's assignments.
 	 * @param e the entry to add
@@ -41,9 +65,9 @@ public class Participant {
 	public void removeAssignment(Entry e) { assignments.remove(e); }
 	
 	/**
-	 * @return this user's color
+	 * @return this user's color, as a hex code ("#rrggbb", or "#rrggbbaa" with opacity), or null if it has none
 	 */
-	public Color getColor() { return color; }
+	public String getColor() { return color; }
 	
 	/**
 	 * Returns this user's assignments.
@@ -66,7 +90,11 @@ public class Participant {
 	 * Sets the user's name.
 	 * @param name the name to set
 	 */
-	public void setName(String name) { this.name = name; }
+	public void setName(String name) {
+		String old = this.name;
+		this.name = name;
+		changed(ModelChange.Property.NAME, old, name);
+	}
 
 	/**
 	 * @return the Participant's current role
@@ -77,13 +105,40 @@ public class Participant {
 	 * Sets the user's role.
 	 * @param role the role to set
 	 */
-	public void setRole(String role) { this.role = role; }
+	public void setRole(String role) {
+		String old = this.role;
+		this.role = role;
+		changed(ModelChange.Property.ROLE, old, role);
+	}
 
 	/**
 	 * Sets the user's color.
-	 * @param color the color to set
+	 * @param color the color to set, as a hex code ("#rrggbb", or "#rrggbbaa" with opacity), or null for none
+	 * @throws IllegalArgumentException if the color is not a hex code
 	 */
-	public void setColor(Color color) { this.color = color; }
+	public void setColor(String color) {
+		String old = this.color;
+		this.color = checkColor(color);
+		changed(ModelChange.Property.COLOR, old, this.color);
+	}
+
+	/**
+	 * Colors are kept as plain hex codes, so that the model doesn't depend on a UI toolkit; the GUI turns them into
+	 * its own colors (e.g. with Color.web).
+	 */
+	private static String checkColor(String color) {
+		if(color != null && !color.matches("#(\\p{XDigit}{6}|\\p{XDigit}{8})"))
+			throw new IllegalArgumentException("Not a hex color code: " + color);
+		return color == null ? null : color.toLowerCase();
+	}
+
+	/**
+	 * Tells the owning Project (if any) that one of this Participant's properties has been set.
+	 */
+	private void changed(ModelChange.Property property, Object oldValue, Object newValue) {
+		if(project != null && !Objects.equals(oldValue, newValue))
+			project.fire(ModelChange.property(this, property, oldValue, newValue));
+	}
 
 	public String toString(){
 		return name + " (" + color + ", " + role + ")";
@@ -3,12 +3,22 @@
  */
 package data;
 
-import javafx.scene.paint.Color;
-
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Data structure representing a single project. A Project is the main wrapper for this program,
@@ -20,9 +30,21 @@ public class Project {
 	private String name;
 	private DateTime start;
 	private DateTime end;
-	private int duration;
-	private List<Entry> entries;
+	private EntrySequence entries;
 	private List<Participant> participants;
+	private IntervalIndex intervals;
+	private Map<Integer, Entry> entriesById;
+	private Map<Integer, Participant> participantsById;
+	private int nextEntryId;
+	private int nextParticipantId;
+	private boolean numbered;
+	private List<ModelListener> listeners;
+	private List<ModelChange> pending;
+	private int batchDepth;
+	private List<ModelChange> journal;      //changes made in the current transaction, or null if there is none
+	private int journalBatchMark;
+	private boolean replaying;
+	private boolean partial;                //true once an Entry with deferred sub-entries has been attached
 
     public Project() {
         this("##BLANK PROJECT##", new DateTime(), new DateTime());
@@ -32,10 +54,15 @@ public class Project {
 		this.name = name;
 		this.start = start;
 		this.end = end;
-		duration = DateTime.minutesBetween(start, end);
-		
-		entries = new ArrayList<>();
+		entries = new EntrySequence(this);
 		participants = new ArrayList<>();
+		intervals = new IntervalIndex();
+		entriesById = new HashMap<>();
+		participantsById = new HashMap<>();
+		nextEntryId = 1;
+		nextParticipantId = 1;
+		listeners = new CopyOnWriteArrayList<>();
+		pending = new ArrayList<>();
 	}
 
 	/**
@@ -73,21 +100,80 @@ public class Project {
 	 * @param participants The participants of the project
 	 */
 	public void addParticipants(Participant... participants){
+        int index = this.participants.size();
         Collections.addAll(this.participants, participants);
+
+        beginBatch();
+        for(Participant p : participants) {
+            Participant holder = participantsById.get(p.getId());
+            if(p.getId() <= 0 || (holder != null && holder != p))
+                p.setId(nextParticipantId);
+
+            nextParticipantId = Math.max(nextParticipantId, p.getId() + 1);
+            participantsById.put(p.getId(), p);
+            p.project = this;
+            fire(ModelChange.inserted(p, null, index++));
+        }
+        endBatch();
 	}
 	
 	/**
 	 * Removes a participant from the project.
 	 * @param p the participant to remove
 	 */
-	public void removeParticipant(Participant p) { participants.remove(p); }
+	public void removeParticipant(Participant p) {
+		int index = participants.indexOf(p);
+		if(index < 0)
+			return;
+
+		participants.remove(index);
+		participantsById.remove(p.getId());
+		p.project = null;
+		fire(ModelChange.removed(p, null, index));
+	}
+
+	/**
+	 * Returns the Entry (at any depth) with the specified ID, in O(1).
+	 * @param id the ID
+	 * @return the Entry, or null if no Entry in this Project has that ID
+	 */
+	public Entry getEntryById(int id) { return entriesById.get(id); }
+
+	/**
+	 * Returns the Participant with the specified ID, in O(1).
+	 * @param id the ID
+	 * @return the Participant, or null if no Participant in this Project has that ID
+	 */
+	public Participant getParticipantById(int id) { return participantsById.get(id); }
+
+	/**
+	 * Returns the position of an Entry among its siblings (i.e. in the top-level Entries, or in its parent's
+	 * sub-entries), looked up by ID.
+	 * @param id the ID of the Entry
+	 * @return the position of the Entry, or -1 if no Entry in this Project has that ID
+	 */
+	public int positionOf(int id) {
+		Entry e = entriesById.get(id);
+		if(e == null)
+			return -1;
+
+		return e.getParent() == null ? entries.indexOf(e) : e.getParent().getSubEntries().indexOf(e);
+	}
 	
 	/**
 	 * Adds one or more entries to the project.
 	 * @param entries the entry (or entries) to add
 	 */
 	public void addEntries(Entry... entries){ 
-		Collections.addAll(this.entries, entries);
+		int index = this.entries.size();
+		this.entries.addAll(Arrays.asList(entries));
+
+		beginBatch();
+		for(Entry e : entries) {
+			attach(e);
+			fire(ModelChange.inserted(e, null, index++));
+		}
+		endBatch();
 	}
 
     /**
@@ -104,15 +190,84 @@ public class Project {
      * @param after the entry after which to add it
      */
     public void addEntryAfter(Entry toAdd, Entry after){
-        entries.add(entries.indexOf(after) +1, toAdd);
+        int index = entries.indexOf(after) +1;
+        entries.add(index, toAdd);
+        attach(toAdd);
+        fire(ModelChange.inserted(toAdd, null, index));
     }
 
     /**
-	 * Deletes an entry from the project.
+	 * Deletes an entry (at any depth) from the project, along with its sub-entries.
 	 * @param e the entry to remove
 	 */
-	public void deleteEntry(Entry e) { entries.remove(e); }
+	public void deleteEntry(Entry e) {
+		if(e.project != this)
+			return;
+
+		Entry parent = e.getParent();
+		EntrySequence siblings = parent == null ? entries : parent.children();
+		int index = siblings.indexOf(e);
+		if(index < 0)
+			return;
+
+		siblings.remove(index);
+		e.setParent(null);
+		detach(e);
+		fire(ModelChange.removed(e, parent, index));
+	}
+
+	/**
+	 * Puts an Entry at a specified position in the project: among the top-level Entries, or among the sub-entries of a
+	 * parent. If the Entry is already in the project, it is moved there (with its sub-entries); if it belongs to
+	 * another project, it is taken out of that one first.
+	 * @param entry the Entry
+	 * @param parent the new parent, or null to make it a top-level Entry
+	 * @param index the position among its new siblings (clamped to their number)
+	 * @throws IllegalArgumentException if the parent is not in this project, or is the Entry itself or one of its
+	 * descendants
+	 */
+	public void insertEntry(Entry entry, Entry parent, int index) {
+		if(parent != null && parent.project != this)
+			throw new IllegalArgumentException("The parent is not part of this Project.");
+		if(parent != null && (parent == entry || entry.isAncestorOf(parent)))
+			throw new IllegalArgumentException("An Entry can't be placed inside itself.");
+
+		Project oldProject = entry.project;
+		Entry oldParent = entry.getParent();
+		int oldIndex = entry.node != null && entry.node.owner != null ? entry.node.owner.indexOf(entry) : -1;
+		if(oldProject != null && oldProject != this)
+			oldProject.deleteEntry(entry);
+
+		place(entry, parent, index);
+		int newIndex = (parent == null ? entries : parent.children()).indexOf(entry);
+		if(oldProject == this)
+			fire(ModelChange.moved(entry, oldParent, oldIndex, parent, newIndex));
+		else
+			fire(ModelChange.inserted(entry, parent, newIndex));
+	}
 	
+	/**
+	 * Moves an Entry of this project right after a specified sibling (see {@link #insertEntry(Entry, Entry, int)}).
+	 * @param entry the Entry
+	 * @param parent the new parent, or null to make it a top-level Entry
+	 * @param after the Entry it is to follow among its new siblings, or null to make it the first of them
+	 * @throws IllegalArgumentException if after is not a child of the parent, or the Entry can't be placed there
+	 */
+	public void moveEntry(Entry entry, Entry parent, Entry after) {
+		EntrySequence siblings = parent == null ? entries : parent.children();
+		int index = 0;
+		if(after != null) {
+			int at = after.getParent() == parent && after.project == this ? siblings.indexOf(after) : -1;
+			if(at < 0)
+				throw new IllegalArgumentException(after.getName() + " is not a sibling there.");
+
+			//the Entry leaves its place before it is put back, which shifts everything after it
+			int current = entry.getParent() == parent && entry.project == this ? siblings.indexOf(entry) : -1;
+			index = current >= 0 && current < at ? at : at + 1;
+		}
+		insertEntry(entry, parent, index);
+	}
+
 	/**
 	 * Switches the positions of two entries, and modifies their start and end dates accordingly.
 	 * PRECONDITION: The entries array is sorted by date (i.e. entries[idx1] occurs BEFORE entries[idx2])
@@ -124,40 +279,48 @@ public class Project {
 		Entry e2 = entries.get(idx2);
 
 		//time between start and end, in minutes 
-		int gap = DateTime.minutesBetween(e1.getEnd(), e2.getStart());
+		int gap = DateTime.minutesBetween(e1.getEndMinutes(), e2.getStartMinutes());
 		
+		beginBatch();
 		//set start of the 2nd event to the start of the 1st event
-		e2.setStart(e1.getStart(), true);
+		e2.setStartMinutes(e1.getStartMinutes(), true);
 		//set start of the 1st event to the end of the 2nd event, plus whatever time gap there was
-		e1.setStart(e2.getEnd().getLaterDateTime(gap), true);
+		e1.setStartMinutes(e2.getEndMinutes() + gap, true);
 
 		entries.set(idx2, e1);
 		entries.set(idx1, e2);
+		fire(ModelChange.moved(e1, null, idx1, null, idx2));
+		fire(ModelChange.moved(e2, null, idx2, null, idx1));
+		endBatch();
 	}
 	
 	/**
 	 * 
 	 * @return the duration of the project, in minutes
 	 */
-	public int getDuration() { return duration; }
+	public int getDuration() { return DateTime.minutesBetween(start, end); }
 
     @Override
     public String toString() {
-        String s =
-                "Project { \n" +
-                    "\tName:" + name + ", \n" +
-                    "\tstart:" + start + ", \n" +
-                    "\tend:" + end + ", \n" +
-                    "\t" + entries.size() + " Entries: { \n";
-                        for(Entry e : entries) s += "\t\t" + e + "\n";
-                s +="\t}\n" +
-                    "\t" + participants.size() + " Participants: {\n";
-                        for (Participant p : participants) s += "\t\t[" + p + "]; \n";
+        StringBuilder s = new StringBuilder();
+        s.append("Project { \n")
+                .append("\tName:").append(name).append(", \n")
+                .append("\tstart:").append(start).append(", \n")
+                .append("\tend:").append(end).append(", \n")
+                .append("\t").append(entries.size()).append(" Entries: { \n");
+        for(Entry e : entries) {
+            s.append("\t\t");
+            e.appendTo(s);
+            s.append("\n");
+        }
 
-//        s = s.substring(0, s.length() -2);
-        s += "\t}\n}";
+        s.append("\t}\n")
+                .append("\t").append(participants.size()).append(" Participants: {\n");
+        for(Participant p : participants)
+            s.append("\t\t[").append(p).append("]; \n");
 
-        return s;
+        s.append("\t}\n}");
+        return s.toString();
     }
 
     /**
@@ -172,6 +335,57 @@ public class Project {
         return entries;
     }
 
+    /**
+     * Returns every Entry in this Project, at any depth, each Entry before its sub-entries. The walk uses an explicit
+     * stack, so it is safe on arbitrarily deep hierarchies.
+     * @return all Entries, in pre-order
+     */
+    public Iterable<Entry> preOrder() {
+        return () -> EntryTraversal.preOrder(entries, 0, entries.size());
+    }
+
+    /**
+     * Returns every Entry in this Project, at any depth, each Entry after its sub-entries.
+     * @return all Entries, in post-order
+     */
+    public Iterable<Entry> postOrder() {
+        return () -> EntryTraversal.postOrder(entries, 0, entries.size());
+    }
+
+    /**
+     * Returns a Stream over every Entry in this Project, at any depth, in pre-order. The underlying Spliterator splits
+     * along the hierarchy with exact sizes, so a parallel stream spreads bulk analytics and validation passes evenly
+     * over all cores. A parallel stream reads every deferred Entry from storage first (see
+     * {@link Entry#deferSubEntries(SubtreeSource, int, SubtreeSource.Summary)}).
+     * @param parallel true for a parallel stream
+     * @return a stream over all Entries
+     */
+    public Stream<Entry> entryStream(boolean parallel) {
+        if(parallel)
+            for(Entry e : entries) e.loadSubtree();
+        return StreamSupport.stream(new EntryTraversal.EntrySpliterator(null, entries, 0, entries.size()), parallel);
+    }
+
+    /**
+     * Returns the number of Entries in this Project, at any depth. O(1).
+     * @return the total number of Entries
+     */
+    public int getTotalEntryCount() {
+        return entries.rollupCount();
+    }
+
+    /**
+     * Returns how complete the whole Project is: the percent complete of every leaf Entry, weighted by duration (see
+     * {@link Entry#getRolledUpPercentComplete()}). O(1).
+     * @return the percent complete of the Project, or 0 if it has no Entries
+     */
+    public double getPercentComplete() {
+        if(entries.rollupLeafDuration() > 0)
+            return (double)entries.rollupLeafWeighted() / entries.rollupLeafDuration();
+
+        return entries.isEmpty() ? 0 : (double)entries.rollupLeafPercent() / entries.rollupLeaves();
+    }
+
     /**
      * Generates a sample project. The project includes:
      * - Starts today, ends February 20
@@ -186,14 +400,13 @@ public class Project {
      */
     public static Project randomProject(int numEntries) {
         Project project = new Project("Sample Project", new DateTime(7,1,2018), new DateTime(8,31,2018));
-        Color[] colors = {
-                Color.BLUE, Color.GREEN, Color.RED, Color.YELLOW, Color.PURPLE, Color.SKYBLUE, Color.PINK, Color.ORANGE
+        String[] colors = {     //blue, green, red, yellow, purple, sky blue, pink, orange
+                "#0000ff", "#008000", "#ff0000", "#ffff00", "#800080", "#87ceeb", "#ffc0cb", "#ffa500"
         };
 
         Random r = new Random();
 
         int par = 3 + r.nextInt(5);            //number of participants
-        List<List> ent = enTree(numEntries);   //number of subentries (size of each sub-array)
 
         List<Participant> participants = new ArrayList<>();
 
@@ -202,39 +415,45 @@ public class Project {
             participants.add(new Participant("Participant" + i, "P" + i, colors[i], "Role?"));
         participants.forEach(project::addParticipants);
 
-        int count = 0;
-        for(List l : ent){
-            project.addEntry(makeEntry(l, count++, "Entry" + count));
-        }
+        //numEntries +1 top-level entries, each with one fewer level below it than the level above (see makeEntry)
+        int topLevel = numEntries > 0 ? numEntries + 1 : 0;
+        for(int i = 1; i <= topLevel; i++)
+            project.addEntry(makeEntry("Entry" + i, numEntries - 1));
 
 //        System.out.println(project + "\n\n ================================================ \n\n");
         return project;
     }
 
     /**
-     * Random Project generator helper
-     * @param subs number of subEntries
-     * @return a List used to represent the Project hierarchy
+     * Random Project generator helper. Builds an Entry with a full tree of sub-entries below it: an Entry at level k has
+     * k +1 sub-entries at level k -1 (and an Entry at level 0 has none). The tree is built with an explicit stack.
+     * @param name the name of the Entry (sub-entries are named after it, e.g. "Entry1.2.1")
+     * @param level the level of the Entry
+     * @return the Entry
      */
-    private static List<List> enTree(int subs){
-        if(subs == 0) return new ArrayList<>();
+    private static Entry makeEntry(String name, int level){
+        DateTime now = new DateTime();
+        Entry root = new Entry(name, now, now);
 
-        int rand = subs; //new Random().nextInt(subs) + (subs == 7 ? 3 : 0);
-        List<List> list = new ArrayList<>();
-        while(rand-- >= 0){
-            list.add(enTree(subs -1));
-        }
+        Deque<Entry> pending = new ArrayDeque<>();
+        Deque<Integer> levels = new ArrayDeque<>();
+        pending.push(root);
+        levels.push(level);
 
-        return list;
-    }
+        while(!pending.isEmpty()) {
+            Entry entry = pending.pop();
+            int k = levels.pop();
+            int subs = k > 0 ? k + 1 : 0;
 
-    private static Entry makeEntry (List<List> depth, int idx, String prefix){
-        Entry entry = new Entry(prefix, new DateTime(), new DateTime());
-        int count = 0;
-        for(List<List> l : depth) {
-            entry.addSubEntry(makeEntry(l, count++, prefix + "." + count));
+            for(int i = 1; i <= subs; i++) {
+                Entry sub = new Entry(entry.getName() + "." + i, now, now);
+                entry.addSubEntry(sub);
+                pending.push(sub);
+                levels.push(k - 1);
+            }
         }
-        return entry;
+
+        return root;
     }
 
     /**
@@ -246,7 +465,7 @@ public class Project {
         if(entries.isEmpty()) {
             DateTime date = DateTime.getDateBetween(start, end);
             Entry fresh = new Entry(name, date, date);
-            entries.add(fresh);
+            addEntry(fresh);
             return fresh;
         }
         else
@@ -254,30 +473,33 @@ public class Project {
     }
 
     /**
-     * Adds a new Entry with a specified name after a specified Entry.
+     * Adds a new Entry with a specified name after a specified Entry. The new Entry is a single point in time, and the
+     * group of single-point Entries it joins is re-spaced evenly between the Entries around it.
      * @param after the Entry after which to add the new Entry
      * @param name the name of the new entry
      */
     public Entry addNewEntryAfter(Entry after, String name){
         Entry fresh = new Entry(name);
+        beginBatch();
         this.addEntryAfter(fresh, after);
 
-        List<Entry> pointEntryGroup = this.getGroupOfSinglePointEntries(fresh);
-        int groupSize = pointEntryGroup.size();
-        int groupStartIdx = entries.indexOf(pointEntryGroup.get(0)) -1;
-        int groupEndIdx = groupStartIdx + groupSize + 1;
+        int[] bounds = getSinglePointGroupBounds(fresh);
+        int groupStartIdx = bounds[0];
+        int groupEndIdx = bounds[1];
+        int groupSize = groupEndIdx - groupStartIdx - 1;
 
-        DateTime upper = groupStartIdx >= 0 ? entries.get(groupStartIdx).getEnd()           :   start;
-        DateTime lower = groupEndIdx < entries.size() ? entries.get(groupEndIdx).getStart() :   end;
+        long upper = groupStartIdx >= 0 ? entries.get(groupStartIdx).getEndMinutes()           :   start.getEpochMinutes();
+        long lower = groupEndIdx < entries.size() ? entries.get(groupEndIdx).getStartMinutes() :   end.getEpochMinutes();
 
-//        System.out.println(pointEntryGroup);
-//        System.out.println("\n======================\n");
+        //distribute the group evenly between upper and lower (same spacing as DateTime.getDatesDistributedEvenlyBetween)
+        int interval = DateTime.minutesBetween(upper, lower)/(groupSize +1);
 
-        List<DateTime> startDates = DateTime.getDatesDistributedEvenlyBetween(upper, lower, groupSize);
-
-        for(int i = 0; i < pointEntryGroup.size(); i++)
-            pointEntryGroup.get(i).setStart(startDates.get(i), true);
+        //walk the group once; moving a point keeps it a point, so the group itself doesn't change
+        Iterator<Entry> group = entries.iterator(groupStartIdx + 1);
+        for(int i = 0; i < groupSize; i++)
+            group.next().setStartMinutes(upper + (long)interval * (i +1), true);
 
+        endBatch();
         return fresh;
     }
 
@@ -301,24 +523,484 @@ public class Project {
      * @return all adjacent single-point Entries
      */
     public List<Entry> getGroupOfSinglePointEntries(Entry target) {
-        List<Entry> adjacentPoints = new ArrayList<>();
-        int start = entries.indexOf(target) -1;
-        int endIdx = entries.indexOf(target) +1;
+        int[] bounds = getSinglePointGroupBounds(target);
+        int targetIdx = entries.indexOf(target);
 
-        while(start >= 0 && entries.get(start).isSinglePoint()) {
-            adjacentPoints.add(0, entries.get(start));
-            start--;
+        List<Entry> adjacentPoints = new ArrayList<>(Math.max(0, bounds[1] - bounds[0] - 1));
+        Iterator<Entry> it = entries.iterator(bounds[0] + 1);
+        for(int i = bounds[0] + 1; i < bounds[1]; i++) {
+            Entry e = it.next();
+            if(i != targetIdx || target.isSinglePoint())
+                adjacentPoints.add(e);
         }
 
-        if(target.isSinglePoint())
-            adjacentPoints.add(target);
+        return adjacentPoints;
+    }
+
+    /**
+     * Returns the bounds of a specified target Entry's group of single-point Entries (see
+     * {@link #getGroupOfSinglePointEntries(Entry)}), as the indices of the non-point Entries right before and right after
+     * the group. Runs in O(log n), no matter how large the group is.
+     *
+     * If the target is not a single point itself, the group is made of the points on either side of it, and the target
+     * sits inside the bounds without being part of the group.
+     *
+     * @param target the target Entry (a top-level Entry)
+     * @return {index of the non-point Entry before the group (or -1), index of the one after it (or the entry count)}
+     */
+    public int[] getSinglePointGroupBounds(Entry target) {
+        int idx = entries.indexOf(target);
+        int before = entries.countNonPointBefore(idx);
+        int after = target.isSinglePoint() ? before : before + 1;
+
+        int lower = before == 0 ? -1 : entries.indexOfNonPoint(before - 1);
+        int upper = entries.indexOfNonPoint(after);
+        return new int[] {lower, upper};
+    }
+
+    /**
+     * Returns every Entry in the project (at any depth) that is active at some point between two DateTimes, i.e. whose
+     * [start, end] overlaps [from, to]. The result is sorted by start date.
+     * @param from the start of the range
+     * @param to the end of the range
+     * @return the Entries active in the range
+     */
+    public List<Entry> rangeQuery(DateTime from, DateTime to) {
+        List<Entry> active = new ArrayList<>();
+        rangeQuery(from.getEpochMinutes(), to.getEpochMinutes(), active::add);
+        return active;
+    }
+
+    /**
+     * Reports every Entry in the project (at any depth) whose [start, end] overlaps [from, to], in order of start date.
+     * Nothing is allocated per call, which makes this suitable for redrawing a visible window.
+     * @param from the start of the range, in epoch minutes
+     * @param to the end of the range, in epoch minutes
+     * @param out receives each active Entry
+     */
+    public void rangeQuery(long from, long to, Consumer<Entry> out) {
+        intervals.query(from, to, out);
+    }
+
+    /**
+     * Registers a listener to be told about every change made to this Project (see {@link ModelListener}).
+     * @param listener the listener
+     */
+    public void addModelListener(ModelListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Unregisters a listener added with {@link #addModelListener(ModelListener)}.
+     * @param listener the listener
+     */
+    public void removeModelListener(ModelListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Starts a batch of changes. Until the matching {@link #endBatch()}, changes are collected instead of being sent to
+     * the listeners; they are then coalesced (see {@link ModelChange}) and sent as one batch. Batches can be nested, in
+     * which case the outermost one decides when the changes are sent.
+     */
+    public void beginBatch() {
+        batchDepth++;
+    }
+
+    /**
+     * Ends a batch of changes started with {@link #beginBatch()}.
+     * @throws IllegalStateException if no batch was started
+     */
+    public void endBatch() {
+        if(batchDepth == 0)
+            throw new IllegalStateException("No batch to end.");
 
-        while(endIdx < entries.size() && entries.get(endIdx).isSinglePoint()) {
-            adjacentPoints.add(entries.get(endIdx));
-            endIdx++;
+        if(--batchDepth == 0 && !pending.isEmpty()) {
+            List<ModelChange> batch = ModelChange.coalesce(pending);
+            pending = new ArrayList<>();
+            deliver(batch);
         }
+    }
 
-        return adjacentPoints;
+    /**
+     * Runs a block of changes as one batch (see {@link #beginBatch()}).
+     * @param changes the changes to make
+     */
+    public void batch(Runnable changes) {
+        beginBatch();
+        try {
+            changes.run();
+        }
+        finally {
+            endBatch();
+        }
+    }
+
+    /**
+     * Records a change made to this Project, and sends it to the listeners (right away, or at the end of the batch).
+     * @param change the change
+     */
+    void fire(ModelChange change) {
+        if(partial)
+            markDirty(change);
+        if(replaying)
+            return;
+        if(journal != null)
+            journal.add(change);
+
+        if(batchDepth > 0)
+            pending.add(change);
+        else
+            deliver(Collections.singletonList(change));
+    }
+
+    /**
+     * Starts a transaction. Changes made during a transaction are applied right away (so they can be read back), but
+     * nothing is validated or sent to the listeners until {@link #commit()}, which checks the Project's invariants once
+     * for everything that was touched and then notifies the listeners with a single batch. {@link #rollback()} undoes
+     * every change made since the transaction started.
+     *
+     * The invariants are:
+     * - top-level Entries are sorted by start date
+     * - every sub-entry fits inside its parent (it starts no earlier and ends no later)
+     *
+     * @throws IllegalStateException if a transaction is already in progress
+     */
+    public void beginTransaction() {
+        if(journal != null)
+            throw new IllegalStateException("A transaction is already in progress.");
+
+        beginBatch();
+        journal = new ArrayList<>();
+        journalBatchMark = pending.size();
+    }
+
+    /**
+     * @return true if a transaction is in progress
+     */
+    public boolean inTransaction() {
+        return journal != null;
+    }
+
+    /**
+     * Commits the current transaction: validates the invariants (see {@link #beginTransaction()}) for every Entry the
+     * transaction touched, and sends all of its changes to the listeners as one batch. If an invariant doesn't hold,
+     * the transaction is rolled back instead.
+     * @throws IllegalStateException if there is no transaction in progress, or if the transaction broke an invariant
+     * (in which case it has been rolled back)
+     */
+    public void commit() {
+        if(journal == null)
+            throw new IllegalStateException("No transaction to commit.");
+
+        String violation = checkInvariants(journal);
+        if(violation != null) {
+            rollback();
+            throw new IllegalStateException("Transaction rolled back: " + violation);
+        }
+
+        journal = null;
+        endBatch();
+    }
+
+    /**
+     * Rolls back the current transaction, undoing its changes in reverse order. The listeners are not notified, since
+     * they never saw the changes.
+     * @throws IllegalStateException if there is no transaction in progress
+     */
+    public void rollback() {
+        if(journal == null)
+            throw new IllegalStateException("No transaction to roll back.");
+
+        List<ModelChange> undo = journal;
+        journal = null;
+
+        replaying = true;
+        try {
+            for(int i = undo.size() - 1; i >= 0; i--)
+                revert(undo.get(i));
+        }
+        finally {
+            replaying = false;
+            pending.subList(journalBatchMark, pending.size()).clear();
+            endBatch();
+        }
+    }
+
+    /**
+     * Checks the invariants (see {@link #beginTransaction()}) over the whole Project, e.g. one that was read from a
+     * file or built outside of a transaction. O(n log n).
+     * @return a description of the first broken invariant, or null if they all hold
+     */
+    public String validate() {
+        return checkInvariants(preOrder());
+    }
+
+    /**
+     * Checks the invariants (see {@link #beginTransaction()}) around every Entry touched by a list of changes: its
+     * place among the top-level Entries, or inside its parent, and its sub-entries (via its rollups). Costs O(log n)
+     * per touched Entry, rather than a pass over the whole Project.
+     * @return a description of the first broken invariant, or null if they all hold
+     */
+    private String checkInvariants(List<ModelChange> changes) {
+        Set<Entry> touched = Collections.newSetFromMap(new IdentityHashMap<>());
+        for(ModelChange c : changes) {
+            if(c.getTarget() instanceof Entry && (c.isStructural() || c.getProperty() == ModelChange.Property.START
+                    || c.getProperty() == ModelChange.Property.END))
+                touched.add((Entry) c.getTarget());
+        }
+        return checkInvariants(touched);
+    }
+
+    /**
+     * Checks the invariants (see {@link #beginTransaction()}) around each of a number of Entries.
+     * @return a description of the first broken invariant, or null if they all hold
+     */
+    private String checkInvariants(Iterable<Entry> touched) {
+        for(Entry e : touched) {
+            if(e.project != this)
+                continue;
+
+            Entry parent = e.getParent();
+            if(parent == null) {
+                int idx = entries.indexOf(e);
+                if(idx > 0 && entries.get(idx - 1).getStartMinutes() > e.getStartMinutes())
+                    return e.getName() + " starts before the Entry ahead of it";
+                if(idx < entries.size() - 1 && entries.get(idx + 1).getStartMinutes() < e.getStartMinutes())
+                    return e.getName() + " starts after the Entry behind it";
+            }
+            else if(e.getStartMinutes() < parent.getStartMinutes() || e.getEndMinutes() > parent.getEndMinutes()) {
+                return e.getName() + " does not fit inside " + parent.getName();
+            }
+
+            if(!e.isLoaded()) {
+                //the sub-entries are still in storage: their span is known without reading them
+                if(e.getDescendantCount() > 0 && (e.getSpanStart().getEpochMinutes() < e.getStartMinutes()
+                        || e.getSpanEnd().getEpochMinutes() > e.getEndMinutes()))
+                    return "the sub-entries of " + e.getName() + " do not fit inside it";
+                continue;
+            }
+
+            EntrySequence subs = e.children();
+            if(!subs.isEmpty() && (subs.rollupMinStart() < e.getStartMinutes() || subs.rollupMaxEnd() > e.getEndMinutes()))
+                return "the sub-entries of " + e.getName() + " do not fit inside it";
+        }
+
+        return null;
+    }
+
+    /**
+     * Undoes a single change.
+     */
+    @SuppressWarnings("unchecked")
+    private void revert(ModelChange c) {
+        if(c.getTarget() instanceof Participant) {
+            Participant p = (Participant) c.getTarget();
+            switch(c.getKind()) {
+                case INSERTED:
+                    removeParticipant(p);
+                    break;
+                case REMOVED:
+                    participants.add(Math.min(c.getIndex(), participants.size()), p);
+                    participantsById.put(p.getId(), p);
+                    p.project = this;
+                    break;
+                case PROPERTY:
+                    if(c.getProperty() == ModelChange.Property.NAME) p.setName((String) c.getOldValue());
+                    else if(c.getProperty() == ModelChange.Property.ROLE) p.setRole((String) c.getOldValue());
+                    else if(c.getProperty() == ModelChange.Property.COLOR) p.setColor((String) c.getOldValue());
+                    break;
+            }
+            return;
+        }
+
+        Entry e = (Entry) c.getTarget();
+        switch(c.getKind()) {
+            case INSERTED:
+                unplace(e);
+                break;
+            case REMOVED:
+                place(e, c.getParent(), c.getIndex());
+                break;
+            case MOVED:
+                place(e, c.getOldParent(), c.getOldIndex());
+                break;
+            case PROPERTY:
+                Object old = c.getOldValue();
+                switch(c.getProperty()) {
+                    case NAME:              e.setName((String) old); break;
+                    case DESCRIPTION:       e.setDescription((String) old); break;
+                    case START:             e.setStartMinutes((Long) old, false); break;
+                    case END:               e.setEndMinutes((Long) old, false); break;
+                    case PERCENT_COMPLETE:  e.setPercentComplete((Integer) old); break;
+                    case LAST_MODIFIED_BY:  e.setLastModifiedBy((Participant) old); break;
+                    case ASSIGNED_TO:
+                        if(e.getAssignedTo() != null) e.getAssignedTo().removeAssignment(e);
+                        e.setAssignedTo((Participant) old);
+                        if(old != null) ((Participant) old).addAssignment(e);
+                        break;
+                    case ATTACHMENTS:       e.setAttachments((List<Attachment>) old); break;
+                }
+                break;
+        }
+    }
+
+    /**
+     * Puts an Entry at a specified position in this Project, taking it out of wherever it is now.
+     */
+    private void place(Entry e, Entry parent, int index) {
+        if(e.node != null && e.node.owner != null) e.node.owner.remove(e);
+        if(e.project != null && e.project != this) e.project.detach(e);
+
+        e.setParent(parent);
+        EntrySequence siblings = parent == null ? entries : parent.children();
+        siblings.add(Math.min(index, siblings.size()), e);
+        if(e.project != this) attach(e);
+    }
+
+    /**
+     * Takes an Entry out of this Project.
+     */
+    private void unplace(Entry e) {
+        if(e.node != null && e.node.owner != null) e.node.owner.remove(e);
+        e.setParent(null);
+        if(e.project == this) detach(e);
+    }
+
+    private void deliver(List<ModelChange> batch) {
+        if(batch.isEmpty())
+            return;
+
+        List<ModelChange> view = Collections.unmodifiableList(batch);
+        for(ModelListener l : listeners)
+            l.modelChanged(this, view);
+    }
+
+    /**
+     * Registers an Entry and all of its sub-entries with this Project.
+     * @param root the Entry
+     */
+    void attach(Entry root) {
+        Deque<Entry> stack = new ArrayDeque<>();
+        stack.push(root);
+        while(!stack.isEmpty()) {
+            Entry e = stack.pop();
+            Entry holder = entriesById.get(e.getId());
+            if(e.getId() <= 0 || (holder != null && holder != e))
+                e.assignId(nextEntryId);
+
+            nextEntryId = Math.max(nextEntryId, e.getId() + 1);
+            entriesById.put(e.getId(), e);
+            e.project = this;
+            intervals.add(e);
+            if(!e.isLoaded())
+                reserveIds(e.deferredMaxId());
+            for(Entry sub : e.loadedChildren()) stack.push(sub);
+        }
+        structureChanged();
+    }
+
+    /**
+     * Unregisters an Entry and all of its sub-entries from this Project.
+     * @param root the Entry
+     */
+    void detach(Entry root) {
+        Deque<Entry> stack = new ArrayDeque<>();
+        stack.push(root);
+        while(!stack.isEmpty()) {
+            Entry e = stack.pop();
+            e.project = null;
+            entriesById.remove(e.getId());
+            intervals.remove(e);
+            for(Entry sub : e.loadedChildren()) stack.push(sub);
+        }
+        structureChanged();
+    }
+
+    /**
+     * Unregisters Entries that were unloaded (see {@link Entry#unloadSubEntries()}). They stay part of the Project,
+     * but only in storage, so their IDs stay reserved.
+     * @param unloaded the Entries
+     */
+    void forget(List<Entry> unloaded) {
+        for(Entry e : unloaded) {
+            entriesById.remove(e.getId());
+            intervals.remove(e);
+        }
+        structureChanged();
+    }
+
+    /**
+     * Makes sure no new Entry is given an ID up to a specified one, because an Entry that isn't in memory has it.
+     * @param maxId the highest ID in use
+     */
+    void reserveIds(int maxId) {
+        nextEntryId = Math.max(nextEntryId, maxId + 1);
+        partial = true;
+    }
+
+    /**
+     * Marks the Entries whose loaded subtrees a change touches (see {@link Entry#unloadSubEntries()}) as dirty: their
+     * sub-entries no longer match what's in storage, so they have to stay in memory.
+     */
+    private void markDirty(ModelChange c) {
+        if(!(c.getTarget() instanceof Entry))
+            return;
+
+        Entry target = (Entry) c.getTarget();
+        Entry from = c.isStructural() ? c.getParent() : target.getParent();
+        for(Entry a = from; a != null && !a.dirty; a = a.getParent()) a.dirty = true;
+        for(Entry a = c.getOldParent(); a != null && !a.dirty; a = a.getParent()) a.dirty = true;
+    }
+
+    /**
+     * Called whenever Entries are added, removed or re-ordered anywhere in the hierarchy. Invalidates the nested-set
+     * numbering, which is rebuilt the next time it is needed.
+     */
+    void structureChanged() {
+        numbered = false;
+    }
+
+    /**
+     * Makes sure every Entry's nested-set numbers (see {@link Entry#getPreOrderIndex()}) are up to date. The numbers are
+     * rebuilt in one O(n) walk after a structural change, and ancestry checks are O(1) until the next one; a burst of
+     * checks (e.g. while rendering or filtering) only ever pays for one walk.
+     */
+    void ensureNumbered() {
+        if(numbered)
+            return;
+
+        int counter = 0;
+        Deque<Entry> path = new ArrayDeque<>();
+        Deque<Iterator<Entry>> pending = new ArrayDeque<>();
+        pending.push(entries.iterator());
+
+        while(!pending.isEmpty()) {
+            Iterator<Entry> siblings = pending.peek();
+            if(siblings.hasNext()) {
+                Entry e = siblings.next();
+                e.preOrder = counter++;
+                if(!e.isLoaded())
+                    counter += e.getDescendantCount();      //numbers held for the Entries still in storage
+                path.push(e);
+                pending.push(e.loadedChildren().iterator());
+            }
+            else {
+                pending.pop();
+                if(!path.isEmpty() && pending.size() == path.size())
+                    path.pop().subtreeEnd = counter - 1;
+            }
+        }
+
+        numbered = true;
+    }
+
+    /**
+     * Called by an attached Entry after its start or end has changed.
+     * @param e the Entry
+     */
+    void intervalChanged(Entry e) {
+        intervals.update(e);
     }
 
     /**
@@ -339,10 +1021,10 @@ public class Project {
      * @param e2 the second Entry
      */
     public static void swapEntries(Entry e1, Entry e2) {
-        DateTime e1Start = e1.getStart();
-        DateTime e2End = e2.getEnd();
+        long e1Start = e1.getStartMinutes();
+        long e2End = e2.getEndMinutes();
 
-        e2.setStart(e1Start, true);
-        e1.setEnd(e2End, true);
+        e2.setStartMinutes(e1Start, true);
+        e1.setEndMinutes(e2End, true);
     }
 }
\ No newline at end of file
@@ -0,0 +1,55 @@
+package data;
+
+import java.util.List;
+
+/**
+ * Storage that the sub-entries of an Entry can be left in until they are needed (see
+ * {@link Entry#deferSubEntries(SubtreeSource, int, Summary)}), e.g. a project file that is read a branch at a time.
+ *
+ * @author Al-John
+ */
+public interface SubtreeSource {
+
+    /**
+     * Reads the sub-entries of an Entry whose sub-entries were deferred. They are returned in order, without a parent
+     * and outside of any Project; any of them may have deferred sub-entries of its own.
+     * @param parent the Entry
+     * @param key the key the sub-entries were deferred with
+     * @return the sub-entries
+     */
+    List<Entry> loadSubEntries(Entry parent, int key);
+
+    /**
+     * What an Entry needs to know about its sub-entries while they are still in storage: how many there are, and the
+     * rollups of their subtrees (see {@link Entry#getDescendantCount()} and friends), so that everything that only
+     * needs the rollups keeps working without reading them.
+     */
+    final class Summary {
+        final int children, count, leaves, maxId;
+        final long minStart, maxEnd, leafDuration, leafWeighted, leafPercent;
+
+        /**
+         * @param children the number of sub-entries
+         * @param count the number of Entries below the Entry, at any depth
+         * @param leaves the number of those Entries that have no sub-entries
+         * @param maxId the highest ID of those Entries
+         * @param minStart the earliest start or end (in epoch minutes) among them
+         * @param maxEnd the latest start or end (in epoch minutes) among them
+         * @param leafDuration the total duration of the leaves (in minutes)
+         * @param leafWeighted the total of duration * percent complete over the leaves
+         * @param leafPercent the total percent complete of the leaves
+         */
+        public Summary(int children, int count, int leaves, int maxId, long minStart, long maxEnd, long leafDuration,
+                       long leafWeighted, long leafPercent) {
+            this.children = children;
+            this.count = count;
+            this.leaves = leaves;
+            this.maxId = maxId;
+            this.minStart = minStart;
+            this.maxEnd = maxEnd;
+            this.leafDuration = leafDuration;
+            this.leafWeighted = leafWeighted;
+            this.leafPercent = leafPercent;
+        }
+    }
+}
@@ -0,0 +1,353 @@
+package data.io;
+
+import data.ModelChange;
+import data.ModelListener;
+import data.Project;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Saves a Project in the background as it is edited, without ever making the editing thread (e.g. the JavaFX
+ * application thread) wait for the disk.
+ *
+ * The edits are saved through an {@link EditJournal}. On the editing thread, the AutoSaver only collects the changes
+ * the Project reports: a property that is changed over and over is kept once, with its latest value (property changes
+ * are folded per target and property, never across a structural change), and only an Entry that is inserted has its
+ * contents captured. A background thread waits for the edits to settle (or for them to have waited long enough), then
+ * turns everything collected into one journal record and waits until it is on disk.
+ *
+ * There is never more than one save in flight: edits made while the disk is busy keep collecting into the next save,
+ * so a slow disk means fewer, larger saves rather than a growing queue.
+ *
+ * Once a save fails, the AutoSaver stops: later edits are no longer collected, and the failure is reported to the
+ * handler set with {@link #setOnFailure(Consumer)} as soon as it happens (and thrown by {@link #flush()} and
+ * {@link #close()}).
+ *
+ * @author Al-John
+ */
+public final class AutoSaver implements Closeable {
+
+    /** How long the edits must settle before they are saved, by default (in milliseconds). */
+    public static final long DEFAULT_DELAY = 500;
+    /** How long an edit may wait to be saved while edits keep coming, by default (in milliseconds). */
+    public static final long DEFAULT_MAX_DELAY = 5000;
+
+    private final Project project;
+    private final EditJournal journal;
+    private final long delay, maxDelay;
+    private final ModelListener listener = (p, changes) -> collect(changes);
+    private final Thread saver;
+
+    private final Object lock = new Object();
+    //the next save (guarded by lock): the changes encoded so far, and the run of property changes since the last
+    //structural change, one per target and property
+    private JournalCodec.Encoder encoder = new JournalCodec.Encoder();
+    private final List<ModelChange> run = new ArrayList<>();
+    private final Map<Object, Map<ModelChange.Property, Integer>> latest = new IdentityHashMap<>();
+    private long dirtySince, lastEdit;      //System.nanoTime(); dirtySince is 0 while nothing is waiting to be saved
+    private boolean saving, flushRequested, closed;
+    private IOException failure;
+    private Consumer<IOException> onFailure;
+
+    //metrics (guarded by lock)
+    private long saves, changesCollected, changesSaved;
+    private long lastLag, maxLag, totalLag;
+
+    /**
+     * Starts autosaving a Project to a file, with the default delays.
+     * @param project the Project
+     * @param file the project file (see {@link EditJournal} for the files kept next to it)
+     * @throws IOException if the file couldn't be written
+     */
+    public AutoSaver(Project project, Path file) throws IOException {
+        this(project, file, DEFAULT_DELAY, DEFAULT_MAX_DELAY);
+    }
+
+    /**
+     * Starts autosaving a Project to a file. The Project is saved in full once, right away.
+     * @param project the Project
+     * @param file the project file (see {@link EditJournal} for the files kept next to it)
+     * @param delay how long the edits must settle before they are saved (in milliseconds)
+     * @param maxDelay how long an edit may wait to be saved while edits keep coming (in milliseconds)
+     * @throws IOException if the file couldn't be written
+     */
+    public AutoSaver(Project project, Path file, long delay, long maxDelay) throws IOException {
+        this(project, file, delay, maxDelay, false);
+    }
+
+    private AutoSaver(Project project, Path file, long delay, long maxDelay, boolean resume) throws IOException {
+        this.project = project;
+        this.delay = delay;
+        this.maxDelay = maxDelay;
+        journal = new EditJournal(project, file, EditJournal.DEFAULT_SEGMENT_SIZE, false, resume);
+
+        saver = new Thread(this::saveLoop, "Autosave");
+        saver.setDaemon(true);
+        saver.start();
+        project.addModelListener(listener);
+    }
+
+    /**
+     * Starts autosaving a Project that was just opened with {@link EditJournal#recover(Path, boolean)}, and hasn't
+     * changed since. Nothing is saved until it is edited (and only the edits are saved then).
+     * @param project the Project
+     * @param file the project file it was recovered from
+     * @return the AutoSaver
+     * @throws IOException if the journal couldn't be started
+     */
+    public static AutoSaver resume(Project project, Path file) throws IOException {
+        return new AutoSaver(project, file, DEFAULT_DELAY, DEFAULT_MAX_DELAY, true);
+    }
+
+    /**
+     * Collects a batch of changes into the next save (on the editing thread).
+     */
+    private void collect(List<ModelChange> changes) {
+        long now = System.nanoTime();
+        synchronized(lock) {
+            if(failure != null)
+                return;
+
+            for(ModelChange c : changes) {
+                if(c.isStructural()) {
+                    endRun();
+                    encoder.add(c);
+                    continue;
+                }
+
+                Map<ModelChange.Property, Integer> byProperty = latest.computeIfAbsent(c.getTarget(),
+                        t -> new IdentityHashMap<>());
+                Integer at = byProperty.get(c.getProperty());
+                if(at == null) {
+                    byProperty.put(c.getProperty(), run.size());
+                    run.add(c);
+                }
+                else {
+                    run.set(at, c);
+                }
+            }
+
+            changesCollected += changes.size();
+            if(dirtySince == 0)
+                dirtySince = now;
+            lastEdit = now;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Encodes the current run of property changes (a structural change is about to end it, or a save is starting).
+     */
+    private void endRun() {
+        for(ModelChange c : run)
+            encoder.add(c);
+        run.clear();
+        latest.clear();
+    }
+
+    private void saveLoop() {
+        while(true) {
+            byte[] payload;
+            long since;
+            synchronized(lock) {
+                try {
+                    //wait for something to save, then for the edits to settle
+                    while(dirtySince == 0 && !closed)
+                        lock.wait();
+                    if(dirtySince == 0)
+                        return;
+
+                    while(!closed && !flushRequested) {
+                        long now = System.nanoTime();
+                        long wait = Math.min(lastEdit + TimeUnit.MILLISECONDS.toNanos(delay),
+                                dirtySince + TimeUnit.MILLISECONDS.toNanos(maxDelay)) - now;
+                        if(wait <= 0)
+                            break;
+                        TimeUnit.NANOSECONDS.timedWait(lock, wait);
+                    }
+                } catch(InterruptedException e) {
+                    if(dirtySince == 0)
+                        return;
+                }
+
+                endRun();
+                payload = encoder.isEmpty() ? null : encoder.finish();
+                changesSaved = changesCollected;
+                encoder = new JournalCodec.Encoder();
+                since = dirtySince;
+                dirtySince = 0;
+                saving = true;
+            }
+
+            IOException error = null;
+            try {
+                if(payload != null) {
+                    journal.append(payload);
+                    journal.sync();
+                }
+            } catch(IOException e) {
+                error = e;
+            }
+
+            Consumer<IOException> handler;
+            synchronized(lock) {
+                saving = false;
+                if(error == null) {
+                    lastLag = System.nanoTime() - since;
+                    maxLag = Math.max(maxLag, lastLag);
+                    totalLag += lastLag;
+                    saves++;
+                    if(dirtySince == 0)
+                        flushRequested = false;
+                    lock.notifyAll();
+                    continue;
+                }
+
+                failure = error;
+                handler = onFailure;
+                lock.notifyAll();
+            }
+
+            //reported outside the lock, so a slow handler can't hold up the editing thread
+            if(handler != null)
+                handler.accept(error);
+            return;
+        }
+    }
+
+    /**
+     * Sets what to do when a save fails (on the autosave thread, or right away if one already has). Edits are no
+     * longer saved from then on.
+     * @param onFailure the failure handler
+     */
+    public void setOnFailure(Consumer<IOException> onFailure) {
+        IOException failed;
+        synchronized(lock) {
+            this.onFailure = onFailure;
+            failed = failure;
+        }
+        if(failed != null)
+            onFailure.accept(failed);
+    }
+
+    /**
+     * Saves every edit made so far right away, and waits until it is on disk.
+     * @throws IOException if saving failed
+     */
+    public void flush() throws IOException {
+        synchronized(lock) {
+            flushRequested = true;
+            lock.notifyAll();
+            try {
+                while((dirtySince != 0 || saving) && failure == null)
+                    lock.wait();
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+
+            if(failure != null)
+                throw failure;
+        }
+    }
+
+    /**
+     * Stops autosaving, once every edit made so far has been saved. Closing it again only throws the failure again, if
+     * there was one.
+     * @throws IOException if saving failed
+     */
+    @Override
+    public void close() throws IOException {
+        project.removeModelListener(listener);
+        synchronized(lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+
+        try {
+            saver.join();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } finally {
+            journal.close();
+        }
+
+        synchronized(lock) {
+            if(failure != null)
+                throw failure;
+        }
+    }
+
+    /**
+     * @return how long the most recent save took to reach the disk, from the first edit it contained (in
+     * milliseconds)
+     */
+    public double getLastSaveLag() {
+        synchronized(lock) {
+            return lastLag / 1e6;
+        }
+    }
+
+    /**
+     * @return the longest it took any save to reach the disk, from the first edit it contained (in milliseconds)
+     */
+    public double getMaxSaveLag() {
+        synchronized(lock) {
+            return maxLag / 1e6;
+        }
+    }
+
+    /**
+     * @return the average time it took a save to reach the disk, from the first edit it contained (in milliseconds)
+     */
+    public double getAverageSaveLag() {
+        synchronized(lock) {
+            return saves == 0 ? 0 : totalLag / 1e6 / saves;
+        }
+    }
+
+    /**
+     * @return how long the oldest edit that isn't on disk yet has been waiting (in milliseconds), or 0 if everything
+     * is saved
+     */
+    public double getPendingLag() {
+        synchronized(lock) {
+            return dirtySince == 0 ? 0 : (System.nanoTime() - dirtySince) / 1e6;
+        }
+    }
+
+    /**
+     * @return the number of saves made so far
+     */
+    public long getSaveCount() {
+        synchronized(lock) {
+            return saves;
+        }
+    }
+
+    /**
+     * @return the number of changes handed over to saves so far, before they were folded together
+     */
+    public long getChangesSaved() {
+        synchronized(lock) {
+            return changesSaved;
+        }
+    }
+
+    /**
+     * @return the number of bytes written so far (to the journal, and to the snapshot)
+     */
+    public long getBytesWritten() {
+        return journal.getBytesWritten();
+    }
+}
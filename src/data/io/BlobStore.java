@@ -0,0 +1,181 @@
+package data.io;
+
+import data.Attachment;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * A local, content-addressed store for the contents of {@link Attachment}s. Every blob is kept once, in a file named
+ * after the SHA-256 hash of its bytes, so a file attached any number of times (to any number of Entries or Projects)
+ * is stored once, and a blob never changes once it is stored.
+ *
+ * <pre>
+ * root/
+ *     tmp/            blobs being written
+ *     3f/a9c0...      each blob, under the first two hex digits of its hash, named after the other 62
+ * </pre>
+ *
+ * Blobs are streamed in and out in fixed-size chunks through NIO channels; no blob is ever held in memory whole. A
+ * blob is hashed while it is copied into the store, and only moved into place (in one step) once it is complete, so a
+ * blob under a given name is always whole.
+ *
+ * @author Al-John
+ */
+public final class BlobStore {
+
+    private static final int CHUNK_SIZE = 64 << 10;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final Path root;
+
+    /**
+     * Opens a blob store, creating its directory if needed.
+     * @param root the directory of the store
+     * @throws IOException if the directory couldn't be created
+     */
+    public BlobStore(Path root) throws IOException {
+        this.root = root;
+        Files.createDirectories(root.resolve("tmp"));
+    }
+
+    /**
+     * @return the blob store in the user's home directory
+     * @throws IOException if its directory couldn't be created
+     */
+    public static BlobStore defaultStore() throws IOException {
+        return new BlobStore(Paths.get(System.getProperty("user.home"), ".planamity", "blobs"));
+    }
+
+    /**
+     * Stores the contents of a file, unless the same contents are stored already.
+     * @param file the file
+     * @return an Attachment referring to the contents, named after the file
+     * @throws IOException if the file couldn't be read, or the blob couldn't be written
+     */
+    public Attachment put(Path file) throws IOException {
+        try(FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            return put(in, file.getFileName().toString());
+        }
+    }
+
+    /**
+     * Stores everything that can be read from a channel, unless the same contents are stored already. The channel is
+     * read to its end, but not closed.
+     * @param in the channel
+     * @param name the name of the Attachment
+     * @return an Attachment referring to the contents
+     * @throws IOException if the channel couldn't be read, or the blob couldn't be written
+     */
+    public Attachment put(ReadableByteChannel in, String name) throws IOException {
+        MessageDigest digest = sha256();
+        Path tmp = Files.createTempFile(root.resolve("tmp"), "blob", null);
+        long size = 0;
+
+        try {
+            try(FileChannel out = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                ByteBuffer chunk = ByteBuffer.allocateDirect(CHUNK_SIZE);
+                while(in.read(chunk) >= 0 || chunk.position() > 0) {
+                    chunk.flip();
+                    digest.update(chunk.duplicate());
+                    size += chunk.remaining();
+                    while(chunk.hasRemaining())
+                        out.write(chunk);
+                    chunk.clear();
+                }
+                out.force(true);
+            }
+
+            String hash = hex(digest.digest());
+            Path blob = path(hash);
+            if(!Files.exists(blob)) {
+                Files.createDirectories(blob.getParent());
+                try {
+                    Files.move(tmp, blob, StandardCopyOption.ATOMIC_MOVE);
+                } catch(FileAlreadyExistsException e) {
+                    //stored by someone else in the meantime; the contents are the same
+                }
+            }
+            return new Attachment(hash, name, size);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * @param attachment an Attachment
+     * @return true if its contents are in this store
+     */
+    public boolean contains(Attachment attachment) {
+        return Files.isRegularFile(path(attachment.getHash()));
+    }
+
+    /**
+     * Opens the contents of an Attachment for reading, to be streamed (or read at any position).
+     * @param attachment the Attachment
+     * @return a read-only channel over the contents
+     * @throws IOException if the contents aren't in this store, or couldn't be opened
+     */
+    public SeekableByteChannel open(Attachment attachment) throws IOException {
+        return FileChannel.open(path(attachment.getHash()), StandardOpenOption.READ);
+    }
+
+    /**
+     * Copies the contents of an Attachment to a file (replacing it, if it exists), without passing them through the
+     * heap where the platform allows.
+     * @param attachment the Attachment
+     * @param file the file
+     * @throws IOException if the contents couldn't be read, or the file couldn't be written
+     */
+    public void copyTo(Attachment attachment, Path file) throws IOException {
+        try(FileChannel in = FileChannel.open(path(attachment.getHash()), StandardOpenOption.READ);
+            FileChannel out = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+            for(long at = 0, size = in.size(); at < size; )
+                at += in.transferTo(at, size - at, out);
+        }
+    }
+
+    /**
+     * @param hash the SHA-256 hash of a blob, as 64 lowercase hex digits
+     * @return where the blob with that hash is (or would be) stored
+     */
+    Path path(String hash) {
+        return root.resolve(hash.substring(0, 2)).resolve(hash.substring(2));
+    }
+
+    static String hex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for(int i = 0; i < bytes.length; i++) {
+            chars[2 * i] = HEX[bytes[i] >> 4 & 0xF];
+            chars[2 * i + 1] = HEX[bytes[i] & 0xF];
+        }
+        return new String(chars);
+    }
+
+    static byte[] unhex(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for(int i = 0; i < bytes.length; i++)
+            bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        return bytes;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch(NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available.", e);
+        }
+    }
+}
@@ -0,0 +1,461 @@
+package data.io;
+
+import data.ModelListener;
+import data.Project;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * A write-ahead journal of the edits made to a Project, so that saving doesn't mean rewriting the whole file.
+ *
+ * The Project lives in a snapshot (a binary project file, see {@link ProjectWriter}) and a series of journal segments
+ * next to it, named after it: "plan.pamy.journal.000001", "plan.pamy.journal.000002", ... Every batch of changes the
+ * Project reports (see {@link ModelListener}) is encoded on the editing thread and becomes one record, appended by a
+ * background writer. The writer commits in groups: whatever arrives within a couple of milliseconds is written with a
+ * single write and a single fsync. {@link #sync()} waits until everything edited so far is on disk.
+ *
+ * When a segment grows past its limit, the writer moves on to a new one, and the sealed segments are folded into the
+ * snapshot in the background: the snapshot is read into a private copy, the segments are replayed onto it, and the
+ * result is written back (atomically) along with the number of the last segment it includes, after which those
+ * segments are deleted. {@link #recover(Path)} rebuilds the Project from the snapshot and the segments it doesn't
+ * include yet, stopping at the first record that was torn by a crash.
+ *
+ * Only the Entries and Participants are journaled; the Project's own name and dates are saved with each snapshot.
+ *
+ * @author Al-John
+ */
+public final class EditJournal implements Closeable {
+
+    /** The default size past which the journal moves on to a new segment. */
+    public static final long DEFAULT_SEGMENT_SIZE = 4 << 20;
+
+    static final int MAGIC = 0x50414D4A;        //"PAMJ"
+    private static final int SEGMENT_HEADER = 12;   //int magic, long segment number
+    private static final int RECORD_HEADER = 8;     //int payload length, int CRC-32 of the payload
+    private static final long GROUP_COMMIT_NANOS = 2_000_000;
+
+    private final Project project;
+    private final Path snapshot;
+    private final long segmentSize;
+    private final ModelListener listener = (p, changes) -> append(JournalCodec.encode(changes));
+    private final boolean listening;
+    private final AtomicLong bytesWritten = new AtomicLong();
+
+    private final Object lock = new Object();
+    private final ArrayDeque<byte[]> queue = new ArrayDeque<>();    //guarded by lock
+    private long appended, written;                                  //records; guarded by lock
+    private boolean closed, rotateRequested;                         //guarded by lock
+    private IOException failure;                                     //guarded by lock
+
+    private final Thread writer;
+    private final ExecutorService compactor;
+    private FileChannel segment;                //written by the writer thread only
+    private volatile long segmentNumber;
+    private long segmentBytes;
+
+    /**
+     * @param listening true to journal every batch of changes the Project reports; false if the records are handed in
+     *                  through {@link #append(byte[])} instead
+     * @param resume true if the Project is exactly what {@link #recover(Path)} returns for the snapshot, in which case
+     *               the journal carries on after the segments already there instead of saving the Project in full
+     */
+    EditJournal(Project project, Path snapshot, long segmentSize, boolean listening, boolean resume)
+            throws IOException {
+        this.project = project;
+        this.snapshot = snapshot.toAbsolutePath();
+        this.segmentSize = segmentSize;
+        this.listening = listening;
+
+        List<Long> old = segments(this.snapshot);
+        long last = old.isEmpty() ? 0 : old.get(old.size() - 1);
+        if(!resume || !Files.exists(this.snapshot)) {
+            //the Project as it is now becomes the snapshot, and supersedes every segment that is already there
+            ProjectWriter.write(project, this.snapshot, last);
+            bytesWritten.addAndGet(Files.size(this.snapshot));
+            for(long n : old)
+                Files.deleteIfExists(segmentPath(this.snapshot, n));
+        }
+        openSegment(last + 1);
+
+        compactor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "Journal compactor");
+            t.setDaemon(true);
+            return t;
+        });
+        writer = new Thread(this::writeLoop, "Journal writer");
+        writer.setDaemon(true);
+        writer.start();
+        if(listening)
+            project.addModelListener(listener);
+    }
+
+    /**
+     * Starts journaling a Project. Its current state is saved as the snapshot (replacing any snapshot and journal
+     * segments already there), and every change made to it from now on is journaled.
+     * @param project the Project
+     * @param snapshot the snapshot file
+     * @return the journal
+     * @throws IOException if the snapshot or the first segment couldn't be written
+     */
+    public static EditJournal open(Project project, Path snapshot) throws IOException {
+        return open(project, snapshot, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Starts journaling a Project, with a specific segment size (see {@link #open(Project, Path)}).
+     * @param project the Project
+     * @param snapshot the snapshot file
+     * @param segmentSize the size (in bytes) past which a segment is sealed and folded into the snapshot
+     * @return the journal
+     * @throws IOException if the snapshot or the first segment couldn't be written
+     */
+    public static EditJournal open(Project project, Path snapshot, long segmentSize) throws IOException {
+        return new EditJournal(project, snapshot, segmentSize, true, false);
+    }
+
+    /**
+     * Rebuilds a Project from its snapshot and the journal segments that aren't part of it yet. A record that was only
+     * partly written (or is otherwise damaged) ends the segment it is in; everything before it is kept.
+     * @param snapshot the snapshot file
+     * @return the Project
+     * @throws IOException if the snapshot or a segment can't be read
+     */
+    public static Project recover(Path snapshot) throws IOException {
+        return recover(snapshot, false);
+    }
+
+    /**
+     * Rebuilds a Project from its snapshot and the journal segments that aren't part of it yet (see
+     * {@link #recover(Path)}).
+     * @param snapshot the snapshot file
+     * @param lazily true to open the Project a branch at a time (see {@link ProjectReader#readProjectLazily()}) if
+     *               there are no segments to replay
+     * @return the Project
+     * @throws IOException if the snapshot or a segment can't be read
+     */
+    public static Project recover(Path snapshot, boolean lazily) throws IOException {
+        snapshot = snapshot.toAbsolutePath();
+        ProjectReader reader = new ProjectReader(snapshot);
+        long checkpoint = reader.getCheckpoint();
+
+        List<Path> pending = new ArrayList<>();
+        for(long n : segments(snapshot))
+            if(n > checkpoint)
+                pending.add(segmentPath(snapshot, n));
+
+        if(lazily && pending.isEmpty())
+            return reader.readProjectLazily();
+
+        Project project = reader.readProject();
+        for(Path segment : pending)
+            replay(project, segment);
+        return project;
+    }
+
+    /**
+     * @return the number of bytes written so far, to the journal and to the snapshot
+     */
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    /**
+     * Waits until every change made so far has been written to disk.
+     * @throws IOException if the journal could not be written
+     */
+    public void sync() throws IOException {
+        synchronized(lock) {
+            long target = appended;
+            while(written < target && failure == null)
+                await();
+
+            if(failure != null)
+                throw failure;
+        }
+    }
+
+    /**
+     * Folds everything journaled so far into the snapshot, right away, and waits until it's done.
+     * @throws IOException if the journal or the snapshot could not be written, or the journal is closed
+     */
+    public void compact() throws IOException {
+        synchronized(lock) {
+            if(closed)
+                throw new IOException("closed");
+
+            rotateRequested = true;
+            lock.notifyAll();
+            while(rotateRequested && failure == null && !closed)
+                await();
+
+            if(failure != null)
+                throw failure;
+            if(rotateRequested)
+                throw new IOException("closed");
+        }
+
+        try {
+            compactor.submit(() -> { compactSealed(); return null; }).get();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch(ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Stops journaling: the Project is no longer listened to, and whatever was journaled is written to disk. Any
+     * compaction already under way is allowed to finish.
+     * @throws IOException if the journal could not be written
+     */
+    @Override
+    public void close() throws IOException {
+        if(listening)
+            project.removeModelListener(listener);
+        synchronized(lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+
+        try {
+            writer.join();
+            compactor.shutdown();
+            compactor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } finally {
+            segment.close();
+        }
+
+        synchronized(lock) {
+            if(failure != null)
+                throw failure;
+        }
+    }
+
+    /**
+     * Queues a record (see {@link JournalCodec}) for the writer.
+     * @param payload the payload of the record
+     */
+    void append(byte[] payload) {
+        synchronized(lock) {
+            if(closed || failure != null)
+                return;
+
+            queue.add(payload);
+            appended++;
+            lock.notifyAll();
+        }
+    }
+
+    private void writeLoop() {
+        List<byte[]> group = new ArrayList<>();
+        CRC32 crc = new CRC32();
+
+        while(true) {
+            boolean rotate;
+            synchronized(lock) {
+                while(queue.isEmpty() && !closed && !rotateRequested)
+                    awaitQuietly();
+                if(queue.isEmpty() && closed)
+                    return;
+                rotate = rotateRequested;
+            }
+
+            //give the records that are on their way a chance to join this group
+            if(!rotate)
+                LockSupport.parkNanos(GROUP_COMMIT_NANOS);
+
+            synchronized(lock) {
+                group.addAll(queue);
+                queue.clear();
+                rotate = rotateRequested;
+            }
+
+            try {
+                if(!group.isEmpty()) {
+                    int size = 0;
+                    for(byte[] payload : group)
+                        size += RECORD_HEADER + payload.length;
+
+                    ByteBuffer buf = ByteBuffer.allocate(size);
+                    for(byte[] payload : group) {
+                        crc.reset();
+                        crc.update(payload, 0, payload.length);
+                        buf.putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+                    }
+                    buf.flip();
+                    while(buf.hasRemaining())
+                        segment.write(buf);
+                    segment.force(false);
+                    segmentBytes += size;
+                    bytesWritten.addAndGet(size);
+                }
+
+                if(rotate || segmentBytes >= segmentSize) {
+                    segment.close();
+                    openSegment(segmentNumber + 1);
+                    if(!rotate)
+                        compactor.execute(this::compactQuietly);
+                }
+            } catch(IOException e) {
+                synchronized(lock) {
+                    failure = e;
+                    lock.notifyAll();
+                }
+                return;
+            }
+
+            synchronized(lock) {
+                written += group.size();
+                if(rotate) rotateRequested = false;
+                lock.notifyAll();
+            }
+            group.clear();
+        }
+    }
+
+    /**
+     * Starts a new, empty segment (on the writer thread, or before it starts).
+     */
+    private void openSegment(long n) throws IOException {
+        segment = FileChannel.open(segmentPath(snapshot, n),
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER).putInt(MAGIC).putLong(n);
+        header.flip();
+        while(header.hasRemaining())
+            segment.write(header);
+        segment.force(true);
+
+        segmentNumber = n;
+        segmentBytes = SEGMENT_HEADER;
+    }
+
+    /**
+     * Folds every sealed segment into the snapshot, in the background; if that fails, the failure is kept to be
+     * thrown by the next {@link #sync()}, {@link #compact()} or {@link #close()}.
+     */
+    private void compactQuietly() {
+        try {
+            compactSealed();
+        } catch(IOException e) {
+            synchronized(lock) {
+                if(failure == null)
+                    failure = e;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Folds every sealed segment (every one before the segment being written) into the snapshot (on the compactor
+     * thread).
+     */
+    private void compactSealed() throws IOException {
+        long sealed = segmentNumber - 1;
+
+        ProjectReader reader = new ProjectReader(snapshot);
+        long checkpoint = reader.getCheckpoint();
+        if(checkpoint >= sealed)
+            return;
+
+        Project copy = reader.readProject();
+        List<Long> segments = segments(snapshot);
+        for(long n : segments)
+            if(n > checkpoint && n <= sealed)
+                replay(copy, segmentPath(snapshot, n));
+
+        ProjectWriter.write(copy, snapshot, sealed);
+        bytesWritten.addAndGet(Files.size(snapshot));
+        for(long n : segments)
+            if(n <= sealed)
+                Files.deleteIfExists(segmentPath(snapshot, n));
+    }
+
+    /**
+     * Replays every intact record of a segment onto a Project.
+     */
+    private static void replay(Project project, Path segment) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(segment));
+        if(buf.remaining() < SEGMENT_HEADER || buf.getInt() != MAGIC)
+            return;
+        buf.getLong();
+
+        CRC32 crc = new CRC32();
+        while(buf.remaining() >= RECORD_HEADER) {
+            int length = buf.getInt();
+            int checksum = buf.getInt();
+            if(length < 0 || length > buf.remaining())
+                return;
+
+            crc.reset();
+            crc.update(buf.array(), buf.position(), length);
+            if((int) crc.getValue() != checksum)
+                return;
+
+            JournalCodec.replay(project, new DataInputStream(new ByteArrayInputStream(buf.array(), buf.position(), length)));
+            buf.position(buf.position() + length);
+        }
+    }
+
+    private static Path segmentPath(Path snapshot, long n) {
+        return snapshot.resolveSibling(snapshot.getFileName() + String.format(".journal.%06d", n));
+    }
+
+    /**
+     * @return the numbers of the segments that belong to a snapshot, in order
+     */
+    private static List<Long> segments(Path snapshot) throws IOException {
+        String prefix = snapshot.getFileName() + ".journal.";
+        List<Long> numbers = new ArrayList<>();
+        try(Stream<Path> files = Files.list(snapshot.getParent())) {
+            files.forEach(f -> {
+                String name = f.getFileName().toString();
+                if(name.startsWith(prefix)) {
+                    try {
+                        numbers.add(Long.parseLong(name.substring(prefix.length())));
+                    } catch(NumberFormatException ignored) {}
+                }
+            });
+        }
+        numbers.sort(null);
+        return numbers;
+    }
+
+    private void await() throws InterruptedIOException {
+        try {
+            lock.wait();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    private void awaitQuietly() {
+        try {
+            lock.wait();
+        } catch(InterruptedException ignored) {}
+    }
+}
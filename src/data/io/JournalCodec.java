@@ -0,0 +1,405 @@
+package data.io;
+
+import data.Attachment;
+import data.DateTime;
+import data.Entry;
+import data.ModelChange;
+import data.Participant;
+import data.Project;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Encodes batches of {@link ModelChange}s as edit journal records, and replays them onto a Project. Everything is
+ * referred to by ID, so a record can be replayed onto any copy of the Project (e.g. one freshly read from a snapshot).
+ *
+ * A record holds one whole batch, so a transaction is either replayed completely or not at all. Records describe the
+ * state the changes led to (where an Entry ended up, what a property was set to), which makes replaying a record onto
+ * a Project that already has some of its changes harmless.
+ *
+ * @author Al-John
+ */
+final class JournalCodec {
+
+    //operations
+    private static final byte ENTRY_PROPERTY = 1, PARTICIPANT_PROPERTY = 2, PLACE = 3, REMOVE = 4,
+            ADD_PARTICIPANT = 5, REMOVE_PARTICIPANT = 6;
+
+    private JournalCodec() {}
+
+    /**
+     * Encodes a batch of changes (as delivered to a ModelListener) as the payload of one journal record.
+     * @param changes the changes
+     * @return the payload
+     */
+    static byte[] encode(List<ModelChange> changes) {
+        Encoder encoder = new Encoder();
+        for(ModelChange c : changes)
+            encoder.add(c);
+        return encoder.finish();
+    }
+
+    /**
+     * Builds the payload of one journal record, a change at a time. The contents of inserted Entries are captured when
+     * their change is added, so an Encoder can be filled over several batches.
+     */
+    static final class Encoder {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        private final DataOutputStream out = new DataOutputStream(bytes);
+        private int count;
+
+        //Entries that first appear in this record; wherever they end up, the record must carry their contents
+        private final Set<Entry> fresh = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        /**
+         * @return true if no change has been added yet
+         */
+        boolean isEmpty() { return count == 0; }
+
+        void add(ModelChange c) {
+            try {
+                write(c);
+                count++;
+            } catch(IOException impossible) {
+                throw new IllegalStateException(impossible);
+            }
+        }
+
+        /**
+         * @return the payload: the number of changes, followed by the changes
+         */
+        byte[] finish() {
+            byte[] ops = bytes.toByteArray();
+            byte[] payload = new byte[4 + ops.length];
+            payload[0] = (byte) (count >>> 24);
+            payload[1] = (byte) (count >>> 16);
+            payload[2] = (byte) (count >>> 8);
+            payload[3] = (byte) count;
+            System.arraycopy(ops, 0, payload, 4, ops.length);
+            return payload;
+        }
+
+        private void write(ModelChange c) throws IOException {
+            Object target = c.getTarget();
+
+            if(target instanceof Participant) {
+                Participant p = (Participant) target;
+                switch(c.getKind()) {
+                    case INSERTED:
+                        out.writeByte(ADD_PARTICIPANT);
+                        out.writeInt(p.getId());
+                        out.writeInt(c.getIndex());
+                        string(out, p.getName());
+                        string(out, p.getInitials());
+                        string(out, p.getRole());
+                        out.writeInt(ProjectWriter.toArgb(p.getColor()));
+                        break;
+                    case REMOVED:
+                        out.writeByte(REMOVE_PARTICIPANT);
+                        out.writeInt(p.getId());
+                        break;
+                    case PROPERTY:
+                        out.writeByte(PARTICIPANT_PROPERTY);
+                        out.writeInt(p.getId());
+                        property(out, c.getProperty(), c.getNewValue());
+                        break;
+                    default:
+                        out.writeByte(0);
+                }
+                return;
+            }
+
+            Entry e = (Entry) target;
+            switch(c.getKind()) {
+                case PROPERTY:
+                    out.writeByte(ENTRY_PROPERTY);
+                    out.writeInt(e.getId());
+                    property(out, c.getProperty(), c.getNewValue());
+                    break;
+                case INSERTED:
+                case MOVED:
+                    boolean withContents = c.getKind() == ModelChange.Kind.INSERTED || fresh.contains(e);
+                    if(c.getKind() == ModelChange.Kind.INSERTED)
+                        for(Entry sub : e.preOrder()) fresh.add(sub);
+
+                    out.writeByte(PLACE);
+                    out.writeInt(e.getId());
+                    out.writeInt(c.getParent() == null ? 0 : c.getParent().getId());
+                    out.writeInt(c.getIndex());
+                    out.writeBoolean(withContents);
+                    if(withContents)
+                        subtree(out, e);
+                    break;
+                case REMOVED:
+                    out.writeByte(REMOVE);
+                    out.writeInt(e.getId());
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Replays the payload of one journal record onto a Project.
+     * @param project the Project
+     * @param in the payload
+     * @throws IOException if the payload is malformed
+     */
+    static void replay(Project project, DataInputStream in) throws IOException {
+        int count = in.readInt();
+        for(int i = 0; i < count; i++) {
+            byte op = in.readByte();
+            switch(op) {
+                case ENTRY_PROPERTY: {
+                    Entry e = project.getEntryById(in.readInt());
+                    ModelChange.Property property = ModelChange.Property.values()[in.readByte()];
+                    Object value = value(in, property);
+                    if(e != null)
+                        setEntryProperty(project, e, property, value);
+                    break;
+                }
+                case PARTICIPANT_PROPERTY: {
+                    Participant p = project.getParticipantById(in.readInt());
+                    ModelChange.Property property = ModelChange.Property.values()[in.readByte()];
+                    Object value = value(in, property);
+                    if(p == null) break;
+
+                    if(property == ModelChange.Property.NAME) p.setName((String) value);
+                    else if(property == ModelChange.Property.ROLE) p.setRole((String) value);
+                    else if(property == ModelChange.Property.COLOR) p.setColor(color((Integer) value));
+                    break;
+                }
+                case PLACE: {
+                    int id = in.readInt();
+                    int parentId = in.readInt();
+                    int index = in.readInt();
+                    Entry e = in.readBoolean() ? subtree(in, project) : project.getEntryById(id);
+                    Entry parent = parentId == 0 ? null : project.getEntryById(parentId);
+                    if(e != null && (parentId == 0 || parent != null))
+                        project.insertEntry(e, parent, index);
+                    break;
+                }
+                case REMOVE: {
+                    Entry e = project.getEntryById(in.readInt());
+                    if(e != null)
+                        project.deleteEntry(e);
+                    break;
+                }
+                case ADD_PARTICIPANT: {
+                    int id = in.readInt();
+                    in.readInt();
+                    Participant p = new Participant(string(in), string(in), null, string(in));
+                    p.setColor(color(in.readInt()));
+                    p.setId(id);
+                    if(project.getParticipantById(id) == null)
+                        project.addParticipants(p);
+                    break;
+                }
+                case REMOVE_PARTICIPANT: {
+                    Participant p = project.getParticipantById(in.readInt());
+                    if(p != null)
+                        project.removeParticipant(p);
+                    break;
+                }
+                case 0:
+                    break;
+                default:
+                    throw new IOException("Unknown journal operation " + op + ".");
+            }
+        }
+    }
+
+    private static void setEntryProperty(Project project, Entry e, ModelChange.Property property, Object value) {
+        switch(property) {
+            case NAME:              e.setName((String) value); break;
+            case DESCRIPTION:       e.setDescription((String) value); break;
+            case START:             e.setStartMinutes((Long) value, false); break;
+            case END:               e.setEndMinutes((Long) value, false); break;
+            case PERCENT_COMPLETE:  e.setPercentComplete((Integer) value); break;
+            case LAST_MODIFIED_BY:  e.setLastModifiedBy(project.getParticipantById((Integer) value)); break;
+            case ATTACHMENTS:       e.setAttachments(attachments(value)); break;
+            case ASSIGNED_TO:
+                if(e.getAssignedTo() != null) e.getAssignedTo().removeAssignment(e);
+                Participant p = project.getParticipantById((Integer) value);
+                if(p != null) e.assignTo(p);
+                else e.setAssignedTo(null);
+                break;
+        }
+    }
+
+    private static void property(DataOutputStream out, ModelChange.Property property, Object value) throws IOException {
+        out.writeByte(property.ordinal());
+        switch(property) {
+            case START:
+            case END:
+                out.writeLong((Long) value);
+                break;
+            case PERCENT_COMPLETE:
+                out.writeInt((Integer) value);
+                break;
+            case ASSIGNED_TO:
+            case LAST_MODIFIED_BY:
+                out.writeInt(value == null ? 0 : ((Participant) value).getId());
+                break;
+            case COLOR:
+                out.writeInt(ProjectWriter.toArgb((String) value));
+                break;
+            case ATTACHMENTS:
+                attachments(out, attachments(value));
+                break;
+            default:
+                string(out, (String) value);
+        }
+    }
+
+    private static Object value(DataInputStream in, ModelChange.Property property) throws IOException {
+        switch(property) {
+            case START:
+            case END:
+                return in.readLong();
+            case PERCENT_COMPLETE:
+            case ASSIGNED_TO:
+            case LAST_MODIFIED_BY:
+            case COLOR:
+                return in.readInt();
+            case ATTACHMENTS:
+                return attachments(in);
+            default:
+                return string(in);
+        }
+    }
+
+    /**
+     * Writes an Entry and all of its descendants, pre-order, each with its number of sub-entries.
+     */
+    private static void subtree(DataOutputStream out, Entry root) throws IOException {
+        out.writeInt(root.getDescendantCount() + 1);
+        for(Entry e : root.preOrder()) {
+            out.writeInt(e.getId());
+            out.writeInt(e.getSubEntries().size());
+            string(out, e.getName());
+            string(out, e.getDescription());
+            out.writeLong(e.getStartMinutes());
+            out.writeLong(e.getEndMinutes());
+            out.writeInt(e.getPercentComplete());
+            out.writeInt(e.getAssignedTo() == null ? 0 : e.getAssignedTo().getId());
+            out.writeInt(e.getLastModifiedBy() == null ? 0 : e.getLastModifiedBy().getId());
+            attachments(out, e.getAttachments());
+        }
+    }
+
+    /**
+     * Reads a subtree written by {@link #subtree(DataOutputStream, Entry)}, assembling it bottom-up. If the root is
+     * already in the Project, the record is being replayed a second time: the contents are skipped, and the Entry that
+     * is already there is returned.
+     */
+    private static Entry subtree(DataInputStream in, Project project) throws IOException {
+        int count = in.readInt();
+        Deque<Entry> open = new ArrayDeque<>();
+        Deque<int[]> remaining = new ArrayDeque<>();
+        Entry root = null;
+
+        for(int i = 0; i < count; i++) {
+            int id = in.readInt();
+            int children = in.readInt();
+            Entry e = new Entry(string(in), DateTime.ofEpochMinutes(0), DateTime.ofEpochMinutes(0));
+            e.setDescription(string(in));
+            e.setStartMinutes(in.readLong(), false);
+            e.setEndMinutes(in.readLong(), false);
+            e.setPercentComplete(in.readInt());
+            Participant assignee = project.getParticipantById(in.readInt());
+            if(assignee != null) e.assignTo(assignee);
+            e.setLastModifiedBy(project.getParticipantById(in.readInt()));
+            e.setAttachments(attachments(in));
+            e.setId(id);
+
+            if(children > 0) {
+                open.push(e);
+                remaining.push(new int[] {children});
+                continue;
+            }
+
+            while(true) {
+                if(open.isEmpty()) {
+                    root = e;
+                    break;
+                }
+
+                open.peek().addSubEntry(e);
+                if(--remaining.peek()[0] > 0)
+                    break;
+
+                e = open.pop();
+                remaining.pop();
+            }
+        }
+
+        if(root == null)
+            throw new IOException("Truncated subtree.");
+
+        Entry existing = project.getEntryById(root.getId());
+        if(existing != null) {
+            for(Entry sub : root.preOrder())
+                if(sub.getAssignedTo() != null) sub.getAssignedTo().removeAssignment(sub);
+            return existing;
+        }
+
+        return root;
+    }
+
+    static void string(DataOutputStream out, String s) throws IOException {
+        out.writeBoolean(s != null);
+        if(s != null)
+            out.writeUTF(s);
+    }
+
+    static String string(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    static void attachments(DataOutputStream out, List<Attachment> attachments) throws IOException {
+        out.writeInt(attachments.size());
+        for(Attachment a : attachments) {
+            out.write(BlobStore.unhex(a.getHash()));
+            string(out, a.getName());
+            out.writeLong(a.getSize());
+        }
+    }
+
+    static List<Attachment> attachments(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<Attachment> attachments = new ArrayList<>(count);
+        for(int i = 0; i < count; i++) {
+            byte[] hash = new byte[32];
+            in.readFully(hash);
+            attachments.add(new Attachment(BlobStore.hex(hash), string(in), in.readLong()));
+        }
+        return attachments;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Attachment> attachments(Object value) {
+        return (List<Attachment>) value;
+    }
+
+    /**
+     * @param argb a color as an ARGB int, or 0 for none
+     * @return the color as a hex code, "#rrggbb" if it is opaque and "#rrggbbaa" if not, or null for 0
+     */
+    static String color(int argb) {
+        if(argb == 0)
+            return null;
+
+        return argb >>> 24 == 0xFF ? String.format("#%06x", argb & 0xFFFFFF)
+                : String.format("#%08x", argb << 8 | argb >>> 24);
+    }
+}
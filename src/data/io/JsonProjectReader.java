@@ -0,0 +1,362 @@
+package data.io;
+
+import data.Attachment;
+import data.DateTime;
+import data.Entry;
+import data.Participant;
+import data.Project;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Imports Projects from JSON (see {@link JsonProjectWriter} for the layout).
+ *
+ * The document is read token by token, and the Entry hierarchy is rebuilt as it is read: each Entry is added to its
+ * parent as soon as it is complete, so the reader itself only holds one small frame per level of depth. Unknown fields
+ * are skipped, fields may come in any order, and dates may be ISO-8601 instants or plain epoch minutes. Colors may be
+ * in any of the common CSS forms (see {@link #color(String)}). Assignments are resolved on the fly; one that refers to
+ * a Participant further down the document waits until it shows up.
+ *
+ * @author Al-John
+ */
+public final class JsonProjectReader {
+
+    //the basic CSS color keywords, by name
+    private static final Map<String, String> NAMED_COLORS = new HashMap<>();
+    static {
+        String[] named = { "black", "000000", "silver", "c0c0c0", "gray", "808080", "grey", "808080", "white",
+                "ffffff", "maroon", "800000", "red", "ff0000", "purple", "800080", "fuchsia", "ff00ff", "green",
+                "008000", "lime", "00ff00", "olive", "808000", "yellow", "ffff00", "navy", "000080", "blue", "0000ff",
+                "teal", "008080", "aqua", "00ffff", "orange", "ffa500", "transparent", "00000000" };
+        for(int i = 0; i < named.length; i += 2)
+            NAMED_COLORS.put(named[i], "#" + named[i + 1]);
+    }
+
+    private final JsonReader in;
+    private final Map<Integer, Participant> participants = new HashMap<>();
+    private final Map<Integer, List<Entry>> waitingForAssignee = new HashMap<>();
+    private final Map<Integer, List<Entry>> waitingForModifier = new HashMap<>();
+
+    private JsonProjectReader(Reader in) {
+        this.in = new JsonReader(in);
+    }
+
+    /**
+     * Imports a Project from a JSON file (UTF-8).
+     * @param file the file
+     * @return the Project
+     * @throws IOException if the file can't be read or isn't a valid project
+     */
+    public static Project read(Path file) throws IOException {
+        try(Reader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return read(in);
+        }
+    }
+
+    /**
+     * Imports a Project from JSON. The Reader is not closed.
+     * @param in the Reader
+     * @return the Project
+     * @throws IOException if reading fails, or the input isn't a valid project
+     */
+    public static Project read(Reader in) throws IOException {
+        return new JsonProjectReader(in).project();
+    }
+
+    private Project project() throws IOException {
+        Project project = new Project("", new DateTime(), new DateTime());
+
+        in.beginObject();
+        while(in.hasNext()) {
+            String key = in.nextName();
+            switch(key) {
+                case "version":
+                    if(in.nextInt() > JsonProjectWriter.VERSION)
+                        throw new IOException("The project was exported by a newer version.");
+                    break;
+                case "name":            project.setName(string()); break;
+                case "start":           project.setStart(DateTime.ofEpochMinutes(date())); break;
+                case "end":             project.setEnd(DateTime.ofEpochMinutes(date())); break;
+                case "participants":    participants(project); break;
+                case "entries":         entries(project); break;
+                default:                in.skipValue(); break;
+            }
+        }
+        in.endObject();
+
+        return project;
+    }
+
+    private void participants(Project project) throws IOException {
+        in.beginArray();
+        while(in.hasNext()) {
+            int id = 0;
+            String name = null, initials = null, role = null;
+            String color = null;
+
+            in.beginObject();
+            while(in.hasNext()) {
+                switch(in.nextName()) {
+                    case "id":          id = in.nextInt(); break;
+                    case "name":        name = string(); break;
+                    case "initials":    initials = string(); break;
+                    case "role":        role = string(); break;
+                    case "color":       color = color(string()); break;
+                    default:            in.skipValue(); break;
+                }
+            }
+            in.endObject();
+
+            Participant p;
+            try {
+                p = new Participant(name, initials, color, role);
+            } catch(IllegalArgumentException e) {
+                throw new IOException(e.getMessage());
+            }
+            p.setId(id);
+            project.addParticipants(p);
+            participants.put(id, p);
+
+            //assignments that were read before this Participant
+            List<Entry> waiting = waitingForAssignee.remove(id);
+            if(waiting != null) waiting.forEach(e -> e.assignTo(p));
+            waiting = waitingForModifier.remove(id);
+            if(waiting != null) waiting.forEach(e -> e.setLastModifiedBy(p));
+        }
+        in.endArray();
+    }
+
+    /**
+     * Reads the top-level entries array, and every Entry below it, with an explicit stack of open Entries.
+     */
+    private void entries(Project project) throws IOException {
+        Deque<Frame> open = new ArrayDeque<>();
+        boolean inArray = true;         //positioned inside an entries or subEntries array (vs. inside an Entry)
+        in.beginArray();
+
+        while(true) {
+            if(inArray) {
+                if(in.hasNext()) {
+                    in.beginObject();
+                    open.push(new Frame());
+                    inArray = false;
+                    continue;
+                }
+
+                in.endArray();
+                if(open.isEmpty())
+                    return;
+
+                inArray = false;        //back to the rest of the parent's fields
+                continue;
+            }
+
+            Frame f = open.peek();
+            if(in.hasNext()) {
+                String key = in.nextName();
+                if(key.equals("subEntries")) {
+                    f.materialize();
+                    in.beginArray();
+                    inArray = true;
+                }
+                else {
+                    f.read(key);
+                }
+                continue;
+            }
+
+            //this Entry is complete: hand it to its parent (or the Project), then carry on with its siblings
+            in.endObject();
+            Entry e = open.pop().materialize();
+            if(open.isEmpty())
+                project.addEntry(e);
+            else
+                open.peek().entry.addSubEntry(e);
+            inArray = true;
+        }
+    }
+
+    private String string() throws IOException {
+        return in.nextIsNull() ? null : in.nextString();
+    }
+
+    private long date() throws IOException {
+        if(!in.nextIsString())
+            return in.nextLong();
+
+        String s = in.nextString();
+        try {
+            return Math.floorDiv(Instant.parse(s).getEpochSecond(), 60);
+        } catch(DateTimeParseException e) {
+            throw new IOException("Bad date \"" + s + "\".");
+        }
+    }
+
+    /**
+     * Turns a color written by another producer into the hex code the model keeps ("#rrggbb", or "#rrggbbaa"). Takes
+     * "#rgb", "#rgba", "#rrggbb" and "#rrggbbaa" (with "#", "0x" or nothing in front), "rgb(r, g, b)" and
+     * "rgba(r, g, b, a)" (with numbers or percentages, and an alpha from 0 to 1), and the basic CSS color names.
+     */
+    private static String color(String css) throws IOException {
+        if(css == null)
+            return null;
+
+        String s = css.trim().toLowerCase();
+        if(NAMED_COLORS.containsKey(s))
+            return NAMED_COLORS.get(s);
+
+        try {
+            if(s.startsWith("rgb(") || s.startsWith("rgba(")) {
+                if(!s.endsWith(")"))
+                    throw new IOException("Bad color \"" + css + "\".");
+                String[] parts = s.substring(s.indexOf('(') + 1, s.length() - 1).split(",");
+                if(parts.length != (s.startsWith("rgba(") ? 4 : 3))
+                    throw new IOException("Bad color \"" + css + "\".");
+
+                StringBuilder hex = new StringBuilder("#");
+                for(int i = 0; i < parts.length; i++) {
+                    String part = parts[i].trim();
+                    double value = part.endsWith("%") ? Double.parseDouble(part.substring(0, part.length() - 1)) / 100
+                            : i == 3 ? Double.parseDouble(part) : Double.parseDouble(part) / 255;
+                    int channel = (int) Math.round(Math.max(0, Math.min(1, value)) * 255);
+                    hex.append(Character.forDigit(channel >> 4, 16)).append(Character.forDigit(channel & 0xF, 16));
+                }
+                return hex.toString();
+            }
+        } catch(NumberFormatException e) {
+            throw new IOException("Bad color \"" + css + "\".");
+        }
+
+        String digits = s.startsWith("#") ? s.substring(1) : s.startsWith("0x") ? s.substring(2) : s;
+        if(!digits.matches("\\p{XDigit}{3,4}|\\p{XDigit}{6}|\\p{XDigit}{8}"))
+            throw new IOException("Bad color \"" + css + "\".");
+        if(digits.length() <= 4) {
+            StringBuilder doubled = new StringBuilder();
+            for(char c : digits.toCharArray())
+                doubled.append(c).append(c);
+            digits = doubled.toString();
+        }
+        return "#" + digits;
+    }
+
+    private void assign(Entry e, int id, Map<Integer, List<Entry>> waiting, boolean assignee) {
+        Participant p = participants.get(id);
+        if(p == null)
+            waiting.computeIfAbsent(id, k -> new ArrayList<>()).add(e);
+        else if(assignee)
+            e.assignTo(p);
+        else
+            e.setLastModifiedBy(p);
+    }
+
+    private List<Attachment> attachments() throws IOException {
+        List<Attachment> attachments = new ArrayList<>();
+        in.beginArray();
+        while(in.hasNext()) {
+            String hash = null, name = null;
+            long size = 0;
+
+            in.beginObject();
+            while(in.hasNext()) {
+                switch(in.nextName()) {
+                    case "sha256":      hash = string(); break;
+                    case "name":        name = string(); break;
+                    case "size":        size = in.nextLong(); break;
+                    default:            in.skipValue(); break;
+                }
+            }
+            in.endObject();
+
+            try {
+                attachments.add(new Attachment(hash, name, size));
+            } catch(IllegalArgumentException e) {
+                throw new IOException(e.getMessage());
+            }
+        }
+        in.endArray();
+        return attachments;
+    }
+
+    /**
+     * An Entry being read. Its fields are collected until the Entry is needed (when its sub-entries start, or when it
+     * ends), and set directly from then on.
+     */
+    private final class Frame {
+        Entry entry;
+        int id;
+        String name = "", description;
+        long start, end;
+        int percent, assignedTo, lastModifiedBy;
+        List<Attachment> attachments;
+
+        void read(String key) throws IOException {
+            switch(key) {
+                case "id":
+                    id = in.nextInt();
+                    if(entry != null) entry.setId(id);
+                    break;
+                case "name":
+                    name = string();
+                    if(entry != null) entry.setName(name);
+                    break;
+                case "description":
+                    description = string();
+                    if(entry != null) entry.setDescription(description);
+                    break;
+                case "start":
+                    start = date();
+                    if(entry != null) entry.setStartMinutes(start, false);
+                    break;
+                case "end":
+                    end = date();
+                    if(entry != null) entry.setEndMinutes(end, false);
+                    break;
+                case "percentComplete":
+                    percent = in.nextInt();
+                    if(entry != null) entry.setPercentComplete(percent);
+                    break;
+                case "assignedTo":
+                    assignedTo = in.nextIsNull() ? 0 : in.nextInt();
+                    if(entry != null && assignedTo != 0) assign(entry, assignedTo, waitingForAssignee, true);
+                    break;
+                case "lastModifiedBy":
+                    lastModifiedBy = in.nextIsNull() ? 0 : in.nextInt();
+                    if(entry != null && lastModifiedBy != 0) assign(entry, lastModifiedBy, waitingForModifier, false);
+                    break;
+                case "attachments":
+                    attachments = attachments();
+                    if(entry != null) entry.setAttachments(attachments);
+                    break;
+                default:
+                    in.skipValue();
+                    break;
+            }
+        }
+
+        Entry materialize() {
+            if(entry != null)
+                return entry;
+
+            entry = new Entry(name, DateTime.ofEpochMinutes(start), DateTime.ofEpochMinutes(end));
+            entry.setId(id);
+            if(description != null) entry.setDescription(description);
+            if(percent != 0) entry.setPercentComplete(percent);
+            if(assignedTo != 0) assign(entry, assignedTo, waitingForAssignee, true);
+            if(lastModifiedBy != 0) assign(entry, lastModifiedBy, waitingForModifier, false);
+            if(attachments != null) entry.setAttachments(attachments);
+            return entry;
+        }
+    }
+}
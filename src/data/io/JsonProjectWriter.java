@@ -0,0 +1,201 @@
+package data.io;
+
+import data.Attachment;
+import data.Entry;
+import data.Participant;
+import data.Project;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+
+/**
+ * Exports Projects as JSON, for exchanging plans with other tools. The document looks like:
+ *
+ * <pre>
+ * {"format":"planamity","version":1,"name":"...","start":"2018-07-01T04:00:00Z","end":"...",
+ *  "participants":[{"id":1,"name":"...","initials":"...","role":"...","color":"#0000ffff"}, ...],
+ *  "entries":[{"id":1,"name":"...","description":"...","start":"...","end":"...","percentComplete":0,
+ *              "assignedTo":1,"lastModifiedBy":2,"attachments":[{"sha256":"...","name":"...","size":0}, ...],
+ *              "subEntries":[...]}, ...]}
+ * </pre>
+ *
+ * Dates are ISO-8601 instants. Attachments are written as references only (see {@link BlobStore}). The Entry hierarchy is written while it is walked (with an explicit stack), straight
+ * to the Writer; nothing is built up in memory, however large the Project is.
+ *
+ * @author Al-John
+ */
+public final class JsonProjectWriter {
+
+    static final String FORMAT = "planamity";
+    static final int VERSION = 1;
+
+    private final Writer out;
+
+    private JsonProjectWriter(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * Exports a Project to a JSON file (UTF-8).
+     * @param project the Project
+     * @param file the file
+     * @throws IOException if the file couldn't be written
+     */
+    public static void write(Project project, Path file) throws IOException {
+        try(Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            write(project, out);
+        }
+    }
+
+    /**
+     * Exports a Project as JSON. The Writer is flushed, but not closed.
+     * @param project the Project
+     * @param out the Writer
+     * @throws IOException if writing fails
+     */
+    public static void write(Project project, Writer out) throws IOException {
+        Writer buffered = out instanceof BufferedWriter ? out : new BufferedWriter(out, 1 << 16);
+        new JsonProjectWriter(buffered).project(project);
+        buffered.flush();
+    }
+
+    private void project(Project project) throws IOException {
+        out.write("{\"format\":");
+        string(FORMAT);
+        out.write(",\"version\":");
+        out.write(Integer.toString(VERSION));
+        field("name", project.getName());
+        date("start", project.getStart().getEpochMinutes());
+        date("end", project.getEnd().getEpochMinutes());
+
+        out.write(",\"participants\":[");
+        boolean first = true;
+        for(Participant p : project.getParticipants()) {
+            if(!first) out.write(',');
+            first = false;
+
+            out.write("\n{\"id\":");
+            out.write(Integer.toString(p.getId()));
+            field("name", p.getName());
+            field("initials", p.getInitials());
+            field("role", p.getRole());
+            field("color", p.getColor());
+            out.write('}');
+        }
+
+        out.write("],\"entries\":[");
+        entries(project.getEntries().iterator());
+        out.write("]}\n");
+    }
+
+    /**
+     * Writes a run of sibling Entries and all of their descendants, pre-order.
+     */
+    private void entries(Iterator<Entry> roots) throws IOException {
+        Deque<Iterator<Entry>> pending = new ArrayDeque<>();
+        pending.push(roots);
+        boolean first = true;
+
+        while(!pending.isEmpty()) {
+            Iterator<Entry> siblings = pending.peek();
+            if(!siblings.hasNext()) {
+                pending.pop();
+                if(!pending.isEmpty())
+                    out.write("]}");        //closes the subEntries of the parent, and the parent
+                first = false;
+                continue;
+            }
+
+            Entry e = siblings.next();
+            if(!first) out.write(',');
+            first = false;
+
+            out.write("\n{\"id\":");
+            out.write(Integer.toString(e.getId()));
+            field("name", e.getName());
+            field("description", e.getDescription());
+            date("start", e.getStartMinutes());
+            date("end", e.getEndMinutes());
+            out.write(",\"percentComplete\":");
+            out.write(Integer.toString(e.getPercentComplete()));
+            if(e.getAssignedTo() != null) {
+                out.write(",\"assignedTo\":");
+                out.write(Integer.toString(e.getAssignedTo().getId()));
+            }
+            if(e.getLastModifiedBy() != null) {
+                out.write(",\"lastModifiedBy\":");
+                out.write(Integer.toString(e.getLastModifiedBy().getId()));
+            }
+            if(e.hasAttachments()) {
+                out.write(",\"attachments\":[");
+                for(int i = 0; i < e.getAttachments().size(); i++) {
+                    Attachment a = e.getAttachments().get(i);
+                    out.write(i == 0 ? "{\"sha256\":" : ",{\"sha256\":");
+                    string(a.getHash());
+                    field("name", a.getName());
+                    out.write(",\"size\":");
+                    out.write(Long.toString(a.getSize()));
+                    out.write('}');
+                }
+                out.write(']');
+            }
+
+            if(e.getSubEntries().isEmpty()) {
+                out.write('}');
+            }
+            else {
+                out.write(",\"subEntries\":[");
+                pending.push(e.getSubEntries().iterator());
+                first = true;
+            }
+        }
+    }
+
+    private void field(String name, String value) throws IOException {
+        out.write(',');
+        string(name);
+        out.write(':');
+        if(value == null)
+            out.write("null");
+        else
+            string(value);
+    }
+
+    private void date(String name, long minutes) throws IOException {
+        field(name, Instant.ofEpochSecond(minutes * 60).toString());
+    }
+
+    private void string(String s) throws IOException {
+        out.write('"');
+        int run = 0;
+        for(int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            String esc = null;
+            switch(c) {
+                case '"':  esc = "\\\""; break;
+                case '\\': esc = "\\\\"; break;
+                case '\n': esc = "\\n"; break;
+                case '\r': esc = "\\r"; break;
+                case '\t': esc = "\\t"; break;
+                default:
+                    if(c < 0x20) esc = String.format("\\u%04x", (int) c);
+            }
+
+            if(esc != null) {
+                out.write(s, run, i - run);
+                out.write(esc);
+                run = i + 1;
+            }
+        }
+        out.write(s, run, s.length() - run);
+        out.write('"');
+    }
+}
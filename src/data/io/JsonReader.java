@@ -0,0 +1,202 @@
+package data.io;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * A minimal pull parser for JSON. It reads one token at a time from a Reader through a small fixed buffer, so its
+ * memory use doesn't depend on the size of the input; callers walk the document with explicit stacks of their own.
+ *
+ * The parser is lenient about separators: commas and colons are skipped wherever they appear.
+ *
+ * @author Al-John
+ */
+final class JsonReader {
+
+    private final Reader in;
+    private final char[] buf = new char[1 << 13];
+    private int pos, limit;
+    private long offset;        //number of chars consumed before buf[0], for error messages
+    private final StringBuilder scratch = new StringBuilder();
+
+    JsonReader(Reader in) {
+        this.in = in;
+    }
+
+    void beginObject() throws IOException { expect('{'); }
+
+    void endObject() throws IOException { expect('}'); }
+
+    void beginArray() throws IOException { expect('['); }
+
+    void endArray() throws IOException { expect(']'); }
+
+    /**
+     * @return true if the current object or array has another member
+     */
+    boolean hasNext() throws IOException {
+        int c = peek();
+        return c != '}' && c != ']' && c != -1;
+    }
+
+    /**
+     * @return true if the next value is null (which is then consumed)
+     */
+    boolean nextIsNull() throws IOException {
+        if(peek() != 'n')
+            return false;
+
+        literal("null");
+        return true;
+    }
+
+    /**
+     * @return true if the next value is a string
+     */
+    boolean nextIsString() throws IOException {
+        return peek() == '"';
+    }
+
+    String nextName() throws IOException {
+        return nextString();
+    }
+
+    String nextString() throws IOException {
+        expect('"');
+        scratch.setLength(0);
+        while(true) {
+            int c = read();
+            if(c == -1)
+                throw error("Unterminated string");
+            if(c == '"')
+                return scratch.toString();
+
+            if(c != '\\') {
+                scratch.append((char) c);
+                continue;
+            }
+
+            int esc = read();
+            switch(esc) {
+                case '"': case '\\': case '/': scratch.append((char) esc); break;
+                case 'b': scratch.append('\b'); break;
+                case 'f': scratch.append('\f'); break;
+                case 'n': scratch.append('\n'); break;
+                case 'r': scratch.append('\r'); break;
+                case 't': scratch.append('\t'); break;
+                case 'u':
+                    int code = 0;
+                    for(int i = 0; i < 4; i++) {
+                        int d = Character.digit(read(), 16);
+                        if(d < 0)
+                            throw error("Bad unicode escape");
+                        code = code << 4 | d;
+                    }
+                    scratch.append((char) code);
+                    break;
+                default:
+                    throw error("Bad escape");
+            }
+        }
+    }
+
+    long nextLong() throws IOException {
+        int c = peek();
+        if(c != '-' && (c < '0' || c > '9'))
+            throw error("Expected a number");
+
+        scratch.setLength(0);
+        while((c = peekRaw()) != -1 && (c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E' || (c >= '0' && c <= '9'))) {
+            scratch.append((char) c);
+            pos++;
+        }
+
+        String number = scratch.toString();
+        try {
+            return Long.parseLong(number);
+        } catch(NumberFormatException e) {
+            try {
+                return Math.round(Double.parseDouble(number));
+            } catch(NumberFormatException again) {
+                throw error("Bad number " + number);
+            }
+        }
+    }
+
+    int nextInt() throws IOException {
+        return (int) nextLong();
+    }
+
+    /**
+     * Skips the next value, however deeply nested.
+     */
+    void skipValue() throws IOException {
+        int depth = 0;
+        do {
+            int c = peek();
+            switch(c) {
+                case '{': case '[': pos++; depth++; break;
+                case '}': case ']': pos++; depth--; break;
+                case '"': nextString(); break;
+                case 't': literal("true"); break;
+                case 'f': literal("false"); break;
+                case 'n': literal("null"); break;
+                case -1: throw error("Unexpected end of input");
+                default: nextLong(); break;
+            }
+        } while(depth > 0);
+    }
+
+    private void literal(String word) throws IOException {
+        peek();
+        for(int i = 0; i < word.length(); i++)
+            if(read() != word.charAt(i))
+                throw error("Expected " + word);
+    }
+
+    private void expect(char c) throws IOException {
+        if(peek() != c)
+            throw error("Expected '" + c + "'");
+        pos++;
+    }
+
+    /**
+     * Returns the next significant char without consuming it, skipping whitespace and separators.
+     */
+    private int peek() throws IOException {
+        while(true) {
+            int c = peekRaw();
+            if(c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == ',' || c == ':')
+                pos++;
+            else
+                return c;
+        }
+    }
+
+    private int peekRaw() throws IOException {
+        if(pos == limit && !fill())
+            return -1;
+        return buf[pos];
+    }
+
+    private int read() throws IOException {
+        if(pos == limit && !fill())
+            return -1;
+        return buf[pos++];
+    }
+
+    private boolean fill() throws IOException {
+        offset += limit;
+        pos = limit = 0;
+        int n = in.read(buf, 0, buf.length);
+        if(n <= 0)
+            return false;
+
+        limit = n;
+        return true;
+    }
+
+    private IOException error(String message) {
+        return new IOException(message + " at offset " + (offset + pos) + ".");
+    }
+}
@@ -0,0 +1,128 @@
+package data.io;
+
+import data.Entry;
+import data.SubtreeSource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reads the sub-entries of a lazily opened Project from its file (see {@link ProjectReader#readProjectLazily()}), one
+ * level at a time, and keeps track of what has been read so it can be dropped again.
+ *
+ * Subtrees are dropped, least recently read first, when more Entries have been read than the budget allows, or when
+ * memory runs short (detected through a softly referenced canary, which the garbage collector clears before the heap
+ * is exhausted). Only subtrees that are unchanged and not in use can go (see {@link Entry#unloadSubEntries()}), and
+ * never the one that is being read into.
+ *
+ * @author Al-John
+ */
+final class LazySubtrees implements SubtreeSource {
+
+    /** The number of Entries read from the file that may stay in memory, by default. */
+    static final int DEFAULT_BUDGET = 200_000;
+
+    private final ProjectReader reader;
+    private final int budget;
+
+    //the Entries whose sub-entries were read from the file, least recently read first, with how many were read
+    private final Map<Entry, Integer> loaded = new LinkedHashMap<>();
+    private int loadedCount;
+    private SoftReference<Object> canary = new SoftReference<>(new Object());
+
+    LazySubtrees(ProjectReader reader, int budget) {
+        this.reader = reader;
+        this.budget = budget;
+    }
+
+    /**
+     * Materializes the Entry with a specified record index, deferring its sub-entries to this source.
+     * @param record the record index
+     * @return the Entry
+     * @throws IOException if the file is damaged
+     */
+    Entry read(int record) throws IOException {
+        Entry e = reader.readEntry(record);
+        if(reader.childCount(record) > 0)
+            e.deferSubEntries(this, record, reader.summarize(record));
+        return e;
+    }
+
+    /**
+     * {@inheritDoc}
+     * @throws UncheckedIOException if the file is damaged (or was changed while the Project was open)
+     */
+    @Override
+    public List<Entry> loadSubEntries(Entry parent, int key) {
+        List<Entry> subs;
+        int children;
+        try {
+            children = reader.childCount(key);
+            trim(parent, children);
+
+            subs = new ArrayList<>(children);
+            int end = key + reader.subtreeSize(key);
+            for(int record = key + 1, n = 0; n < children; n++, record += reader.subtreeSize(record) + 1) {
+                if(record > end)
+                    throw new IOException("The sub-entries of " + parent.getName() + " are damaged in the file.");
+                subs.add(read(record));
+            }
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        loaded.put(parent, children);
+        loadedCount += children;
+        return subs;
+    }
+
+    /**
+     * Drops subtrees to make room for a number of Entries about to be read: as many as it takes to stay within the
+     * budget, or every one that can go if memory is short.
+     * @param reading the Entry being read into, which (with its ancestors) must stay
+     * @param incoming the number of Entries about to be read
+     */
+    private void trim(Entry reading, int incoming) {
+        boolean pressure = canary.get() == null;
+        if(pressure)
+            canary = new SoftReference<>(new Object());
+        if(!pressure && loadedCount + incoming <= budget)
+            return;
+
+        Set<Entry> keep = Collections.newSetFromMap(new IdentityHashMap<>());
+        for(Entry a = reading; a != null; a = a.getParent()) keep.add(a);
+
+        int target = pressure ? 0 : budget - incoming;
+        Iterator<Map.Entry<Entry, Integer>> it = loaded.entrySet().iterator();
+        while(loadedCount > target && it.hasNext()) {
+            Map.Entry<Entry, Integer> m = it.next();
+            Entry e = m.getKey();
+            if(keep.contains(e))
+                continue;
+
+            if(e.getProject() == null || !e.isLoaded() || e.unloadSubEntries()) {
+                it.remove();
+                loadedCount -= m.getValue();
+            }
+        }
+
+        //whatever was below a dropped subtree went with it
+        it = loaded.entrySet().iterator();
+        while(it.hasNext()) {
+            Map.Entry<Entry, Integer> m = it.next();
+            if(m.getKey().getProject() == null || !m.getKey().isLoaded()) {
+                it.remove();
+                loadedCount -= m.getValue();
+            }
+        }
+    }
+}
@@ -0,0 +1,447 @@
+package data.io;
+
+import data.Attachment;
+import data.DateTime;
+import data.Entry;
+import data.Participant;
+import data.Project;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Compact deltas between two versions of a Project, so that a small change can be handed on (or kept) without the
+ * whole project file.
+ *
+ * A delta is computed by comparing a base version with a target version, matching Entries and Participants by ID: it
+ * holds the Entries that were added (with their contents), removed (once per removed subtree) or moved, and only the
+ * fields that changed on the others. Its size depends on how much changed, not on how large the Project is. A move is
+ * only recorded for an Entry that really changed places: among siblings that stayed under the same parent, the longest
+ * run that kept its order stays put, so inserting one Entry doesn't move all of the ones after it.
+ *
+ * Applying a delta patches a copy of the base version forward into the target version, in one transaction.
+ *
+ * <pre>
+ * int magic ("PAMD"), short version, int base entry count, int target entry count, int operation count, operations:
+ *     PROJECT             name, start, end
+ *     ADD_PARTICIPANT     id, name, initials, role, color
+ *     PARTICIPANT         id, name, role, color
+ *     PLACE               id, parent id, id of the sibling it follows (0 for none), new?, (if new) all fields
+ *     FIELDS              id, field mask, the fields in the mask
+ *     REMOVE              id
+ *     REMOVE_PARTICIPANT  id
+ * </pre>
+ * Operations come in that order; places and fields follow a pre-order walk of the target, so parents are always in
+ * place before their sub-entries.
+ *
+ * @author Al-John
+ */
+public final class ProjectDelta {
+
+    static final int MAGIC = 0x50414D44;        //"PAMD"
+    static final short VERSION = 1;
+
+    //operations
+    private static final byte PROJECT = 1, ADD_PARTICIPANT = 2, PARTICIPANT = 3, PLACE = 4, FIELDS = 5, REMOVE = 6,
+            REMOVE_PARTICIPANT = 7;
+
+    //fields
+    private static final int NAME = 1, DESCRIPTION = 1 << 1, START = 1 << 2, END = 1 << 3, PERCENT = 1 << 4,
+            ASSIGNED_TO = 1 << 5, LAST_MODIFIED_BY = 1 << 6, ATTACHMENTS = 1 << 7, ALL = (1 << 8) - 1;
+
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+    private final DataOutputStream out = new DataOutputStream(bytes);
+    private int count;
+
+    private ProjectDelta() {}
+
+    /**
+     * Computes the delta that takes one version of a Project to another.
+     * @param base the earlier version
+     * @param target the later version
+     * @return the delta
+     */
+    public static byte[] diff(Project base, Project target) {
+        try {
+            return new ProjectDelta().encode(base, target);
+        } catch(IOException e) {
+            throw new IllegalStateException(e);     //only writes to memory
+        }
+    }
+
+    /**
+     * Writes the delta that takes one version of a Project to another to a file.
+     * @param base the earlier version
+     * @param target the later version
+     * @param file the file
+     * @throws IOException if the file couldn't be written
+     */
+    public static void write(Project base, Project target, Path file) throws IOException {
+        Files.write(file, diff(base, target));
+    }
+
+    /**
+     * Applies a delta read from a file (see {@link #apply(Project, byte[])}).
+     * @param project the base version of the Project
+     * @param file the file
+     * @throws IOException if the file couldn't be read, or the delta doesn't apply to the Project
+     */
+    public static void apply(Project project, Path file) throws IOException {
+        apply(project, Files.readAllBytes(file));
+    }
+
+    /**
+     * Patches a Project forward by a delta, in one transaction. If the delta doesn't fit the Project (it was made
+     * against another base version), nothing is changed.
+     * @param project the base version of the Project
+     * @param delta the delta
+     * @throws IOException if the delta is malformed, or doesn't apply to the Project
+     */
+    public static void apply(Project project, byte[] delta) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(delta));
+        if(in.readInt() != MAGIC)
+            throw new IOException("Not a project delta.");
+        if(in.readShort() > VERSION)
+            throw new IOException("The delta was made by a newer version.");
+        if(in.readInt() != project.getTotalEntryCount())
+            throw new IOException("The delta was made against another version of the project.");
+        int expected = in.readInt();
+
+        //the name and dates of the Project aren't part of a transaction, so they are put back by hand
+        String name = project.getName();
+        DateTime start = project.getStart(), end = project.getEnd();
+
+        project.beginTransaction();
+        try {
+            for(int i = 0, n = in.readInt(); i < n; i++)
+                replay(project, in);
+            if(project.getTotalEntryCount() != expected)
+                throw new IOException("The delta was made against another version of the project.");
+            project.commit();
+        } catch(IOException | RuntimeException e) {
+            if(project.inTransaction())
+                project.rollback();
+            project.setName(name);
+            project.setStart(start);
+            project.setEnd(end);
+            throw e instanceof IOException ? (IOException) e : new IOException("The delta doesn't apply: "
+                    + e.getMessage(), e);
+        }
+    }
+
+    private byte[] encode(Project base, Project target) throws IOException {
+        if(!Objects.equals(base.getName(), target.getName()) || !base.getStart().equals(target.getStart())
+                || !base.getEnd().equals(target.getEnd())) {
+            op(PROJECT);
+            JournalCodec.string(out, target.getName());
+            out.writeLong(target.getStart().getEpochMinutes());
+            out.writeLong(target.getEnd().getEpochMinutes());
+        }
+
+        for(Participant p : target.getParticipants()) {
+            Participant old = base.getParticipantById(p.getId());
+            if(old == null) {
+                op(ADD_PARTICIPANT);
+                out.writeInt(p.getId());
+                JournalCodec.string(out, p.getName());
+                JournalCodec.string(out, p.getInitials());
+                JournalCodec.string(out, p.getRole());
+                out.writeInt(ProjectWriter.toArgb(p.getColor()));
+            }
+            else if(!Objects.equals(old.getName(), p.getName()) || !Objects.equals(old.getRole(), p.getRole())
+                    || !Objects.equals(old.getColor(), p.getColor())) {
+                op(PARTICIPANT);
+                out.writeInt(p.getId());
+                JournalCodec.string(out, p.getName());
+                JournalCodec.string(out, p.getRole());
+                out.writeInt(ProjectWriter.toArgb(p.getColor()));
+            }
+        }
+
+        entries(base, target);
+
+        //removed subtrees, once each: everything below a removed Entry goes with it (what was kept has been moved out)
+        Deque<Iterator<Entry>> pending = new ArrayDeque<>();
+        pending.push(base.getEntries().iterator());
+        while(!pending.isEmpty()) {
+            if(!pending.peek().hasNext()) {
+                pending.pop();
+                continue;
+            }
+
+            Entry b = pending.peek().next();
+            if(target.getEntryById(b.getId()) == null) {
+                op(REMOVE);
+                out.writeInt(b.getId());
+            }
+            else {
+                pending.push(b.getSubEntries().iterator());
+            }
+        }
+
+        for(Participant p : base.getParticipants()) {
+            if(target.getParticipantById(p.getId()) == null) {
+                op(REMOVE_PARTICIPANT);
+                out.writeInt(p.getId());
+            }
+        }
+
+        out.flush();
+        ByteArrayOutputStream delta = new ByteArrayOutputStream(bytes.size() + 18);
+        DataOutputStream header = new DataOutputStream(delta);
+        header.writeInt(MAGIC);
+        header.writeShort(VERSION);
+        header.writeInt(base.getTotalEntryCount());
+        header.writeInt(target.getTotalEntryCount());
+        header.writeInt(count);
+        bytes.writeTo(delta);
+        return delta.toByteArray();
+    }
+
+    /**
+     * Records the places and fields of the target's Entries, walking it in pre-order with an explicit stack.
+     */
+    private void entries(Project base, Project target) throws IOException {
+        Deque<List<Entry>> lists = new ArrayDeque<>();
+        Deque<Integer> positions = new ArrayDeque<>();
+        Deque<boolean[]> stables = new ArrayDeque<>();
+        lists.push(target.getEntries());
+        positions.push(0);
+        stables.push(stable(base, null, target.getEntries()));
+
+        while(!lists.isEmpty()) {
+            List<Entry> siblings = lists.peek();
+            int i = positions.pop();
+            if(i == siblings.size()) {
+                lists.pop();
+                stables.pop();
+                continue;
+            }
+            positions.push(i + 1);
+
+            Entry t = siblings.get(i);
+            Entry b = base.getEntryById(t.getId());
+            if(b == null || !stables.peek()[i]) {
+                op(PLACE);
+                out.writeInt(t.getId());
+                out.writeInt(t.getParent() == null ? 0 : t.getParent().getId());
+                out.writeInt(i == 0 ? 0 : siblings.get(i - 1).getId());
+                out.writeBoolean(b == null);
+                if(b == null)
+                    fields(t, ALL);
+            }
+
+            int changed = b == null ? 0 : changes(b, t);
+            if(changed != 0) {
+                op(FIELDS);
+                out.writeInt(t.getId());
+                fields(t, changed);
+            }
+
+            List<Entry> subs = t.getSubEntries();
+            if(!subs.isEmpty()) {
+                lists.push(subs);
+                positions.push(0);
+                stables.push(stable(base, t, subs));
+            }
+        }
+    }
+
+    /**
+     * Finds the siblings that can stay where they are: of the ones that were under the same parent in the base version,
+     * the longest run whose order didn't change (a longest increasing subsequence of their old positions).
+     * @return for each sibling, whether it stays put
+     */
+    private static boolean[] stable(Project base, Entry parent, List<Entry> siblings) {
+        int n = siblings.size();
+        int parentId = parent == null ? 0 : parent.getId();
+        int[] old = new int[n];
+        for(int i = 0; i < n; i++) {
+            Entry b = base.getEntryById(siblings.get(i).getId());
+            int bParent = b == null ? -1 : b.getParent() == null ? 0 : b.getParent().getId();
+            old[i] = bParent == parentId ? base.positionOf(b.getId()) : -1;
+        }
+
+        //patience sorting: tails[k] is the index of the smallest last element of an increasing run of length k +1
+        int[] tails = new int[n], previous = new int[n];
+        int length = 0;
+        for(int i = 0; i < n; i++) {
+            if(old[i] < 0)
+                continue;
+
+            int lo = 0, hi = length;
+            while(lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if(old[tails[mid]] < old[i]) lo = mid + 1;
+                else hi = mid;
+            }
+            previous[i] = lo > 0 ? tails[lo - 1] : -1;
+            tails[lo] = i;
+            if(lo == length)
+                length++;
+        }
+
+        boolean[] stable = new boolean[n];
+        for(int i = length > 0 ? tails[length - 1] : -1; i >= 0; i = previous[i])
+            stable[i] = true;
+        return stable;
+    }
+
+    /**
+     * @return the mask of the fields that differ between two versions of an Entry
+     */
+    private static int changes(Entry b, Entry t) {
+        int mask = 0;
+        if(!Objects.equals(b.getName(), t.getName())) mask |= NAME;
+        if(!Objects.equals(b.getDescription(), t.getDescription())) mask |= DESCRIPTION;
+        if(b.getStartMinutes() != t.getStartMinutes()) mask |= START;
+        if(b.getEndMinutes() != t.getEndMinutes()) mask |= END;
+        if(b.getPercentComplete() != t.getPercentComplete()) mask |= PERCENT;
+        if(id(b.getAssignedTo()) != id(t.getAssignedTo())) mask |= ASSIGNED_TO;
+        if(id(b.getLastModifiedBy()) != id(t.getLastModifiedBy())) mask |= LAST_MODIFIED_BY;
+        if(!b.getAttachments().equals(t.getAttachments())) mask |= ATTACHMENTS;
+        return mask;
+    }
+
+    private void fields(Entry e, int mask) throws IOException {
+        out.writeByte(mask);
+        if((mask & NAME) != 0) JournalCodec.string(out, e.getName());
+        if((mask & DESCRIPTION) != 0) JournalCodec.string(out, e.getDescription());
+        if((mask & START) != 0) out.writeLong(e.getStartMinutes());
+        if((mask & END) != 0) out.writeLong(e.getEndMinutes());
+        if((mask & PERCENT) != 0) out.writeInt(e.getPercentComplete());
+        if((mask & ASSIGNED_TO) != 0) out.writeInt(id(e.getAssignedTo()));
+        if((mask & LAST_MODIFIED_BY) != 0) out.writeInt(id(e.getLastModifiedBy()));
+        if((mask & ATTACHMENTS) != 0) JournalCodec.attachments(out, e.getAttachments());
+    }
+
+    private void op(byte op) throws IOException {
+        out.writeByte(op);
+        count++;
+    }
+
+    private static int id(Participant p) {
+        return p == null ? 0 : p.getId();
+    }
+
+    /**
+     * Applies one operation.
+     */
+    private static void replay(Project project, DataInputStream in) throws IOException {
+        byte op = in.readByte();
+        switch(op) {
+            case PROJECT:
+                project.setName(JournalCodec.string(in));
+                project.setStart(DateTime.ofEpochMinutes(in.readLong()));
+                project.setEnd(DateTime.ofEpochMinutes(in.readLong()));
+                break;
+            case ADD_PARTICIPANT: {
+                int id = in.readInt();
+                if(project.getParticipantById(id) != null)
+                    throw new IOException("Participant " + id + " is already in the project.");
+                String name = JournalCodec.string(in), initials = JournalCodec.string(in);
+                String role = JournalCodec.string(in);
+                Participant p = new Participant(name, initials, JournalCodec.color(in.readInt()), role);
+                p.setId(id);
+                project.addParticipants(p);
+                break;
+            }
+            case PARTICIPANT: {
+                Participant p = participant(project, in.readInt());
+                p.setName(JournalCodec.string(in));
+                p.setRole(JournalCodec.string(in));
+                p.setColor(JournalCodec.color(in.readInt()));
+                break;
+            }
+            case PLACE: {
+                int id = in.readInt(), parentId = in.readInt(), afterId = in.readInt();
+                Entry parent = parentId == 0 ? null : entry(project, parentId);
+                Entry after = afterId == 0 ? null : entry(project, afterId);
+                Entry e;
+                if(in.readBoolean()) {
+                    if(project.getEntryById(id) != null)
+                        throw new IOException("Entry " + id + " is already in the project.");
+                    e = new Entry("", DateTime.ofEpochMinutes(0), DateTime.ofEpochMinutes(0));
+                    e.setId(id);
+                    apply(project, e, in);
+                }
+                else {
+                    e = entry(project, id);
+                }
+                project.moveEntry(e, parent, after);
+                if(e.getId() != id)
+                    throw new IOException("Entry " + id + " is already in the project.");
+                break;
+            }
+            case FIELDS:
+                apply(project, entry(project, in.readInt()), in);
+                break;
+            case REMOVE:
+                project.deleteEntry(entry(project, in.readInt()));
+                break;
+            case REMOVE_PARTICIPANT: {
+                Participant p = participant(project, in.readInt());
+                for(Entry e : new ArrayList<>(p.getAssignments()))
+                    if(e.getAssignedTo() == p) {
+                        p.removeAssignment(e);
+                        e.setAssignedTo(null);
+                    }
+                project.removeParticipant(p);
+                break;
+            }
+            default:
+                throw new IOException("Unknown delta operation " + op + ".");
+        }
+    }
+
+    /**
+     * Sets the fields of an Entry that a FIELDS (or new PLACE) operation carries.
+     */
+    private static void apply(Project project, Entry e, DataInputStream in) throws IOException {
+        int mask = in.readUnsignedByte();
+        if((mask & NAME) != 0) e.setName(JournalCodec.string(in));
+        if((mask & DESCRIPTION) != 0) e.setDescription(JournalCodec.string(in));
+        if((mask & START) != 0) e.setStartMinutes(in.readLong(), false);
+        if((mask & END) != 0) e.setEndMinutes(in.readLong(), false);
+        if((mask & PERCENT) != 0) e.setPercentComplete(in.readInt());
+        if((mask & ASSIGNED_TO) != 0) {
+            int id = in.readInt();
+            if(e.getAssignedTo() != null) e.getAssignedTo().removeAssignment(e);
+            if(id != 0) e.assignTo(participant(project, id));
+            else e.setAssignedTo(null);
+        }
+        if((mask & LAST_MODIFIED_BY) != 0) {
+            int id = in.readInt();
+            e.setLastModifiedBy(id == 0 ? null : participant(project, id));
+        }
+        if((mask & ATTACHMENTS) != 0) {
+            List<Attachment> attachments = JournalCodec.attachments(in);
+            e.setAttachments(attachments);
+        }
+    }
+
+    private static Entry entry(Project project, int id) throws IOException {
+        Entry e = project.getEntryById(id);
+        if(e == null)
+            throw new IOException("Entry " + id + " is not in the project.");
+        return e;
+    }
+
+    private static Participant participant(Project project, int id) throws IOException {
+        Participant p = project.getParticipantById(id);
+        if(p == null)
+            throw new IOException("Participant " + id + " is not in the project.");
+        return p;
+    }
+}
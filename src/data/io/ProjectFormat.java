@@ -0,0 +1,71 @@
+package data.io;
+
+/**
+ * Layout of the binary project file (.pamy). All numbers are big-endian.
+ *
+ * <pre>
+ * header (96 bytes; 80 before version 3)
+ *     int   magic ("PAMY")
+ *     short version
+ *     short flags (reserved, 0)
+ *     long  project start, in epoch minutes
+ *     long  project end, in epoch minutes
+ *     int   project name (string ref)
+ *     int   participant count
+ *     int   entry count
+ *     int   string count
+ *     long  offset of the participant table
+ *     long  offset of the entry table
+ *     long  offset of the string offsets
+ *     long  offset of the string data
+ *     long  checkpoint: the last edit journal segment folded into this file (0 if none; since version 2)
+ *     int   attachment count (since version 3)
+ *     int   reserved, 0
+ *     long  offset of the attachment table (since version 3)
+ *
+ * participant table: one 20-byte record per Participant
+ *     int id, int name, int initials, int role (string refs), int color (ARGB)
+ *
+ * entry table: one 48-byte record per Entry, in pre-order (each Entry followed by its whole subtree)
+ *     int id, int subtree size (number of descendants), int child count, int name, int description (string refs),
+ *     long start, long end (epoch minutes), int percent complete, int assigned to, int last modified by
+ *     (Participant IDs, 0 for none)
+ *
+ * attachment table: one 48-byte record per Attachment, ordered by the record index of the Entry it is attached to
+ * (and, for each Entry, in the order they were attached)
+ *     int entry record index, int name (string ref), long size, 32 bytes SHA-256 hash
+ *
+ * string pool: (string count +1) int offsets into the string data, then the UTF-8 bytes of every distinct string
+ * </pre>
+ *
+ * Every table is made of fixed-size records, so any Entry (and, through its subtree size, its whole subtree) can be
+ * found without reading anything before it. A string ref of -1 stands for null.
+ *
+ * @author Al-John
+ */
+final class ProjectFormat {
+
+    static final int MAGIC = 0x50414D59;
+    static final short VERSION = 3;
+
+    static final int HEADER_SIZE = 96;
+    static final int PARTICIPANT_SIZE = 20;
+    static final int ENTRY_SIZE = 48;
+    static final int ATTACHMENT_SIZE = 48;
+
+    //header fields
+    static final int H_VERSION = 4, H_START = 8, H_END = 16, H_NAME = 24, H_PARTICIPANTS = 28, H_ENTRIES = 32,
+            H_STRINGS = 36, H_PARTICIPANT_TABLE = 40, H_ENTRY_TABLE = 48, H_STRING_OFFSETS = 56, H_STRING_DATA = 64, H_CHECKPOINT = 72,
+            H_ATTACHMENTS = 80, H_ATTACHMENT_TABLE = 88;
+
+    //entry record fields
+    static final int E_ID = 0, E_SUBTREE = 4, E_CHILDREN = 8, E_NAME = 12, E_DESCRIPTION = 16, E_START = 20,
+            E_END = 28, E_PERCENT = 36, E_ASSIGNED_TO = 40, E_LAST_MODIFIED_BY = 44;
+
+    //attachment record fields
+    static final int A_ENTRY = 0, A_NAME = 4, A_SIZE = 8, A_HASH = 16;
+
+    static final int NO_STRING = -1;
+
+    private ProjectFormat() {}
+}
@@ -0,0 +1,504 @@
+package data.io;
+
+import data.Attachment;
+import data.DateTime;
+import data.Entry;
+import data.Participant;
+import data.Project;
+import data.SubtreeSource;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static data.io.ProjectFormat.*;
+
+/**
+ * Reads Projects in the binary project format (see {@link ProjectFormat}).
+ *
+ * Opening a file only maps it into memory and checks its header and string offsets; nothing else is read up front. Entries are decoded
+ * straight from their fixed-size records when they are materialized, and strings are decoded from the pool the first
+ * time they are needed. Since every record can be found by its index, a single subtree can be materialized without
+ * touching the rest of the file (see {@link #readSubtree(int)}), and a Project can be opened with only its top-level
+ * Entries in memory, the rest being read a branch at a time as it is needed (see {@link #readProjectLazily()}).
+ *
+ * Project files are limited to 2 GB (the size of one mapping).
+ *
+ * Nothing read from the file is trusted: the header's offsets and counts are checked against the size of the file when
+ * it is opened, and every string ref, record index, subtree size and child count is checked as it is read. A file that
+ * fails a check is reported as damaged (with an IOException), whichever part of it is read.
+ *
+ * @author Al-John
+ */
+public class ProjectReader {
+
+    private final Path file;
+    private final MappedByteBuffer buf;
+    private final int participantCount, entryCount, stringCount;
+    private final int attachmentCount;
+    private final int participantTable, entryTable, attachmentTable, stringOffsets, stringData;
+    private final String[] strings;
+    private Map<Integer, Participant> participants;
+
+    /**
+     * Maps a project file into memory.
+     * @param file the file
+     * @throws IOException if the file can't be read, or isn't a project file this version can read
+     */
+    public ProjectReader(Path file) throws IOException {
+        this.file = file;
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if(size < H_CHECKPOINT)
+                throw new IOException(file + " is not a project file.");
+            if(size > Integer.MAX_VALUE)
+                throw new IOException(file + " is too large to open.");
+
+            buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+
+        if(buf.getInt(0) != MAGIC)
+            throw new IOException(file + " is not a project file.");
+        if(buf.getShort(H_VERSION) > VERSION)
+            throw new IOException(file + " was saved by a newer version (format " + buf.getShort(H_VERSION) + ").");
+
+        short version = buf.getShort(H_VERSION);
+        int header = version >= 3 ? HEADER_SIZE : version >= 2 ? H_ATTACHMENTS : H_CHECKPOINT;
+        int limit = buf.limit();
+        if(limit < header)
+            throw damaged();
+
+        participantCount = buf.getInt(H_PARTICIPANTS);
+        entryCount = buf.getInt(H_ENTRIES);
+        stringCount = buf.getInt(H_STRINGS);
+        attachmentCount = version >= 3 ? buf.getInt(H_ATTACHMENTS) : 0;
+        long participants = buf.getLong(H_PARTICIPANT_TABLE), entries = buf.getLong(H_ENTRY_TABLE),
+                offsets = buf.getLong(H_STRING_OFFSETS), data = buf.getLong(H_STRING_DATA),
+                attachments = version >= 3 ? buf.getLong(H_ATTACHMENT_TABLE) : offsets;
+
+        //every table has to lie inside the file, after the header, in the order they are written
+        if(!fits(participants, PARTICIPANT_SIZE, participantCount, header, limit)
+                || !fits(entries, ENTRY_SIZE, entryCount, header, limit)
+                || !fits(attachments, ATTACHMENT_SIZE, attachmentCount, header, limit)
+                || !fits(offsets, 4, stringCount + 1L, header, limit) || data < header || data > limit
+                || entries + (long) ENTRY_SIZE * entryCount > attachments
+                || attachments + (long) ATTACHMENT_SIZE * attachmentCount > offsets)
+            throw damaged();
+
+        participantTable = (int) participants;
+        entryTable = (int) entries;
+        attachmentTable = (int) attachments;
+        stringOffsets = (int) offsets;
+        stringData = (int) data;
+        strings = new String[stringCount];
+
+        //every string has to lie inside the string data
+        for(int i = 0, previous = 0; i <= stringCount; i++) {
+            int offset = buf.getInt(stringOffsets + 4 * i);
+            if(offset < previous || offset > limit - stringData)
+                throw damaged();
+            previous = offset;
+        }
+    }
+
+    /**
+     * @return true if a table of a number of records of a size, at an offset, lies between the header and the limit
+     */
+    private static boolean fits(long offset, int recordSize, long count, int header, int limit) {
+        return count >= 0 && offset >= header && offset + recordSize * count <= limit;
+    }
+
+    private IOException damaged() {
+        return new IOException(file + " is damaged.");
+    }
+
+    /**
+     * @return the last edit journal segment folded into this file, or 0 if none (see {@link EditJournal})
+     */
+    long getCheckpoint() {
+        return buf.getShort(H_VERSION) >= 2 ? buf.getLong(H_CHECKPOINT) : 0;
+    }
+
+    /**
+     * Reads a whole Project from a file.
+     * @param file the file
+     * @return the Project
+     * @throws IOException if the file can't be read, or isn't a project file this version can read
+     */
+    public static Project read(Path file) throws IOException {
+        return new ProjectReader(file).readProject();
+    }
+
+    /**
+     * @return the number of Entries in the file, at any depth
+     */
+    public int getEntryCount() { return entryCount; }
+
+    /**
+     * @return the number of Participants in the file
+     */
+    public int getParticipantCount() { return participantCount; }
+
+    /**
+     * @return the name of the Project
+     * @throws IOException if the file is damaged
+     */
+    public String getName() throws IOException { return string(buf.getInt(H_NAME)); }
+
+    /**
+     * @return the start of the Project
+     */
+    public DateTime getStart() { return DateTime.ofEpochMinutes(buf.getLong(H_START)); }
+
+    /**
+     * @return the end of the Project
+     */
+    public DateTime getEnd() { return DateTime.ofEpochMinutes(buf.getLong(H_END)); }
+
+    /**
+     * Materializes the whole Project: its Participants, then every Entry, in one pass over the entry table.
+     * @return the Project
+     * @throws IOException if the file is damaged
+     */
+    public Project readProject() throws IOException {
+        Project project = new Project(getName(), getStart(), getEnd());
+
+        List<Participant> people = new ArrayList<>(participants().values());
+        project.addParticipants(people.toArray(new Participant[0]));
+
+        List<Entry> tops = new ArrayList<>();
+        materialize(0, entryCount, tops::add);
+        project.addEntries(tops.toArray(new Entry[0]));
+        return project;
+    }
+
+    /**
+     * Opens the Project with only its top-level Entries in memory. The sub-entries of an Entry are read from the file
+     * the first time something asks for them, and sub-entries that haven't changed since they were read are dropped
+     * from memory again when they're no longer in use and memory runs short (see {@link Entry#unloadSubEntries()}).
+     * The file must stay in place while the Project is open.
+     *
+     * Until they are read, deferred Entries count in the Project's totals and rollups, but aren't found by ID or by
+     * date (see {@link Project#getEntryById(int)} and {@link Project#rangeQuery(DateTime, DateTime)}).
+     * @return the Project
+     * @throws IOException if the file is damaged (as far as it is read up front)
+     */
+    public Project readProjectLazily() throws IOException {
+        return readProjectLazily(LazySubtrees.DEFAULT_BUDGET);
+    }
+
+    /**
+     * Opens the Project with only its top-level Entries in memory (see {@link #readProjectLazily()}).
+     * @param budget the number of Entries read from the file that may stay in memory before the least recently read
+     *               ones are dropped again
+     * @return the Project
+     * @throws IOException if the file is damaged (as far as it is read up front)
+     */
+    public Project readProjectLazily(int budget) throws IOException {
+        Project project = new Project(getName(), getStart(), getEnd());
+
+        List<Participant> people = new ArrayList<>(participants().values());
+        project.addParticipants(people.toArray(new Participant[0]));
+
+        LazySubtrees source = new LazySubtrees(this, budget);
+        List<Entry> tops = new ArrayList<>();
+        for(int record = 0; record < entryCount; record += subtreeSize(record) + 1)
+            tops.add(source.read(record));
+        project.addEntries(tops.toArray(new Entry[0]));
+        return project;
+    }
+
+    /**
+     * Returns the Participants in the file, by ID, in their saved order. They are read the first time this is called.
+     * @return the Participants
+     * @throws IOException if the file is damaged
+     */
+    public Map<Integer, Participant> participants() throws IOException {
+        if(participants != null)
+            return participants;
+
+        participants = new LinkedHashMap<>();
+        for(int i = 0; i < participantCount; i++) {
+            int at = participantTable + i * PARTICIPANT_SIZE;
+            String color = JournalCodec.color(buf.getInt(at + 16));
+            Participant p = new Participant(string(buf.getInt(at + 4)), string(buf.getInt(at + 8)), color,
+                    string(buf.getInt(at + 12)));
+            p.setId(buf.getInt(at));
+            participants.put(p.getId(), p);
+        }
+
+        return participants;
+    }
+
+    /**
+     * Materializes the Entry with a specified record index (its position in a pre-order walk of the Project), with all
+     * of its descendants. The Entry is not added to any Project.
+     * @param record the record index
+     * @return the Entry
+     * @throws IOException if the file is damaged
+     */
+    public Entry readSubtree(int record) throws IOException {
+        if(record < 0 || record >= entryCount)
+            throw new IndexOutOfBoundsException("No entry record " + record + ".");
+
+        List<Entry> roots = new ArrayList<>(1);
+        materialize(record, subtreeSize(record) + 1, roots::add);
+        if(roots.size() != 1)
+            throw damaged();
+        return roots.get(0);
+    }
+
+    /**
+     * @param record a record index
+     * @return the number of descendants of the Entry with that record index
+     * @throws IOException if the file is damaged
+     */
+    public int subtreeSize(int record) throws IOException {
+        int size = buf.getInt(at(record) + E_SUBTREE);
+        if(size < 0 || size > entryCount - record - 1)
+            throw damaged();
+        return size;
+    }
+
+    /**
+     * @param record a record index
+     * @return the ID of the Entry with that record index
+     * @throws IOException if the file is damaged
+     */
+    public int entryId(int record) throws IOException {
+        return buf.getInt(at(record) + E_ID);
+    }
+
+    /**
+     * @param record a record index
+     * @return the number of sub-entries of the Entry with that record index
+     */
+    int childCount(int record) throws IOException {
+        int children = buf.getInt(at(record) + E_CHILDREN);
+        if(children < 0 || children > subtreeSize(record))
+            throw damaged();
+        return children;
+    }
+
+    /**
+     * @return the offset of the record with a record index
+     */
+    private int at(int record) throws IOException {
+        if(record < 0 || record >= entryCount)
+            throw damaged();
+        return entryTable + record * ENTRY_SIZE;
+    }
+
+    /**
+     * Materializes the Entry with a specified record index on its own, without its sub-entries.
+     * @param record the record index
+     * @return the Entry
+     */
+    Entry readEntry(int record) throws IOException {
+        return decode(at(record));
+    }
+
+    /**
+     * Sums up the descendants of the Entry with a specified record index, in one pass over their records. The records
+     * are checked on the way (that they nest as their subtree sizes and child counts say, and that their string refs
+     * are in the pool), so that a damaged file is found when it is opened rather than when a branch is expanded.
+     * @param record the record index
+     * @return the summary of its sub-entries
+     * @throws IOException if the file is damaged
+     */
+    SubtreeSource.Summary summarize(int record) throws IOException {
+        int count = subtreeSize(record);
+        int leaves = 0, maxId = 0;
+        long minStart = Long.MAX_VALUE, maxEnd = Long.MIN_VALUE, leafDuration = 0, leafWeighted = 0, leafPercent = 0;
+
+        for(int i = record + 1; i <= record + count; i++) {
+            int at = entryTable + i * ENTRY_SIZE;
+            long start = buf.getLong(at + E_START), end = buf.getLong(at + E_END);
+            minStart = Math.min(minStart, Math.min(start, end));
+            maxEnd = Math.max(maxEnd, Math.max(start, end));
+            maxId = Math.max(maxId, buf.getInt(at + E_ID));
+            checkRef(buf.getInt(at + E_NAME));
+            checkRef(buf.getInt(at + E_DESCRIPTION));
+
+            if(buf.getInt(at + E_CHILDREN) == 0) {
+                int duration = DateTime.minutesBetween(start, end);
+                int percent = buf.getInt(at + E_PERCENT);
+                leaves++;
+                leafDuration += duration;
+                leafWeighted += (long) duration * percent;
+                leafPercent += percent;
+            }
+        }
+
+        //each Entry's sub-entries have to fill its subtree exactly (O(count) in all, one step per Entry)
+        for(int j = record; j <= record + count; j++) {
+            int end = j + subtreeSize(j), children = 0, sub = j + 1;
+            for(; sub <= end; children++)
+                sub += subtreeSize(sub) + 1;
+            if(sub != end + 1 || children != childCount(j))
+                throw damaged();
+        }
+
+        return new SubtreeSource.Summary(childCount(record), count, leaves, maxId, minStart, maxEnd, leafDuration,
+                leafWeighted, leafPercent);
+    }
+
+    private void checkRef(int ref) throws IOException {
+        if(ref != NO_STRING && (ref < 0 || ref >= stringCount))
+            throw damaged();
+    }
+
+    /**
+     * Counts how many Entries are underway during each of a number of equal slices of the Project's timeline, in one
+     * pass over the entry table. Entries outside of the Project's span count towards the first or last slice.
+     * @param slices the number of slices
+     * @return the number of Entries overlapping each slice
+     */
+    int[] density(int slices) {
+        long start = buf.getLong(H_START), span = Math.max(1, buf.getLong(H_END) - start);
+        int[] diff = new int[slices + 1];
+
+        for(int i = 0; i < entryCount; i++) {
+            int at = entryTable + i * ENTRY_SIZE;
+            long from = buf.getLong(at + E_START), to = buf.getLong(at + E_END);
+            diff[slice(Math.min(from, to) - start, span, slices)]++;
+            diff[slice(Math.max(from, to) - start, span, slices) + 1]--;
+        }
+
+        int[] counts = new int[slices];
+        for(int i = 0, running = 0; i < slices; i++)
+            counts[i] = running += diff[i];
+        return counts;
+    }
+
+    private static int slice(long offset, long span, int slices) {
+        return (int) Math.max(0, Math.min(slices - 1, offset * slices / span));
+    }
+
+    /**
+     * Materializes a run of records: one or more sibling Entries, each followed by its whole subtree. The tree is
+     * assembled bottom-up (an Entry is added to its parent once all of its own sub-entries are in place), so no rollup
+     * is ever recomputed more than one level up.
+     * @param from the first record
+     * @param count the number of records
+     * @param roots receives each of the sibling Entries, in order
+     */
+    private void materialize(int from, int count, Consumer<Entry> roots) throws IOException {
+        Deque<Entry> open = new ArrayDeque<>();
+        Deque<int[]> remaining = new ArrayDeque<>();
+
+        for(int i = from; i < from + count; i++) {
+            Entry e = decode(at(i));
+
+            int children = childCount(i);
+            if(children > 0) {
+                open.push(e);
+                remaining.push(new int[] {children});
+                continue;
+            }
+
+            //e is complete; hand it to its parent, and close every parent that is now complete too
+            while(true) {
+                if(open.isEmpty()) {
+                    roots.accept(e);
+                    break;
+                }
+
+                open.peek().addSubEntry(e);
+                if(--remaining.peek()[0] > 0)
+                    break;
+
+                e = open.pop();
+                remaining.pop();
+            }
+        }
+
+        //an Entry whose sub-entries ran past the end of the run
+        if(!open.isEmpty())
+            throw damaged();
+    }
+
+    private Entry decode(int at) throws IOException {
+        Entry e = new Entry(string(buf.getInt(at + E_NAME)), DateTime.ofEpochMinutes(buf.getLong(at + E_START)),
+                DateTime.ofEpochMinutes(buf.getLong(at + E_END)));
+        e.setId(buf.getInt(at + E_ID));
+
+        String description = string(buf.getInt(at + E_DESCRIPTION));
+        if(description != null && !description.isEmpty())
+            e.setDescription(description);
+
+        int percent = buf.getInt(at + E_PERCENT);
+        if(percent != 0)
+            e.setPercentComplete(percent);
+
+        int assignedTo = buf.getInt(at + E_ASSIGNED_TO);
+        if(assignedTo != 0 && participants().containsKey(assignedTo))
+            e.assignTo(participants().get(assignedTo));
+
+        int lastModifiedBy = buf.getInt(at + E_LAST_MODIFIED_BY);
+        if(lastModifiedBy != 0)
+            e.setLastModifiedBy(participants().get(lastModifiedBy));
+
+        if(attachmentCount > 0)
+            e.setAttachments(attachments((at - entryTable) / ENTRY_SIZE));
+
+        return e;
+    }
+
+    /**
+     * Reads the Attachments of the Entry with a specified record index, finding them by binary search (the table is
+     * ordered by record index).
+     */
+    private List<Attachment> attachments(int record) throws IOException {
+        int lo = 0, hi = attachmentCount;
+        while(lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if(buf.getInt(attachmentTable + mid * ATTACHMENT_SIZE + A_ENTRY) < record) lo = mid + 1;
+            else hi = mid;
+        }
+
+        List<Attachment> list = new ArrayList<>();
+        for(int i = lo; i < attachmentCount; i++) {
+            int at = attachmentTable + i * ATTACHMENT_SIZE;
+            if(buf.getInt(at + A_ENTRY) != record)
+                break;
+
+            byte[] hash = new byte[32];
+            ByteBuffer bytes = buf.duplicate();
+            bytes.position(at + A_HASH);
+            bytes.get(hash);
+            list.add(new Attachment(BlobStore.hex(hash), string(buf.getInt(at + A_NAME)), buf.getLong(at + A_SIZE)));
+        }
+        return list;
+    }
+
+    /**
+     * Returns a string from the pool, decoding it the first time it is asked for.
+     */
+    private String string(int ref) throws IOException {
+        checkRef(ref);
+        if(ref == NO_STRING)
+            return null;
+        if(strings[ref] != null)
+            return strings[ref];
+
+        int start = buf.getInt(stringOffsets + 4 * ref);
+        int end = buf.getInt(stringOffsets + 4 * (ref + 1));
+        if(start < 0 || start > end || end > buf.limit() - stringData)
+            throw damaged();
+        ByteBuffer bytes = buf.duplicate();
+        bytes.position(stringData + start).limit(stringData + end);
+        return strings[ref] = StandardCharsets.UTF_8.decode(bytes).toString();
+    }
+}
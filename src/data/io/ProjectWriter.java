@@ -0,0 +1,179 @@
+package data.io;
+
+import data.Attachment;
+import data.Entry;
+import data.Participant;
+import data.Project;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static data.io.ProjectFormat.*;
+
+/**
+ * Writes Projects in the binary project format (see {@link ProjectFormat}).
+ *
+ * The file is written to a temporary file next to the target, then moved into place, so a crash in the middle of a
+ * save never leaves a half-written project behind.
+ *
+ * @author Al-John
+ */
+public final class ProjectWriter {
+
+    private ProjectWriter() {}
+
+    /**
+     * Saves a Project to a file.
+     * @param project the Project
+     * @param file the file
+     * @throws IOException if the file couldn't be written
+     */
+    public static void write(Project project, Path file) throws IOException {
+        write(project, file, 0);
+    }
+
+    /**
+     * Saves a Project to a file, recording which edit journal segments it already includes (see {@link EditJournal}).
+     * @param project the Project
+     * @param file the file
+     * @param checkpoint the last journal segment folded into the Project
+     * @throws IOException if the file couldn't be written
+     */
+    static void write(Project project, Path file, long checkpoint) throws IOException {
+        StringPool strings = new StringPool();
+        int nameRef = strings.ref(project.getName());
+
+        List<Participant> participants = project.getParticipants();
+        int[][] participantRefs = new int[participants.size()][];
+        for(int i = 0; i < participantRefs.length; i++) {
+            Participant p = participants.get(i);
+            participantRefs[i] = new int[] {strings.ref(p.getName()), strings.ref(p.getInitials()), strings.ref(p.getRole())};
+        }
+
+        int entryCount = project.getTotalEntryCount();
+        Entry[] entries = new Entry[entryCount];
+        int[] entryRefs = new int[entryCount * 2];
+        int n = 0, attachmentCount = 0;
+        for(Entry e : project.preOrder()) {
+            entries[n] = e;
+            entryRefs[2 * n] = strings.ref(e.getName());
+            entryRefs[2 * n + 1] = strings.ref(e.getDescription());
+            for(Attachment a : e.getAttachments())
+                strings.ref(a.getName());
+            attachmentCount += e.getAttachments().size();
+            n++;
+        }
+
+        long participantTable = HEADER_SIZE;
+        long entryTable = participantTable + (long) PARTICIPANT_SIZE * participants.size();
+        long attachmentTable = entryTable + (long) ENTRY_SIZE * entryCount;
+        long stringOffsets = attachmentTable + (long) ATTACHMENT_SIZE * attachmentCount;
+        long stringData = stringOffsets + 4L * (strings.size() + 1);
+
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeShort(0);
+            out.writeLong(project.getStart().getEpochMinutes());
+            out.writeLong(project.getEnd().getEpochMinutes());
+            out.writeInt(nameRef);
+            out.writeInt(participants.size());
+            out.writeInt(entryCount);
+            out.writeInt(strings.size());
+            out.writeLong(participantTable);
+            out.writeLong(entryTable);
+            out.writeLong(stringOffsets);
+            out.writeLong(stringData);
+            out.writeLong(checkpoint);
+            out.writeInt(attachmentCount);
+            out.writeInt(0);
+            out.writeLong(attachmentTable);
+
+            for(int i = 0; i < participantRefs.length; i++) {
+                Participant p = participants.get(i);
+                out.writeInt(p.getId());
+                out.writeInt(participantRefs[i][0]);
+                out.writeInt(participantRefs[i][1]);
+                out.writeInt(participantRefs[i][2]);
+                out.writeInt(toArgb(p.getColor()));
+            }
+
+            for(int i = 0; i < entryCount; i++) {
+                Entry e = entries[i];
+                out.writeInt(e.getId());
+                out.writeInt(e.getDescendantCount());
+                out.writeInt(e.getSubEntries().size());
+                out.writeInt(entryRefs[2 * i]);
+                out.writeInt(entryRefs[2 * i + 1]);
+                out.writeLong(e.getStartMinutes());
+                out.writeLong(e.getEndMinutes());
+                out.writeInt(e.getPercentComplete());
+                out.writeInt(e.getAssignedTo() == null ? 0 : e.getAssignedTo().getId());
+                out.writeInt(e.getLastModifiedBy() == null ? 0 : e.getLastModifiedBy().getId());
+            }
+
+            for(int i = 0; i < entryCount; i++) {
+                for(Attachment a : entries[i].getAttachments()) {
+                    out.writeInt(i);
+                    out.writeInt(strings.ref(a.getName()));
+                    out.writeLong(a.getSize());
+                    out.write(BlobStore.unhex(a.getHash()));
+                }
+            }
+
+            int offset = 0;
+            for(byte[] s : strings.bytes) {
+                out.writeInt(offset);
+                offset += s.length;
+            }
+            out.writeInt(offset);
+
+            for(byte[] s : strings.bytes)
+                out.write(s);
+        }
+
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @param color a hex color code, "#rrggbb" or "#rrggbbaa" (see {@link Participant#getColor()}), or null
+     * @return the color as an ARGB int, or 0 for null
+     */
+    static int toArgb(String color) {
+        if(color == null)
+            return 0;
+
+        long hex = Long.parseLong(color.substring(1), 16);
+        return color.length() == 7 ? 0xFF000000 | (int) hex : (int) (hex >>> 8 | (hex & 0xFF) << 24);
+    }
+
+    /**
+     * The distinct strings of a Project, each stored once.
+     */
+    private static final class StringPool {
+        final Map<String, Integer> refs = new HashMap<>();
+        final List<byte[]> bytes = new ArrayList<>();
+
+        int ref(String s) {
+            if(s == null)
+                return NO_STRING;
+
+            return refs.computeIfAbsent(s, k -> {
+                bytes.add(k.getBytes(StandardCharsets.UTF_8));
+                return bytes.size() - 1;
+            });
+        }
+
+        int size() { return bytes.size(); }
+    }
+}
@@ -0,0 +1,332 @@
+package data.io;
+
+import data.DateTime;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+/**
+ * A catalog of recently opened project files, kept in a small file of its own, that holds what a list of projects
+ * shows for each of them: the name, start and end, entry and participant counts, and a thumbnail of the timeline.
+ * Listing the recent projects only reads the catalog; none of the project files is opened.
+ *
+ * Each item remembers the last-modified time and size its project file had when it was cataloged. A refresh (see
+ * {@link #refresh()}) checks every file in parallel, in the background, and only reads the header (and entry table,
+ * for the thumbnail) of the ones that changed since. Files that are gone are dropped from the catalog.
+ *
+ * The catalog describes each project as of its last full save; edits that are still in its journal (see
+ * {@link EditJournal}) show once they are compacted into the file.
+ *
+ * @author Al-John
+ */
+public final class RecentProjects {
+
+    /** The most projects the catalog remembers. */
+    public static final int MAX_ITEMS = 500;
+    /** The number of slices in a timeline thumbnail. */
+    public static final int THUMBNAIL_SLICES = 64;
+
+    private static final int MAGIC = 0x50414D52;    //"PAMR"
+    private static final short VERSION = 1;
+
+    private final Path catalog;
+    private List<Item> items = new ArrayList<>();   //most recently opened first
+    private final Object saving = new Object();     //held while the catalog is written (apart from the items' lock)
+
+    /**
+     * @param catalog the catalog file (it doesn't have to exist yet)
+     */
+    public RecentProjects(Path catalog) {
+        this.catalog = catalog;
+    }
+
+    /**
+     * @return the catalog file in the user's home directory
+     */
+    public static Path defaultLocation() {
+        return Paths.get(System.getProperty("user.home"), ".planamity", "recent-projects");
+    }
+
+    /**
+     * Reads the catalog file, as it was last saved. A missing catalog reads as empty.
+     * @return the items, most recently opened first
+     * @throws IOException if the catalog couldn't be read (the items are left empty)
+     */
+    public synchronized List<Item> load() throws IOException {
+        items = new ArrayList<>();
+        List<Item> read = new ArrayList<>();
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(catalog)))) {
+            if(in.readInt() != MAGIC || in.readShort() > VERSION)
+                throw new IOException(catalog + " is not a recent projects catalog.");
+
+            for(int i = 0, n = in.readInt(); i < n; i++)
+                read.add(Item.read(in));
+        } catch(NoSuchFileException e) {
+            read.clear();
+        }
+
+        items = read;
+        return getItems();
+    }
+
+    /**
+     * Writes the catalog file. The old catalog is replaced in one step, so it is never left half written. Saves from
+     * different threads are made one at a time, each with the items as they are when it starts, so the last save to
+     * finish always has the latest items.
+     * @throws IOException if the catalog couldn't be written
+     */
+    public void save() throws IOException {
+        synchronized(saving) {
+            List<Item> snapshot = getItems();
+            if(catalog.getParent() != null)
+                Files.createDirectories(catalog.getParent());
+
+            Path temp = catalog.resolveSibling(catalog.getFileName() + ".tmp");
+            try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeShort(VERSION);
+                out.writeInt(snapshot.size());
+                for(Item item : snapshot)
+                    item.write(out);
+            }
+            Files.move(temp, catalog, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    /**
+     * @return the items, most recently opened first
+     */
+    public synchronized List<Item> getItems() {
+        return Collections.unmodifiableList(new ArrayList<>(items));
+    }
+
+    /**
+     * Records that a project file was just opened, moving it to the top of the catalog. Its header is read right away
+     * (it is already in the page cache), unless it hasn't changed since it was last cataloged.
+     * @param file the project file
+     * @return the item for the file
+     * @throws IOException if the file isn't a project file that can be read
+     */
+    public Item add(Path file) throws IOException {
+        Path key = file.toAbsolutePath().normalize();
+        Item old;
+        synchronized(this) {
+            old = items.stream().filter(item -> item.file.equals(key)).findFirst().orElse(null);
+        }
+
+        Item item = Item.of(key, old);
+        synchronized(this) {
+            items.removeIf(existing -> existing.file.equals(key));
+            items.add(0, item);
+            if(items.size() > MAX_ITEMS)
+                items.subList(MAX_ITEMS, items.size()).clear();
+        }
+        return item;
+    }
+
+    /**
+     * Forgets a project file.
+     * @param file the project file
+     */
+    public synchronized void remove(Path file) {
+        Path key = file.toAbsolutePath().normalize();
+        items.removeIf(item -> item.file.equals(key));
+    }
+
+    /**
+     * Brings the catalog up to date in the background (see {@link #refresh(ForkJoinPool)}), on the common pool.
+     * @return the items once they are up to date, most recently opened first
+     */
+    public CompletableFuture<List<Item>> refresh() {
+        return refresh(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Brings the catalog up to date in the background: every file is checked against the last-modified time and size
+     * it was cataloged with, in parallel, and only the ones that changed are read again. Files that are gone or no
+     * longer readable are dropped. The catalog file is saved afterwards if anything changed.
+     * @param pool the pool to check the files on
+     * @return the items once they are up to date, most recently opened first
+     */
+    public CompletableFuture<List<Item>> refresh(ForkJoinPool pool) {
+        List<Item> before = getItems();
+        //a parallel stream started on a pool's thread runs on that pool
+        return CompletableFuture.supplyAsync(() -> before.parallelStream()
+                .map(Item::revalidate)
+                .collect(Collectors.toList()), pool)
+                .thenApply(after -> {
+                    boolean changed;
+                    synchronized(this) {
+                        //keep whatever was added while the refresh was running on top, and in its own order
+                        List<Item> merged = new ArrayList<>(items);
+                        for(int i = 0; i < before.size(); i++) {
+                            int at = merged.indexOf(before.get(i));
+                            if(at < 0)
+                                continue;
+                            if(after.get(i) == null) merged.remove(at);
+                            else merged.set(at, after.get(i));
+                        }
+
+                        changed = !merged.equals(items);
+                        items = merged;
+                    }
+
+                    if(changed) {
+                        try {
+                            save();
+                        } catch(IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }
+                    return getItems();
+                });
+    }
+
+    /**
+     * What the catalog knows about one project file.
+     */
+    public static final class Item {
+        private final Path file;
+        private final long lastModified, size;
+        private final String name;
+        private final long start, end;
+        private final int entryCount, participantCount;
+        private final byte[] thumbnail;
+
+        private Item(Path file, long lastModified, long size, String name, long start, long end, int entryCount,
+                     int participantCount, byte[] thumbnail) {
+            this.file = file;
+            this.lastModified = lastModified;
+            this.size = size;
+            this.name = name;
+            this.start = start;
+            this.end = end;
+            this.entryCount = entryCount;
+            this.participantCount = participantCount;
+            this.thumbnail = thumbnail;
+        }
+
+        /**
+         * Catalogs a project file, reusing what was cataloged before if the file hasn't changed since.
+         */
+        private static Item of(Path file, Item old) throws IOException {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            long lastModified = attributes.lastModifiedTime().toMillis(), size = attributes.size();
+            if(old != null && old.lastModified == lastModified && old.size == size)
+                return old;
+
+            ProjectReader reader = new ProjectReader(file);
+            int[] density = reader.density(THUMBNAIL_SLICES);
+            int peak = 1;
+            for(int d : density) peak = Math.max(peak, d);
+
+            byte[] thumbnail = new byte[THUMBNAIL_SLICES];
+            for(int i = 0; i < THUMBNAIL_SLICES; i++)
+                thumbnail[i] = (byte) (density[i] * 255L / peak);
+
+            return new Item(file, lastModified, size, reader.getName(), reader.getStart().getEpochMinutes(),
+                    reader.getEnd().getEpochMinutes(), reader.getEntryCount(), reader.getParticipantCount(), thumbnail);
+        }
+
+        /**
+         * @return this item if its file hasn't changed, a new one if it has, or null if it can't be read any more
+         */
+        private Item revalidate() {
+            try {
+                return of(file, this);
+            } catch(IOException e) {
+                return null;
+            }
+        }
+
+        private static Item read(DataInputStream in) throws IOException {
+            Path file = Paths.get(in.readUTF());
+            long lastModified = in.readLong(), size = in.readLong();
+            String name = in.readBoolean() ? in.readUTF() : null;
+            long start = in.readLong(), end = in.readLong();
+            int entryCount = in.readInt(), participantCount = in.readInt();
+            byte[] thumbnail = new byte[in.readUnsignedShort()];
+            in.readFully(thumbnail);
+            return new Item(file, lastModified, size, name, start, end, entryCount, participantCount, thumbnail);
+        }
+
+        private void write(DataOutputStream out) throws IOException {
+            out.writeUTF(file.toString());
+            out.writeLong(lastModified);
+            out.writeLong(size);
+            out.writeBoolean(name != null);
+            if(name != null)
+                out.writeUTF(name);
+            out.writeLong(start);
+            out.writeLong(end);
+            out.writeInt(entryCount);
+            out.writeInt(participantCount);
+            out.writeShort(thumbnail.length);
+            out.write(thumbnail);
+        }
+
+        public Path getFile() { return file; }
+
+        public String getName() { return name; }
+
+        public DateTime getStart() { return DateTime.ofEpochMinutes(start); }
+
+        public DateTime getEnd() { return DateTime.ofEpochMinutes(end); }
+
+        public int getEntryCount() { return entryCount; }
+
+        public int getParticipantCount() { return participantCount; }
+
+        /**
+         * @return when the file was last modified, as of when it was cataloged (in epoch milliseconds)
+         */
+        public long getLastModified() { return lastModified; }
+
+        /**
+         * Returns a thumbnail of the project's timeline: for each of {@link #THUMBNAIL_SLICES} equal slices of it, how
+         * busy it is, from 0 (nothing underway) to 255 (the busiest slice).
+         * @return the thumbnail
+         */
+        public int[] getThumbnail() {
+            int[] levels = new int[thumbnail.length];
+            for(int i = 0; i < levels.length; i++)
+                levels[i] = thumbnail[i] & 0xFF;
+            return levels;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(!(o instanceof Item))
+                return false;
+            Item other = (Item) o;
+            return file.equals(other.file) && lastModified == other.lastModified && size == other.size;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(file, lastModified, size);
+        }
+
+        @Override
+        public String toString() {
+            return name + " (" + file + ")";
+        }
+    }
+}
@@ -0,0 +1,847 @@
+package data.io;
+
+import data.DateTime;
+import data.Entry;
+import data.Participant;
+import data.Project;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Imports schedules kept in other tools, as CSV or iCalendar (.ics) exports, into a Project.
+ *
+ * The import runs as a pipeline. First the file is split into rows (CSV records, or VEVENT/VTODO components) in one
+ * quick pass. The rows are then parsed in parallel, which is where the time goes (splitting fields, decoding dates).
+ * Then, back on one thread, parents and participants are resolved by name through hash maps, and the Entry trees are
+ * assembled while they are still outside of the Project. Finally everything goes into the Project in one transaction,
+ * as whole trees. Nothing is inserted row by row, so nothing is re-spaced, and the listeners see a single batch.
+ *
+ * A malformed row is rejected (and reported, with its line number) without stopping the import.
+ *
+ * CSV files need a header row. The columns are matched by name, case-insensitively:
+ * <pre>
+ *   Path                  the Entry's place in the hierarchy, e.g. "Phase 1/Design/Mockups" (or use Name and Parent)
+ *   Name, Parent          the Entry's name, and the Path of its parent (empty for a top-level Entry)
+ *   Start, End            2018-07-01, 2018-07-01T09:30, 2018-07-01T09:30:00Z or 7/1/2018 (End defaults to Start)
+ *   Percent Complete      0 to 100, optionally followed by %
+ *   Assigned To           a Participant's name or initials; unknown names become new Participants
+ *   Description
+ * </pre>
+ * Groups that are named in a Path but have no row of their own are created to hold their sub-entries.
+ *
+ * From iCalendar files, VEVENTs and VTODOs are imported: SUMMARY, DESCRIPTION, DTSTART, DTEND (or DUE),
+ * PERCENT-COMPLETE, the first ATTENDEE (by its CN), and RELATED-TO, which places a component under its parent's UID.
+ *
+ * Every parent is widened to span its sub-entries, and the imported top-level Entries are merged into the Project in
+ * order of their start dates, so the Project's invariants hold (see {@link Project#beginTransaction()}).
+ *
+ * @author Al-John
+ */
+public final class ScheduleImporter {
+
+    private final Project project;
+    private final Result result = new Result();
+    private final Map<String, Participant> participants = new HashMap<>();
+    private final List<Participant> newParticipants = new ArrayList<>();
+    private long started;
+
+    private ScheduleImporter(Project project) {
+        this.project = project;
+        for(Participant p : project.getParticipants()) {
+            participants.putIfAbsent(key(p.getInitials()), p);
+            participants.put(key(p.getName()), p);
+        }
+    }
+
+    /**
+     * Imports a CSV or iCalendar file, depending on its extension (.ics for iCalendar, anything else for CSV).
+     * @param project the Project to import into
+     * @param file the file
+     * @return how the import went
+     * @throws IOException if the file couldn't be read, or has no usable header
+     */
+    public static Result importFile(Project project, Path file) throws IOException {
+        return file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".ics")
+                ? importIcs(project, file) : importCsv(project, file);
+    }
+
+    /**
+     * Imports a CSV file (see above for the columns).
+     * @param project the Project to import into
+     * @param file the file, in UTF-8
+     * @return how the import went
+     * @throws IOException if the file couldn't be read, or has no usable header
+     */
+    public static Result importCsv(Project project, Path file) throws IOException {
+        try(Reader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return importCsv(project, in);
+        }
+    }
+
+    /**
+     * Imports CSV text (see above for the columns).
+     * @param project the Project to import into
+     * @param in the text
+     * @return how the import went
+     * @throws IOException if the text couldn't be read, or has no usable header
+     */
+    public static Result importCsv(Project project, Reader in) throws IOException {
+        ScheduleImporter importer = new ScheduleImporter(project);
+        importer.started = System.nanoTime();
+        List<Row> rows = importer.splitCsv(in);
+        return importer.build(rows, false);
+    }
+
+    /**
+     * Imports an iCalendar file.
+     * @param project the Project to import into
+     * @param file the file, in UTF-8
+     * @return how the import went
+     * @throws IOException if the file couldn't be read
+     */
+    public static Result importIcs(Project project, Path file) throws IOException {
+        try(Reader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return importIcs(project, in);
+        }
+    }
+
+    /**
+     * Imports iCalendar text.
+     * @param project the Project to import into
+     * @param in the text
+     * @return how the import went
+     * @throws IOException if the text couldn't be read
+     */
+    public static Result importIcs(Project project, Reader in) throws IOException {
+        ScheduleImporter importer = new ScheduleImporter(project);
+        importer.started = System.nanoTime();
+        List<Row> rows = importer.splitIcs(in);
+        return importer.build(rows, true);
+    }
+
+    /**
+     * Splits CSV text into records (quoted fields may hold commas, quotes and line breaks), and reads the header.
+     * Only the record boundaries are found here; the fields are split when the rows are parsed.
+     */
+    private List<Row> splitCsv(Reader reader) throws IOException {
+        List<Row> rows = new ArrayList<>();
+        StringBuilder record = new StringBuilder();
+        boolean quoted = false;
+        int line = 1, recordLine = 1;
+
+        BufferedReader in = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        for(int c; (c = in.read()) >= 0; ) {
+            if(c == '"')
+                quoted = !quoted;
+
+            if(c == '\n' && !quoted) {
+                add(rows, record, recordLine);
+                recordLine = ++line;
+                continue;
+            }
+            if(c == '\n')
+                line++;
+            record.append((char) c);
+        }
+        add(rows, record, recordLine);
+
+        if(rows.isEmpty())
+            throw new IOException("The file is empty.");
+
+        Csv csv;
+        try {
+            csv = new Csv(fields(rows.remove(0).text));
+        } catch(IllegalArgumentException e) {
+            throw new IOException("The header is malformed: " + e.getMessage() + ".");
+        }
+        if(csv.path < 0 && csv.name < 0)
+            throw new IOException("The header has neither a Path nor a Name column.");
+        if(csv.start < 0)
+            throw new IOException("The header has no Start column.");
+
+        for(Row row : rows)
+            row.csv = csv;
+        return rows;
+    }
+
+    private static void add(List<Row> rows, StringBuilder record, int line) {
+        int end = record.length();
+        if(end > 0 && record.charAt(end - 1) == '\r')
+            end--;
+        if(end > 0) {
+            Row row = new Row(line);
+            row.text = record.substring(0, end);
+            rows.add(row);
+        }
+        record.setLength(0);
+    }
+
+    /**
+     * Splits iCalendar text into its VEVENT and VTODO components, unfolding continued lines. Components nested in them
+     * (e.g. VALARM) are left out, so their properties can't be taken for the event's own.
+     */
+    private List<Row> splitIcs(Reader reader) throws IOException {
+        List<Row> rows = new ArrayList<>();
+        BufferedReader in = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        Row component = null;
+        StringBuilder unfolded = null;
+        int depth = 0;      //of the nested component being skipped, if any
+        int line = 0;
+
+        for(String s; (s = in.readLine()) != null; ) {
+            line++;
+            if(component != null && !s.isEmpty() && (s.charAt(0) == ' ' || s.charAt(0) == '\t')) {
+                if(depth == 0)
+                    unfolded.append(s, 1, s.length());
+                continue;
+            }
+
+            if(component != null && unfolded.length() > 0) {
+                component.lines.add(unfolded.toString());
+                unfolded.setLength(0);
+            }
+
+            String upper = s.trim().toUpperCase(Locale.ROOT);
+            if(component == null) {
+                if(upper.equals("BEGIN:VEVENT") || upper.equals("BEGIN:VTODO")) {
+                    component = new Row(line);
+                    component.lines = new ArrayList<>();
+                    unfolded = new StringBuilder();
+                    depth = 0;
+                }
+            }
+            else if(upper.startsWith("BEGIN:")) {
+                depth++;
+            }
+            else if(depth > 0) {
+                if(upper.startsWith("END:"))
+                    depth--;
+            }
+            else if(upper.equals("END:VEVENT") || upper.equals("END:VTODO")) {
+                rows.add(component);
+                component = null;
+            }
+            else {
+                unfolded.append(s);
+            }
+        }
+
+        if(component != null) {
+            component.error = "the component never ends";
+            rows.add(component);
+        }
+        return rows;
+    }
+
+    /**
+     * Parses one CSV record into a row (on any thread).
+     */
+    private static void parseCsv(Row row) {
+        Csv csv = row.csv;
+        List<String> fields = fields(row.text);
+
+        String path = csv.get(fields, csv.path);
+        if(path != null) {
+            row.path = split(path);
+        }
+        else {
+            String parent = csv.get(fields, csv.parent);
+            List<String> names = parent == null ? new ArrayList<>() : new ArrayList<>(split(parent));
+            String name = csv.get(fields, csv.name);
+            if(name != null)
+                names.add(name);
+            row.path = name == null ? Collections.emptyList() : names;
+        }
+        if(row.path.isEmpty())
+            throw new IllegalArgumentException("the row has no name");
+
+        String start = csv.get(fields, csv.start);
+        if(start == null)
+            throw new IllegalArgumentException("the row has no start date");
+        row.start = date(start, null);
+        String end = csv.get(fields, csv.end);
+        row.end = end == null ? row.start : date(end, null);
+
+        String percent = csv.get(fields, csv.percent);
+        if(percent != null)
+            row.percent = percent(percent);
+
+        row.assignee = csv.get(fields, csv.assignee);
+        row.description = csv.get(fields, csv.description);
+    }
+
+    /**
+     * Parses one iCalendar component into a row (on any thread).
+     */
+    private static void parseIcs(Row row) {
+        Long start = null, end = null;
+        for(String line : row.lines) {
+            int colon = colon(line);
+            if(colon < 0)
+                continue;
+
+            String[] head = line.substring(0, colon).split(";");
+            String name = head[0].trim().toUpperCase(Locale.ROOT);
+            String value = line.substring(colon + 1);
+
+            switch(name) {
+                case "SUMMARY":         row.path = Collections.singletonList(text(value)); break;
+                case "DESCRIPTION":     row.description = text(value); break;
+                case "UID":             row.uid = value.trim(); break;
+                case "DTSTART":         start = date(value.trim(), param(head, "TZID")); break;
+                case "DTEND":
+                case "DUE":             end = date(value.trim(), param(head, "TZID")); break;
+                case "PERCENT-COMPLETE": row.percent = percent(value); break;
+                case "RELATED-TO":
+                    String type = param(head, "RELTYPE");
+                    if(type == null || type.equalsIgnoreCase("PARENT"))
+                        row.parentUid = value.trim();
+                    break;
+                case "ATTENDEE":
+                    if(row.assignee == null)
+                        row.assignee = param(head, "CN");
+                    break;
+            }
+        }
+
+        if(row.path == null || row.path.get(0).isEmpty())
+            throw new IllegalArgumentException("the component has no SUMMARY");
+        if(start == null && end == null)
+            throw new IllegalArgumentException("the component has neither DTSTART nor DTEND/DUE");
+        row.start = start != null ? start : end;
+        row.end = end != null ? end : start;
+    }
+
+    /**
+     * Splits a CSV record into its fields, unquoting them.
+     */
+    private static List<String> fields(String record) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+
+        for(int i = 0; i < record.length(); i++) {
+            char c = record.charAt(i);
+            if(quoted) {
+                if(c != '"') {
+                    field.append(c);
+                }
+                else if(i + 1 < record.length() && record.charAt(i + 1) == '"') {
+                    field.append(c);
+                    i++;
+                }
+                else {
+                    quoted = false;
+                }
+            }
+            else if(c == '"') {
+                quoted = true;
+            }
+            else if(c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            }
+            else {
+                field.append(c);
+            }
+        }
+
+        if(quoted)
+            throw new IllegalArgumentException("a quoted field never ends");
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private static List<String> split(String path) {
+        List<String> names = new ArrayList<>();
+        for(String name : path.split("/")) {
+            name = name.trim();
+            if(!name.isEmpty())
+                names.add(name);
+        }
+        return names;
+    }
+
+    private static final DateTimeFormatter US_DATE = DateTimeFormatter.ofPattern("M/d/uuuu");
+    private static final DateTimeFormatter ICS_DATE = DateTimeFormatter.ofPattern("uuuuMMdd");
+    private static final DateTimeFormatter ICS_DATE_TIME = DateTimeFormatter.ofPattern("uuuuMMdd'T'HHmmss");
+
+    /**
+     * Reads a date in any of the supported forms, as epoch minutes. Dates without an offset are in a specified time
+     * zone, or the system's.
+     */
+    private static long date(String s, String zone) {
+        ZoneId z;
+        try {
+            z = zone == null ? ZoneId.systemDefault() : ZoneId.of(zone);
+        } catch(DateTimeException e) {
+            z = ZoneId.systemDefault();
+        }
+
+        try {
+            Instant instant;
+            if(s.endsWith("Z") && s.length() == 16)
+                instant = LocalDateTime.parse(s.substring(0, 15), ICS_DATE_TIME).toInstant(ZoneOffset.UTC);
+            else if(s.length() == 15 && s.charAt(8) == 'T')
+                instant = LocalDateTime.parse(s, ICS_DATE_TIME).atZone(z).toInstant();
+            else if(s.length() == 8 && s.chars().allMatch(Character::isDigit))
+                instant = LocalDate.parse(s, ICS_DATE).atStartOfDay(z).toInstant();
+            else if(s.indexOf('/') >= 0)
+                instant = LocalDate.parse(s, US_DATE).atStartOfDay(z).toInstant();
+            else if(s.length() == 10)
+                instant = LocalDate.parse(s).atStartOfDay(z).toInstant();
+            else if(s.endsWith("Z") || s.lastIndexOf('+') > 10 || s.lastIndexOf('-') > 10)
+                instant = OffsetDateTime.parse(s.replace(' ', 'T')).toInstant();
+            else
+                instant = LocalDateTime.parse(s.replace(' ', 'T')).atZone(z).toInstant();
+
+            return Math.floorDiv(instant.getEpochSecond(), 60);
+        } catch(DateTimeParseException e) {
+            throw new IllegalArgumentException("\"" + s + "\" is not a date");
+        }
+    }
+
+    private static int percent(String s) {
+        String digits = s.trim();
+        if(digits.endsWith("%"))
+            digits = digits.substring(0, digits.length() - 1).trim();
+
+        try {
+            int percent = Integer.parseInt(digits);
+            if(percent >= 0 && percent <= 100)
+                return percent;
+        } catch(NumberFormatException e) {
+            //reported below
+        }
+        throw new IllegalArgumentException("\"" + s + "\" is not a percentage");
+    }
+
+    /**
+     * @return the position of the colon that ends a content line's name and parameters (outside of quoted values)
+     */
+    private static int colon(String line) {
+        boolean quoted = false;
+        for(int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if(c == '"') quoted = !quoted;
+            else if(c == ':' && !quoted) return i;
+        }
+        return -1;
+    }
+
+    private static String param(String[] head, String name) {
+        for(int i = 1; i < head.length; i++) {
+            int eq = head[i].indexOf('=');
+            if(eq > 0 && head[i].substring(0, eq).trim().equalsIgnoreCase(name)) {
+                String value = head[i].substring(eq + 1).trim();
+                if(value.length() >= 2 && value.startsWith("\"") && value.endsWith("\""))
+                    value = value.substring(1, value.length() - 1);
+                return value;
+            }
+        }
+        return null;
+    }
+
+    private static String text(String value) {
+        StringBuilder s = new StringBuilder(value.length());
+        for(int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if(c == '\\' && i + 1 < value.length()) {
+                char next = value.charAt(++i);
+                s.append(next == 'n' || next == 'N' ? '\n' : next);
+            }
+            else {
+                s.append(c);
+            }
+        }
+        return s.toString().trim();
+    }
+
+    /**
+     * Parses the rows in parallel, assembles the Entry trees, and inserts them into the Project.
+     */
+    private Result build(List<Row> rows, boolean ics) {
+        List<Row> parsed = rows.parallelStream().map(row -> {
+            if(row.error == null) {
+                try {
+                    if(ics) parseIcs(row);
+                    else parseCsv(row);
+                    if(row.end < row.start)
+                        throw new IllegalArgumentException("it ends before it starts");
+                } catch(IllegalArgumentException e) {
+                    row.error = e.getMessage();
+                }
+            }
+            return row;
+        }).collect(Collectors.toList());
+
+        List<Entry> tops = ics ? linkByUid(parsed) : linkByPath(parsed);
+        result.rows = rows.size();
+
+        //every parent spans its sub-entries; then the top-level Entries go in by start date
+        for(Entry top : tops)
+            for(Entry e : top.postOrder())
+                if(!e.getSubEntries().isEmpty()) {
+                    e.setStartMinutes(Math.min(e.getStartMinutes(), e.getSpanStart().getEpochMinutes()), false);
+                    e.setEndMinutes(Math.max(e.getEndMinutes(), e.getSpanEnd().getEpochMinutes()), false);
+                }
+        tops.sort(Comparator.comparingLong(Entry::getStartMinutes));
+
+        project.beginTransaction();
+        try {
+            if(!newParticipants.isEmpty())
+                project.addParticipants(newParticipants.toArray(new Participant[0]));
+            insert(tops);
+            project.commit();
+        } catch(RuntimeException e) {
+            if(project.inTransaction())
+                project.rollback();
+            for(Entry top : tops)
+                for(Entry sub : top.preOrder())
+                    if(sub.getAssignedTo() != null) sub.getAssignedTo().removeAssignment(sub);
+            throw e;
+        }
+
+        for(Entry top : tops)
+            result.entries += top.getDescendantCount() + 1;
+        result.participants = newParticipants.size();
+        result.nanos = System.nanoTime() - started;
+        return result;
+    }
+
+    /**
+     * Builds the trees of CSV rows, which name their place in the hierarchy by path.
+     */
+    private List<Entry> linkByPath(List<Row> rows) {
+        List<Entry> tops = new ArrayList<>();
+        Map<String, Entry> byPath = new HashMap<>();
+        Set<Entry> placeholders = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        for(Row row : rows) {
+            if(reject(row))
+                continue;
+
+            Entry parent = null;
+            StringBuilder path = new StringBuilder();
+            for(int i = 0; i < row.path.size() - 1; i++) {
+                path.append(key(row.path.get(i))).append('/');
+                Entry group = byPath.get(path.toString());
+                if(group == null) {
+                    group = new Entry(row.path.get(i), DateTime.ofEpochMinutes(row.start),
+                            DateTime.ofEpochMinutes(row.end));
+                    byPath.put(path.toString(), group);
+                    placeholders.add(group);
+                    place(group, parent, tops);
+                }
+                parent = group;
+            }
+
+            path.append(key(row.path.get(row.path.size() - 1))).append('/');
+            Entry e = byPath.get(path.toString());
+            if(e != null && !placeholders.remove(e)) {
+                row.error = "another row has the same path";
+                reject(row);
+                continue;
+            }
+
+            if(e == null) {
+                e = new Entry(row.path.get(row.path.size() - 1), DateTime.ofEpochMinutes(row.start),
+                        DateTime.ofEpochMinutes(row.end));
+                byPath.put(path.toString(), e);
+                place(e, parent, tops);
+            }
+            else {
+                e.setStartMinutes(row.start, false);
+                e.setEndMinutes(row.end, false);
+            }
+            fill(e, row);
+        }
+        return tops;
+    }
+
+    /**
+     * Builds the trees of iCalendar components, which name their parent by UID.
+     */
+    private List<Entry> linkByUid(List<Row> rows) {
+        List<Entry> tops = new ArrayList<>();
+        Map<String, Entry> byUid = new HashMap<>();
+        List<Entry> entries = new ArrayList<>();
+        List<Row> kept = new ArrayList<>();
+
+        for(Row row : rows) {
+            if(row.error == null && row.uid != null && byUid.containsKey(row.uid))
+                row.error = "another component has the same UID";
+            if(reject(row))
+                continue;
+
+            Entry e = new Entry(row.path.get(0), DateTime.ofEpochMinutes(row.start), DateTime.ofEpochMinutes(row.end));
+            fill(e, row);
+            if(row.uid != null)
+                byUid.put(row.uid, e);
+            entries.add(e);
+            kept.add(row);
+        }
+
+        for(int i = 0; i < entries.size(); i++) {
+            Entry e = entries.get(i);
+            Entry parent = kept.get(i).parentUid == null ? null : byUid.get(kept.get(i).parentUid);
+
+            //a parent that is missing, or that would make a cycle, leaves the Entry at the top level
+            for(Entry a = parent; a != null; a = a.getParent())
+                if(a == e) {
+                    parent = null;
+                    break;
+                }
+            if(parent != null) parent.addSubEntry(e);
+            else tops.add(e);
+        }
+        return tops;
+    }
+
+    private static void place(Entry e, Entry parent, List<Entry> tops) {
+        if(parent == null) tops.add(e);
+        else parent.addSubEntry(e);
+    }
+
+    /**
+     * Sets what a row says about an Entry, besides its name and dates.
+     */
+    private void fill(Entry e, Row row) {
+        if(row.description != null && !row.description.isEmpty())
+            e.setDescription(row.description);
+        if(row.percent != 0)
+            e.setPercentComplete(row.percent);
+        if(row.assignee != null && !row.assignee.trim().isEmpty())
+            e.assignTo(participant(row.assignee.trim()));
+        result.imported++;
+    }
+
+    /**
+     * Finds a Participant by name or initials, or makes a new one (added to the Project along with the Entries).
+     */
+    private Participant participant(String name) {
+        return participants.computeIfAbsent(key(name), k -> {
+            StringBuilder initials = new StringBuilder();
+            for(String word : name.split("\\s+"))
+                if(!word.isEmpty() && initials.length() < 2)
+                    initials.append(Character.toUpperCase(word.charAt(0)));
+
+            Participant p = new Participant(name, initials.toString(), color(newParticipants.size()), "");
+            newParticipants.add(p);
+            return p;
+        });
+    }
+
+    /**
+     * Reports a row if it was rejected.
+     * @return true if the row was rejected
+     */
+    private boolean reject(Row row) {
+        if(row.error == null)
+            return false;
+
+        result.rejected.add(new Rejection(row.line, row.error));
+        return true;
+    }
+
+    /**
+     * Inserts the new top-level Entries (sorted by start) among the Project's, keeping them all in order of their
+     * start dates. If they all go after the ones already there (e.g. into an empty Project), they go in all at once.
+     */
+    private void insert(List<Entry> tops) {
+        List<Entry> existing = project.getEntries();
+        if(tops.isEmpty())
+            return;
+        if(existing.isEmpty() || existing.get(existing.size() - 1).getStartMinutes() <= tops.get(0).getStartMinutes()) {
+            project.addEntries(tops.toArray(new Entry[0]));
+            return;
+        }
+
+        int at = 0;
+        for(Entry e : tops) {
+            existing = project.getEntries();
+            while(at < existing.size() && existing.get(at).getStartMinutes() <= e.getStartMinutes())
+                at++;
+            project.insertEntry(e, null, at++);
+        }
+    }
+
+    /**
+     * @return the color of the n-th new Participant, as a hex code: hues a golden angle apart, so that any number of
+     * them stay apart
+     */
+    private static String color(int n) {
+        double h = n * 137.5 % 360 / 60, s = .55, v = .85;
+        double c = v * s, x = c * (1 - Math.abs(h % 2 - 1)), m = v - c;
+        double r = h < 1 || h >= 5 ? c : h < 2 || h >= 4 ? x : 0;
+        double g = h < 1 || h >= 3 && h < 4 ? x : h < 3 ? c : 0;
+        double b = h < 2 ? 0 : h < 3 || h >= 5 ? x : c;
+        return String.format("#%02x%02x%02x", Math.round((r + m) * 255), Math.round((g + m) * 255),
+                Math.round((b + m) * 255));
+    }
+
+    private static String key(String name) {
+        return name == null ? "" : name.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * One row of the input: a CSV record or an iCalendar component, and what was parsed out of it.
+     */
+    private static final class Row {
+        final int line;
+        String text;            //the CSV record
+        Csv csv;
+        List<String> lines;     //the iCalendar content lines
+        List<String> path;
+        String description, assignee, uid, parentUid;
+        long start, end;
+        int percent;
+        String error;
+
+        Row(int line) {
+            this.line = line;
+        }
+    }
+
+    /**
+     * The columns of a CSV file, by position (-1 where a column is missing).
+     */
+    private static final class Csv {
+        final int path, name, parent, start, end, percent, assignee, description;
+
+        Csv(List<String> header) {
+            Map<String, Integer> columns = new HashMap<>();
+            for(int i = header.size() - 1; i >= 0; i--)
+                columns.put(header.get(i).trim().toLowerCase(Locale.ROOT).replaceAll("[\\s_-]", ""), i);
+
+            path = column(columns, "path", "wbs", "outline");
+            name = column(columns, "name", "task", "taskname", "title", "summary");
+            parent = column(columns, "parent", "parentpath");
+            start = column(columns, "start", "startdate", "begin");
+            end = column(columns, "end", "enddate", "finish", "due", "duedate");
+            percent = column(columns, "percentcomplete", "percent", "%complete", "progress", "complete");
+            assignee = column(columns, "assignedto", "assignee", "owner", "resource", "participant");
+            description = column(columns, "description", "notes", "details");
+        }
+
+        private static int column(Map<String, Integer> columns, String... names) {
+            for(String name : names)
+                if(columns.containsKey(name))
+                    return columns.get(name);
+            return -1;
+        }
+
+        /**
+         * @return the field in a column, trimmed, or null if the column is missing or the field is empty
+         */
+        String get(List<String> fields, int column) {
+            if(column < 0 || column >= fields.size())
+                return null;
+            String field = fields.get(column).trim();
+            return field.isEmpty() ? null : field;
+        }
+    }
+
+    /**
+     * A row that was left out of the import, and why.
+     */
+    public static final class Rejection {
+        private final int line;
+        private final String reason;
+
+        Rejection(int line, String reason) {
+            this.line = line;
+            this.reason = reason;
+        }
+
+        /**
+         * @return the line the row starts on (counting from 1)
+         */
+        public int getLine() { return line; }
+
+        /**
+         * @return why the row was rejected
+         */
+        public String getReason() { return reason; }
+
+        @Override
+        public String toString() {
+            return "line " + line + ": " + reason;
+        }
+    }
+
+    /**
+     * How an import went.
+     */
+    public static final class Result {
+        private int rows, imported, entries, participants;
+        private final List<Rejection> rejected = new ArrayList<>();
+        private long nanos;
+
+        /**
+         * @return the number of rows read (CSV records after the header, or iCalendar components)
+         */
+        public int getRowCount() { return rows; }
+
+        /**
+         * @return the number of rows that were imported
+         */
+        public int getImportedCount() { return imported; }
+
+        /**
+         * @return the number of Entries added to the Project, including groups created for paths without a row
+         */
+        public int getEntryCount() { return entries; }
+
+        /**
+         * @return the number of Participants added to the Project
+         */
+        public int getNewParticipantCount() { return participants; }
+
+        /**
+         * @return the rows that were left out, in the order they appear
+         */
+        public List<Rejection> getRejected() { return Collections.unmodifiableList(rejected); }
+
+        /**
+         * @return how long the whole import took (in milliseconds)
+         */
+        public double getElapsedMillis() { return nanos / 1e6; }
+
+        /**
+         * @return the throughput of the import, in rows per second
+         */
+        public double getRowsPerSecond() { return nanos == 0 ? 0 : rows * 1e9 / nanos; }
+
+        @Override
+        public String toString() {
+            return String.format("Imported %d of %d rows (%d entries, %d new participants) in %.1f ms, %.0f rows/s; "
+                    + "%d rejected", imported, rows, entries, participants, getElapsedMillis(), getRowsPerSecond(),
+                    rejected.size());
+        }
+    }
+}
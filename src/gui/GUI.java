@@ -14,12 +14,16 @@ import javafx.beans.value.ObservableValue;
 import javafx.event.ActionEvent;
 import javafx.scene.Node;
 import javafx.scene.Scene;
+import javafx.scene.control.Alert;
+import javafx.scene.control.ButtonBar;
+import javafx.scene.control.ButtonType;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.Region;
 import javafx.scene.paint.Color;
 import javafx.stage.Screen;
 import javafx.stage.Stage;
 import javafx.stage.StageStyle;
+import javafx.stage.WindowEvent;
 import javafx.util.Duration;
 
 /**
@@ -120,6 +124,9 @@ public final class GUI {
 
         primaryStage.setTitle("planAmity");
         primaryStage.setResizable(true); //TODO: Make window resizeable, movable
+
+        //the last edits are saved while the window can still show why they couldn't be
+        primaryStage.setOnCloseRequest((WindowEvent close) -> screenController.stopAutoSave());
     }
 
     /**
@@ -162,6 +169,34 @@ public final class GUI {
         }
     }
 
+    /**
+     * Shows an error in a dialog over the primary Stage, and waits until the user dismisses it.
+     * @param header what went wrong
+     * @param message the details
+     */
+    public static void showError(String header, String message) {
+        Alert alert = new Alert(Alert.AlertType.ERROR, message);
+        alert.initOwner(primaryStage);
+        alert.setHeaderText(header);
+        alert.showAndWait();
+    }
+
+    /**
+     * Shows an error in a dialog over the primary Stage, offering to try again or to give up, and waits for the choice.
+     * @param header what went wrong
+     * @param message the details
+     * @param giveUp the label of the button that gives up
+     * @return true if the user chose to try again
+     */
+    public static boolean askRetry(String header, String message, String giveUp) {
+        ButtonType retry = new ButtonType("Retry", ButtonBar.ButtonData.OK_DONE);
+        Alert alert = new Alert(Alert.AlertType.ERROR, message, retry,
+                new ButtonType(giveUp, ButtonBar.ButtonData.CANCEL_CLOSE));
+        alert.initOwner(primaryStage);
+        alert.setHeaderText(header);
+        return alert.showAndWait().filter(button -> button == retry).isPresent();
+    }
+
 	/**
 	 * Makes a node draggable.
 	 * @param node the node
@@ -337,6 +372,7 @@ public final class GUI {
      * Exits the program, with a fancy fade-out animation.
      */
     public static void exit() {
+        screenController.stopAutoSave();
         Timeline close = zoomFade(screenController, false, 200);
         close.setOnFinished((ActionEvent done) -> primaryStage.close());
         close.play();
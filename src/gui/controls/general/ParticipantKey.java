@@ -46,7 +46,7 @@ public class ParticipantKey extends Pane {
             super(5);
             setAlignment(Pos.CENTER_LEFT);
 
-            color = new Rectangle(10, 10, p.getColor());
+            color = new Rectangle(10, 10, p.getColor() == null ? null : Color.web(p.getColor()));
             name = new Label(p.getName() + " (" + p.getRole() + ")");
 
             name.setTextFill(Color.WHITE);
@@ -0,0 +1,206 @@
+package gui.controls.overview;
+
+import java.util.Arrays;
+
+/**
+ * The shape of the branch tree of a column of rows, worked out from the indent of each row and kept up to date as rows
+ * are inserted and removed, so that drawing the branches of any window of rows only has to look at that window.
+ *
+ * For every row it keeps the row of its next and previous siblings (the nearest rows with the same indent, with no row
+ * of a smaller indent in between) and of its parent (the nearest row above it with a smaller indent); a vertical branch
+ * runs from each row to its next sibling. Rows are stored as plain int arrays.
+ *
+ * Rows are expected to come in whole subtrees (as they are shown: a parent, then its sub-entries); an insertion or
+ * removal that isn't one (or more) whole subtree(s) is handled by working the whole layout out again.
+ *
+ * @author Al-John
+ */
+public class BranchLayout {
+
+    private int[] indent = new int[16];
+    private int[] next = new int[16];
+    private int[] prev = new int[16];
+    private int[] up = new int[16];
+    private int size;
+
+    public int size() { return size; }
+
+    public int indent(int row) { return indent[row]; }
+
+    /**
+     * @return the row of the next sibling of a row, or -1 if it is the last of its siblings
+     */
+    public int next(int row) { return next[row]; }
+
+    /**
+     * @return the row of the previous sibling of a row, or -1 if it is the first of its siblings
+     */
+    public int prev(int row) { return prev[row]; }
+
+    /**
+     * @return the row of the parent of a row, or -1 if it is at the top level
+     */
+    public int up(int row) { return up[row]; }
+
+    /**
+     * Lays out a whole column, in one pass with a stack of the rows whose siblings are still open. O(n).
+     * @param indents the indent of every row
+     */
+    public void reset(int[] indents) {
+        size = 0;
+        ensureCapacity(indents.length);
+        System.arraycopy(indents, 0, indent, 0, indents.length);
+        size = indents.length;
+        link(0, size);
+    }
+
+    /**
+     * Lays out rows that were inserted, and links them to the rows around them. O(inserted rows + depth), besides
+     * moving the rows after them along.
+     * @param from the row of the first inserted row
+     * @param indents the indents of the inserted rows
+     */
+    public void inserted(int from, int[] indents) {
+        int count = indents.length;
+        if(count == 0)
+            return;
+
+        ensureCapacity(size + count);
+        shift(from, size, count);
+        System.arraycopy(indents, 0, indent, from, count);
+        size += count;
+
+        int level = indents[0], after = from + count;
+        boolean wholeSubtrees = from == 0 ? level == 0 : level <= indent[from - 1] + 1;
+        for(int i = from; i < after && wholeSubtrees; i++)
+            wholeSubtrees = indent[i] >= level;
+        if(!wholeSubtrees || after < size && indent[after] > level) {
+            link(0, size);
+            return;
+        }
+
+        //the previous sibling and the parent of the first inserted row, found from the row before it
+        int before = -1, parent = -1;
+        for(int row = from - 1; row >= 0; row = up[row]) {
+            if(indent[row] == level) {
+                before = row;
+                parent = up[row];
+                break;
+            }
+            if(indent[row] < level) {
+                parent = row;
+                break;
+            }
+        }
+
+        //the sibling that followed the previous sibling (or, with none, the first row after the insertion)
+        int following = before >= 0 ? next[before] : after < size && indent[after] == level ? after : -1;
+
+        link(from, after);
+        int last = from;
+        for(int i = from; i < after; i++) {
+            if(indent[i] == level) {
+                up[i] = parent;
+                last = i;
+            }
+        }
+
+        prev[from] = before;
+        if(before >= 0)
+            next[before] = from;
+        next[last] = following;
+        if(following >= 0)
+            prev[following] = last;
+    }
+
+    /**
+     * Takes out a range of rows, and links the rows around it to each other. O(depth), besides moving the rows after
+     * them along.
+     * @param from the first row removed
+     * @param to the last row removed (inclusive)
+     */
+    public void removed(int from, int to) {
+        int count = to - from + 1;
+        if(count <= 0)
+            return;
+
+        int level = indent[from];
+        boolean wholeSubtrees = true;
+        for(int i = from; i <= to && wholeSubtrees; i++)
+            wholeSubtrees = indent[i] >= level;
+        wholeSubtrees &= to + 1 >= size || indent[to + 1] <= level;
+
+        if(wholeSubtrees) {
+            int last = from;
+            for(int i = from; i <= to; i++)
+                if(indent[i] == level)
+                    last = i;
+
+            int before = prev[from], following = next[last];
+            if(before >= 0)
+                next[before] = following;
+            if(following >= 0)
+                prev[following] = before;
+        }
+
+        shift(to + 1, size, -count);
+        size -= count;
+        if(!wholeSubtrees)
+            link(0, size);
+    }
+
+    /**
+     * Moves the rows in [from, end) by an offset (making room, or closing a gap), along with every link to a row at
+     * or after from.
+     */
+    private void shift(int from, int end, int offset) {
+        for(int[] links : new int[][] { next, prev, up })
+            for(int i = 0; i < end; i++)
+                if(links[i] >= from)
+                    links[i] += offset;
+
+        for(int[] column : new int[][] { indent, next, prev, up })
+            System.arraycopy(column, from, column, from + offset, end - from);
+    }
+
+    /**
+     * Links the rows in [from, to) to each other: a single pass, with a stack of the open rows (the last row seen at
+     * each indent, with nothing shallower after it).
+     */
+    private void link(int from, int to) {
+        int[] open = new int[8];
+        int top = -1;
+        for(int i = from; i < to; i++) {
+            int level = indent[i];
+            while(top >= 0 && indent[open[top]] > level)
+                top--;
+
+            next[i] = -1;
+            if(top >= 0 && indent[open[top]] == level) {
+                int sibling = open[top];
+                next[sibling] = i;
+                prev[i] = sibling;
+                up[i] = up[sibling];
+                open[top] = i;
+            }
+            else {
+                prev[i] = -1;
+                up[i] = top >= 0 ? open[top] : -1;
+                if(++top == open.length)
+                    open = Arrays.copyOf(open, open.length * 2);
+                open[top] = i;
+            }
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if(capacity <= indent.length)
+            return;
+
+        int length = Math.max(capacity, indent.length * 2);
+        indent = Arrays.copyOf(indent, length);
+        next = Arrays.copyOf(next, length);
+        prev = Arrays.copyOf(prev, length);
+        up = Arrays.copyOf(up, length);
+    }
+}
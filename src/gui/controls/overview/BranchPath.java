@@ -0,0 +1,64 @@
+package gui.controls.overview;
+
+import javafx.scene.shape.LineTo;
+import javafx.scene.shape.MoveTo;
+import javafx.scene.shape.Path;
+import javafx.scene.shape.PathElement;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Any number of straight branch segments drawn in one style, as a single Path node (rather than a Line node each).
+ *
+ * Segments are first collected into a buffer of coordinates; {@link #flush()} then replaces the Path's elements in one
+ * go, so the scene graph sees one node and one change however many segments there are. (The dash pattern starts over
+ * at the beginning of every segment, just as it would for separate Lines.)
+ *
+ * @author Al-John
+ */
+class BranchPath extends Path {
+
+    private double[] coords = new double[64];   //x1, y1, x2, y2 of each segment
+    private int size;
+
+    /**
+     * @param dashes the dash pattern, if the segments are dashed
+     */
+    BranchPath(Double... dashes) {
+        getStrokeDashArray().addAll(dashes);
+    }
+
+    /**
+     * Empties the buffer (the Path keeps showing its segments until the next flush).
+     */
+    void clear() {
+        size = 0;
+    }
+
+    /**
+     * Adds a segment to the buffer.
+     */
+    void add(double sx, double sy, double ex, double ey) {
+        if(size + 4 > coords.length)
+            coords = Arrays.copyOf(coords, coords.length * 2);
+
+        coords[size++] = sx;
+        coords[size++] = sy;
+        coords[size++] = ex;
+        coords[size++] = ey;
+    }
+
+    /**
+     * Shows the segments in the buffer.
+     */
+    void flush() {
+        List<PathElement> elements = new ArrayList<>(size / 2);
+        for(int i = 0; i < size; i += 4) {
+            elements.add(new MoveTo(coords[i], coords[i + 1]));
+            elements.add(new LineTo(coords[i + 2], coords[i + 3]));
+        }
+        getElements().setAll(elements);
+    }
+}
@@ -201,11 +201,17 @@ public class BubbleEntry extends EntryCell {
         entryBar.getEntryArea().retract(this);
     }
 
-    public String toString() {
-        return "BubbleEntry :: " + super.toString();
+    @Override
+    String typeLabel() {
+        return "BubbleEntry :: ";
     }
 
     public String getEntryName() {
         return nameText.getText();
     }
+
+    @Override
+    void showName(String name) {
+        nameText.setText(name);
+    }
 }
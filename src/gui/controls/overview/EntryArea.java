@@ -1,19 +1,27 @@
 package gui.controls.overview;
 
+import data.ObsList;
 import gui.GUI;
 import javafx.beans.property.DoubleProperty;
 import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.SimpleDoubleProperty;
 import javafx.beans.property.SimpleIntegerProperty;
-import javafx.scene.Node;
+import javafx.scene.input.ScrollEvent;
 import javafx.scene.layout.Pane;
 import javafx.scene.shape.Line;
+import javafx.scene.shape.Rectangle;
 import javafx.scene.shape.StrokeLineCap;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Controller class for the Entry Area, which is the area in the Overview where expanded Entries are shown.
@@ -88,7 +96,12 @@ public class EntryArea extends Pane {
 
         entries.sort((BubbleEntry e1, BubbleEntry e2) -> entryBar.indexOf(e1) - entryBar.indexOf(e2));
 
+        for(BubbleEntry bubble : activeBubbles)
+            if(!entries.contains(bubble))
+                close(bubble);
         activeBubbles = entries;
+        for(BubbleEntry bubble : entries)
+            bubble.loadSubCells();                      //read the sub-entries, if they're still in storage
         entryArea.getChildren().clear();                //clear the current area
         int cols = entries.size();                      //set number of columns
         colWidth.bind(widthProperty().divide(cols));    //set width of columns
@@ -108,17 +121,32 @@ public class EntryArea extends Pane {
     }
 
     public void retract(BubbleEntry bubble){
-        activeBubbles.remove(bubble);
+        if(!activeBubbles.remove(bubble))
+            return;
+
+        close(bubble);
         expand(activeBubbles);
         isExpanded.put(bubble, false);
     }
 
+    /**
+     * Lets go of the column of a bubble that is no longer shown, and of the cells in it: until the bubble is expanded
+     * again, its subtree is only counted.
+     * @param bubble the bubble
+     */
+    private void close(BubbleEntry bubble) {
+        entryBar.dropSubCells(bubble);
+        owners.remove(bubble);
+    }
+
     public void expand(ListEntry listEntry) {
+        listEntry.loadSubCells();
         owners.get(listEntry).expand(listEntry);
         isExpanded.put(listEntry, true);
     }
 
     public void expandAll(EntryCell cell) {
+        cell.loadAllSubCells();
         if(cell instanceof ListEntry)
             owners.get(cell).expandAll((ListEntry)cell);
         else if(cell instanceof BubbleEntry)
@@ -128,6 +156,7 @@ public class EntryArea extends Pane {
     public void retract(ListEntry listEntry) {
         owners.get(listEntry).retract(listEntry);
         isExpanded.put(listEntry, false);
+        entryBar.dropSubCells(listEntry);           //until it's expanded again, the subtree is only counted
     }
 
     public void toggle(EntryCell entry) {
@@ -150,6 +179,38 @@ public class EntryArea extends Pane {
         owners.remove(entry);
     }
 
+    /**
+     * Forgets cells that were dropped (see {@link EntryBar#dropSubCells(EntryCell)}), so that nothing here keeps them.
+     * @param dropped the cells
+     */
+    void forget(List<? extends EntryCell> dropped) {
+        for(EntryCell cell : dropped) {
+            owners.remove(cell);
+            isExpanded.remove(cell);
+        }
+    }
+
+    /**
+     * Shows the row of a cell whose Entry was just inserted into the Project, if its parent's sub-entries are shown.
+     * @param cell the new cell (already among its parent's sub-entries)
+     */
+    void inserted(ListEntry cell) {
+        EntryColumn col = owners.get(cell.getParentCell());
+        if(col != null && col.getParent() == entryArea)
+            col.inserted(cell);
+    }
+
+    /**
+     * Takes the row of a cell whose Entry was just removed from the Project (and the rows under it) out of its column,
+     * if it is shown.
+     * @param cell the cell (still among its parent's sub-entries)
+     */
+    void removed(ListEntry cell) {
+        EntryColumn col = owners.get(cell);
+        if(col != null && col.getParent() == entryArea)
+            col.delete(cell);
+    }
+
     /**
      * Updates the EntryArea (essentially to show a new ListEntry).
      * @param fresh the new ListEntry
@@ -158,70 +219,297 @@ public class EntryArea extends Pane {
         owners.get(fresh.getParentCell()).addEntry(fresh);
     }
 
+    /**
+     * A column of the sub-entries of one bubble. The column is virtualized: of all the rows that are visible (i.e. not
+     * hidden under a retracted parent), only the ones inside the viewport, plus a few rows of overscan on either side,
+     * are in the scene graph, along with the branches between them. Scrolling moves the rows, and swaps in the rows
+     * that come into the window for the ones that leave it, without touching the rest.
+     */
     private class EntryColumn extends Pane {
-        List<ListEntry> visible;
+        ObsList<ListEntry> visible;
         private BubbleEntry owner;
         final double DASH = 6;
+        final int OVERSCAN = 10;                //rows kept in the scene above and below the viewport
+
+        private Pane viewport;                  //clips the rows to the column
+        private Pane content;                   //the rows and their branches, moved up by the scroll offset
+        private Pane rows;
+        private Pane branches;
+        private BranchPath solid;               //the branches, one Path per dash style
+        private BranchPath dashed;
+        private BranchPath dotted;
+        private Pane trunk;                     //the branches from the bubble down to the first row
+        private Line branchToFirst;
+        private Set<ListEntry> shown;           //the rows in the scene
+        private BranchLayout layout;            //the shape of the branches of the visible rows
+        private double scroll;
+        private int first, last;                //the window of visible rows that are in the scene, [first, last)
 
         //populate the column
         public EntryColumn(BubbleEntry bubble) {
-            visible = new ArrayList<>();
+            visible = new ObsList<>();
             owner = bubble;
+            shown = Collections.newSetFromMap(new IdentityHashMap<>());
+            layout = new BranchLayout();
+
+            rows = new Pane();
+            solid = new BranchPath();
+            dashed = new BranchPath(2d, 2d, 2d);
+            dotted = new BranchPath(1d, 4d);
+            branches = new Pane(solid, dashed, dotted);
+            content = new Pane(branches, rows);
+            viewport = new Pane(content);
+            trunk = new Pane();
+            viewport.prefWidthProperty().bind(widthProperty());
+            viewport.prefHeightProperty().bind(heightProperty());
+
+            //branches stick out to the left of the column (see generateBranches())
+            Rectangle clip = new Rectangle(-ListEntry.HEIGHT, 0, 0, 0);
+            clip.widthProperty().bind(widthProperty().add(ListEntry.HEIGHT));
+            clip.heightProperty().bind(heightProperty());
+            viewport.setClip(clip);
+            getChildren().addAll(trunk, viewport);
+
+            setOnScroll((ScrollEvent event) -> {
+                scrollTo(scroll - event.getDeltaY());
+                event.consume();
+            });
+            heightProperty().addListener((observable, old, height) -> scrollTo(scroll));
 
             owners.put(bubble, this);
 
-            for(ListEntry sub : bubble.getSubEntries()){
-                visible.add(sub);
+            visible.addAll(0, rowsUnder(bubble));
+            visible.addListener(this::rowsChanged);
+            repopulate();
+//            generateBranches();
+        }
 
-                if(isExpanded.get(sub) == Boolean.TRUE) {
-                    expand(sub);                                   //expand properly
-                }
+        /**
+         * Lays the whole column out again. Only the rows in the window are put in the scene (see
+         * {@link #layoutWindow()}).
+         */
+        public void repopulate() {
+            layout.reset(indents(0, visible.size() - 1));
+            connectToBubble();
+            first = last = -1;
+            scrollTo(scroll);
+        }
 
-                owners.put(sub, this);
+        /**
+         * @return the indents of a range of visible rows (mapping each of them to this column on the way)
+         */
+        private int[] indents(int from, int to) {
+            int[] indents = new int[Math.max(to - from + 1, 0)];
+            for(int i = from; i <= to; i++) {
+                ListEntry row = visible.get(i);
+                indents[i - from] = row.getIndent();
+                owners.put(row, this);
             }
+            return indents;
+        }
 
-            repopulate();
-//            generateBranches();
+        /**
+         * Applies a change to the visible rows: only the rows in the changed range are looked at, and the scene is only
+         * touched if the change reaches the window (rows after an insertion or removal move up or down).
+         */
+        private void rowsChanged(ObsList<ListEntry> source, ObsList.Kind kind, int from, int to) {
+            if(kind == ObsList.Kind.REMOVED)
+                layout.removed(from, to);
+            else if(kind == ObsList.Kind.ADDED)
+                layout.inserted(from, indents(from, to));
+            else
+                layout.reset(indents(0, visible.size() - 1));
+
+            boolean reachesWindow = from <= last;
+            if(reachesWindow)
+                first = last = -1;          //the window has to be laid out again (which draws its branches)
+            scrollTo(scroll);
+            if(!reachesWindow)
+                generateBranches();         //a change below the window can still start or end a branch through it
         }
 
-        //TODO: Add a changeListener to visible (instead of rebuilding whole thing)
-        public void repopulate() {
-            getChildren().clear();
-            for(int i = 0; i < visible.size(); i++){
-                Node node = visible.get(i);
-                node.setTranslateY(i * ListEntry.HEIGHT);
-//                getChildren().remove(node);
-                getChildren().add(node);
-
-                owners.put(visible.get(i), this);
+        /**
+         * Scrolls the column (within the bounds of its rows), and updates the window.
+         * @param y the scroll offset, in pixels from the first row
+         */
+        void scrollTo(double y) {
+            double max = Math.max(0, visible.size() * ListEntry.HEIGHT - getHeight() + ListEntry.HEIGHT);
+            scroll = Math.max(0, Math.min(y, max));
+            content.setTranslateY(-scroll);
+            branchToFirst.setEndY(Math.max(ListEntry.HEIGHT / 2 - scroll, 0));
+            layoutWindow();
+        }
+
+        /**
+         * Scrolls the column just enough to show a row.
+         * @param row the row
+         */
+        void reveal(ListEntry row) {
+            int idx = visible.indexOf(row);
+            if(idx < 0)
+                return;
+
+            double top = idx * ListEntry.HEIGHT;
+            if(top < scroll)
+                scrollTo(top);
+            else if(top + ListEntry.HEIGHT > scroll + getHeight())
+                scrollTo(top + ListEntry.HEIGHT - getHeight());
+        }
+
+        /**
+         * Puts the rows inside the viewport (plus the overscan) into the scene, and takes out the ones that left it.
+         * Rows that stay in the window are only moved, so the scene graph changes by O(window), however many rows are
+         * visible.
+         */
+        private void layoutWindow() {
+            int from = Math.max(0, (int) (scroll / ListEntry.HEIGHT) - OVERSCAN);
+            int to = Math.min(visible.size(), (int) Math.ceil((scroll + getHeight()) / ListEntry.HEIGHT) + OVERSCAN);
+            if(from == first && to == last)
+                return;
+
+            first = from;
+            last = to;
+            Set<ListEntry> inWindow = Collections.newSetFromMap(new IdentityHashMap<>());
+            inWindow.addAll(visible.getList().subList(from, to));
+
+            Set<ListEntry> leaving = Collections.newSetFromMap(new IdentityHashMap<>());
+            for(ListEntry row : shown)
+                if(!inWindow.contains(row))
+                    leaving.add(row);
+            rows.getChildren().removeAll(leaving);
+            shown.removeAll(leaving);
+
+            List<ListEntry> entering = new ArrayList<>();
+            for(int i = from; i < to; i++) {
+                ListEntry row = visible.get(i);
+                row.setTranslateY(i * ListEntry.HEIGHT);
+                if(shown.add(row))
+                    entering.add(row);
             }
+            rows.getChildren().addAll(entering);
+
             generateBranches();
-//            generateFunBranches();
         }
 
-        public void generateBranches() {
-            if(visible.size() == 0)
-                return;
+        /**
+         * Shows the row of a new cell, right after the rows of its previous sibling (as one insertion), if its parent's
+         * sub-entries are shown in this column.
+         * @param cell the cell (already among its parent's sub-entries)
+         */
+        void inserted(ListEntry cell) {
+            EntryCell parent = cell.getParentCell();
+            int idx = -1;
+            if(parent != owner) {
+                idx = visible.indexOf((ListEntry) parent);
+                if(idx < 0 || isExpanded.get(parent) != Boolean.TRUE)
+                    return;
+            }
+
+            List<ListEntry> siblings = parent.getSubEntries();
+            int at = siblings.indexOf(cell);
+            if(at > 0) {
+                int prev = visible.indexOf(siblings.get(at - 1));
+                if(prev < 0)
+                    return;
+                idx = prev + rowsBelow(prev);
+            }
+
+            visible.add(idx + 1, cell);                 //a new cell starts out retracted
+        }
+
+        /**
+         * Lists the rows that show under a cell: its sub-entries, and the sub-entries of every one of them that is
+         * expanded, in pre-order.
+         */
+        private List<ListEntry> rowsUnder(EntryCell cell) {
+            List<ListEntry> rows = new ArrayList<>();
+            Deque<Iterator<ListEntry>> pending = new ArrayDeque<>();
+            pending.push(cell.getSubEntries().iterator());
+
+            while(!pending.isEmpty()) {
+                if(!pending.peek().hasNext()) {
+                    pending.pop();
+                    continue;
+                }
+
+                ListEntry sub = pending.peek().next();
+                rows.add(sub);
+                if(isExpanded.get(sub) == Boolean.TRUE) {
+                    sub.loadSubCells();
+                    if(!sub.getSubEntries().isEmpty())
+                        pending.push(sub.getSubEntries().iterator());
+                }
+            }
+            return rows;
+        }
 
-            List<Integer> indents = new ArrayList<>();
+        /**
+         * @return the number of rows right below a row that are shown under it (i.e. that are indented further)
+         */
+        private int rowsBelow(int idx) {
+            int indent = layout.indent(idx), end = idx + 1;
+            while(end < layout.size() && layout.indent(end) > indent)
+                end++;
+            return end - idx - 1;
+        }
 
-            //draw horizontal branches
-            for(int i = 0; i < visible.size(); i++) {
-                double startx = (visible.get(i).getIndent() * 10) - 10;
+        /**
+         * Draws the branches that cross the window, from the cached layout: O(window + depth), however many rows are
+         * visible.
+         */
+        public void generateBranches() {
+            solid.clear();
+            dashed.clear();
+            dotted.clear();
+
+            for(int i = first; i < last; i++) {
+                //draw horizontal branch
+                double startx = (layout.indent(i) * 10) - 10;
                 double starty = (ListEntry.HEIGHT * i) + (ListEntry.HEIGHT / 2);
                 double endx = startx + DASH;
                 double endy = starty;
+                (i > 0 ? dashed : solid).add(startx + .5, starty, endx + .5, endy);
+
+                //first sub-entry: draw "hanging" line from its parent, right above it
+                if(i > 0 && layout.indent(i - 1) < layout.indent(i)) {
+                    double sx = startx + .5;
+                    double sy = (i * ListEntry.HEIGHT) + .5;
+                    double ey = sy + ListEntry.HEIGHT / 2d;
+                    solid.add(sx, sy, sx, ey);
+                    solid.add(sx, ey - .5, sx + DASH - 2, ey - .5);     //dash
+                }
 
-                Line branch = new Line(startx + .5, starty, endx + .5, endy);
-                if(i > 0)
-                    branch.getStrokeDashArray().addAll(2d, 2d, 2d);
+                //draw line down to the next sibling
+                if(layout.next(i) >= 0)
+                    drawSiblingBranch(i, layout.next(i));
+            }
 
-                getChildren().add(branch);
-                indents.add(visible.get(i).getIndent());
+            //the branches coming into the window from above: from the previous sibling of the first row in the window,
+            //and from each of its parents that has a next sibling
+            if(first > 0 && first < layout.size()) {
+                if(layout.prev(first) >= 0)
+                    drawSiblingBranch(layout.prev(first), first);
+                for(int row = layout.up(first); row >= 0; row = layout.up(row))
+                    if(layout.next(row) >= 0)
+                        drawSiblingBranch(row, layout.next(row));
             }
 
-            //draw vertical branches
-            drawVBranches(0, indents);
+            solid.flush();
+            dashed.flush();
+            dotted.flush();
+        }
+
+        private void drawSiblingBranch(int from, int to) {
+            double x = (layout.indent(from) * 10) - 10 + .5;
+            dotted.add(x, (from * ListEntry.HEIGHT) + (ListEntry.HEIGHT / 2d) + .5,
+                       x, (to * ListEntry.HEIGHT) + (ListEntry.HEIGHT / 2d));
+        }
+
+        /**
+         * Draws the branches from the bubble down to the column, which don't scroll.
+         */
+        private void connectToBubble() {
+            trunk.getChildren().clear();
 
             //draw branches to bubbles
             double offset = -10;
@@ -231,7 +519,7 @@ public class EntryArea extends Pane {
             double ey = sy + 10;
             Line branchDown = new Line(sx, sy, ex, ey);
             Line branchToSubs = new Line(ex, ey, -10, ey);
-            Line branchToFirst = new Line(-10 + .5, ey, -10 + .5, ListEntry.HEIGHT/2);
+            branchToFirst = new Line(-10 + .5, ey, -10 + .5, ListEntry.HEIGHT/2);
 
             setStrokeLineCapButt(branchDown, branchToSubs, branchToFirst);
 
@@ -261,193 +549,62 @@ public class EntryArea extends Pane {
 
             branchToSubs.startXProperty().bind(branchDown.endXProperty().add(.5));
 
-            getChildren().addAll(branchDown, branchToSubs, branchToFirst);
-        }
-
-        //TODO: INEFFICIENT!!!!!
-        private int drawVBranches(int start, List<Integer> indents){
-            int end = start + 1;
-            for(; end < indents.size(); end++) {
-                if(indents.get(start) < indents.get(end)) {
-//                    System.out.println(indents.get(start) + " to " + indents.get(end));
-
-                    //if immediately below, draw "hanging" line
-                    if(end == start + 1){
-                        double sx = (indents.get(end) * 10) - 10 + .5;
-                        double sy = (start * ListEntry.HEIGHT) + ListEntry.HEIGHT + .5;
-                        double ex = sx;
-                        double ey = sy + ListEntry.HEIGHT / 2d;
-                        Line hang = new Line(sx, sy, ex, ey);
-
-                        //draw dash
-                        Line dash = new Line(sx, ey - .5, sx + DASH - 2, ey - .5);
-                        getChildren().addAll(hang, dash);
-                    }
-
-                    //move step to next index of same
-                    end = drawVBranches(end, indents);
-                }
-                else if(indents.get(start).equals(indents.get(end))) {
-                    //draw line from first to last
-                    double startX = (indents.get(start) * 10) - 10 + .5;
-                    double startY = (start * ListEntry.HEIGHT) + (ListEntry.HEIGHT / 2d) + .5;
-                    double endX = startX;
-                    double endY = (end * ListEntry.HEIGHT) + (ListEntry.HEIGHT / 2d);
-                    Line branch = new Line(startX, startY, endX, endY);
-                    branch.getStrokeDashArray().addAll(1d, 4d);
-                    getChildren().add(branch);
-
-                    start = end;
-                }
-                else if(indents.get(start) > indents.get(end)){
-                    return start;
-                }
-            }
-            return end;
+            trunk.getChildren().addAll(branchDown, branchToSubs, branchToFirst);
         }
 
         public void setStrokeLineCapButt(Line... lines){
             for(Line l : lines) l.setStrokeLineCap(StrokeLineCap.BUTT);
         }
 
+        /**
+         * Shows the rows under an entry (as one insertion), unless they are shown already.
+         * @param entry the entry
+         */
         public void expand(ListEntry entry){
-//            System.out.println(entry);
-
             int idx = visible.indexOf(entry);                               //index of the current entry
-            for(int i = entry.getSubEntries().size() -1; i >= 0; i--){          //for each subEntry,
-                ListEntry sub = entry.getSubEntries().get(i);
-                if(!visible.contains(sub)) {                                //if not already visible,
-                    visible.add(idx + 1, sub);                          //insert it after the previous subEntry
-                }
-
-                if(isExpanded.get(sub) == Boolean.TRUE)
-                    expand(sub);
-
-                owners.put(sub, this);                                      //map it to the current column
-            }
-
             isExpanded.put(entry, true);                                    //set expanded status to true
-            repopulate();                                                   //fix the visual
+            if(idx >= 0 && rowsBelow(idx) == 0)
+                visible.addAll(idx + 1, rowsUnder(entry));
         }
 
         public void expandAll() {
-            visible = owner.getAllSubEntries();
-            for(ListEntry sub : visible)
+            List<ListEntry> all = owner.getAllSubEntries();
+            for(ListEntry sub : all)
                 isExpanded.put(sub, true);
 
-            repopulate();
+            visible.setAll(all);
         }
 
         public void expandAll(ListEntry entry){
-            visible.addAll(visible.indexOf(entry) + 1, entry.getAllSubEntries());
-            repopulate();
-        }
-
-        public void retract(ListEntry entry){
-            for(ListEntry child : entry.getSubEntries()) {
-                int idx = visible.indexOf(child);
-                visible.remove(child);
-
-                if(idx > 0) {
-                    List<ListEntry> all = entry.getAllSubEntries();
-                    while (idx < visible.size() && all.contains(visible.get(idx)))
-                        visible.remove(idx);
-                }
-            }
-
-            isExpanded.put(entry, false);
-            repopulate();
-        }
-
-        public void delete(ListEntry entry) {
-            visible.remove(entry);
-            getChildren().remove(entry);
-            repopulate();
-        }
-
-        public void generateFunBranches() {
-            List<Integer> indents = new ArrayList<>();
-
-            //draw horizontal branches
-            for(int i = 0; i < visible.size(); i++) {
-                double startx = (visible.get(i).getIndent() * 10) - 10;
-                double starty = (ListEntry.HEIGHT * i) + (ListEntry.HEIGHT / 2);
-                double endx = startx + 5;
-                double endy = starty;
-
-                Line branch = new Line(startx, starty, endx, endy);
-
-                getChildren().add(branch);
-                indents.add(visible.get(i).getIndent());
-            }
-
-            //draw vertical branches
-            for(int i = 0; indents.contains(i); i++){    //for each indent value
-                Delta fl = firstLast(i, indents);       //get first and last occurrence of indent
-
-                //draw line from first to last
-                double startX = (i * 10) - 10;
-                double startY = (fl.x * ListEntry.HEIGHT) + (ListEntry.HEIGHT / 2);
-                double endX = startX;
-                double endY = (fl.y * ListEntry.HEIGHT) + (ListEntry.HEIGHT / 2);
-                Line branch = new Line(startX, startY, endX, endY);
-                getChildren().add(branch);
-            }
-        }
+            int idx = visible.indexOf(entry);
+            List<ListEntry> all = entry.getAllSubEntries();
+            isExpanded.put(entry, true);
+            for(ListEntry sub : all)
+                isExpanded.put(sub, true);
 
-        /**
-         * Removes all instances of a specified integer from a specified list of integers.
-         * @param remove the integer to remove
-         * @param list the list
-         */
-        private void removeAll(int remove, List<Integer> list){
-            list.stream().filter(i -> i.equals(remove)).forEach(list::remove);
+            visible.remove(idx + 1, idx + rowsBelow(idx));
+            visible.addAll(idx + 1, all);
         }
 
         /**
-         * Returns the first and last occurrence of the given integer in a specified List. within the bounds.
-         * @param indent the integer
-         * @param indents the list
-         * @param bot the lower bound
-         * @param top the upper bound
-         * @return the first and last instance of the integer.
+         * Hides the rows under an entry (as one removal).
+         * @param entry the entry
          */
-        private Delta firstLast (int indent, List<Integer> indents, int bot, int top){
-            int first = 0, last = 0;
-            boolean firstSet = false;
-
-            for(int i = bot; i <= top; i++) {
-                if(!firstSet && indents.get(i).equals(indent)) {
-                    firstSet = true;
-                    first = i;
-                }
-                if(indents.get(i).equals(indent))
-                    last = i;
-            }
-
-            return new Delta(first, last);
+        public void retract(ListEntry entry){
+            int idx = visible.indexOf(entry);
+            isExpanded.put(entry, false);
+            if(idx >= 0)
+                visible.remove(idx + 1, idx + rowsBelow(idx));
         }
 
         /**
-         * Returns the first and last occurrence of the given integer in a specified List.
-         * @param indent the integer
-         * @param indents the list
-         * @return the first and last instance of the integer.
+         * Takes an entry's row (and the rows under it) out of the column.
+         * @param entry the entry
          */
-        private Delta firstLast (int indent, List<Integer> indents){
-            int first = 0, last = 0;
-            boolean firstSet = false;
-
-            for(int i = 0; i < indents.size(); i++) {
-                if(!firstSet && indents.get(i).equals(indent)) {
-                    firstSet = true;
-                    first = i;
-                }
-                if(indents.get(i).equals(indent))
-                    last = i;
-            }
-
-            return new Delta(first, last);
+        public void delete(ListEntry entry) {
+            int idx = visible.indexOf(entry);
+            if(idx >= 0)
+                visible.remove(idx, idx + rowsBelow(idx));
         }
 
         public void addEntry(ListEntry fresh) {
@@ -459,16 +616,10 @@ public class EntryArea extends Pane {
                 retract((ListEntry)fresh.getParentCell());
                 expand((ListEntry)fresh.getParentCell());
             }
+            EntryColumn col = owners.get(fresh);        //expanding a bubble replaces its column
+            if(col != null)
+                col.reveal(fresh);                      //it has to be in the scene to be typed into
         }
 
-        private class Delta {
-            int x, y;
-            Delta (int x, int y) { this.x = x; this.y = y; }
-
-            @Override
-            public String toString() {
-                return "(" + x + "," + y + ")";
-            }
-        }
     }
 }
\ No newline at end of file
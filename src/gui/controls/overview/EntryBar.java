@@ -1,6 +1,8 @@
 package gui.controls.overview;
 
 import data.Entry;
+import data.ModelChange;
+import data.ModelListener;
 import data.ObsList;
 import data.Project;
 import gui.GUI;
@@ -9,13 +11,12 @@ import javafx.animation.Timeline;
 import javafx.beans.property.DoubleProperty;
 import javafx.beans.property.SimpleDoubleProperty;
 import javafx.scene.layout.Pane;
-import javafx.scene.shape.Line;
 
-import javax.swing.*;
-import javax.swing.event.ListDataEvent;
-import javax.swing.event.ListDataListener;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 /**
@@ -39,10 +40,16 @@ public class EntryBar extends Pane {
     private EntryCell prevFocus;
     private Overview overview;
 
-    private List<Line> branches;
+    private BranchPath branches;                    //the branches between the bubbles
 
     private EntryArea entryArea;
 
+    private Project project;
+    private final ModelListener modelListener = this::modelChanged;
+    private final Map<Entry, EntryCell> cells;      //the cell showing each loaded Entry
+    private EntryCell pendingCell;                  //a cell whose Entry is being added to the Project
+    private boolean applyingChanges;
+
     public EntryBar(Overview overview) {
         this.overview = overview;
 
@@ -51,7 +58,8 @@ public class EntryBar extends Pane {
         bubbles = new ObsList<>();
         entryArea = new EntryArea(this);
         startup = true;
-        branches = new ArrayList<>();
+        branches = new BranchPath(2d, 3d, 4d, 3d);
+        cells = new IdentityHashMap<>();
 
         GUI.bindWidth(this, overview.widthProperty().subtract(PAD_R));
         GUI.setHeight(this, HEIGHT);
@@ -71,23 +79,170 @@ public class EntryBar extends Pane {
             fixPositions().play();
         });
 
-        //Bubble count listener; readjust bubble size accordingly
-        bubbles.addListDataListener(new ListDataListener() {
-            @Override
-            public void intervalAdded(ListDataEvent e) {
+        //Bubble count listener; readjust bubble size accordingly (model batches do this once, at the end)
+        bubbles.addListener((source, kind, from, to) -> {
+            if(kind != ObsList.Kind.CHANGED && !applyingChanges)
                 fixBubbleWidth();
-            }
+        });
+    }
 
-            @Override
-            public void intervalRemoved(ListDataEvent e) {
-                fixBubbleWidth();
+    /**
+     * Sets the Project shown by this EntryBar. The EntryBar follows the Project's changes from then on.
+     * @param project the Project
+     */
+    public void setProject(Project project) {
+        if(this.project != null)
+            this.project.removeModelListener(modelListener);
+
+        this.project = project;
+        if(project != null)
+            project.addModelListener(modelListener);
+    }
+
+    /**
+     * Applies a batch of changes made to the Project. Cells are added, removed and renamed as needed while going
+     * through the batch, each change going to the rows it affects in the columns (see
+     * {@link EntryArea#inserted(ListEntry)}); the bubbles are laid out once, at the end.
+     * @param project the Project
+     * @param changes the changes
+     */
+    private void modelChanged(Project project, List<ModelChange> changes) {
+        boolean bubblesChanged = false;
+
+        applyingChanges = true;
+        try {
+            for(ModelChange change : changes) {
+                if(!(change.getTarget() instanceof Entry))
+                    continue;
+
+                Entry entry = (Entry) change.getTarget();
+                switch(change.getKind()) {
+                    case PROPERTY:
+                        EntryCell cell = cells.get(entry);
+                        if(cell != null && change.getProperty() == ModelChange.Property.NAME)
+                            cell.showName(entry.getName());
+                        break;
+                    case INSERTED:
+                        bubblesChanged |= inserted(entry, change.getParent(), change.getIndex());
+                        break;
+                    case REMOVED:
+                        bubblesChanged |= removed(entry);
+                        break;
+                    case MOVED:
+                        bubblesChanged |= removed(entry);
+                        bubblesChanged |= inserted(entry, change.getParent(), change.getIndex());
+                        break;
+                }
             }
+        }
+        finally {
+            applyingChanges = false;
+        }
+
+        if(bubblesChanged) {
+            fixBubbleWidth();
+            removeAllBranches();
+
+            Timeline fix = fixPositions();
+            fix.setOnFinished(ActionEvent -> generateBranches());
+            fix.play();
+        }
+    }
+
+    /**
+     * Creates the cell for an Entry that was inserted into the Project (unless it already has one).
+     * @return true if a bubble was added
+     */
+    private boolean inserted(Entry entry, Entry parent, int index) {
+        if(cells.containsKey(entry))
+            return false;
+
+        //the Entry of a cell the user just finished creating
+        if(pendingCell != null) {
+            cells.put(entry, pendingCell);
+            pendingCell = null;
+            return false;
+        }
+
+        if(parent == null) {
+            BubbleEntry bubble = (BubbleEntry) EntryCell.generate(entry, null, this);
+            register(bubble);
+            getChildren().add(bubble);
+            bubbles.add(Math.min(index, bubbles.size()), bubble);
+            return true;
+        }
+
+        EntryCell parentCell = cells.get(parent);
+        if(parentCell == null || parentCell.subCellsDeferred)
+            return false;
+
+        ListEntry cell = (ListEntry) EntryCell.generate(entry, parentCell, this);
+        register(cell);
+        List<ListEntry> siblings = parentCell.getSubEntries();
+        siblings.add(Math.min(index, siblings.size()), cell);
+        entryArea.inserted(cell);
+        return false;
+    }
+
+    /**
+     * Drops the cell (and sub-cells) of an Entry that was removed from the Project.
+     * @return true if a bubble was removed
+     */
+    private boolean removed(Entry entry) {
+        EntryCell cell = cells.remove(entry);
+        if(cell == null)
+            return false;
+
+        dropSubCells(cell);
+        focus.remove(cell);
+        if(cell instanceof ListEntry)
+            entryArea.removed((ListEntry) cell);
+        entryArea.forget(Collections.singletonList(cell));
+
+        if(cell instanceof BubbleEntry) {
+            entryArea.retract((BubbleEntry) cell);
+            bubbles.remove((BubbleEntry) cell);
+            getChildren().remove(cell);
+            return true;
+        }
+
+        EntryCell parentCell = cell.getParentCell();
+        parentCell.getSubEntries().remove(cell);
+        return false;
+    }
 
-            @Override
-            public void contentsChanged(ListDataEvent e) {
-                //do nothing
+    /**
+     * Drops the cells below a cell (see {@link EntryCell#unloadSubCells()}), along with everything that refers to them.
+     * If one of them had the focus, the cell gets it instead.
+     * @param cell the cell
+     */
+    void dropSubCells(EntryCell cell) {
+        List<ListEntry> dropped = cell.getAllSubEntries();
+        boolean hadFocus = false;
+        for(ListEntry sub : dropped) {
+            cells.remove(sub.getEntry());
+            if(focus.remove(sub)) {
+                sub.loseFocus();
+                hadFocus = true;
             }
-        });
+        }
+
+        cell.unloadSubCells();
+        entryArea.forget(dropped);
+        if(hadFocus && focus.isEmpty())
+            setFocus(cell);
+    }
+
+    /**
+     * Maps a cell, and all of its sub-cells, to their Entries.
+     * @param cell the cell
+     */
+    void register(EntryCell cell) {
+        if(cell.getEntry() != null)
+            cells.put(cell.getEntry(), cell);
+
+        for(ListEntry sub : cell.getAllSubEntries())
+            if(sub.getEntry() != null) cells.put(sub.getEntry(), sub);
     }
 
     /**
@@ -157,6 +312,8 @@ public class EntryBar extends Pane {
         }
         else { //adding a ListEntry
             EntryCell parent = level ? focus.getParentCell() : focus;
+            //a collapsed parent's sub-entries get their cells first, so the new one goes among them
+            parent.loadSubCells();
             ListEntry fresh = new ListEntry(this, parent);
 
             //if level, insert the subEntry into the parent AFTER the focus
@@ -193,6 +350,7 @@ public class EntryBar extends Pane {
      * The final stages of creating a new Entry.
      */
     public void newEntryFinish() {
+        pendingCell = getCurrentFocus();
 
         if(prevFocus == null) {
             getCurrentFocus().setEntry(overview.getScreenController().getActiveProject().addNewEntry(
@@ -203,6 +361,9 @@ public class EntryBar extends Pane {
                     prevFocus.getEntry(), getCurrentFocus().getEntryName()));
         }
 
+        pendingCell = null;
+        register(getCurrentFocus());
+
         getCurrentFocus().expand();
         generateBranches();
     }
@@ -356,33 +517,40 @@ public class EntryBar extends Pane {
     }
 
     public void generateBranches() {
-        removeAllBranches();
+        drawBranches(-1);
+    }
 
+    /**
+     * Draws the branches between neighbouring bubbles, as one Path.
+     * @param skip the index of a bubble whose branches are left out, or -1
+     */
+    private void drawBranches(int skip) {
+        branches.clear();
         for(int i = 0; i < bubbles.size() -1; i++){
+            if(i == skip || i + 1 == skip)
+                continue;
+
             double sx = (i+1) * bubbleWidth.get() + (i*BUBBLE_GAP);
             double sy = BubbleEntry.HEIGHT / 2d + .5;
             double ex = sx + BUBBLE_GAP;
             double ey = sy;
 
-            Line branch = new Line(sx, sy, ex, ey);
-
-            branch.getStrokeDashArray().addAll(2d, 3d, 4d, 3d);
-            getChildren().add(branch);
-            branches.add(branch);
+            branches.add(sx, sy, ex, ey);
         }
+        branches.flush();
+        if(branches.getParent() == null)
+            getChildren().add(branches);
     }
 
     private void removeBranches(BubbleEntry bubble) {
         int idx = bubbles.indexOf(bubble);
-        if(idx -1 < branches.size() && idx -1 >= 0)
-            getChildren().remove(branches.get(idx -1));
-        if(idx < branches.size() && idx >= 0)
-            getChildren().remove(branches.get(idx));
+        if(idx >= 0)
+            drawBranches(idx);
     }
 
     private void removeAllBranches() {
-        getChildren().removeAll(branches);
         branches.clear();
+        branches.flush();
     }
 
     public void toggle(EntryCell entry) {
@@ -499,6 +667,7 @@ public class EntryBar extends Pane {
     public void loadBubbleEntry(BubbleEntry bubble) {
         getChildren().add(bubble);
         bubbles.add(bubble);
+        register(bubble);
     }
 
     public int indexOf(BubbleEntry bubble) {
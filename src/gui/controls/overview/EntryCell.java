@@ -4,7 +4,10 @@ import data.Entry;
 import javafx.application.Platform;
 import javafx.scene.layout.Pane;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
 
 /**
@@ -18,6 +21,8 @@ public abstract class EntryCell extends Pane {
     EntryBar entryBar;
     List<ListEntry> subEntries;
     boolean expanded;
+    boolean subCellsDeferred;       //true until the cells of the sub-entries are created (see loadSubCells())
+    boolean retaining;              //true while the sub-cells hold on to the Entry's sub-entries (see loadSubCells())
 
     /**
      * Returns the Entry that this cell is representing.
@@ -97,22 +102,35 @@ public abstract class EntryCell extends Pane {
     }
 
     /**
-     * Returns ALL of the subEntries of this entryCell (including all subEntries of its subEntries).
+     * Returns ALL of the subEntries of this entryCell (including all subEntries of its subEntries) that have cells so
+     * far. (See {@link #loadAllSubCells()} to create the rest first.)
      * @return all of the subEntries
      */
     public List<ListEntry> getAllSubEntries() {
         List<ListEntry> all = new ArrayList<>();
-        for(ListEntry sub : subEntries) {
+        Deque<Iterator<ListEntry>> pending = new ArrayDeque<>();
+        pending.push(subEntries.iterator());
+
+        //pre-order, with an explicit stack so deep hierarchies can't overflow the call stack
+        while(!pending.isEmpty()) {
+            if(!pending.peek().hasNext()) {
+                pending.pop();
+                continue;
+            }
+
+            ListEntry sub = pending.peek().next();
             all.add(sub);
-            all.addAll(sub.getAllSubEntries());
+            if(!sub.subEntries.isEmpty())
+                pending.push(sub.subEntries.iterator());
         }
 
         return all;
     }
 
     /**
-     * Generates an EntryCell for a specified Entry. This method also creates EntryCells for all of the Entry's
-     * subEntries, and those subEntries can be accessed by a call to <code>getSubEntries()</code>.
+     * Generates an EntryCell for a specified Entry. The cells of the Entry's subEntries aren't created until they're
+     * first needed (see {@link #loadSubCells()}); until then the subtree is only known by the counts the model keeps
+     * for it, so generating a cell costs the same whatever the size of its subtree.
      *
      * (Note: The parent-child relationship is set in the constructor of the respective EntryCells; there is NO NEED to
      * set them elsewhere.)
@@ -130,31 +148,68 @@ public abstract class EntryCell extends Pane {
         else
             cell = new ListEntry(entry, parent, bar);
 
-        cell.depthLoad();
+        cell.subCellsDeferred = entry.getDescendantCount() > 0;
         return cell;
     }
 
     /**
-     * Loads the full depth of EntryCells for a specified EntryCell. (I.e., loads all of its sub-entries, and all of
-     * their sub-entries, and so on.)
+     * Creates the cells of this cell's (direct) sub-entries, if they haven't been created yet, reading the sub-entries
+     * from storage if they were left there. Their own sub-entries get cells when they are expanded in turn. The
+     * sub-entries are retained (see {@link Entry#retainSubEntries()}) for as long as their cells exist.
+     * @return true if cells were created
+     */
+    boolean loadSubCells() {
+        if(!subCellsDeferred)
+            return false;
+
+        subCellsDeferred = false;
+        retaining = true;
+        entry.retainSubEntries();
+        for(Entry sub : entry.getSubEntries())
+            addSubEntry((ListEntry) EntryCell.generate(sub, this, entryBar));
+        entryBar.register(this);
+        return true;
+    }
+
+    /**
+     * Drops the cells of every sub-entry below this cell, and releases the sub-entries they retained (see
+     * {@link Entry#releaseSubEntries()}), so that they can be unloaded again. The subtree is then only known by the
+     * model's counts, until {@link #loadSubCells()} creates its cells again.
+     */
+    void unloadSubCells() {
+        List<EntryCell> dropped = new ArrayList<>(getAllSubEntries());
+        dropped.add(this);
+        for(EntryCell cell : dropped) {
+            if(cell.retaining) {
+                cell.entry.releaseSubEntries();
+                cell.retaining = false;
+            }
+        }
+
+        subEntries.clear();
+        subCellsDeferred = entry != null && entry.getDescendantCount() > 0;
+    }
+
+    /**
+     * Creates the cells of every sub-entry below this cell that doesn't have one yet (see {@link #loadSubCells()}).
      */
-    private void depthLoad(){
-        for(Entry sub : entry.getSubEntries()) {
-            EntryCell subCell = EntryCell.generate(sub, this, entryBar);
-            addSubEntry((ListEntry) subCell);
+    void loadAllSubCells() {
+        Deque<EntryCell> pending = new ArrayDeque<>();
+        pending.push(this);
+        while(!pending.isEmpty()) {
+            EntryCell cell = pending.pop();
+            cell.loadSubCells();
+            for(EntryCell sub : cell.subEntries)
+                pending.push(sub);
         }
     }
 
     /**
-     * Returns the total number of subEntries.
+     * Returns the total number of subEntries, as counted by the model (whether or not they have cells yet).
      * @return the total number of subEntries
      */
     public int totalSubs() {
-        int count = subEntries.size();
-        for (EntryCell child : subEntries)
-            count += child.totalSubs();
-
-        return count;
+        return entry == null ? 0 : entry.getDescendantCount();
     }
 
     /**
@@ -166,25 +221,55 @@ public abstract class EntryCell extends Pane {
         expanded = status;
     }
 
+    /**
+     * @return the label that prefixes this EntryCell's line in <code>toString()</code>
+     */
+    String typeLabel() {
+        return "";
+    }
+
     @Override
     public String toString() {
         if(entry == null)
             return  "#dud#";
 
-        String tabs = "";
-        int indent = entry.numParents();
-        while(indent-- >= 0) tabs += "\t";
+        StringBuilder s = new StringBuilder();
+        s.append(typeLabel()).append("[Name: ").append(entry.getName()).append("]");
 
-        String s = "[Name: " + entry.getName() + "]";
-//        s += entry.toString();
-        for(EntryCell sub : subEntries)
-            s += "\n" + tabs + sub;
+        Deque<EntryCell> path = new ArrayDeque<>();
+        Deque<Iterator<ListEntry>> pending = new ArrayDeque<>();
+        path.push(this);
+        pending.push(subEntries.iterator());
 
-        return s;
+        while(!pending.isEmpty()) {
+            if(!pending.peek().hasNext()) {
+                pending.pop();
+                path.pop();
+                continue;
+            }
 
+            EntryCell sub = pending.peek().next();
+            s.append('\n');
+            for(int indent = path.peek().entry.numParents(); indent >= 0; indent--) s.append('\t');
 
-//        return "[Name: " + entry.getName() + "]";
+            if(sub.entry == null) {
+                s.append("#dud#");
+                continue;
+            }
+
+            s.append(sub.typeLabel()).append("[Name: ").append(sub.entry.getName()).append("]");
+            path.push(sub);
+            pending.push(sub.subEntries.iterator());
+        }
+
+        return s.toString();
     }
 
     public abstract String getEntryName();
+
+    /**
+     * Shows a new name for this EntryCell's Entry (e.g. after the Entry was renamed).
+     * @param name the name
+     */
+    abstract void showName(String name);
 }
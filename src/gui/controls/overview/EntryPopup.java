@@ -19,7 +19,6 @@ import javafx.scene.layout.VBox;
 import javax.swing.event.DocumentEvent;
 import java.security.Timestamp;
 import java.time.LocalDate;
-import java.time.ZoneId;
 import java.util.Calendar;
 import java.util.Date;
 
@@ -41,8 +40,8 @@ public class EntryPopup extends Pane {
     public EntryPopup(Entry entry) {
         this.entry = entry;
         name = new Label(entry.getName());
-        startDate = new DatePicker(entry.getStart().toInstant().atZone(ZoneId.systemDefault()).toLocalDate());
-        endDate = new DatePicker(entry.getEnd().toInstant().atZone(ZoneId.systemDefault()).toLocalDate());
+        startDate = new DatePicker(entry.getStart().toLocalDate());
+        endDate = new DatePicker(entry.getEnd().toLocalDate());
         container = new VBox(5);
         close = new Button("Close");
 
@@ -137,7 +137,8 @@ public class ListEntry extends EntryCell {
 
     private void finish() {
         nameText.setDisable(true);
-        entry = new Entry(nameText.getText(), new DateTime(), new DateTime());
+        DateTime now = new DateTime();
+        entry = new Entry(nameText.getText(), now, now);
         entryBar.newEntryFinish();
     }
 
@@ -169,13 +170,16 @@ public class ListEntry extends EntryCell {
     }
 
     @Override
-    public String toString() {
-        String s = "";
-        //for(int i = indent; i>= 0; i--) s += "\t";
-        return s + "ListEntry :: " + super.toString();
+    String typeLabel() {
+        return "ListEntry :: ";
     }
 
     public String getEntryName() {
         return nameText.getText();
     }
+
+    @Override
+    void showName(String name) {
+        nameText.setText(name);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,95 @@
+package gui.controls.startup;
+
+import data.io.RecentProjects;
+import javafx.geometry.Pos;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.input.MouseButton;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.VBox;
+import javafx.scene.paint.Color;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * The list of recently opened projects on the Startup Menu, filled straight from the {@link RecentProjects} catalog:
+ * each row shows a project's name, dates, counts and timeline thumbnail without opening its file. Rows are only made
+ * for the projects in view, so the list stays quick with hundreds of them.
+ *
+ * @author Al-John
+ */
+public class RecentProjectsList extends ListView<RecentProjects.Item> {
+
+    private static final double THUMBNAIL_WIDTH = 128, THUMBNAIL_HEIGHT = 24;
+
+    /**
+     * @param onOpen what to do when a project is picked (given its file)
+     */
+    public RecentProjectsList(Consumer<Path> onOpen) {
+        setPlaceholder(new Label("No recent projects."));
+        setCellFactory(list -> new ItemCell());
+        setOnMouseClicked(me -> {
+            RecentProjects.Item item = getSelectionModel().getSelectedItem();
+            if(item != null && me.getButton() == MouseButton.PRIMARY && me.getClickCount() == 2)
+                onOpen.accept(item.getFile());
+        });
+    }
+
+    /**
+     * Replaces the projects shown, keeping the selection if its project is still there.
+     * @param items the projects, most recently opened first
+     */
+    public void show(List<RecentProjects.Item> items) {
+        RecentProjects.Item selected = getSelectionModel().getSelectedItem();
+        getItems().setAll(items);
+        if(selected != null)
+            items.stream().filter(item -> item.getFile().equals(selected.getFile())).findFirst()
+                    .ifPresent(item -> getSelectionModel().select(item));
+    }
+
+    /**
+     * One row of the list; rows are reused as the list scrolls.
+     */
+    private static class ItemCell extends ListCell<RecentProjects.Item> {
+        private final Label name = new Label(), details = new Label();
+        private final Canvas thumbnail = new Canvas(THUMBNAIL_WIDTH, THUMBNAIL_HEIGHT);
+        private final HBox row = new HBox(10, thumbnail, new VBox(2, name, details));
+
+        ItemCell() {
+            row.setAlignment(Pos.CENTER_LEFT);
+            name.setStyle("-fx-font-weight: bold");
+        }
+
+        @Override
+        protected void updateItem(RecentProjects.Item item, boolean empty) {
+            super.updateItem(item, empty);
+            if(empty || item == null) {
+                setGraphic(null);
+                return;
+            }
+
+            name.setText(item.getName() == null ? item.getFile().getFileName().toString() : item.getName());
+            details.setText(item.getStart() + " - " + item.getEnd() + "   " + item.getEntryCount() + " entries, "
+                    + item.getParticipantCount() + " participants");
+            drawThumbnail(item.getThumbnail());
+            setGraphic(row);
+        }
+
+        private void drawThumbnail(int[] levels) {
+            GraphicsContext g = thumbnail.getGraphicsContext2D();
+            g.clearRect(0, 0, THUMBNAIL_WIDTH, THUMBNAIL_HEIGHT);
+            g.setFill(Color.TEAL);
+
+            double w = THUMBNAIL_WIDTH / Math.max(1, levels.length);
+            for(int i = 0; i < levels.length; i++) {
+                double h = THUMBNAIL_HEIGHT * levels[i] / 255;
+                g.fillRect(i * w, THUMBNAIL_HEIGHT - h, w, h);
+            }
+        }
+    }
+}
@@ -69,6 +69,7 @@ public class Overview extends Screen {
         addElement(timelineBar, yOffset);
         addElement(entryBar, yOffset += timelineBar.HEIGHT);
         addElement(entryArea, yOffset + EntryBar.HEIGHT);
+        GUI.bindHeight(entryArea, heightProperty().subtract(yOffset + EntryBar.HEIGHT));    //the rest of the screen
 
         anchorToBottomRight(plusButton, 30, 30);
         anchorToBottomLeft(participantKey, 30, 30);
@@ -98,6 +99,7 @@ public class Overview extends Screen {
 
         Project project = screenController.getActiveProject();
         List<Entry> entries = project.getEntries();
+        entryBar.setProject(project);
 
         //load in the top level entries
         for(Entry e : entries){
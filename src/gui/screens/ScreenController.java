@@ -1,12 +1,17 @@
 package gui.screens;
 
 import data.Project;
+import data.io.AutoSaver;
 import gui.GUI;
 import gui.controls.general.ParticipantKey;
 import gui.controls.general.TitleBar;
 import gui.controls.general.ViewBar;
+import javafx.application.Platform;
 import javafx.scene.layout.Pane;
 
+import java.io.IOException;
+import java.nio.file.Path;
+
 /**
  * The ScreenController class manages the transitions between the application's main screens. Currently, the screens
  * comprise:
@@ -29,6 +34,8 @@ public class ScreenController extends Pane {
     private int screenYOffset;
 
     private Project activeProject;
+    private AutoSaver autoSaver;
+    private Path autoSaveFile;
 
     public static final int STARTUP_MENU = 0,
             OVERVIEW = 1,
@@ -108,9 +115,88 @@ public class ScreenController extends Pane {
      * @param p the currently active project
      */
     public void setActiveProject(Project p) {
+        stopAutoSave();
         activeProject = p;
         viewBar = new ViewBar(this);
         participantKey = new ParticipantKey(this);
     }
 
+    /**
+     * Sets the currently active project, freshly opened from a file, and saves its edits to that file in the
+     * background from now on.
+     * @param p the currently active project
+     * @param file the file it was opened from (see {@link data.io.EditJournal#recover(Path, boolean)})
+     * @throws IOException if the file couldn't be written
+     */
+    public void setActiveProject(Project p, Path file) throws IOException {
+        setActiveProject(p);
+        autoSaveFile = file;
+        startAutoSave(AutoSaver.resume(p, file));
+    }
+
+    private void startAutoSave(AutoSaver saver) {
+        autoSaver = saver;
+        saver.setOnFailure((IOException failure) -> Platform.runLater(() -> autoSaveFailed(saver, failure)));
+    }
+
+    /**
+     * Tells the user that an autosave failed (which stops autosaving), and lets them retry - saving the project in
+     * full, from memory, and autosaving from there on - for as long as it keeps failing. If they don't, the failed
+     * AutoSaver is kept, so that stopping it reports the unsaved edits again (see {@link #stopAutoSave()}).
+     */
+    private void autoSaveFailed(AutoSaver failed, IOException failure) {
+        if(failed != autoSaver)
+            return;     //stopped, or replaced, since
+
+        try {
+            failed.close();
+        } catch(IOException e) {
+            //the same failure
+        }
+
+        while(GUI.askRetry("Couldn't save \"" + autoSaveFile.getFileName() + "\"", failure.getMessage(),
+                "Not Now")) {
+            try {
+                startAutoSave(new AutoSaver(activeProject, autoSaveFile));
+                return;
+            } catch(IOException e) {
+                failure = e;
+            }
+        }
+    }
+
+    /**
+     * Stops autosaving the active project (if it is being autosaved), once its last edits are on disk. If they can't be
+     * saved, the user is told so, and can retry (which saves the project in full, from memory, replacing its journal)
+     * for as long as it keeps failing, or give the edits up.
+     * @return true if everything was saved; false if the user gave up the last edits
+     */
+    public boolean stopAutoSave() {
+        if(autoSaver == null)
+            return true;
+
+        IOException failure;
+        try {
+            autoSaver.close();
+            autoSaver = null;
+            return true;
+        } catch(IOException e) {
+            failure = e;
+        }
+
+        while(GUI.askRetry("Couldn't save \"" + autoSaveFile.getFileName() + "\"", failure.getMessage(),
+                "Discard Edits")) {
+            try {
+                new AutoSaver(activeProject, autoSaveFile).close();
+                autoSaver = null;
+                return true;
+            } catch(IOException e) {
+                failure = e;
+            }
+        }
+
+        autoSaver = null;
+        return false;
+    }
+
 }
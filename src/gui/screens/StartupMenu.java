@@ -3,12 +3,17 @@ package gui.screens;
 import data.DateTime;
 import data.Participant;
 import data.Project;
+import data.io.EditJournal;
+import data.io.RecentProjects;
 import gui.GUI;
 import gui.controls.general.PlusButton;
 import gui.controls.startup.ParticipantForm;
+import gui.controls.startup.RecentProjectsList;
+import javafx.application.Platform;
 import javafx.event.EventHandler;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
+import javafx.scene.Node;
 import javafx.scene.control.Button;
 import javafx.scene.control.DatePicker;
 import javafx.scene.control.SplitPane;
@@ -20,16 +25,20 @@ import javafx.scene.paint.Color;
 import javafx.stage.FileChooser;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * Controller class for the Startup Menu. This is the first screen that the user sees when they open the program.
  *
  * LEFT:
  * OpenProject button
- * Recent Projects button
+ * Recent Projects button (shows the recent projects in place of the New Project form, and back)
  * Exit button
  *
  * RIGHT:
@@ -63,6 +72,15 @@ public class StartupMenu extends Screen {
 
     private List<ParticipantForm> participantList;
 
+    private List<Node> newProjectForm;
+    private RecentProjectsList recentProjectsList;
+
+    public static final String PROJECT_EXTENSION = ".pamy";
+
+    //the catalog of recently opened projects, shared by every StartupMenu (read the first time it is shown)
+    private static final RecentProjects recentProjects = new RecentProjects(RecentProjects.defaultLocation());
+    private static boolean recentProjectsLoaded;
+
     //TODO: Figure out why it doesn't take up the whole screen... (imaginary margins)
     public StartupMenu() {
 
@@ -177,7 +195,7 @@ public class StartupMenu extends Screen {
                     hasParticipants = true;
                     System.out.println(pf.nameField.getText());
                     project.addParticipants(new Participant(pf.nameField.getText(), pf.initialsField.getText(),
-                            pf.colorPicker.getValue(), pf.roleField.getText()));
+                            GUI.toRGBCode(pf.colorPicker.getValue()), pf.roleField.getText()));
                 }
             }
 
@@ -224,7 +242,7 @@ public class StartupMenu extends Screen {
 
         openProjectBtn.setOnMouseClicked((MouseEvent me) -> openProjectAction());
 
-        recentProjectsBtn.setOnMouseClicked((MouseEvent me) -> {});
+        recentProjectsBtn.setOnMouseClicked((MouseEvent me) -> recentProjectsAction());
 
         plusButton.getCircle().setOnMouseClicked((MouseEvent me) -> newProjectAction());
 
@@ -240,15 +258,100 @@ public class StartupMenu extends Screen {
 
         FileChooser fileChooser = new FileChooser();
         fileChooser.setTitle("Open Project");
+        fileChooser.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter("PlanAmity Projects", "*" + PROJECT_EXTENSION),
+                new FileChooser.ExtensionFilter("All Files", "*.*"));
         File file = fileChooser.showOpenDialog(GUI.primaryStage);
         if(file != null) {
-            System.out.println("You picked \"" + file.getAbsolutePath() + "\". Good choice!");
-            //TODO: Do something with the file
+            openProject(file.toPath());
         } else {
             System.out.println("...never mind, then.");
         }
     }
 
+    /**
+     * Actions performed to show (or hide again) the recently opened projects, in place of the New Project form. The
+     * list is shown straight from the catalog, then brought up to date in the background.
+     */
+    private void recentProjectsAction() {
+        if(recentProjectsList != null && rightSide.getChildren().contains(recentProjectsList)) {
+            rightSide.getChildren().setAll(newProjectForm);
+            return;
+        }
+
+        if(recentProjectsList == null) {
+            newProjectForm = new ArrayList<>(rightSide.getChildren());
+            recentProjectsList = new RecentProjectsList(this::openProject);
+            recentProjectsList.prefHeightProperty().bind(rightSide.heightProperty());
+        }
+
+        try {
+            loadRecentProjects();
+        } catch(IOException e) {
+            showRecentProjectsError("Couldn't read the recent projects", e);
+        }
+        recentProjectsList.show(recentProjects.getItems());
+        rightSide.getChildren().setAll(recentProjectsList);
+
+        recentProjects.refresh().whenComplete((items, e) -> {
+            if(e != null)
+                showRecentProjectsError("Couldn't update the recent projects",
+                        e instanceof CompletionException ? e.getCause() : e);
+            else
+                Platform.runLater(() -> recentProjectsList.show(items));
+        });
+    }
+
+    /**
+     * Reads the catalog of recently opened projects from disk, the first time it is needed.
+     * @throws IOException if it couldn't be read (it is started over, empty)
+     */
+    private static void loadRecentProjects() throws IOException {
+        synchronized(recentProjects) {
+            if(!recentProjectsLoaded) {
+                recentProjectsLoaded = true;
+                recentProjects.load();
+            }
+        }
+    }
+
+    /**
+     * Shows what went wrong with the recent projects, from any thread, without holding it up.
+     */
+    private static void showRecentProjectsError(String header, Throwable e) {
+        Platform.runLater(() -> GUI.showError(header, e.getMessage()));
+    }
+
+    /**
+     * Opens a project file (along with any edits journaled after it was last saved in full) and shows it in the
+     * Overview. Branches are read from the file as they are expanded, and the project is saved as it is edited. The
+     * file goes to the top of the recent projects.
+     * @param file the project file
+     */
+    private void openProject(Path file) {
+        try {
+            GUI.screenController.setActiveProject(EditJournal.recover(file, true), file);
+            GUI.screenController.goTo(ScreenController.OVERVIEW);
+        } catch(IOException e) {
+            GUI.showError("Couldn't open \"" + file.getFileName() + "\"", e.getMessage());
+            return;
+        }
+
+        CompletableFuture.runAsync(() -> {
+            try {
+                loadRecentProjects();
+            } catch(IOException e) {
+                showRecentProjectsError("Couldn't read the recent projects", e);
+            }
+            try {
+                recentProjects.add(file);
+                recentProjects.save();
+            } catch(IOException e) {
+                showRecentProjectsError("Couldn't update the recent projects", e);
+            }
+        });
+    }
+
     /**
      * Actions performed when a new project is started.
      */
@@ -0,0 +1,96 @@
+package test
+
+import gui.controls.overview.BranchLayout
+import org.junit.Test
+
+/**
+ * @author Al-John
+ */
+class BranchLayoutTest extends GroovyTestCase {
+
+    @Test
+    void testResetLinksSiblingsAndParents() {
+        //  0 A
+        //  1   B
+        //  2     C
+        //  3   D
+        //  4 E
+        BranchLayout layout = new BranchLayout()
+        layout.reset([0, 1, 2, 1, 0] as int[])
+
+        assert (0..4).collect { layout.next(it) } == [4, 3, -1, -1, -1]
+        assert (0..4).collect { layout.prev(it) } == [-1, -1, -1, 1, 0]
+        assert (0..4).collect { layout.up(it) } == [-1, 0, 1, 0, -1]
+    }
+
+    @Test
+    void testIncrementalUpdatesMatchAFullPass() {
+        Random random = new Random(11)
+        BranchLayout layout = new BranchLayout()
+        List<Integer> indents = []
+        layout.reset(indents as int[])
+
+        2000.times {
+            int op = random.nextInt(10)
+            if(op < 5 || indents.isEmpty()) {
+                //whole subtrees, the way rows are shown when a cell is expanded
+                int from = random.nextInt(indents.size() + 1)
+                int highest = from == 0 ? 0 : indents[from - 1] + 1
+                int lowest = from < indents.size() ? Math.min(indents[from], highest) : 0
+                List<Integer> added = subtrees(random, lowest + random.nextInt(highest - lowest + 1))
+                indents.addAll(from, added)
+                layout.inserted(from, added as int[])
+            }
+            else if(op < 8) {
+                //a row and everything under it, the way rows go when a cell is retracted or deleted
+                int from = random.nextInt(indents.size())
+                int to = from
+                while(to + 1 < indents.size() && indents[to + 1] > indents[from])
+                    to++
+                indents.subList(from, to + 1).clear()
+                layout.removed(from, to)
+            }
+            else if(op < 9) {
+                //a range that isn't whole subtrees (the layout works everything out again)
+                int from = random.nextInt(indents.size())
+                int to = from + random.nextInt(Math.min(4, indents.size() - from))
+                indents.subList(from, to + 1).clear()
+                layout.removed(from, to)
+            }
+            else {
+                //rows that end in the middle of the subtree they're inserted into, or start too deep
+                int from = random.nextInt(indents.size() + 1)
+                List<Integer> added = (0..random.nextInt(3)).collect { random.nextInt(5) }
+                indents.addAll(from, added)
+                layout.inserted(from, added as int[])
+            }
+
+            assertSameAs(layout, indents)
+        }
+    }
+
+    /**
+     * @return the indents of one to three random subtrees whose roots are at a level
+     */
+    private static List<Integer> subtrees(Random random, int level) {
+        List<Integer> indents = []
+        (1 + random.nextInt(3)).times {
+            indents << level
+            random.nextInt(6).times { indents << level + 1 + random.nextInt(indents.last() - level + 1) }
+        }
+        return indents
+    }
+
+    private static void assertSameAs(BranchLayout layout, List<Integer> indents) {
+        BranchLayout expected = new BranchLayout()
+        expected.reset(indents as int[])
+
+        assert layout.size() == indents.size()
+        for(int i = 0; i < indents.size(); i++) {
+            assert layout.indent(i) == indents[i]
+            assert layout.next(i) == expected.next(i)
+            assert layout.prev(i) == expected.prev(i)
+            assert layout.up(i) == expected.up(i)
+        }
+    }
+}
@@ -0,0 +1,784 @@
+package test
+
+import application.Batch
+import data.Attachment
+import data.DateTime
+import data.Entry
+import data.ModelListener
+import data.Participant
+import data.Project
+import data.io.AutoSaver
+import data.io.BlobStore
+import data.io.EditJournal
+import data.io.JsonProjectReader
+import data.io.JsonProjectWriter
+import data.io.ProjectDelta
+import data.io.ProjectReader
+import data.io.ProjectWriter
+import data.io.RecentProjects
+import data.io.ScheduleImporter
+import org.junit.Test
+
+import java.nio.ByteBuffer
+import java.nio.file.Files
+import java.nio.file.Path
+
+/**
+ * @author Al-John
+ */
+class ProjectFileTest extends GroovyTestCase {
+
+    @Test
+    void testRoundTrip() {
+        Project project = new Project("Round Trip", new DateTime(1, 1, 2000), new DateTime(12, 31, 2000))
+        Participant p = new Participant("Ann", "A", "#ff0000", "Lead")
+        project.addParticipants(p, new Participant("Bo", "B", "#3366CC80", "Dev"))
+
+        Entry a = new Entry("A", new DateTime(2, 1, 2000), new DateTime(2, 10, 2000))
+        Entry a1 = new Entry("A1 ünïcode", new DateTime(2, 2, 2000), new DateTime(2, 3, 2000), a)
+        Entry a11 = new Entry("A1", new DateTime(2, 2, 2000), new DateTime(2, 3, 2000), a1)
+        Entry b = new Entry("B", new DateTime(3, 1, 2000), new DateTime(3, 1, 2000))
+        project.addEntries(a, b)
+        a1.setDescription("described")
+        a1.setPercentComplete(40)
+        a11.assignTo(p)
+
+        Path file = Files.createTempFile("project", ".pamy")
+        try {
+            ProjectWriter.write(project, file)
+            Project read = ProjectReader.read(file)
+
+            assert read.getName() == "Round Trip"
+            assert read.getStart() == project.getStart() && read.getEnd() == project.getEnd()
+            assert read.toString() == project.toString()
+            assert read.preOrder().collect { it.getId() } == project.preOrder().collect { it.getId() }
+
+            Entry readA1 = read.getEntryById(a1.getId())
+            assert readA1.getDescription() == "described"
+            assert readA1.getPercentComplete() == 40
+            assert read.getEntryById(a11.getId()).getAssignedTo().getName() == "Ann"
+            assert read.getParticipants()*.getColor() == ["#ff0000", "#3366cc80"]
+            assert read.getPercentComplete() == project.getPercentComplete()
+
+            ProjectReader reader = new ProjectReader(file)
+            assert reader.getEntryCount() == 4
+            assert reader.subtreeSize(0) == 2
+            assert reader.readSubtree(1).getName() == "A1 ünïcode"
+            assert reader.readSubtree(1).getSubEntries().size() == 1
+        }
+        finally {
+            Files.deleteIfExists(file)
+        }
+    }
+
+    @Test
+    void testRejectsOtherFiles() {
+        Path file = Files.createTempFile("project", ".pamy")
+        try {
+            file.toFile().text = "not a project, but long enough to hold a header. " * 4
+            shouldFail(IOException) { ProjectReader.read(file) }
+        }
+        finally {
+            Files.deleteIfExists(file)
+        }
+    }
+
+    @Test
+    void testDamagedFilesAreReportedAsIOException() {
+        Path file = Files.createTempFile("project", ".pamy")
+        try {
+            ProjectWriter.write(Project.randomProject(3), file)
+            byte[] saved = Files.readAllBytes(file)
+            long entryTable = ByteBuffer.wrap(saved).getLong(48)
+
+            //an entry count that runs past the end of the file
+            byte[] bytes = Arrays.copyOf(saved, saved.length)
+            ByteBuffer.wrap(bytes).putInt(32, Integer.MAX_VALUE)
+            file.bytes = bytes
+            assert shouldFail(IOException) { new ProjectReader(file) }.contains("is damaged")
+
+            //a name that isn't in the string pool
+            bytes = Arrays.copyOf(saved, saved.length)
+            ByteBuffer.wrap(bytes).putInt((int) entryTable + 12, 1 << 20)
+            file.bytes = bytes
+            assert shouldFail(IOException) { ProjectReader.read(file) }.contains("is damaged")
+
+            //a first Entry claiming more children than its subtree holds
+            bytes = Arrays.copyOf(saved, saved.length)
+            ByteBuffer.wrap(bytes).putInt((int) entryTable + 8, ByteBuffer.wrap(saved).getInt((int) entryTable + 4) + 1)
+            file.bytes = bytes
+            assert shouldFail(IOException) { new ProjectReader(file).readProjectLazily() }.contains("is damaged")
+
+            //anything else either reads or is reported the same way, eagerly or a branch at a time
+            Random random = new Random(7)
+            300.times {
+                bytes = Arrays.copyOf(saved, saved.length)
+                3.times { bytes[8 + random.nextInt(bytes.length - 8)] = (byte) random.nextInt(256) }
+                file.bytes = bytes
+                [false, true].each { boolean lazily ->
+                    try {
+                        EditJournal.recover(file, lazily).preOrder().collect()
+                    }
+                    catch(IOException ignored) {
+                    }
+                    catch(UncheckedIOException ignored) {
+                    }
+                }
+            }
+        }
+        finally {
+            Files.deleteIfExists(file)
+        }
+    }
+
+    @Test
+    void testJsonRoundTripOfLargeProject() {
+        Project project = Project.randomProject(7)
+        Participant p = project.getParticipants()[1]
+        Entry deep = project.getEntry(3).getSubEntries()[2].getSubEntries()[1]
+        deep.setName("Quote \" backslash \\ newline \n tab \t")
+        deep.setDescription("ünïcode")
+        deep.setEnd(deep.getEnd().getLaterDateTime(90), false)
+        deep.setPercentComplete(60)
+        deep.assignTo(p)
+
+        Path file = Files.createTempFile("project", ".json")
+        try {
+            JsonProjectWriter.write(project, file)
+            Project read = JsonProjectReader.read(file)
+
+            assert read.getTotalEntryCount() == project.getTotalEntryCount()
+            assert read.getTotalEntryCount() > 50000
+            assert read.getName() == project.getName()
+            assert read.getStart() == project.getStart()
+
+            Iterator<Entry> expected = project.preOrder().iterator()
+            for(Entry e : read.preOrder()) {
+                Entry o = expected.next()
+                assert e.getId() == o.getId()
+                assert e.getName() == o.getName()
+                assert e.getStartMinutes() == o.getStartMinutes() && e.getEndMinutes() == o.getEndMinutes()
+                assert e.numParents() == o.numParents()
+                assert e.getSubEntries().size() == o.getSubEntries().size()
+            }
+            assert !expected.hasNext()
+
+            Entry readDeep = read.getEntryById(deep.getId())
+            assert readDeep.getName() == deep.getName()
+            assert readDeep.getDescription() == "ünïcode"
+            assert readDeep.getPercentComplete() == 60
+            assert readDeep.getAssignedTo().getId() == p.getId()
+            assert readDeep.getAssignedTo().is(read.getParticipantById(p.getId()))
+            assert read.getParticipants().collect { it.getColor() } == project.getParticipants().collect { it.getColor() }
+        }
+        finally {
+            Files.deleteIfExists(file)
+        }
+    }
+
+    @Test
+    void testJsonReaderToleratesOtherProducers() {
+        String json = '''{"name":"Other","entries":[{"subEntries":[{"name":"Child","start":10,"end":20,"extra":{"a":[1,2]}}],
+                "name":"Parent","start":"1970-01-01T00:05:00Z","end":30,"assignedTo":7}],
+                "participants":[{"id":7,"name":"Late","color":null}]}'''
+        Project read = JsonProjectReader.read(new StringReader(json))
+
+        Entry parent = read.getEntry(0)
+        assert parent.getName() == "Parent"
+        assert parent.getStartMinutes() == 5 && parent.getEndMinutes() == 30
+        assert parent.getSubEntries()[0].getName() == "Child"
+        assert parent.getAssignedTo().getName() == "Late"
+
+        //colors in the common CSS forms
+        Map<String, String> colors = ['#F0A': '#ff00aa', '#f0a8': '#ff00aa88', '0x336699': '#336699', '336699CC': '#336699cc',
+                                      'Red': '#ff0000', 'rgb(255, 0, 51)': '#ff0033', 'rgba(0%, 100%, 0%, 0.5)': '#00ff0080']
+        colors.each { css, hex ->
+            String one = '{"name":"Colors","participants":[{"id":1,"name":"P","color":"' + css + '"}]}'
+            assert JsonProjectReader.read(new StringReader(one)).getParticipants()[0].getColor() == hex
+        }
+        ['hsl(0, 100%, 50%)', '#12345', 'rgb(1, 2)'].each { css ->
+            String bad = '{"name":"Colors","participants":[{"id":1,"name":"P","color":"' + css + '"}]}'
+            shouldFail(IOException) { JsonProjectReader.read(new StringReader(bad)) }
+        }
+    }
+
+    @Test
+    void testJournalRecoversEdits() {
+        Path dir = Files.createTempDirectory("journal")
+        Path file = dir.resolve("plan.pamy")
+        try {
+            Project project = new Project("Journaled", new DateTime(1, 1, 2000), new DateTime(12, 31, 2000))
+            Participant ann = new Participant("Ann", "A", "#ff0000", "Lead")
+            project.addParticipants(ann)
+            Entry a = new Entry("A", new DateTime(2, 1, 2000), new DateTime(2, 10, 2000))
+            Entry b = new Entry("B", new DateTime(3, 1, 2000), new DateTime(3, 5, 2000))
+            project.addEntries(a, b)
+
+            EditJournal journal = EditJournal.open(project, file)
+            a.setName("A renamed")
+            Entry a1 = new Entry("A1", new DateTime(2, 2, 2000), new DateTime(2, 3, 2000))
+            a.addSubEntry(a1)
+            a1.assignTo(ann)
+            project.beginTransaction()
+            b.setPercentComplete(75)
+            b.setDescription("in a transaction")
+            project.commit()
+            Entry c = project.addNewEntry("C")
+            project.deleteEntry(c)
+            Participant bob = new Participant("Bob", "B", "#0000ff", "Dev")
+            project.addParticipants(bob)
+            b.assignTo(bob)
+            journal.sync()
+
+            Project recovered = EditJournal.recover(file)
+            assert recovered.toString() == project.toString()
+            assert recovered.getEntryById(a1.getId()).getParent().getName() == "A renamed"
+            assert recovered.getEntryById(a1.getId()).getAssignedTo().getName() == "Ann"
+            assert recovered.getEntryById(b.getId()).getPercentComplete() == 75
+            assert recovered.getEntryById(b.getId()).getDescription() == "in a transaction"
+            assert recovered.getEntryById(b.getId()).getAssignedTo().getName() == "Bob"
+            assert recovered.getEntryById(c.getId()) == null
+
+            //a crash in the middle of a write leaves a torn record behind, which is ignored
+            a.setName("lost")
+            journal.close()
+            Path segment = Files.list(dir).find { it.getFileName().toString().contains(".journal.") }
+            Files.write(segment, Arrays.copyOf(Files.readAllBytes(segment), (int) Files.size(segment) - 3))
+            assert EditJournal.recover(file).getEntryById(a.getId()).getName() == "A renamed"
+        }
+        finally {
+            dir.toFile().deleteDir()
+        }
+    }
+
+    @Test
+    void testJournalCompaction() {
+        Path dir = Files.createTempDirectory("journal")
+        Path file = dir.resolve("plan.pamy")
+        try {
+            Project project = Project.randomProject(3)
+            EditJournal journal = EditJournal.open(project, file, 4096)
+            List<Entry> entries = project.preOrder().collect()
+            entries.eachWithIndex { Entry e, int i -> e.setName("edit " + i) }
+            journal.compact()
+            assert Files.list(dir).count() == 2    //the snapshot, and the segment after it
+
+            entries[0].setDescription("after compaction")
+            journal.sync()
+            Project recovered = EditJournal.recover(file)
+            assert recovered.preOrder().collect { it.getName() } == project.preOrder().collect { it.getName() }
+            assert recovered.getEntryById(entries[0].getId()).getDescription() == "after compaction"
+            journal.close()
+            shouldFail(IOException) { journal.compact() }
+
+            //a compaction that fails in the background is reported, not lost
+            journal = EditJournal.open(project, file, 4096)
+            Files.delete(file)
+            entries.each { it.setDescription("again " * 20) }
+            shouldFail(IOException) { journal.close() }
+        }
+        finally {
+            dir.toFile().deleteDir()
+        }
+    }
+
+    @Test
+    void testAutoSaverCoalescesEdits() {
+        Path dir = Files.createTempDirectory("autosave")
+        Path file = dir.resolve("plan.pamy")
+        try {
+            Project project = Project.randomProject(3)
+            AutoSaver saver = new AutoSaver(project, file, 50, 1000)
+            long afterSnapshot = saver.getBytesWritten()
+
+            Entry e = project.getEntry(0)
+            for(int i = 0; i < 1000; i++) {
+                e.setName("name " + i)
+                e.setPercentComplete(i % 101)
+            }
+            Entry added = project.addNewEntry("Added")
+            added.setDescription("after the insert")
+            saver.flush()
+
+            assert saver.getSaveCount() >= 1 && saver.getSaveCount() <= 3
+            assert saver.getChangesSaved() >= 2000
+            assert saver.getBytesWritten() - afterSnapshot < 1000
+            assert saver.getLastSaveLag() > 0
+            assert saver.getPendingLag() == 0
+
+            Project recovered = EditJournal.recover(file)
+            assert recovered.getEntryById(e.getId()).getName() == "name 999"
+            assert recovered.getEntryById(e.getId()).getPercentComplete() == 999 % 101
+            assert recovered.getEntryById(added.getId()).getDescription() == "after the insert"
+            saver.close()
+        }
+        finally {
+            dir.toFile().deleteDir()
+        }
+    }
+
+    @Test
+    void testLazyLoadingReadsBranchesOnDemand() {
+        Project project = Project.randomProject(4)
+        Path file = Files.createTempFile("project", ".pamy")
+        try {
+            ProjectWriter.write(project, file)
+            Project lazy = new ProjectReader(file).readProjectLazily()
+
+            assert lazy.getTotalEntryCount() == project.getTotalEntryCount()
+            assert lazy.getPercentComplete() == project.getPercentComplete()
+
+            //only what was asked for is in memory
+            Entry untouched = lazy.getEntries().find { !it.isLoaded() }
+            assert untouched != null
+            assert untouched.getDescendantCount() == project.getEntryById(untouched.getId()).getDescendantCount()
+            assert untouched.getSpanEnd() == project.getEntryById(untouched.getId()).getSpanEnd()
+
+            //committing a change to it checks its sub-entries by their span, without reading them
+            long end = untouched.getEndMinutes()
+            lazy.beginTransaction()
+            untouched.setEndMinutes(end + 60, false)
+            lazy.commit()
+            lazy.beginTransaction()
+            long subsEnd = project.getEntryById(untouched.getId()).getSubEntries().collect { it.getSpanEnd().getEpochMinutes() }.max()
+            untouched.setEndMinutes(subsEnd - 1, false)
+            shouldFail(IllegalStateException) { lazy.commit() }
+            assert !untouched.isLoaded()
+            assert untouched.getEndMinutes() == end + 60
+            untouched.setEndMinutes(end, false)
+            Entry deep = project.getEntryById(untouched.getId()).getSubEntries()[0]
+            assert lazy.getEntryById(deep.getId()) == null
+            assert untouched.getSubEntries()[0].getName() == deep.getName()
+            assert lazy.getEntryById(deep.getId()) != null
+            assert untouched.getSubEntries()[0].getProject().is(lazy)
+
+            //new Entries never take the ID of one still in storage
+            Entry fresh = lazy.addNewEntry("Fresh")
+            assert project.getEntryById(fresh.getId()) == null
+
+            lazy.deleteEntry(fresh)
+            assert lazy.preOrder().collect { it.getName() } == project.preOrder().collect { it.getName() }
+        }
+        finally {
+            Files.deleteIfExists(file)
+        }
+    }
+
+    @Test
+    void testLazyLoadingUnloadsCleanSubtrees() {
+        Project project = Project.randomProject(4)
+        Path file = Files.createTempFile("project", ".pamy")
+        try {
+            ProjectWriter.write(project, file)
+            Project lazy = new ProjectReader(file).readProjectLazily(20)
+            List<String> names = project.preOrder().collect { it.getName() }
+
+            //a walk over everything stays within the budget, dropping what it read earlier
+            assert lazy.preOrder().collect { it.getName() } == names
+            assert lazy.getEntries().count { it.isLoaded() && it.getDescendantCount() > 0 } < lazy.getEntries().size()
+            assert lazy.getTotalEntryCount() == project.getTotalEntryCount()
+
+            Entry retained = lazy.getEntries()[0]
+            retained.getSubEntries()
+            retained.retainSubEntries()
+            Entry edited = lazy.getEntries()[1]
+            edited.getSubEntries()[0].setName("edited")
+            assert !retained.unloadSubEntries()
+            assert !edited.unloadSubEntries()
+
+            Entry clean = lazy.getEntries()[2]
+            clean.getSubEntries()
+            assert clean.unloadSubEntries()
+            assert !clean.isLoaded()
+            assert clean.getDescendantCount() == project.getEntryById(clean.getId()).getDescendantCount()
+
+            lazy.preOrder().collect()
+            assert retained.isLoaded()
+            assert edited.getSubEntries()[0].getName() == "edited"
+        }
+        finally {
+            Files.deleteIfExists(file)
+        }
+    }
+
+    @Test
+    void testRecentProjectsListFromCatalog() {
+        Project project = Project.randomProject(3)
+        Path file = Files.createTempFile("project", ".pamy")
+        Path catalog = Files.createTempFile("recent", "")
+        try {
+            ProjectWriter.write(project, file)
+            RecentProjects recent = new RecentProjects(catalog)
+            recent.add(file)
+            recent.save()
+
+            RecentProjects.Item item = new RecentProjects(catalog).load()[0]
+            assert new RecentProjects(catalog.resolveSibling("missing-" + catalog.getFileName())).load().isEmpty()
+            assert item.getName() == project.getName()
+            assert item.getStart() == project.getStart()
+            assert item.getEnd() == project.getEnd()
+            assert item.getEntryCount() == project.getTotalEntryCount()
+            assert item.getParticipantCount() == project.getParticipants().size()
+            assert item.getThumbnail().length == RecentProjects.THUMBNAIL_SLICES
+            assert item.getThumbnail().toList().max() == 255
+
+            //a damaged catalog is reported, and starts over empty
+            catalog.bytes = Arrays.copyOf(catalog.bytes, 20)
+            RecentProjects damaged = new RecentProjects(catalog)
+            shouldFail(IOException) { damaged.load() }
+            assert damaged.getItems().isEmpty()
+        }
+        finally {
+            Files.deleteIfExists(file)
+            Files.deleteIfExists(catalog)
+        }
+    }
+
+    @Test
+    void testRecentProjectsRefreshOnlyRereadsChangedFiles() {
+        List<Path> files = (1..4).collect { Files.createTempFile("project", ".pamy") }
+        Path catalog = Files.createTempFile("recent", "")
+        try {
+            files.each { ProjectWriter.write(Project.randomProject(2), it) }
+            RecentProjects recent = new RecentProjects(catalog)
+            files.each { recent.add(it) }
+            List<RecentProjects.Item> before = recent.getItems()
+            assert before*.getFile() == files.reverse()*.toAbsolutePath()
+
+            Project bigger = Project.randomProject(4)
+            ProjectWriter.write(bigger, files[0])
+            Files.delete(files[1])
+            List<RecentProjects.Item> after = recent.refresh().get()
+
+            assert after.size() == 3
+            assert after[2].getEntryCount() == bigger.getTotalEntryCount()
+            assert after[0].is(before[0]) && after[1].is(before[1])
+            assert new RecentProjects(catalog).load() == after
+        }
+        finally {
+            files.each { Files.deleteIfExists(it) }
+            Files.deleteIfExists(catalog)
+        }
+    }
+
+    @Test
+    void testRecentProjectsSavesFromManyThreads() {
+        List<Path> files = (1..8).collect { Files.createTempFile("project", ".pamy") }
+        Path catalog = Files.createTempFile("recent", "")
+        try {
+            files.each { ProjectWriter.write(Project.randomProject(2), it) }
+            RecentProjects recent = new RecentProjects(catalog)
+            List<Throwable> failures = Collections.synchronizedList([])
+            List<Thread> threads = files.collect { file ->
+                Thread.start {
+                    try {
+                        recent.add(file)
+                        50.times { recent.save() }
+                    } catch(Throwable t) {
+                        failures << t
+                    }
+                }
+            }
+            threads*.join()
+
+            assert failures.isEmpty()
+            assert new RecentProjects(catalog).load() == recent.getItems()
+            assert recent.getItems().size() == files.size()
+            assert !Files.exists(catalog.resolveSibling(catalog.getFileName().toString() + ".tmp"))
+        }
+        finally {
+            files.each { Files.deleteIfExists(it) }
+            Files.deleteIfExists(catalog)
+        }
+    }
+
+    @Test
+    void testBlobStoreKeepsEachContentOnce() {
+        Path dir = Files.createTempDirectory("blobs")
+        try {
+            BlobStore store = new BlobStore(dir.resolve("store"))
+            byte[] contents = new byte[200_000]
+            new Random(7).nextBytes(contents)
+            Path first = Files.write(dir.resolve("first.bin"), contents)
+            Path copy = Files.write(dir.resolve("copy.bin"), contents)
+
+            Attachment a = store.put(first)
+            Attachment b = store.put(copy)
+            assert a.getHash() == java.security.MessageDigest.getInstance("SHA-256").digest(contents).encodeHex().toString()
+            assert a.getHash() == b.getHash() && a.getName() == "first.bin" && b.getName() == "copy.bin"
+            assert a.getSize() == contents.length
+            assert store.contains(a)
+            assert Files.walk(dir.resolve("store")).filter { Files.isRegularFile(it) }.count() == 1
+
+            Path out = dir.resolve("out.bin")
+            store.copyTo(b, out)
+            assert Files.readAllBytes(out) == contents
+            assert store.open(a).withCloseable { it.size() } == contents.length
+        }
+        finally {
+            dir.toFile().deleteDir()
+        }
+    }
+
+    @Test
+    void testAttachmentsSurviveEveryFormat() {
+        Path dir = Files.createTempDirectory("attachments")
+        Path file = dir.resolve("plan.pamy")
+        try {
+            Project project = Project.randomProject(2)
+            List<Entry> entries = project.preOrder().collect()
+            Attachment spec = new Attachment("0f" * 32, "spec.pdf", 1234)
+            Attachment notes = new Attachment("e1" * 32, "notes.txt", 56)
+            entries[1].addAttachment(spec)
+            entries[1].addAttachment(notes)
+            entries[entries.size() - 1].addAttachment(spec)
+
+            ProjectWriter.write(project, file)
+            Project read = ProjectReader.read(file)
+            assert read.preOrder()*.getAttachments() == entries*.getAttachments()
+            Project lazy = new ProjectReader(file).readProjectLazily()
+            assert lazy.preOrder()*.getAttachments() == entries*.getAttachments()
+
+            StringWriter json = new StringWriter()
+            JsonProjectWriter.write(project, json)
+            Project fromJson = JsonProjectReader.read(new StringReader(json.toString()))
+            assert fromJson.preOrder()*.getAttachments() == entries*.getAttachments()
+
+            EditJournal journal = EditJournal.open(project, file)
+            entries[1].removeAttachment(spec)
+            Entry fresh = project.addNewEntry("Fresh")
+            fresh.addAttachment(notes)
+            journal.close()
+            Project recovered = EditJournal.recover(file)
+            assert recovered.getEntryById(entries[1].getId()).getAttachments() == [notes]
+            assert recovered.getEntryById(fresh.getId()).getAttachments() == [notes]
+        }
+        finally {
+            dir.toFile().deleteDir()
+        }
+    }
+
+    @Test
+    void testCsvImportBuildsTreesAndRejectsBadRows() {
+        Project project = new Project("Import", new DateTime(1, 1, 2018), new DateTime(12, 31, 2018))
+        Participant ann = new Participant("Ann Lee", "AL", "#ff0000", "Lead")
+        project.addParticipants(ann)
+        Entry early = new Entry("Early", new DateTime(1, 2, 2018), new DateTime(1, 3, 2018))
+        Entry late = new Entry("Late", new DateTime(12, 1, 2018), new DateTime(12, 2, 2018))
+        project.addEntries(early, late)
+
+        String csv = """Path,Start,End,Percent Complete,Assigned To,Description
+Build/Design,2018-03-01,2018-03-10,50%,AL,"Sketches, ""wireframes""
+and mockups"
+Build/Code/Backend,2018-03-05,2018-04-01,,Bob Smith,
+Build,2018-03-02,2018-03-20,,,
+Build/Design,2018-03-01,2018-03-02,,,
+Broken,someday,,,,
+Backwards,2018-05-02,2018-05-01,,,
+Ship,7/4/2018,,200,,
+"""
+        int batches = 0
+        project.addModelListener({ p, changes -> batches++ } as ModelListener)
+        ScheduleImporter.Result result = ScheduleImporter.importCsv(project, new StringReader(csv))
+
+        assert batches == 1
+        assert result.getRowCount() == 7
+        assert result.getImportedCount() == 3
+        assert result.getRejected()*.getLine() == [6, 7, 8, 9]
+        assert result.getEntryCount() == 4
+        assert result.getRowsPerSecond() > 0
+
+        assert project.getEntries()*.getName() == ["Early", "Build", "Late"]
+        Entry build = project.getEntries()[1]
+        assert build.getSubEntries()*.getName() == ["Design", "Code"]
+        Entry design = build.getSubEntries()[0]
+        assert design.getDescription() == 'Sketches, "wireframes"\nand mockups'
+        assert design.getPercentComplete() == 50
+        assert design.getAssignedTo().is(ann)
+        assert build.getStart() == new DateTime(3, 1, 2018)     //widened to span Design
+        assert build.getEnd() == new DateTime(4, 1, 2018)
+        Entry code = build.getSubEntries()[1]
+        assert code.getStart() == new DateTime(3, 5, 2018) && code.getEnd() == new DateTime(4, 1, 2018)
+        assert code.getSubEntries()[0].getAssignedTo().getName() == "Bob Smith"
+        assert code.getSubEntries()[0].getAssignedTo().getInitials() == "BS"
+        assert project.getParticipants().size() == 2
+    }
+
+    @Test
+    void testIcsImportFollowsRelatedTo() {
+        Project project = new Project("Import", new DateTime(1, 1, 2018), new DateTime(12, 31, 2018))
+        String ics = """BEGIN:VCALENDAR
+BEGIN:VTODO
+UID:child
+SUMMARY:Write the
+  report
+RELATED-TO:parent
+DTSTART:20180310T090000Z
+DUE:20180312T170000Z
+PERCENT-COMPLETE:25
+ATTENDEE;CN="Ann Lee";ROLE=REQ-PARTICIPANT:mailto:ann@example.com
+END:VTODO
+BEGIN:VEVENT
+UID:parent
+SUMMARY:Reporting
+DTSTART;VALUE=DATE:20180301
+DTEND;VALUE=DATE:20180315
+DESCRIPTION:Agenda
+BEGIN:VALARM
+ACTION:DISPLAY
+DESCRIPTION:This is an event
+  reminder
+TRIGGER:-PT15M
+END:VALARM
+END:VEVENT
+BEGIN:VEVENT
+UID:nameless
+DTSTART:20180301
+END:VEVENT
+BEGIN:VEVENT
+UID:loop-a
+RELATED-TO:loop-b
+SUMMARY:A
+DTSTART:20180401
+END:VEVENT
+BEGIN:VEVENT
+UID:loop-b
+RELATED-TO:loop-a
+SUMMARY:B
+DTSTART:20180402
+END:VEVENT
+END:VCALENDAR
+"""
+        ScheduleImporter.Result result = ScheduleImporter.importIcs(project, new StringReader(ics))
+        assert result.getImportedCount() == 4
+        assert result.getRejected().size() == 1 && result.getRejected()[0].getLine() == 25
+
+        assert project.getEntries()*.getName() == ["Reporting", "B"]
+        assert project.getEntries()[0].getDescription() == "Agenda"
+        Entry child = project.getEntries()[0].getSubEntries()[0]
+        assert child.getName() == "Write the report"
+        assert child.getPercentComplete() == 25
+        assert child.getAssignedTo().getName() == "Ann Lee"
+        assert child.getStartMinutes() == Date.parse("yyyy-MM-dd HH:mm z", "2018-03-10 09:00 UTC").time.intdiv(60000)
+        assert project.getEntries()[1].getSubEntries()*.getName() == ["A"]
+    }
+
+    @Test
+    void testLargeCsvImportIsOneBatch() {
+        StringBuilder csv = new StringBuilder("Name,Parent,Start,End,Assigned To\n")
+        for(int g = 0; g < 100; g++)
+            for(int i = 0; i < 200; i++)
+                csv.append(String.format("Task %d,Group %d,2018-01-%02d,2018-02-%02d,Person %d%n", i, g, 1 + g % 28, 1 + i % 9, i % 7))
+
+        Project project = new Project("Import", new DateTime(1, 1, 2018), new DateTime(12, 31, 2018))
+        List<List> batches = []
+        project.addModelListener({ p, changes -> batches << changes } as ModelListener)
+        ScheduleImporter.Result result = ScheduleImporter.importCsv(project, new StringReader(csv.toString()))
+
+        assert result.getRejected().isEmpty()
+        assert result.getImportedCount() == 20_000
+        assert project.getTotalEntryCount() == 20_100
+        assert project.getParticipants().size() == 7
+        assert batches.size() == 1
+        assert project.getEntries().collect { it.getStartMinutes() } == project.getEntries().collect { it.getStartMinutes() }.sort()
+    }
+
+    @Test
+    void testDeltaCarriesOnlyTheChanges() {
+        Path file = Files.createTempFile("delta", ".pamy")
+        try {
+            Project base = Project.randomProject(5)
+            ProjectWriter.write(base, file)
+            Project target = ProjectReader.read(file)
+            assert ProjectDelta.diff(base, target).length == 18
+
+            List<Entry> top = target.getEntries()
+            Entry a = top[0]
+            List<Entry> subs = a.getSubEntries()
+            target.moveEntry(subs[subs.size() - 1], a, null)
+            Entry moved = top[1].getSubEntries()[1].getSubEntries()[0]
+            target.moveEntry(moved, top[2], top[2].getSubEntries()[0])
+            target.deleteEntry(top[3].getSubEntries()[0])
+            subs[2].setName("Renamed")
+            subs[2].setPercentComplete(40)
+            subs[2].addAttachment(new Attachment("5c" * 32, "plan.pdf", 77))
+
+            Participant newcomer = new Participant("Newcomer", "N", "#008080", "Reviewer")
+            target.addParticipants(newcomer)
+            target.getParticipants()[0].setRole("Lead")
+            Entry fresh = new Entry("Fresh", a.getStart(), a.getEnd())
+            target.insertEntry(fresh, a, 1)
+            fresh.assignTo(newcomer)
+
+            byte[] delta = ProjectDelta.diff(base, target)
+            assert delta.length < Files.size(file) / 20
+
+            ProjectDelta.apply(base, delta)
+            assert base.getTotalEntryCount() == target.getTotalEntryCount()
+            assert base.preOrder()*.getId() == target.preOrder()*.getId()
+            assert base.preOrder().collect { it.getParent()?.getId() } == target.preOrder().collect { it.getParent()?.getId() }
+            assert base.preOrder()*.getName() == target.preOrder()*.getName()
+            assert base.preOrder()*.getPercentComplete() == target.preOrder()*.getPercentComplete()
+            assert base.preOrder()*.getAttachments() == target.preOrder()*.getAttachments()
+            assert base.getEntryById(fresh.getId()).getAssignedTo().getName() == "Newcomer"
+            assert base.getParticipants()*.getRole() == target.getParticipants()*.getRole()
+
+            //made against the old version, so it no longer fits
+            List<Integer> ids = base.preOrder()*.getId()
+            shouldFail(IOException) { ProjectDelta.apply(base, delta) }
+            assert base.preOrder()*.getId() == ids
+        }
+        finally {
+            Files.deleteIfExists(file)
+        }
+    }
+
+    @Test
+    void testHeadlessBatchValidatesShiftsAndExports() {
+        Path dir = Files.createTempDirectory("batch")
+        try {
+            Path input = Files.createDirectories(dir.resolve("in"))
+            List<Project> projects = (0..<6).collect { Project.randomProject(3) }
+            projects.eachWithIndex { Project p, int i -> ProjectWriter.write(p, input.resolve("p" + i + ".pamy")) }
+            Files.write(input.resolve("broken.pamy"), "not a project".bytes)
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream()
+            int status = Batch.run(["--validate", "--shift", "7", "--export", dir.resolve("out").toString(),
+                                    "--format", "json", "--threads", "3", input.toString()] as String[],
+                                   new PrintStream(bytes, true))
+            List<String> lines = bytes.toString().readLines()
+
+            assert status == 1
+            assert lines.count { it.startsWith("OK") } == 6
+            assert lines.count { it.startsWith("FAILED") } == 1
+            assert lines.last().startsWith("7 files, 1 failed")
+
+            Project shifted = JsonProjectReader.read(dir.resolve("out").resolve("p0.json"))
+            assert shifted.getStart().getEpochMinutes() == projects[0].getStart().getEpochMinutes() + 7 * 24 * 60
+            assert shifted.preOrder()*.getStartMinutes() == projects[0].preOrder().collect { it.getStartMinutes() + 7 * 24 * 60 }
+            assert shifted.getParticipants()*.getColor() == projects[0].getParticipants()*.getColor()
+
+            assert Batch.run(["--threads", "0", input.toString()] as String[], new PrintStream(new ByteArrayOutputStream())) == 2
+
+            //subdirectories are kept, and files that would land on the same output fail instead
+            Path nested = Files.createDirectories(input.resolve("nested"))
+            ProjectWriter.write(projects[1], nested.resolve("p0.pamy"))
+            JsonProjectWriter.write(projects[2], input.resolve("p1.json"))
+            bytes.reset()
+            status = Batch.run(["--export", dir.resolve("again").toString(), input.toString()] as String[],
+                               new PrintStream(bytes, true))
+            lines = bytes.toString().readLines()
+            assert status == 1
+            assert lines.findAll { it.startsWith("FAILED") }.size() == 3      //broken.pamy, p1.pamy and p1.json
+            assert lines.count { it.contains("would both be exported to") } == 2
+            assert ProjectReader.read(dir.resolve("again").resolve("nested").resolve("p0.pamy")).getTotalEntryCount() ==
+                    projects[1].getTotalEntryCount()
+            assert ProjectReader.read(dir.resolve("again").resolve("p0.pamy")).getTotalEntryCount() ==
+                    projects[0].getTotalEntryCount()
+            assert !Files.exists(dir.resolve("again").resolve("p1.pamy"))
+        }
+        finally {
+            dir.toFile().deleteDir()
+        }
+    }
+}
@@ -1,7 +1,12 @@
 package test
 
+import data.Attachment
 import data.DateTime
 import data.Entry
+import data.ModelChange
+import data.ModelListener
+import data.ObsList
+import data.Participant
 import data.Project
 import org.junit.Test
 
@@ -234,4 +239,401 @@ class ProjectTest extends GroovyTestCase {
         assert entry.getStart() == start
         assert entry.getEnd() == end
     }
-}
\ No newline at end of file
+
+    @Test
+    void testRangeQueryFindsSubEntries() {
+        Project project = new Project("Test", new DateTime(1, 1, 2000), new DateTime(12, 31, 2000))
+        Entry parent = new Entry("Parent", new DateTime(2, 1, 2000), new DateTime(6, 1, 2000))
+        Entry child = new Entry("Child", new DateTime(3, 1, 2000), new DateTime(3, 10, 2000), parent)
+        Entry other = new Entry("Other", new DateTime(8, 1, 2000), new DateTime(9, 1, 2000))
+        project.addEntries(parent, other)
+
+        assert project.rangeQuery(new DateTime(3, 5, 2000), new DateTime(3, 6, 2000)) == [parent, child]
+        assert project.rangeQuery(new DateTime(7, 1, 2000), new DateTime(8, 1, 2000)) == [other]
+        assert project.rangeQuery(new DateTime(10, 1, 2000), new DateTime(11, 1, 2000)).isEmpty()
+    }
+
+    @Test
+    void testRangeQueryFollowsDateChanges() {
+        Project project = new Project("Test", new DateTime(1, 1, 2000), new DateTime(12, 31, 2000))
+        Entry entry = new Entry("Entry", new DateTime(2, 1, 2000), new DateTime(2, 2, 2000))
+        project.addEntry(entry)
+
+        entry.setStart(new DateTime(5, 1, 2000), true)
+        assert project.rangeQuery(new DateTime(2, 1, 2000), new DateTime(2, 2, 2000)).isEmpty()
+        assert project.rangeQuery(new DateTime(5, 1, 2000), new DateTime(5, 1, 2000)) == [entry]
+
+        entry.setDurationInDays(30)
+        assert project.rangeQuery(new DateTime(5, 20, 2000), new DateTime(5, 21, 2000)) == [entry]
+
+        project.deleteEntry(entry)
+        assert project.rangeQuery(new DateTime(1, 1, 2000), new DateTime(12, 31, 2000)).isEmpty()
+    }
+
+    @Test
+    void testEntryPositionsAfterInsertsAndDeletes() {
+        Project project = new Project("Test", new DateTime(1, 1, 2000), new DateTime(12, 31, 2000))
+        Entry first = new Entry("First")
+        project.addEntry(first)
+
+        List<Entry> expected = [first]
+        Entry after = first
+        for(int i = 0; i < 200; i++) {
+            Entry fresh = new Entry("Entry" + i)
+            project.addEntryAfter(fresh, after)
+            expected.add(expected.indexOf(after) + 1, fresh)
+            after = i % 3 == 0 ? first : fresh
+        }
+
+        project.deleteEntry(expected.remove(50))
+        project.swapEntries(10, 20)
+        Collections.swap(expected, 10, 20)
+
+        assert project.getEntries() == expected
+        expected.eachWithIndex { Entry e, int i -> assert project.getEntries().indexOf(e) == i }
+    }
+
+    @Test
+    void testEntryIdsAreStableAndUnique() {
+        Project project = new Project("Test", new DateTime(1, 1, 2000), new DateTime(12, 31, 2000))
+        Entry first = project.addNewEntry("First")
+        Entry second = project.addNewEntryAfter(first, "Second")
+        Entry child = new Entry("Child", new DateTime(1, 2, 2000), new DateTime(1, 3, 2000), second)
+
+        assert [first, second, child]*.getId().toSet().size() == 3
+        assert project.getEntryById(child.getId()).is(child)
+        assert project.positionOf(second.getId()) == 1
+        assert project.positionOf(child.getId()) == 0
+
+        int secondId = second.getId()
+        project.swapEntries(0, 1)
+        assert second.getId() == secondId
+        assert project.positionOf(secondId) == 0
+
+        project.deleteEntry(second)
+        assert project.getEntryById(secondId) == null
+        assert project.getEntryById(child.getId()) == null
+    }
+
+    @Test
+    void testSinglePointGroupBoundsFollowDurationChanges() {
+        Project project = new Project("Test", new DateTime(1, 1, 2000), new DateTime(12, 31, 2000))
+        Entry first = project.addNewEntry("First")
+        Entry second = project.addNewEntryAfter(first, "Second")
+        Entry third = project.addNewEntryAfter(second, "Third")
+        Entry fourth = project.addNewEntryAfter(third, "Fourth")
+
+        assert project.getSinglePointGroupBounds(third) == [-1, 4] as int[]
+
+        second.setDurationInDays(1)
+        assert project.getSinglePointGroupBounds(first) == [-1, 1] as int[]
+        assert project.getSinglePointGroupBounds(fourth) == [1, 4] as int[]
+        assert project.getGroupOfSinglePointEntries(second) == [first, third, fourth]
+
+        second.setDurationInMins(0)
+        assert project.getGroupOfSinglePointEntries(fourth).size() == 4
+    }
+
+    @Test
+    void testDepthAndAncestry() {
+        Project project = new Project("Test", new DateTime(1, 1, 2000), new DateTime(12, 31, 2000))
+        Entry root = project.addNewEntry("Root")
+        Entry other = project.addNewEntry("Other")
+        Entry child = new Entry("Child", root.getStart(), root.getEnd(), root)
+        Entry grandchild = new Entry("Grandchild", root.getStart(), root.getEnd(), child)
+
+        assert grandchild.numParents() == 2
+        assert root.isAncestorOf(grandchild)
+        assert child.isAncestorOf(grandchild)
+        assert !grandchild.isAncestorOf(child)
+        assert !other.isAncestorOf(grandchild)
+        assert root.getPreOrderIndex() == 0
+        assert root.getSubtreeEnd() == 2
+        assert other.getPreOrderIndex() == 3
+
+        Entry leaf = new Entry("Leaf", root.getStart(), root.getEnd(), grandchild)
+        other.addSubEntry(child)
+
+        assert leaf.numParents() == 3
+        assert other.isAncestorOf(leaf)
+        assert !root.isAncestorOf(leaf)
+        assert root.getSubtreeEnd() == 0
+        assert other.getSubtreeEnd() == 4
+    }
+
+    @Test
+    void testSubtreeRollups() {
+        Project project = new Project("Test", new DateTime(1, 1, 2000), new DateTime(12, 31, 2000))
+        Entry parent = new Entry("Parent", new DateTime(3, 1, 2000), new DateTime(3, 1, 2000))
+        Entry a = new Entry("A", new DateTime(2, 1, 2000), new DateTime(2, 4, 2000), parent)
+        Entry b = new Entry("B", new DateTime(3, 1, 2000), new DateTime(3, 2, 2000), parent)
+        project.addEntry(parent)
+
+        a.setPercentComplete(100)
+        assert parent.getDescendantCount() == 2
+        assert parent.getSpanStart() == new DateTime(2, 1, 2000)
+        assert parent.getSpanEnd() == new DateTime(3, 2, 2000)
+        assert parent.getTotalDuration() == 4 * 1440
+        assert parent.getRolledUpPercentComplete() == 75
+
+        Entry c = new Entry("C", new DateTime(4, 1, 2000), new DateTime(4, 2, 2000), b)
+        c.setPercentComplete(50)
+        assert parent.getDescendantCount() == 3
+        assert parent.getSpanEnd() == new DateTime(4, 2, 2000)
+        assert parent.getRolledUpPercentComplete() == 87.5
+        assert project.getTotalEntryCount() == 4
+        assert project.getPercentComplete() == 87.5
+
+        c.setEnd(new DateTime(4, 4, 2000), false)
+        assert parent.getSpanEnd() == new DateTime(4, 4, 2000)
+        assert parent.getTotalDuration() == 6 * 1440
+    }
+
+    @Test
+    void testTraversalOrders() {
+        Project project = new Project("Test", new DateTime(1, 1, 2000), new DateTime(12, 31, 2000))
+        Entry a = new Entry("A", new DateTime(2, 1, 2000), new DateTime(2, 4, 2000))
+        Entry a1 = new Entry("A1", new DateTime(2, 1, 2000), new DateTime(2, 2, 2000), a)
+        Entry a2 = new Entry("A2", new DateTime(2, 2, 2000), new DateTime(2, 3, 2000), a)
+        Entry a21 = new Entry("A21", new DateTime(2, 2, 2000), new DateTime(2, 3, 2000), a2)
+        Entry b = new Entry("B", new DateTime(3, 1, 2000), new DateTime(3, 2, 2000))
+        project.addEntries(a, b)
+
+        assert project.preOrder().collect { it.getName() } == ["A", "A1", "A2", "A21", "B"]
+        assert project.postOrder().collect { it.getName() } == ["A1", "A21", "A2", "A", "B"]
+        assert a2.preOrder().collect { it.getName() } == ["A2", "A21"]
+        assert a.postOrder().collect { it.getName() } == ["A1", "A21", "A2", "A"]
+        assert project.entryStream(false).collect { it.getName() } == ["A", "A1", "A2", "A21", "B"]
+    }
+
+    @Test
+    void testParallelEntryStream() {
+        Project project = Project.randomProject(5)
+        List<Entry> all = project.preOrder().collect()
+
+        assert all.size() == project.getTotalEntryCount()
+        assert project.entryStream(true).count() == all.size()
+        assert project.entryStream(true).collect(java.util.stream.Collectors.toList()) == all
+        assert project.getEntry(0).subtreeStream(true).count() == project.getEntry(0).getDescendantCount() + 1
+    }
+
+    @Test
+    void testModelChangesAreBatchedAndCoalesced() {
+        Project project = new Project("Test", new DateTime(1, 1, 2000), new DateTime(12, 31, 2000))
+        Entry a = new Entry("A", new DateTime(2, 1, 2000), new DateTime(2, 4, 2000))
+        project.addEntry(a)
+        Participant ann = new Participant("Ann", "A", "#ff0000", "Lead")
+        project.addParticipants(ann)
+
+        List<List<ModelChange>> batches = []
+        project.addModelListener({ p, changes -> batches << changes } as ModelListener)
+
+        a.setName("B")
+        assert batches.size() == 1
+        assert batches[0][0].getKind() == ModelChange.Kind.PROPERTY
+        assert batches[0][0].getProperty() == ModelChange.Property.NAME
+        assert batches[0][0].getOldValue() == "A" && batches[0][0].getNewValue() == "B"
+
+        //colors are reported the way they are kept
+        batches.clear()
+        ann.setColor("#FF0000")
+        assert batches.isEmpty()
+        ann.setColor("#00FF00")
+        assert batches[0][0].getOldValue() == "#ff0000" && batches[0][0].getNewValue() == "#00ff00"
+
+        batches.clear()
+        project.batch {
+            a.setName("C")
+            a.setName("D")
+            a.setPercentComplete(10)
+            a.setPercentComplete(0)
+            (1..1000).each { new Entry("Sub" + it, a.getStart(), a.getEnd(), a) }
+        }
+
+        assert batches.size() == 1
+        List<ModelChange> batch = batches[0]
+        assert batch.size() == 1001
+        assert batch[0].getOldValue() == "B" && batch[0].getNewValue() == "D"
+        assert batch[1].getKind() == ModelChange.Kind.INSERTED
+        assert batch[1].getParent().is(a) && batch[1].getIndex() == 0
+        assert batch[1000].getIndex() == 999
+    }
+
+    @Test
+    void testStructuralModelChanges() {
+        Project project = new Project("Test", new DateTime(1, 1, 2000), new DateTime(12, 31, 2000))
+        Entry a = new Entry("A", new DateTime(2, 1, 2000), new DateTime(2, 4, 2000))
+        Entry b = new Entry("B", new DateTime(3, 1, 2000), new DateTime(3, 4, 2000))
+        project.addEntries(a, b)
+
+        List<ModelChange> changes = []
+        project.addModelListener({ p, batch -> changes.addAll(batch) } as ModelListener)
+
+        a.addSubEntry(b)
+        assert changes.size() == 1
+        assert changes[0].getKind() == ModelChange.Kind.MOVED
+        assert changes[0].getOldParent() == null && changes[0].getOldIndex() == 1
+        assert changes[0].getParent().is(a) && changes[0].getIndex() == 0
+
+        changes.clear()
+        project.deleteEntry(a)
+        assert changes.size() == 1
+        assert changes[0].getKind() == ModelChange.Kind.REMOVED && changes[0].getIndex() == 0
+
+        changes.clear()
+        b.setName("Detached")
+        assert changes.isEmpty()
+    }
+
+    @Test
+    void testTransactionCommitNotifiesOnce() {
+        Project project = new Project("Test", new DateTime(1, 1, 2000), new DateTime(12, 31, 2000))
+        Entry a = new Entry("A", new DateTime(2, 1, 2000), new DateTime(2, 10, 2000))
+        project.addEntry(a)
+
+        int batches = 0
+        project.addModelListener({ p, changes -> batches++ } as ModelListener)
+
+        project.beginTransaction()
+        a.setStart(new DateTime(2, 2, 2000), true)
+        (1..100).each { new Entry("Sub" + it, new DateTime(2, 3, 2000), new DateTime(2, 4, 2000), a) }
+        assert batches == 0
+        assert a.getSubEntries().size() == 100
+
+        project.commit()
+        assert batches == 1
+        assert !project.inTransaction()
+    }
+
+    @Test
+    void testTransactionRollback() {
+        Project project = new Project("Test", new DateTime(1, 1, 2000), new DateTime(12, 31, 2000))
+        Entry a = new Entry("A", new DateTime(2, 1, 2000), new DateTime(2, 10, 2000))
+        Entry b = new Entry("B", new DateTime(3, 1, 2000), new DateTime(3, 10, 2000))
+        Entry c = new Entry("C", new DateTime(4, 1, 2000), new DateTime(4, 10, 2000))
+        project.addEntries(a, b, c)
+
+        int batches = 0
+        project.addModelListener({ p, changes -> batches++ } as ModelListener)
+
+        project.beginTransaction()
+        a.setName("Renamed")
+        a.setEnd(new DateTime(2, 20, 2000), false)
+        project.deleteEntry(b)
+        Entry fresh = new Entry("Fresh", new DateTime(4, 2, 2000), new DateTime(4, 3, 2000), c)
+        project.rollback()
+
+        assert batches == 0
+        assert a.getName() == "A"
+        assert a.getEnd() == new DateTime(2, 10, 2000)
+        assert project.getEntries() == [a, b, c]
+        assert b.getProject().is(project)
+        assert c.getSubEntries().isEmpty()
+        assert fresh.getProject() == null
+        assert project.getTotalEntryCount() == 3
+        assert project.rangeQuery(new DateTime(3, 5, 2000), new DateTime(3, 5, 2000)) == [b]
+
+        //reassignments roll back on both sides
+        Participant ann = new Participant("Ann", "AN", "#336699", "Lead")
+        Participant bob = new Participant("Bob", "BO", "#996633", "Dev")
+        project.addParticipants(ann, bob)
+        a.assignTo(ann)
+        project.beginTransaction()
+        ann.removeAssignment(a)
+        a.assignTo(bob)
+        project.rollback()
+        assert a.getAssignedTo().is(ann)
+        assert ann.getAssignments() == [a]
+        assert bob.getAssignments().isEmpty()
+    }
+
+    @Test
+    void testCommitValidatesInvariants() {
+        Project project = new Project("Test", new DateTime(1, 1, 2000), new DateTime(12, 31, 2000))
+        Entry a = new Entry("A", new DateTime(2, 1, 2000), new DateTime(2, 10, 2000))
+        Entry b = new Entry("B", new DateTime(3, 1, 2000), new DateTime(3, 10, 2000))
+        project.addEntries(a, b)
+
+        project.beginTransaction()
+        a.setStart(new DateTime(5, 1, 2000), true)
+        shouldFail(IllegalStateException) { project.commit() }
+        assert a.getStart() == new DateTime(2, 1, 2000)
+        assert !project.inTransaction()
+
+        project.beginTransaction()
+        new Entry("Outside", new DateTime(2, 5, 2000), new DateTime(2, 15, 2000), a)
+        shouldFail(IllegalStateException) { project.commit() }
+        assert a.getSubEntries().isEmpty()
+    }
+
+    @Test
+    void testAttachmentsAreReferencesAndRollBack() {
+        Project project = new Project("Test", new DateTime(1, 1, 2000), new DateTime(12, 31, 2000))
+        Entry a = project.addNewEntry("A")
+        Attachment spec = new Attachment("ab" * 32, "spec.pdf", 1234)
+        assert !a.hasAttachments()
+
+        List<ModelChange> seen = []
+        project.addModelListener({ p, changes -> seen.addAll(changes) } as ModelListener)
+        a.addAttachment(spec)
+        assert a.hasAttachments()
+        assert a.getAttachments() == [spec]
+        assert seen*.getProperty() == [ModelChange.Property.ATTACHMENTS]
+        shouldFail(UnsupportedOperationException) { a.getAttachments().add(spec) }
+
+        project.beginTransaction()
+        a.removeAttachment(spec)
+        assert !a.hasAttachments()
+        project.rollback()
+        assert a.getAttachments() == [spec]
+
+        shouldFail(IllegalArgumentException) { new Attachment("not a hash", "x", 0) }
+        shouldFail(IllegalArgumentException) { new Attachment("../" * 21 + "x", "x", 0) }
+        shouldFail(IllegalArgumentException) { new Attachment("zz" * 32, "x", 0) }
+        assert new Attachment("AB" * 32, "spec.pdf", 1234) == spec
+    }
+
+    @Test
+    void testMoveEntryAfterSibling() {
+        Project project = new Project("Test", new DateTime(1, 1, 2000), new DateTime(12, 31, 2000))
+        Entry a = new Entry("A", new DateTime(2, 1, 2000), new DateTime(2, 10, 2000))
+        Entry a1 = new Entry("A1", new DateTime(2, 2, 2000), new DateTime(2, 3, 2000), a)
+        Entry a2 = new Entry("A2", new DateTime(2, 2, 2000), new DateTime(2, 3, 2000), a)
+        Entry a3 = new Entry("A3", new DateTime(2, 2, 2000), new DateTime(2, 3, 2000), a)
+        Entry b = new Entry("B", new DateTime(3, 1, 2000), new DateTime(3, 10, 2000))
+        project.addEntries(a, b)
+
+        project.moveEntry(a1, a, a3)
+        assert a.getSubEntries() == [a2, a3, a1]
+        project.moveEntry(a1, a, null)
+        assert a.getSubEntries() == [a1, a2, a3]
+        project.moveEntry(a3, a, a1)
+        assert a.getSubEntries() == [a1, a3, a2]
+
+        project.moveEntry(a2, b, null)
+        assert b.getSubEntries() == [a2] && a.getSubEntries() == [a1, a3]
+        shouldFail(IllegalArgumentException) { project.moveEntry(a1, b, a3) }
+
+        //nothing can be put inside itself
+        shouldFail(IllegalArgumentException) { a.addSubEntry(a) }
+        shouldFail(IllegalArgumentException) { a1.addSubEntry(a) }
+        assert a.getSubEntries() == [a1, a3] && project.getEntries() == [a, b]
+    }
+
+    @Test
+    void testObsListReportsRangesOnce() {
+        ObsList<String> list = new ObsList<>()
+        List<List> events = []
+        list.addListener({ source, kind, from, to -> events << [kind, from, to] } as ObsList.Listener)
+
+        list.add("a", "b", "c", "d", "e")
+        list.remove(1, 3)
+        assert list.getList() == ["a", "e"]
+        list.setAll(["x", "y", "z"])
+        assert list.getList() == ["x", "y", "z"]
+        list.remove(2, 1)
+
+        assert events == [[ObsList.Kind.ADDED, 0, 4], [ObsList.Kind.REMOVED, 1, 3],
+                          [ObsList.Kind.REMOVED, 0, 1], [ObsList.Kind.ADDED, 0, 2]]
+    }
+}